@@ -1,45 +1,335 @@
-import java.util.LinkedList;
-import java.util.Queue;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
-// This class manages a queue of patients in a hospital, prioritizing critical cases
-public class AdaptiveQueue {
-    // A list to hold patients waiting for treatment
-    private final Queue<CriticalPatient> patientQueue;
+// This class manages a queue of patients in a hospital, prioritizing critical cases by default
+// (see DequeuePolicy for fair sharing and aging instead).
+// Methods are synchronized so idle caretakers can safely steal from it.
+// For very long streaming days the patients can be kept outside the Java heap instead
+// (enableOffHeap()), served critical first only and without stealing.
+public class AdaptiveQueue implements PatientQueue {
+    // Critical patients (priority level 1) waiting for treatment, in arrival order
+    private final ArrayDeque<CriticalPatient> criticalPatients;
+    // All other patients waiting for treatment, in arrival order
+    private final ArrayDeque<CriticalPatient> otherPatients;
+    // Both groups as off-heap records instead of in the deques (null = on the heap); it serves
+    // level 1 (critical) before level 0 like the strict policy
+    private OffHeapPatientQueue offHeapPatients;
     // A unique ID to identify this queue
     private final int queueId;
+    // Chooses between the two groups on dequeue (level 0 = others, 1 = critical)
+    private DequeuePolicy policy = DequeuePolicy.strict();
+    // Arrival times of both groups' first patients, handed to the policy (reused on every dequeue)
+    private final double[] headArrivalTimes = new double[2];
+    // Number of changes to the patients or the policy so far, so a checkpoint can tell whether the
+    // queue is still as it last saved it
+    private long changes = 0;
 
     // Constructor to set up a new queue with a given ID
     public AdaptiveQueue(int queueId) {
         this.queueId = queueId;
-        this.patientQueue = new LinkedList<>();
+        this.criticalPatients = new ArrayDeque<>();
+        this.otherPatients = new ArrayDeque<>();
     }
 
-    // Add a patient to the end of the queue
-    public void enqueue(CriticalPatient patient) {
-        patientQueue.add(patient);
+    // Add a patient to the end of the sub-queue for their priority
+    @Override
+    public synchronized void enqueue(CriticalPatient patient) {
+        if (offHeapPatients != null) {
+            if (patient.getPriority() == 2) {
+                // The off-heap queue would serve them ahead of critical patients
+                throw new IllegalArgumentException("Queue " + queueId + " keeps its patients off the heap: "
+                        + "normal and critical patients only, got emergency patient " + patient.getPatientId());
+            }
+            offHeapPatients.enqueue(patient);
+        } else if (patient.getPriority() == 1) { // 1 means critical
+            criticalPatients.addLast(patient);
+        } else {
+            otherPatients.addLast(patient);
+        }
+        changes++;
+    }
+
+    // Choose how the next patient is picked (strict critical-first unless set); the queue keeps its own copy
+    public synchronized void setDequeuePolicy(DequeuePolicy policy) {
+        policy.checkLevels(headArrivalTimes.length);
+        if (offHeapPatients != null && !(policy instanceof DequeuePolicy.StrictPolicy)) {
+            throw new IllegalArgumentException("Queue " + queueId + " keeps its patients off the heap: "
+                    + "it serves critical patients first only");
+        }
+        this.policy = policy.copy();
+        changes++;
+    }
+
+    // Keep this queue's patients outside the Java heap from now on, in chunks of chunkRecords
+    // patients. The queue must be empty and use the strict policy, and then takes normal and
+    // critical patients only; they come out as copies (see OffHeapPatientQueue), and
+    // stealNewest() and getNextStealTime() are not available.
+    public synchronized void enableOffHeap(int chunkRecords) {
+        if (!isEmpty()) {
+            throw new IllegalStateException("Queue " + queueId + " must be empty to move off the heap");
+        }
+        if (!(policy instanceof DequeuePolicy.StrictPolicy)) {
+            throw new IllegalStateException("Queue " + queueId + " can only move off the heap with the strict policy");
+        }
+        if (offHeapPatients == null) {
+            offHeapPatients = new OffHeapPatientQueue(chunkRecords);
+            changes++;
+        }
+    }
+
+    // Check if the patients are kept outside the Java heap
+    public synchronized boolean isOffHeap() {
+        return offHeapPatients != null;
     }
 
-    // Remove and return the next patient, giving priority to critical cases
-    public CriticalPatient dequeue() {
-        // Check for critical patients first (priority level 1)
-        for (CriticalPatient patient : patientQueue) {
-            if (patient.getPriority() == 1) { // 1 means critical
-                patientQueue.remove(patient);
-                return patient;
+    // Let go of the off-heap memory the queue holds while empty, when it will stay empty for a while
+    public synchronized void releaseOffHeapMemory() {
+        if (offHeapPatients != null) {
+            offHeapPatients.releaseEmptyChunks();
+        }
+    }
+
+    // Remove and return the next patient, from the group the policy picks (constant time)
+    public synchronized CriticalPatient dequeue() {
+        if (offHeapPatients != null) {
+            CriticalPatient patient = offHeapPatients.poll();
+            if (patient != null) {
+                changes++;
             }
+            return patient;
+        }
+        CriticalPatient critical = criticalPatients.peekFirst();
+        CriticalPatient other = otherPatients.peekFirst();
+        headArrivalTimes[0] = other == null ? Double.NaN : other.getArrivalTime();
+        headArrivalTimes[1] = critical == null ? Double.NaN : critical.getArrivalTime();
+        int level = policy.select(headArrivalTimes);
+        if (level < 0) {
+            return null;
+        }
+        // Serve the longest-waiting patient of that group
+        CriticalPatient patient = level == 1 ? criticalPatients.pollFirst() : otherPatients.pollFirst();
+        policy.served(level, patient.getServiceTime());
+        changes++;
+        return patient;
+    }
+
+    // Same as dequeue(): null if the queue is empty
+    @Override
+    public CriticalPatient poll() {
+        return dequeue();
+    }
+
+    // Move up to maxPatients patients into the target, in the order dequeue() would return them,
+    // under one lock; returns how many were moved
+    @Override
+    public synchronized int drainTo(Collection<? super CriticalPatient> target, int maxPatients) {
+        if (maxPatients < 0) {
+            throw new IllegalArgumentException("Cannot drain a negative number of patients: " + maxPatients);
+        }
+        int count = 0;
+        if (offHeapPatients != null) {
+            count = offHeapPatients.drainTo(target, maxPatients);
+            changes += count;
+            return count;
+        }
+        if (policy instanceof DequeuePolicy.StrictPolicy) {
+            // Critical first: the whole critical group, then the others, with no policy calls
+            CriticalPatient patient;
+            while (count < maxPatients && (patient = criticalPatients.pollFirst()) != null) {
+                target.add(patient);
+                count++;
+            }
+            while (count < maxPatients && (patient = otherPatients.pollFirst()) != null) {
+                target.add(patient);
+                count++;
+            }
+            changes += count;
+            return count;
+        }
+        CriticalPatient patient;
+        while (count < maxPatients && (patient = dequeue()) != null) {
+            target.add(patient);
+            count++;
+        }
+        return count;
+    }
+
+    // Remove and return up to maxPatients patients, in the order dequeue() would return them
+    // (empty if the queue is)
+    public synchronized List<CriticalPatient> dequeueBatch(int maxPatients) {
+        List<CriticalPatient> batch = new ArrayList<>(Math.max(0, Math.min(maxPatients, size())));
+        drainTo(batch, maxPatients);
+        return batch;
+    }
+
+    // Remove and return a patient for an idle caretaker to take over at the given time: the most
+    // recent arrival among the patients who have arrived by then, if this queue's own caretaker,
+    // free from caretakerFreeAt, would not have started them yet (null otherwise). Critical patients
+    // are taken first so critical cases still get seen as early as possible; otherwise the most
+    // recent arrival goes, leaving the longest waiters with this queue's caretaker.
+    // On the event engine every queued patient has arrived and the caretaker is busy past the
+    // time, so this is the last patient. A threaded day queues the whole day up front, so the
+    // newest arrival may sit anywhere in the queue, and whether the caretaker gets to them first
+    // is judged from the patients ahead of them in their group (a lower bound: the caretaker
+    // treats a group in arrival order, and the other group can only delay them more).
+    public synchronized CriticalPatient stealNewest(double arrivedBy, double caretakerFreeAt) {
+        checkOnHeap();
+        CriticalPatient patient = removeNewest(criticalPatients, arrivedBy, caretakerFreeAt);
+        if (patient == null) {
+            patient = removeNewest(otherPatients, arrivedBy, caretakerFreeAt);
+        }
+        if (patient != null) {
+            changes++;
+        }
+        return patient;
+    }
+
+    // Remove the last patient of a group who arrived by the given time, if the caretaker would not
+    // have started them by then
+    private static CriticalPatient removeNewest(ArrayDeque<CriticalPatient> patients, double arrivedBy,
+                                                double caretakerFreeAt) {
+        CriticalPatient last = patients.peekLast();
+        if (last == null) {
+            return null;
+        }
+        if (last.getArrivalTime() <= arrivedBy && caretakerFreeAt > arrivedBy) {
+            // Everyone has arrived and the caretaker is busy past the time: the usual case
+            return patients.pollLast();
+        }
+        // Follow the caretaker's schedule for this group until the first patient not here yet
+        CriticalPatient newest = null;
+        double newestStart = Double.NaN;
+        double clock = caretakerFreeAt;
+        for (CriticalPatient patient : patients) {
+            if (patient.getArrivalTime() > arrivedBy) {
+                break;
+            }
+            newest = patient;
+            newestStart = Math.max(clock, patient.getArrivalTime());
+            clock = newestStart + patient.getServiceTime();
+        }
+        if (newest == null || newestStart <= arrivedBy) {
+            // Nobody here yet, or the caretaker has started even the newest arrival by then
+            return null;
+        }
+        patients.removeLastOccurrence(newest);
+        return newest;
+    }
+
+    // Get the earliest time from the given one on at which stealNewest() would find a patient,
+    // judging by the patients waiting now and a caretaker free from caretakerFreeAt, or NaN if
+    // there is none
+    public synchronized double getNextStealTime(double from, double caretakerFreeAt) {
+        checkOnHeap();
+        double critical = nextStealTime(criticalPatients, from, caretakerFreeAt);
+        double other = nextStealTime(otherPatients, from, caretakerFreeAt);
+        if (Double.isNaN(critical)) {
+            return other;
+        }
+        return Double.isNaN(other) ? critical : Math.min(critical, other);
+    }
+
+    // Stealing looks at the newest patients, which off-heap records cannot give back
+    private void checkOnHeap() {
+        if (offHeapPatients != null) {
+            throw new IllegalStateException("Queue " + queueId + " keeps its patients off the heap: no stealing");
+        }
+    }
+
+    // Earliest time from the given one on at which a patient of the group has arrived and the
+    // caretaker would not have started them yet, or NaN if none
+    private static double nextStealTime(ArrayDeque<CriticalPatient> patients, double from, double caretakerFreeAt) {
+        double clock = caretakerFreeAt;
+        for (CriticalPatient patient : patients) {
+            double start = Math.max(clock, patient.getArrivalTime());
+            double stealTime = Math.max(from, patient.getArrivalTime());
+            if (stealTime < start) {
+                // Waiting from their arrival until the caretaker starts them; the patients behind
+                // them arrive later, so none can be taken over sooner
+                return stealTime;
+            }
+            clock = start + patient.getServiceTime();
+        }
+        return Double.NaN;
+    }
+
+    // Save the waiting patients, in queue order, and the dequeue policy's state for a checkpoint
+    synchronized void writeState(DataOutput out) throws IOException {
+        if (offHeapPatients != null) {
+            // Read the records out, critical ones first, and put them back in the same order
+            List<CriticalPatient> critical = new ArrayList<>(offHeapPatients.getQueueSize(1));
+            List<CriticalPatient> other = new ArrayList<>(offHeapPatients.getQueueSize(0));
+            offHeapPatients.drainTo(critical, offHeapPatients.getQueueSize(1));
+            offHeapPatients.drainTo(other, offHeapPatients.size());
+            critical.forEach(offHeapPatients::enqueue);
+            other.forEach(offHeapPatients::enqueue);
+            writePatients(out, critical);
+            writePatients(out, other);
+        } else {
+            writePatients(out, criticalPatients);
+            writePatients(out, otherPatients);
+        }
+        policy.writeState(out);
+    }
+
+    // Fill an empty queue, with the same dequeue policy, from a checkpoint written by writeState()
+    synchronized void readState(DataInput in) throws IOException {
+        if (!isEmpty()) {
+            throw new IllegalStateException("Queue " + queueId + " must be empty to restore a checkpoint");
+        }
+        if (offHeapPatients != null) {
+            ArrayDeque<CriticalPatient> saved = new ArrayDeque<>();
+            readPatients(in, saved);
+            readPatients(in, saved);
+            saved.forEach(offHeapPatients::enqueue);
+        } else {
+            readPatients(in, criticalPatients);
+            readPatients(in, otherPatients);
+        }
+        policy.readState(in);
+        changes++;
+    }
+
+    // Get the number of changes so far; the queue is unchanged for as long as this stays the same
+    synchronized long getChangeCount() {
+        return changes;
+    }
+
+    private static void writePatients(DataOutput out, Collection<CriticalPatient> patients) throws IOException {
+        out.writeInt(patients.size());
+        for (CriticalPatient patient : patients) {
+            SimulationCheckpoint.writePatient(out, patient);
+        }
+    }
+
+    private static void readPatients(DataInput in, ArrayDeque<CriticalPatient> patients) throws IOException {
+        int count = SimulationCheckpoint.readCount(in);
+        for (int i = 0; i < count; i++) {
+            patients.addLast(SimulationCheckpoint.readPatient(in));
         }
-        // If no critical patients, return the next patient in line
-        return patientQueue.poll();
     }
 
     // Check if the queue has no patients
-    public boolean isEmpty() {
-        return patientQueue.isEmpty();
+    @Override
+    public synchronized boolean isEmpty() {
+        if (offHeapPatients != null) {
+            return offHeapPatients.isEmpty();
+        }
+        return criticalPatients.isEmpty() && otherPatients.isEmpty();
     }
 
     // Return the number of patients in the queue
-    public int size() {
-        return patientQueue.size();
+    @Override
+    public synchronized int size() {
+        if (offHeapPatients != null) {
+            return offHeapPatients.size();
+        }
+        return criticalPatients.size() + otherPatients.size();
     }
 
     // Get the ID of this queue
@@ -48,23 +338,15 @@ public class AdaptiveQueue {
     }
 
     // Check if there are any critical patients in the queue
-    public boolean hasCriticalPatients() {
-        for (CriticalPatient patient : patientQueue) {
-            if (patient.getPriority() == 1) {
-                return true;
-            }
-        }
-        return false;
+    public synchronized boolean hasCriticalPatients() {
+        return countCriticalPatients() > 0;
     }
 
     // Count how many critical patients are in the queue
-    public int countCriticalPatients() {
-        int criticalCount = 0;
-        for (CriticalPatient patient : patientQueue) {
-            if (patient.getPriority() == 1) {
-                criticalCount++;
-            }
+    public synchronized int countCriticalPatients() {
+        if (offHeapPatients != null) {
+            return offHeapPatients.getQueueSize(1);
         }
-        return criticalCount;
+        return criticalPatients.size();
     }
 }
\ No newline at end of file
@@ -0,0 +1,170 @@
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+// How patients arrive over the day: gives the time of the next arrival after the current one.
+// Times are in minutes past midnight and rates in patients per hour. Processes that remember
+// where they are (bursty) hand out an independent copy to every PatientGenerator.
+public interface ArrivalProcess {
+    // Average patients per hour of the built-in time-of-day profile, starting at midnight:
+    // quiet at night, a late-morning peak and a second one in the early evening
+    double[] HOSPITAL_DAY_PROFILE = {
+            6, 5, 4, 4, 4, 5, 8, 12, 17, 21, 24, 24,
+            23, 22, 21, 21, 22, 23, 22, 19, 15, 12, 9, 7};
+
+    // Get the arrival time of the patient after the one who arrived at currentTime
+    double nextArrivalTime(double currentTime, RandomGenerator rand);
+
+    // Get an instance with the same parameters and no history, for a new generator
+    default ArrivalProcess copy() {
+        return this;
+    }
+
+    // Gaps drawn uniformly between minGap and maxGap minutes (the original 1-6 minutes)
+    static ArrivalProcess uniform(double minGap, double maxGap) {
+        if (minGap < 0 || maxGap < minGap) {
+            throw new IllegalArgumentException("Need 0 <= minGap <= maxGap, got " + minGap + ", " + maxGap);
+        }
+        return (currentTime, rand) -> currentTime + minGap + rand.nextDouble() * (maxGap - minGap);
+    }
+
+    // Poisson arrivals: exponential gaps at a constant rate
+    static ArrivalProcess poisson(double ratePerHour) {
+        checkRate(ratePerHour);
+        double meanGap = 60 / ratePerHour;
+        return (currentTime, rand) -> currentTime + rand.nextExponential() * meanGap;
+    }
+
+    // Poisson arrivals whose rate switches between a quiet and a burst level; quiet and burst
+    // periods last an exponentially distributed time with the given means (minutes)
+    static ArrivalProcess bursty(double quietRatePerHour, double burstRatePerHour, double meanQuietMinutes,
+                                 double meanBurstMinutes) {
+        return new BurstyArrivals(quietRatePerHour, burstRatePerHour, meanQuietMinutes, meanBurstMinutes);
+    }
+
+    // Poisson arrivals whose rate follows the hour of the day (24 rates, from midnight)
+    static ArrivalProcess timeOfDay(double[] hourlyRates) {
+        return new TimeOfDayArrivals(hourlyRates);
+    }
+
+    // Parse "uniform:MIN,MAX", "poisson:RATE", "bursty:QUIET,BURST,QUIET_MIN,BURST_MIN",
+    // "time-of-day" (built-in profile) or "time-of-day:R0,...,R23"
+    static ArrivalProcess parse(String spec) {
+        int colon = spec.indexOf(':');
+        String kind = colon < 0 ? spec : spec.substring(0, colon);
+        double[] values = colon < 0 ? new double[0] : parseNumbers(spec.substring(colon + 1));
+        switch (kind) {
+            case "uniform":
+                return values.length == 0 ? uniform(1, 6) : uniform(values[0], argument(spec, values, 1));
+            case "poisson":
+                return poisson(argument(spec, values, 0));
+            case "bursty":
+                return bursty(argument(spec, values, 0), argument(spec, values, 1), argument(spec, values, 2),
+                        argument(spec, values, 3));
+            case "time-of-day":
+                return timeOfDay(values.length == 0 ? HOSPITAL_DAY_PROFILE : values);
+            default:
+                throw new IllegalArgumentException("Unknown arrival process: " + spec);
+        }
+    }
+
+    private static double[] parseNumbers(String text) {
+        return Arrays.stream(text.split(",")).mapToDouble(part -> Double.parseDouble(part.trim())).toArray();
+    }
+
+    private static double argument(String spec, double[] values, int index) {
+        if (index >= values.length) {
+            throw new IllegalArgumentException("Missing parameter " + (index + 1) + " in " + spec);
+        }
+        return values[index];
+    }
+
+    private static void checkRate(double ratePerHour) {
+        if (!(ratePerHour > 0)) {
+            throw new IllegalArgumentException("Arrival rate must be positive, got " + ratePerHour);
+        }
+    }
+
+    // Two-state Markov-modulated Poisson process
+    final class BurstyArrivals implements ArrivalProcess {
+        private final double quietMeanGap;
+        private final double burstMeanGap;
+        private final double meanQuietMinutes;
+        private final double meanBurstMinutes;
+        // Current state and when it ends (NaN = not started yet)
+        private boolean inBurst = false;
+        private double stateEndsAt = Double.NaN;
+
+        BurstyArrivals(double quietRatePerHour, double burstRatePerHour, double meanQuietMinutes,
+                       double meanBurstMinutes) {
+            checkRate(quietRatePerHour);
+            checkRate(burstRatePerHour);
+            if (!(meanQuietMinutes > 0) || !(meanBurstMinutes > 0)) {
+                throw new IllegalArgumentException("Quiet and burst periods must last a positive time");
+            }
+            quietMeanGap = 60 / quietRatePerHour;
+            burstMeanGap = 60 / burstRatePerHour;
+            this.meanQuietMinutes = meanQuietMinutes;
+            this.meanBurstMinutes = meanBurstMinutes;
+        }
+
+        @Override
+        public double nextArrivalTime(double currentTime, RandomGenerator rand) {
+            if (Double.isNaN(stateEndsAt)) {
+                stateEndsAt = currentTime + rand.nextExponential() * meanQuietMinutes;
+            }
+            double time = currentTime;
+            while (true) {
+                double candidate = time + rand.nextExponential() * (inBurst ? burstMeanGap : quietMeanGap);
+                if (candidate <= stateEndsAt) {
+                    return candidate;
+                }
+                // The state changes first; gaps are memoryless, so draw again from the switch
+                time = stateEndsAt;
+                inBurst = !inBurst;
+                stateEndsAt = time + rand.nextExponential() * (inBurst ? meanBurstMinutes : meanQuietMinutes);
+            }
+        }
+
+        @Override
+        public ArrivalProcess copy() {
+            return new BurstyArrivals(60 / quietMeanGap, 60 / burstMeanGap, meanQuietMinutes, meanBurstMinutes);
+        }
+    }
+
+    // Non-homogeneous Poisson process sampled by thinning: candidates come at the peak rate and
+    // each one is kept with probability (rate at that hour) / (peak rate)
+    final class TimeOfDayArrivals implements ArrivalProcess {
+        private final double[] hourlyRates;
+        private final double peakMeanGap;
+        private final double peakRate;
+
+        TimeOfDayArrivals(double[] hourlyRates) {
+            if (hourlyRates.length != 24) {
+                throw new IllegalArgumentException("Need 24 hourly rates, got " + hourlyRates.length);
+            }
+            double peak = 0;
+            for (double rate : hourlyRates) {
+                if (rate < 0) {
+                    throw new IllegalArgumentException("Arrival rates cannot be negative");
+                }
+                peak = Math.max(peak, rate);
+            }
+            checkRate(peak);
+            this.hourlyRates = hourlyRates.clone();
+            peakRate = peak;
+            peakMeanGap = 60 / peak;
+        }
+
+        @Override
+        public double nextArrivalTime(double currentTime, RandomGenerator rand) {
+            double time = currentTime;
+            while (true) {
+                time += rand.nextExponential() * peakMeanGap;
+                int hour = (int) (time / 60) % 24;
+                if (rand.nextDouble() * peakRate < hourlyRates[hour]) {
+                    return time;
+                }
+            }
+        }
+    }
+}
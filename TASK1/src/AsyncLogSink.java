@@ -0,0 +1,319 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Shared asynchronous log for caretakers and doctors. Treatment threads fill preallocated
+// LogRecord slots in a bounded ring buffer (a CAS to claim a slot, no locks, no allocation) and
+// one writer thread renders them and writes them out in batches. When the buffer is full the
+// record is either dropped (and counted) or the caller waits for space, depending on the policy.
+public class AsyncLogSink implements AutoCloseable {
+    // What to do when a record is written and the ring buffer is full
+    public enum OverflowPolicy {
+        DROP,  // skip the record and count it, treatment never waits for the log
+        BLOCK  // wait until the writer has made room, nothing is lost
+    }
+
+    // Most records rendered before the output is flushed
+    private static final int BATCH_SIZE = 256;
+    // How long the writer sleeps when the buffer is empty
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+    // How long a blocked caller sleeps before checking for room again
+    private static final long FULL_PARK_NANOS = 50_000;
+
+    // Ring buffer of reusable records; slot i holds sequence numbers i, i + capacity, ...
+    private final LogRecord[] slots;
+    // Sequence number each slot was last published with (-1 = never)
+    private final AtomicLongArray published;
+    private final int mask;
+    // Next sequence number a writer will claim
+    private final AtomicLong nextSequence = new AtomicLong();
+    // Next sequence number the writer thread will render (slots before it are free again)
+    private volatile long consumedSequence = 0;
+    private final OverflowPolicy policy;
+    private final LongAdder droppedRecords = new LongAdder();
+    private final Writer output;
+    // Whether close() also closes the output (false for System.out)
+    private final boolean closeOutput;
+    private final Thread writerThread;
+    private volatile boolean closed = false;
+    // First write error, reported by close()
+    private volatile IOException writeError;
+
+    // Create a sink writing to standard output
+    public static AsyncLogSink toStdout(int capacity, OverflowPolicy policy) {
+        return new AsyncLogSink(System.out, false, capacity, policy);
+    }
+
+    // Create a sink writing to a file (replaced if it exists)
+    public static AsyncLogSink toFile(String path, int capacity, OverflowPolicy policy) throws IOException {
+        return toFile(path, capacity, policy, false);
+    }
+
+    // Create a sink writing to a file, added to the end of it if append is set (a resumed run)
+    public static AsyncLogSink toFile(String path, int capacity, OverflowPolicy policy, boolean append)
+            throws IOException {
+        return new AsyncLogSink(new FileOutputStream(path, append), true, capacity, policy);
+    }
+
+    // Constructor to set up the ring buffer (capacity is rounded up to a power of two) and start the writer
+    public AsyncLogSink(OutputStream out, boolean closeOutput, int capacity, OverflowPolicy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Log buffer capacity must be positive, got " + capacity);
+        }
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        slots = new LogRecord[size];
+        published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new LogRecord();
+            published.set(i, -1);
+        }
+        mask = size - 1;
+        this.policy = policy;
+        this.output = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        this.closeOutput = closeOutput;
+        writerThread = new Thread(this::drainLoop, "Log-Writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    // Log that a caretaker is starting work
+    public void shiftStart(int caretakerId) {
+        long sequence = claim();
+        if (sequence >= 0) {
+            LogRecord record = slot(sequence, LogRecord.Kind.SHIFT_START);
+            record.serverId = caretakerId;
+            publish(sequence);
+        }
+    }
+
+    // Log that a caretaker has finished all patients
+    public void shiftEnd(int caretakerId) {
+        long sequence = claim();
+        if (sequence >= 0) {
+            LogRecord record = slot(sequence, LogRecord.Kind.SHIFT_END);
+            record.serverId = caretakerId;
+            publish(sequence);
+        }
+    }
+
+    // Log a patient a caretaker has treated (waiting and departure times must already be set)
+    public void treated(int caretakerId, CriticalPatient patient) {
+        long sequence = claim();
+        if (sequence >= 0) {
+            LogRecord record = slot(sequence, LogRecord.Kind.TREATED);
+            record.serverId = caretakerId;
+            record.patientId = patient.getPatientId();
+            record.priority = patient.getPriority();
+            record.arrivalTime = patient.getArrivalTime();
+            record.waitingTime = patient.getWaitingTime();
+            record.serviceTime = patient.getServiceTime();
+            record.departureTime = patient.getDepartureTime();
+            publish(sequence);
+        }
+    }
+
+    // Log a patient, kept in a column store, that a caretaker has treated
+    public void treated(int caretakerId, PatientStore store, int patientIndex) {
+        long sequence = claim();
+        if (sequence >= 0) {
+            LogRecord record = slot(sequence, LogRecord.Kind.TREATED);
+            record.serverId = caretakerId;
+            record.patientId = store.getPatientId(patientIndex);
+            record.priority = store.getPriority(patientIndex);
+            record.arrivalTime = store.getArrivalTime(patientIndex);
+            record.waitingTime = store.getWaitingTime(patientIndex);
+            record.serviceTime = store.getServiceTime(patientIndex);
+            record.departureTime = store.getDepartureTime(patientIndex);
+            publish(sequence);
+        }
+    }
+
+    // Log that a caretaker took over a patient from another caretaker's queue
+    public void tookOver(int caretakerId, int patientId, int fromCaretakerId) {
+        long sequence = claim();
+        if (sequence >= 0) {
+            LogRecord record = slot(sequence, LogRecord.Kind.TOOK_OVER);
+            record.serverId = caretakerId;
+            record.patientId = patientId;
+            record.otherId = fromCaretakerId;
+            publish(sequence);
+        }
+    }
+
+    // Log that a doctor started an emergency patient at the given time
+    public void doctorStarted(int doctorId, int patientId, double time) {
+        long sequence = claim();
+        if (sequence >= 0) {
+            LogRecord record = slot(sequence, LogRecord.Kind.DOCTOR_STARTED);
+            record.serverId = doctorId;
+            record.patientId = patientId;
+            record.arrivalTime = time;
+            publish(sequence);
+        }
+    }
+
+    // Log that a doctor finished an emergency patient (time NaN = not on a simulated clock)
+    public void doctorFinished(int doctorId, int patientId, double time) {
+        long sequence = claim();
+        if (sequence >= 0) {
+            LogRecord record = slot(sequence, LogRecord.Kind.DOCTOR_FINISHED);
+            record.serverId = doctorId;
+            record.patientId = patientId;
+            record.departureTime = time;
+            publish(sequence);
+        }
+    }
+
+    // Log that an emergency patient was handed to a doctor
+    public void dispatched(int patientId, int doctorId) {
+        long sequence = claim();
+        if (sequence >= 0) {
+            LogRecord record = slot(sequence, LogRecord.Kind.DISPATCHED);
+            record.patientId = patientId;
+            record.otherId = doctorId;
+            publish(sequence);
+        }
+    }
+
+    // Log a line of free text
+    public void message(String text) {
+        long sequence = claim();
+        if (sequence >= 0) {
+            LogRecord record = slot(sequence, LogRecord.Kind.MESSAGE);
+            record.text = text;
+            publish(sequence);
+        }
+    }
+
+    // Get how many records were dropped because the buffer was full
+    public long getDroppedRecords() {
+        return droppedRecords.sum();
+    }
+
+    // Get the number of slots in the ring buffer
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    // Claim the next free slot, or return -1 if the record is dropped
+    private long claim() {
+        if (closed) {
+            throw new IllegalStateException("Log is closed");
+        }
+        while (true) {
+            long sequence = nextSequence.get();
+            if (sequence - consumedSequence >= slots.length) {
+                // Full: the writer has not rendered the record that used this slot last time
+                if (policy == OverflowPolicy.DROP) {
+                    droppedRecords.increment();
+                    return -1;
+                }
+                LockSupport.unpark(writerThread);
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+                continue;
+            }
+            if (nextSequence.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    // Get a claimed slot, cleared for a new record of the given kind
+    private LogRecord slot(long sequence, LogRecord.Kind kind) {
+        LogRecord record = slots[(int) sequence & mask];
+        record.kind = kind;
+        record.text = null;
+        return record;
+    }
+
+    // Hand a filled slot to the writer thread
+    private void publish(long sequence) {
+        published.lazySet((int) sequence & mask, sequence);
+    }
+
+    // Writer thread: render published records in order and write them out in batches
+    private void drainLoop() {
+        StringBuilder line = new StringBuilder(256);
+        // The rendered line is copied out of the builder into this, as Writer.append() would make
+        // a new String of it for every record
+        char[] chars = new char[256];
+        long sequence = consumedSequence;
+        while (true) {
+            int rendered = 0;
+            while (rendered < BATCH_SIZE && published.get((int) sequence & mask) == sequence) {
+                LogRecord record = slots[(int) sequence & mask];
+                line.setLength(0);
+                record.renderTo(line);
+                line.append(System.lineSeparator());
+                int length = line.length();
+                if (chars.length < length) {
+                    chars = new char[Math.max(length, chars.length * 2)];
+                }
+                line.getChars(0, length, chars, 0);
+                write(chars, length);
+                sequence++;
+                rendered++;
+            }
+            if (rendered > 0) {
+                // Free the batch's slots for the treatment threads
+                consumedSequence = sequence;
+                continue;
+            }
+            flush();
+            if (closed && sequence == nextSequence.get()) {
+                return;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    private void write(char[] text, int length) {
+        try {
+            output.write(text, 0, length);
+        } catch (IOException e) {
+            if (writeError == null) {
+                writeError = e;
+            }
+        }
+    }
+
+    private void flush() {
+        try {
+            output.flush();
+        } catch (IOException e) {
+            if (writeError == null) {
+                writeError = e;
+            }
+        }
+    }
+
+    // Write out every record logged so far and stop the writer thread. Records must not be
+    // logged while or after the sink is closed.
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (closeOutput) {
+            output.close();
+        }
+        if (writeError != null) {
+            throw writeError;
+        }
+    }
+}
@@ -1,16 +1,59 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.locks.LockSupport;
 
 // This class simulates a hospital caretaker processing patients from a queue
 public class CaretakerProcessor implements Runnable {
+    // How long an idle caretaker thread waits before looking again when another one took the
+    // patient it was about to take over
+    private static final long STEAL_RETRY_NANOS = 50_000;
+
     // The queue of patients this caretaker handles
     private final AdaptiveQueue patientQueue;
-    // A list to store log messages about patient processing
-    private final List<String> logMessages = new ArrayList<>();
+    // Where log records about patient processing go (null = no logging)
+    private final AsyncLogSink log;
+    // Other caretakers to steal from once this queue is empty (empty list = no stealing)
+    private List<CaretakerProcessor> stealTargets = new ArrayList<>();
+    // Which steal targets were already tried by the current stealPatient() call (reused, grown
+    // when caretakers are added)
+    private boolean[] triedTargets = new boolean[0];
+    // Time this caretaker finishes their current patient (in minutes past midnight)
+    private volatile double busyUntil = 480;
+    // How many patients this caretaker took over from other queues
+    private int stolenPatients = 0;
+    // Most patients taken from the queue at once (1 = one dequeue per patient), the patients taken
+    // but not treated yet, and the position of the next one in that batch
+    private int batchSize = 1;
+    private final List<CriticalPatient> batch = new ArrayList<>();
+    private int batchIndex = 0;
+    // Number of changes to the clock, takeover count or statistics so far (see getChangeCount())
+    private long changes = 0;
+    // Wait and sojourn times of the patients this caretaker treated, written by the caretaker's thread
+    // only (null until enableStatistics(), so days with many thousands of caretakers stay small)
+    private PatientStatistics statistics;
+    // Shared live metrics: patients treated and how long a treatment takes to process, timing a
+    // sample of treatments and adding to the counter at the same time (null = off)
+    private Metrics.Counter treatedCounter;
+    private Metrics.Timer serviceTimer;
+    // Patients treated while metrics were on, how many of them were added to treatedCounter, and
+    // the number of the next one to time
+    private long meteredPatients = 0;
+    private long reportedPatients = 0;
+    private long nextTimedPatient;
 
-    // Constructor to assign a queue to this caretaker
+    // Constructor to assign a queue to this caretaker, without logging
     public CaretakerProcessor(AdaptiveQueue patientQueue) {
+        this(patientQueue, null);
+    }
+
+    // Constructor to assign a queue and the log to write to (null = no logging)
+    public CaretakerProcessor(AdaptiveQueue patientQueue, AsyncLogSink log) {
         this.patientQueue = patientQueue;
+        this.log = log;
     }
 
     // Main logic for processing patients, runs in a separate thread
@@ -19,65 +62,273 @@ public class CaretakerProcessor implements Runnable {
         // Start the clock at 8:00 AM (480 minutes past midnight)
         double currentTime = 480;
         // Log that this caretaker is starting work
-        logMessages.add("Starting Caretaker #" + patientQueue.getQueueId());
+        logShiftStart();
 
-        // Process patients until the queue is empty
-        while (!patientQueue.isEmpty()) {
+        // Process patients until the queue is empty (and, when stealing, every other queue too)
+        while (true) {
             // Get the next patient, prioritizing critical cases
-            CriticalPatient patient = patientQueue.dequeue();
+            CriticalPatient patient = nextPatient();
+            while (patient == null && !stealTargets.isEmpty()) {
+                patient = stealPatient(currentTime);
+                if (patient != null) {
+                    break;
+                }
+                // Nobody to take over yet: move the clock on to when there will be, instead of
+                // ending the shift while patients are still to arrive
+                double nextStealTime = getNextStealTime(currentTime);
+                if (Double.isNaN(nextStealTime)) {
+                    // Every other caretaker gets to all of their patients in time
+                    break;
+                }
+                if (nextStealTime > currentTime) {
+                    currentTime = nextStealTime;
+                } else {
+                    // There was one just now, but another caretaker got there first: look again
+                    LockSupport.parkNanos(STEAL_RETRY_NANOS);
+                }
+            }
+            if (patient == null) {
+                break;
+            }
 
             // If the patient arrived after the current time, fast-forward to their arrival
             if (currentTime < patient.getArrivalTime()) {
                 currentTime = patient.getArrivalTime();
             }
+            currentTime = treatPatient(patient, currentTime);
+        }
 
-            // Calculate how long the patient waited (zero if treated immediately)
-            double waitTime = Math.max(0, currentTime - patient.getArrivalTime());
-            patient.setWaitingTime(waitTime);
+        if (treatedCounter != null) {
+            reportTreated();
+        }
+        // Log that this caretaker has finished all patients
+        logShiftEnd();
+    }
 
-            // Add the time it takes to treat this patient
-            currentTime += patient.getServiceTime();
-            // Record when the patient is done
-            patient.setDepartureTime(currentTime);
+    // Add the patients treated since the last report to the shared counter
+    private void reportTreated() {
+        treatedCounter.add(meteredPatients - reportedPatients);
+        reportedPatients = meteredPatients;
+    }
 
-            // Log details about this patient's treatment
-            logMessages.add("Caretaker #" + patientQueue.getQueueId() +
-                    " | Patient " + patient.getPatientId() +
-                    " | Priority: " + getPriorityName(patient.getPriority()) +
-                    " | Arrival: " + formatTime(patient.getArrivalTime()) +
-                    " | Waiting: " + String.format("%.2f", patient.getWaitingTime()) + " min" +
-                    " | Service: " + String.format("%.2f", patient.getServiceTime()) + " min" +
-                    " | Departure: " + formatTime(patient.getDepartureTime()));
+    // Take the next patient from this caretaker's queue, a whole batch at a time when batching
+    private CriticalPatient nextPatient() {
+        if (batchSize == 1) {
+            return patientQueue.dequeue();
+        }
+        if (batchIndex == batch.size()) {
+            batch.clear();
+            batchIndex = 0;
+            if (patientQueue.drainTo(batch, batchSize) == 0) {
+                return null;
+            }
         }
+        return batch.get(batchIndex++);
+    }
 
-        // Log that this caretaker has finished all patients
-        logMessages.add("Caretaker #" + patientQueue.getQueueId() + " finished processing all patients.");
+    // Treat one patient starting at the given time and return the time they leave
+    public double treatPatient(CriticalPatient patient, double startTime) {
+        boolean timed = treatedCounter != null && meteredPatients == nextTimedPatient;
+        long startNanos = timed ? System.nanoTime() : 0;
+        // Calculate how long the patient waited (zero if treated immediately)
+        double waitTime = Math.max(0, startTime - patient.getArrivalTime());
+        patient.setWaitingTime(waitTime);
+
+        // Add the time it takes to treat this patient and record when they are done
+        double departureTime = startTime + patient.getServiceTime();
+        patient.setDepartureTime(departureTime);
+        busyUntil = departureTime;
+        changes++;
+        if (statistics != null) {
+            statistics.record(patient);
+        }
+
+        // Log details about this patient's treatment
+        if (log != null) {
+            log.treated(patientQueue.getQueueId(), patient);
+        }
+        if (treatedCounter != null) {
+            meteredPatients++;
+            if (timed) {
+                serviceTimer.record(System.nanoTime() - startNanos);
+                nextTimedPatient += Metrics.Timer.SAMPLE_EVERY;
+                reportTreated();
+            }
+        }
+        return departureTime;
+    }
+
+    // Take up to batchSize patients from the queue at once, in the order dequeue() would give them,
+    // so the queue's lock is taken once per batch rather than once per patient. Patients in a batch
+    // are out of the queue, so idle caretakers can no longer take them over. Call before the
+    // caretaker starts.
+    public void enableBatching(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1, got " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    // Let this caretaker take patients from the back of the most loaded other queue when idle.
+    // The list is used as is (not copied), so caretakers added to it later can be stolen from too.
+    public void enableWorkStealing(List<CaretakerProcessor> caretakers) {
+        stealTargets = caretakers;
+    }
+
+    // Take a patient from the most loaded other queue that has one to give at the given time (see
+    // stealFrom()), or return null if there is none. Scans every steal target, which the caretaker
+    // threads change concurrently; the event engine keeps its queues in an index instead and
+    // calls stealFrom() directly.
+    public CriticalPatient stealPatient(double currentTime) {
+        int targetCount = stealTargets.size();
+        if (triedTargets.length < targetCount) {
+            triedTargets = new boolean[Math.max(targetCount, triedTargets.length * 2)];
+        }
+        CriticalPatient patient = null;
+        while (patient == null) {
+            int victimIndex = -1;
+            int largestSize = 0;
+            for (int i = 0; i < targetCount; i++) {
+                CaretakerProcessor candidate = stealTargets.get(i);
+                if (candidate == this || triedTargets[i]) {
+                    continue;
+                }
+                int size = candidate.patientQueue.size();
+                if (size > largestSize) {
+                    victimIndex = i;
+                    largestSize = size;
+                }
+            }
+            if (victimIndex < 0) {
+                break;
+            }
+            triedTargets[victimIndex] = true;
+            // The queue may have been emptied since we looked, or its caretaker gets to everyone who
+            // is here in time; then try the next most loaded queue
+            patient = stealFrom(stealTargets.get(victimIndex), currentTime);
+        }
+        Arrays.fill(triedTargets, 0, targetCount, false);
+        return patient;
+    }
+
+    // Take over the newest patient of another caretaker's queue who has arrived by the given time
+    // and whom that caretaker would not have started by then, or return null if there is none. So
+    // a stolen patient always starts treatment no later than their own caretaker could have.
+    public CriticalPatient stealFrom(CaretakerProcessor victim, double currentTime) {
+        CriticalPatient patient = victim.patientQueue.stealNewest(currentTime, victim.busyUntil);
+        if (patient != null) {
+            stolenPatients++;
+            changes++;
+            if (log != null) {
+                log.tookOver(patientQueue.getQueueId(), patient.getPatientId(), victim.getQueueId());
+            }
+        }
+        return patient;
+    }
+
+    // Get the earliest time from the given one on at which another queue will have a patient to
+    // take over, judging by the queues and their caretakers' clocks now, or NaN if there is none
+    private double getNextStealTime(double currentTime) {
+        double nextTime = Double.NaN;
+        for (int i = 0; i < stealTargets.size(); i++) {
+            CaretakerProcessor candidate = stealTargets.get(i);
+            if (candidate == this) {
+                continue;
+            }
+            double stealTime = candidate.patientQueue.getNextStealTime(currentTime, candidate.busyUntil);
+            if (Double.isNaN(nextTime) || stealTime < nextTime) {
+                nextTime = stealTime;
+            }
+        }
+        return nextTime;
+    }
+
+    // Get the time this caretaker finishes their current patient (in minutes past midnight)
+    public double getBusyUntil() {
+        return busyUntil;
+    }
+
+    // Get how many patients this caretaker took over from other queues
+    public int getStolenPatients() {
+        return stolenPatients;
+    }
+
+    // Start keeping wait and sojourn statistics of the patients this caretaker treats
+    public void enableStatistics() {
+        if (statistics == null) {
+            statistics = new PatientStatistics();
+            changes++;
+        }
+    }
+
+    // Count this caretaker's patients in the shared caretakers.treated counter (added whenever a
+    // treatment is timed and when the shift ends) and time treatments in caretakers.service; call
+    // before the caretaker starts
+    public void enableMetrics(Metrics metrics) {
+        treatedCounter = metrics.counter("caretakers.treated");
+        serviceTimer = metrics.timer("caretakers.service");
+        nextTimedPatient = meteredPatients + Metrics.Timer.firstSample();
     }
 
-    // Convert time in minutes to a readable HH:MM format
-    private static String formatTime(double minutes) {
-        int hours = (int) (minutes / 60);
-        int mins = (int) (minutes % 60);
-        return String.format("%02d:%02d", hours, mins);
+    // Get the wait and sojourn statistics of the patients this caretaker treated (empty unless
+    // enableStatistics() was called first); read them only once the caretaker has stopped, or from
+    // the thread running it
+    public PatientStatistics getStatistics() {
+        return statistics == null ? new PatientStatistics() : statistics;
     }
 
-    // Translate priority number to a human-readable name
-    private static String getPriorityName(int level) {
-        switch (level) {
-            case 1:
-                return "Critical";
-            default:
-                return "Normal";
+    // Save the queue, the clock, the takeover count and the statistics for a checkpoint (a batch
+    // taken by a caretaker thread is not included: checkpoints are for the event engine, which
+    // never batches)
+    void writeState(DataOutput out) throws IOException {
+        patientQueue.writeState(out);
+        out.writeDouble(busyUntil);
+        out.writeInt(stolenPatients);
+        out.writeBoolean(statistics != null);
+        if (statistics != null) {
+            statistics.writeState(out);
         }
     }
 
-    // Return the list of log messages for review
-    public List<String> getLogs() {
-        return logMessages;
+    // Take back the state saved by writeState(); the queue must be empty
+    void readState(DataInput in) throws IOException {
+        patientQueue.readState(in);
+        busyUntil = in.readDouble();
+        stolenPatients = in.readInt();
+        if (in.readBoolean()) {
+            enableStatistics();
+            statistics.readState(in);
+        }
+        changes++;
+    }
+
+    // Get the number of changes so far to anything writeState() saves, queue included: while it
+    // stays the same, a checkpoint can reuse what it saved last time
+    long getChangeCount() {
+        return changes + patientQueue.getChangeCount();
+    }
+
+    // Log that this caretaker is starting work
+    public void logShiftStart() {
+        if (log != null) {
+            log.shiftStart(patientQueue.getQueueId());
+        }
+    }
+
+    // Log that this caretaker has finished all patients
+    public void logShiftEnd() {
+        if (log != null) {
+            log.shiftEnd(patientQueue.getQueueId());
+        }
     }
 
     // Get the ID of the queue this caretaker is handling
     public int getQueueId() {
         return patientQueue.getQueueId();
     }
+
+    // Get the queue this caretaker is handling
+    public AdaptiveQueue getQueue() {
+        return patientQueue;
+    }
 }
\ No newline at end of file
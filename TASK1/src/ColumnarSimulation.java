@@ -0,0 +1,320 @@
+import java.util.Arrays;
+import java.util.function.ObjDoubleConsumer;
+
+// Discrete-event simulation of a hospital day over a PatientStore. It follows the same rules and
+// event order as EventDrivenSimulation with queues fixed up front, so the same patients get the
+// same results, but everything is primitive: caretaker queues hold patient indices and the event
+// heap is a set of parallel arrays, so a day of millions of patients allocates almost nothing
+// after start-up.
+public class ColumnarSimulation {
+    // The day starts at 8:00 AM (480 minutes past midnight)
+    private static final double START_OF_DAY = 480;
+    // Event types
+    private static final byte ARRIVAL = 0;
+    private static final byte CARETAKER_START = 1;
+    private static final byte CARETAKER_DEPARTURE = 2;
+    private static final byte DOCTOR_START = 3;
+    private static final byte DOCTOR_DEPARTURE = 4;
+
+    // The day's patients, in arrival order, each with an assigned caretaker queue ID
+    private final PatientStore store;
+    // Caretaker queues, index i handles queue ID i + 1
+    private final PatientIndexQueue[] caretakerQueues;
+    // Whether each caretaker is treating a patient right now
+    private final boolean[] caretakerBusy;
+    // Emergency patients waiting for a doctor, in arrival order
+    private final IntDeque waitingEmergencies = new IntDeque();
+    // Stack of free doctor IDs, the lowest ID is on top
+    private final int[] freeDoctors;
+    private int freeDoctorCount;
+    // Where caretakers and doctors log what they do (null = no logging)
+    private final AsyncLogSink log;
+    // Wait statistics, updated as patients leave
+    private final PatientStatistics statistics = new PatientStatistics();
+    // Receives the statistics every snapshotInterval minutes of virtual time (null = no snapshots)
+    private ObjDoubleConsumer<PatientStatistics> snapshotListener;
+    private double snapshotInterval;
+    private double nextSnapshotTime;
+
+    // Event heap as parallel arrays, ordered by time and then by scheduling order
+    private double[] eventTimes = new double[64];
+    private long[] eventSequences = new long[64];
+    private byte[] eventTypes = new byte[64];
+    private int[] eventServers = new int[64];
+    private int[] eventPatients = new int[64];
+    private int eventCount = 0;
+    private long nextSequence = 0;
+
+    // The virtual clock (in minutes past midnight)
+    private double currentTime = START_OF_DAY;
+    // How many events have been processed so far
+    private long processedEvents;
+    // Index of the next patient to arrive
+    private int nextArrival = 0;
+
+    // Constructor to set up the caretakers and emergency doctors for a store of patients
+    public ColumnarSimulation(PatientStore store, int caretakerCount, int doctorCount, AsyncLogSink log) {
+        if (caretakerCount < 1 || doctorCount < 1) {
+            throw new IllegalArgumentException("Need at least one caretaker and one doctor");
+        }
+        this.store = store;
+        this.log = log;
+        caretakerQueues = new PatientIndexQueue[caretakerCount];
+        for (int i = 0; i < caretakerCount; i++) {
+            caretakerQueues[i] = new PatientIndexQueue(i + 1, store);
+        }
+        caretakerBusy = new boolean[caretakerCount];
+        freeDoctors = new int[doctorCount];
+        for (int i = 0; i < doctorCount; i++) {
+            freeDoctors[i] = doctorCount - i;
+        }
+        freeDoctorCount = doctorCount;
+    }
+
+    // Set how every caretaker picks their next patient (strict critical-first unless set);
+    // each queue gets its own copy of the policy
+    public void setDequeuePolicy(DequeuePolicy policy) {
+        for (PatientIndexQueue queue : caretakerQueues) {
+            queue.setDequeuePolicy(policy);
+        }
+    }
+
+    // Hand the running statistics to a listener every intervalMinutes of virtual time, together
+    // with the time of the snapshot (the listener must not keep or change them)
+    public void setSnapshotListener(double intervalMinutes, ObjDoubleConsumer<PatientStatistics> listener) {
+        if (!(intervalMinutes > 0)) {
+            throw new IllegalArgumentException("Snapshot interval must be positive, got " + intervalMinutes);
+        }
+        snapshotInterval = intervalMinutes;
+        snapshotListener = listener;
+        nextSnapshotTime = START_OF_DAY + intervalMinutes;
+    }
+
+    // Run the whole day
+    public void run() {
+        if (log != null) {
+            for (PatientIndexQueue queue : caretakerQueues) {
+                log.shiftStart(queue.getQueueId());
+            }
+        }
+        scheduleNextArrival();
+        while (eventCount > 0) {
+            // Take the earliest event off the heap
+            takeSnapshotsUntil(eventTimes[0]);
+            currentTime = eventTimes[0];
+            byte type = eventTypes[0];
+            int server = eventServers[0];
+            int patient = eventPatients[0];
+            removeFirstEvent();
+            processedEvents++;
+            switch (type) {
+                case ARRIVAL:
+                    handleArrival(patient);
+                    break;
+                case CARETAKER_START:
+                    startCaretakerService(server);
+                    break;
+                case CARETAKER_DEPARTURE:
+                    recordDeparture(patient);
+                    // Look for the next patient; going idle is handled there
+                    schedule(currentTime, CARETAKER_START, server, -1);
+                    break;
+                case DOCTOR_START:
+                    startDoctorService(server);
+                    break;
+                case DOCTOR_DEPARTURE:
+                    finishDoctorService(server, patient);
+                    break;
+            }
+        }
+        if (log != null) {
+            for (PatientIndexQueue queue : caretakerQueues) {
+                log.shiftEnd(queue.getQueueId());
+            }
+        }
+    }
+
+    // Report the statistics at every snapshot time up to the given time
+    private void takeSnapshotsUntil(double time) {
+        while (snapshotListener != null && nextSnapshotTime <= time) {
+            snapshotListener.accept(statistics, nextSnapshotTime);
+            nextSnapshotTime += snapshotInterval;
+        }
+    }
+
+    // Add a patient who has left to the statistics
+    private void recordDeparture(int patient) {
+        statistics.record(store.getPriority(patient), store.getArrivalTime(patient), store.getWaitingTime(patient),
+                store.getDepartureTime(patient));
+    }
+
+    // Put the next patient's arrival on the heap (only one future arrival is kept there)
+    private void scheduleNextArrival() {
+        if (nextArrival >= store.size()) {
+            return;
+        }
+        int patient = nextArrival++;
+        if (patient > 0 && store.getArrivalTime(patient) < store.getArrivalTime(patient - 1)) {
+            throw new IllegalArgumentException("Patients must be stored in arrival order");
+        }
+        schedule(store.getArrivalTime(patient), ARRIVAL, 0, patient);
+    }
+
+    // A patient walks in: queue them and wake up their server if it is idle
+    private void handleArrival(int patient) {
+        scheduleNextArrival();
+        if (store.getPriority(patient) == 2) {
+            waitingEmergencies.addLast(patient);
+            if (freeDoctorCount > 0) {
+                schedule(currentTime, DOCTOR_START, freeDoctors[--freeDoctorCount], -1);
+            }
+            return;
+        }
+        int queueId = store.getAssignedQueueId(patient);
+        if (queueId < 1 || queueId > caretakerQueues.length) {
+            throw new IllegalArgumentException("Patient " + store.getPatientId(patient)
+                    + " has no valid caretaker queue: " + queueId);
+        }
+        caretakerQueues[queueId - 1].enqueue(patient);
+        if (!caretakerBusy[queueId - 1]) {
+            caretakerBusy[queueId - 1] = true;
+            // Scheduled rather than started here so that patients arriving at the same
+            // moment are all queued before the caretaker picks (critical first)
+            schedule(currentTime, CARETAKER_START, queueId, -1);
+        }
+    }
+
+    // A caretaker picks the next patient from their queue as its dequeue policy says (critical first by default)
+    private void startCaretakerService(int queueId) {
+        int patient = caretakerQueues[queueId - 1].dequeue();
+        if (patient < 0) {
+            caretakerBusy[queueId - 1] = false;
+            return;
+        }
+        store.setWaitingTime(patient, Math.max(0, currentTime - store.getArrivalTime(patient)));
+        double departureTime = currentTime + store.getServiceTime(patient);
+        store.setDepartureTime(patient, departureTime);
+        if (log != null) {
+            log.treated(queueId, store, patient);
+        }
+        schedule(departureTime, CARETAKER_DEPARTURE, queueId, patient);
+    }
+
+    // A doctor takes the longest-waiting emergency patient
+    private void startDoctorService(int doctorId) {
+        int patient = waitingEmergencies.pollFirst();
+        store.setWaitingTime(patient, Math.max(0, currentTime - store.getArrivalTime(patient)));
+        double departureTime = currentTime + store.getServiceTime(patient);
+        store.setDepartureTime(patient, departureTime);
+        if (log != null) {
+            log.doctorStarted(doctorId, store.getPatientId(patient), currentTime);
+        }
+        schedule(departureTime, DOCTOR_DEPARTURE, doctorId, patient);
+    }
+
+    // A doctor finishes a patient and either takes the next one or becomes free
+    private void finishDoctorService(int doctorId, int patient) {
+        recordDeparture(patient);
+        if (log != null) {
+            log.doctorFinished(doctorId, store.getPatientId(patient), currentTime);
+        }
+        if (waitingEmergencies.isEmpty()) {
+            freeDoctors[freeDoctorCount++] = doctorId;
+        } else {
+            schedule(currentTime, DOCTOR_START, doctorId, -1);
+        }
+    }
+
+    // Put a new event on the heap
+    private void schedule(double time, byte type, int server, int patient) {
+        if (eventCount == eventTimes.length) {
+            int capacity = eventCount * 2;
+            eventTimes = Arrays.copyOf(eventTimes, capacity);
+            eventSequences = Arrays.copyOf(eventSequences, capacity);
+            eventTypes = Arrays.copyOf(eventTypes, capacity);
+            eventServers = Arrays.copyOf(eventServers, capacity);
+            eventPatients = Arrays.copyOf(eventPatients, capacity);
+        }
+        long sequence = nextSequence++;
+        // Sift the new event up from the end
+        int index = eventCount++;
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!before(time, sequence, parent)) {
+                break;
+            }
+            moveEvent(parent, index);
+            index = parent;
+        }
+        setEvent(index, time, sequence, type, server, patient);
+    }
+
+    // Remove the earliest event from the heap
+    private void removeFirstEvent() {
+        int last = --eventCount;
+        if (last == 0) {
+            return;
+        }
+        double time = eventTimes[last];
+        long sequence = eventSequences[last];
+        // Sift the last event down from the top
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= last) {
+                break;
+            }
+            if (child + 1 < last && before(eventTimes[child + 1], eventSequences[child + 1], child)) {
+                child++;
+            }
+            if (!before(eventTimes[child], eventSequences[child], time, sequence)) {
+                break;
+            }
+            moveEvent(child, index);
+            index = child;
+        }
+        setEvent(index, time, sequence, eventTypes[last], eventServers[last], eventPatients[last]);
+    }
+
+    // True if an event with this time and sequence comes before the event at the heap position
+    private boolean before(double time, long sequence, int position) {
+        return before(time, sequence, eventTimes[position], eventSequences[position]);
+    }
+
+    private static boolean before(double time, long sequence, double otherTime, long otherSequence) {
+        return time < otherTime || (time == otherTime && sequence < otherSequence);
+    }
+
+    private void moveEvent(int from, int to) {
+        setEvent(to, eventTimes[from], eventSequences[from], eventTypes[from], eventServers[from],
+                eventPatients[from]);
+    }
+
+    private void setEvent(int index, double time, long sequence, byte type, int server, int patient) {
+        eventTimes[index] = time;
+        eventSequences[index] = sequence;
+        eventTypes[index] = type;
+        eventServers[index] = server;
+        eventPatients[index] = patient;
+    }
+
+    // Get the virtual clock (the time of the last processed event once the run is over)
+    public double getCurrentTime() {
+        return currentTime;
+    }
+
+    // Get how many events were processed
+    public long getProcessedEvents() {
+        return processedEvents;
+    }
+
+    // Get the number of caretakers
+    public int getCaretakerCount() {
+        return caretakerQueues.length;
+    }
+
+    // Get the wait statistics of the patients who have left so far
+    public PatientStatistics getStatistics() {
+        return statistics;
+    }
+}
@@ -0,0 +1,170 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Lock-free FIFO queue of patients built on PNode (Michael-Scott linked queue).
+// Many intake threads can enqueue and many processors can dequeue at the same time
+// without sharing a monitor. The head always points at a dummy node; the first
+// waiting patient lives in head.next.
+public class ConcurrentPriorityQueue {
+    // Atomic access to PNode.next and to this queue's head and tail pointers
+    private static final VarHandle NEXT;
+    private static final VarHandle HEAD;
+    private static final VarHandle TAIL;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            NEXT = lookup.findVarHandle(PNode.class, "next", PNode.class);
+            HEAD = lookup.findVarHandle(ConcurrentPriorityQueue.class, "head", PNode.class);
+            TAIL = lookup.findVarHandle(ConcurrentPriorityQueue.class, "tail", PNode.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Dummy node in front of the first waiting patient
+    private volatile PNode head;
+    // Last node in the chain (may lag one node behind while another thread is enqueuing)
+    private volatile PNode tail;
+    // Number of waiting patients, updated after each successful enqueue or dequeue
+    private final AtomicInteger size = new AtomicInteger();
+
+    public ConcurrentPriorityQueue() {
+        PNode dummy = new PNode(null);
+        head = dummy;
+        tail = dummy;
+    }
+
+    // Enqueue patient at the tail (FIFO); safe to call from any number of threads
+    public void enqueue(CriticalPatient patient) {
+        if (patient == null) {
+            throw new IllegalArgumentException("Patient must not be null");
+        }
+        PNode newNode = new PNode(patient);
+        while (true) {
+            PNode last = tail;
+            PNode next = (PNode) NEXT.getAcquire(last);
+            if (last != tail) {
+                continue;
+            }
+            if (next == null) {
+                // Link the new node after the current last node
+                if (NEXT.compareAndSet(last, (PNode) null, newNode)) {
+                    // Swing the tail forward; if this fails another thread already helped
+                    TAIL.compareAndSet(this, last, newNode);
+                    break;
+                }
+            } else {
+                // Tail is lagging behind, help move it forward and retry
+                TAIL.compareAndSet(this, last, next);
+            }
+        }
+        size.incrementAndGet();
+    }
+
+    // Dequeue the patient at the head, or return null if the queue is empty
+    public CriticalPatient dequeue() {
+        while (true) {
+            PNode first = head;
+            PNode last = tail;
+            PNode next = (PNode) NEXT.getAcquire(first);
+            if (first != head) {
+                continue;
+            }
+            if (first == last) {
+                if (next == null) {
+                    return null;
+                }
+                // An enqueue is half-way done, help move the tail forward
+                TAIL.compareAndSet(this, last, next);
+            } else {
+                CriticalPatient patient = next.patient;
+                if (HEAD.compareAndSet(this, first, next)) {
+                    // The node we moved onto becomes the new dummy, drop its patient reference
+                    next.patient = null;
+                    size.decrementAndGet();
+                    return patient;
+                }
+            }
+        }
+    }
+
+    // Move up to maxPatients patients from the head into the target, in FIFO order, and return how
+    // many were moved (0 if the queue is empty). The whole run is claimed with one CAS on the head:
+    // walk up to maxPatients nodes, never past the tail, and swing the head to the last of them,
+    // which becomes the new dummy. The target must accept every patient (a list, say), since
+    // claimed patients cannot be put back.
+    public int drainTo(Collection<? super CriticalPatient> target, int maxPatients) {
+        if (maxPatients < 0) {
+            throw new IllegalArgumentException("Cannot drain a negative number of patients: " + maxPatients);
+        }
+        if (maxPatients == 0) {
+            return 0;
+        }
+        while (true) {
+            PNode first = head;
+            PNode last = tail;
+            PNode next = (PNode) NEXT.getAcquire(first);
+            if (first != head) {
+                continue;
+            }
+            if (first == last) {
+                if (next == null) {
+                    return 0;
+                }
+                // An enqueue is half-way done, help move the tail forward
+                TAIL.compareAndSet(this, last, next);
+                continue;
+            }
+            // The head may catch up with the tail read above but not overtake it, or a later
+            // dequeue would find the head ahead of the tail
+            PNode end = next;
+            int count = 1;
+            while (count < maxPatients && end != last) {
+                PNode following = (PNode) NEXT.getAcquire(end);
+                if (following == null) {
+                    break;
+                }
+                end = following;
+                count++;
+            }
+            if (HEAD.compareAndSet(this, first, end)) {
+                // The run is ours now; nobody else reads or clears these patients
+                for (PNode node = next; ; node = (PNode) NEXT.getAcquire(node)) {
+                    target.add(node.patient);
+                    if (node == end) {
+                        break;
+                    }
+                }
+                end.patient = null;
+                size.addAndGet(-count);
+                return count;
+            }
+        }
+    }
+
+    // Remove and return up to maxPatients patients from the head, in FIFO order (empty if the queue is)
+    public List<CriticalPatient> dequeueBatch(int maxPatients) {
+        List<CriticalPatient> batch = new ArrayList<>(Math.max(0, Math.min(maxPatients, size())));
+        drainTo(batch, maxPatients);
+        return batch;
+    }
+
+    // Peek at the patient at the head without removing (null if empty; may be stale under contention)
+    public CriticalPatient peek() {
+        PNode next = (PNode) NEXT.getAcquire(head);
+        return next == null ? null : next.patient;
+    }
+
+    public boolean isEmpty() {
+        return NEXT.getAcquire(head) == null;
+    }
+
+    public int size() {
+        return Math.max(0, size.get());
+    }
+}
@@ -1,4 +1,5 @@
-// This class represents a patient in a hospital, with details about their treatment and priority
+// This class represents a patient in a hospital, with details about their treatment and priority.
+// A patient either keeps their own details or is a view of one row of a PatientStore.
 public class CriticalPatient {
     // Unique ID to identify the patient
     private int patientId;
@@ -14,74 +15,141 @@ public class CriticalPatient {
     private int priority;
     // ID of the queue this patient is assigned to
     private int assignedQueueId;
+    // Column store holding this patient's details instead of the fields above (null = standalone)
+    private final PatientStore store;
+    // Index of this patient in the store
+    private final int storeIndex;
 
     // Constructor to create a patient with a given ID
     public CriticalPatient(int patientId) {
         this.patientId = patientId;
+        this.store = null;
+        this.storeIndex = -1;
+    }
+
+    // Constructor for a view of a patient kept in a PatientStore (see PatientStore.view)
+    CriticalPatient(PatientStore store, int storeIndex) {
+        this.store = store;
+        this.storeIndex = storeIndex;
+    }
+
+    // Get the store this patient is kept in (null for a standalone patient)
+    public PatientStore getStore() {
+        return store;
+    }
+
+    // Get this patient's index in their store (-1 for a standalone patient)
+    public int getStoreIndex() {
+        return storeIndex;
     }
 
     // Get the patient's unique ID
     public int getPatientId() {
+        if (store != null) {
+            return store.getPatientId(storeIndex);
+        }
         return patientId;
     }
 
     // Get the time the patient arrived
     public double getArrivalTime() {
+        if (store != null) {
+            return store.getArrivalTime(storeIndex);
+        }
         return arrivalTime;
     }
 
     // Set the time the patient arrived
     public void setArrivalTime(double arrivalTime) {
-        this.arrivalTime = arrivalTime;
+        if (store != null) {
+            store.setArrivalTime(storeIndex, arrivalTime);
+        } else {
+            this.arrivalTime = arrivalTime;
+        }
     }
 
     // Get how long it takes to treat the patient
     public double getServiceTime() {
+        if (store != null) {
+            return store.getServiceTime(storeIndex);
+        }
         return serviceTime;
     }
 
     // Set how long it takes to treat the patient
     public void setServiceTime(double serviceTime) {
-        this.serviceTime = serviceTime;
+        if (store != null) {
+            store.setServiceTime(storeIndex, serviceTime);
+        } else {
+            this.serviceTime = serviceTime;
+        }
     }
 
     // Get how long the patient waited before treatment
     public double getWaitingTime() {
+        if (store != null) {
+            return store.getWaitingTime(storeIndex);
+        }
         return waitingTime;
     }
 
     // Set how long the patient waited before treatment
     public void setWaitingTime(double waitingTime) {
-        this.waitingTime = waitingTime;
+        if (store != null) {
+            store.setWaitingTime(storeIndex, waitingTime);
+        } else {
+            this.waitingTime = waitingTime;
+        }
     }
 
     // Get the time the patient finished treatment
     public double getDepartureTime() {
+        if (store != null) {
+            return store.getDepartureTime(storeIndex);
+        }
         return departureTime;
     }
 
     // Set the time the patient finished treatment
     public void setDepartureTime(double departureTime) {
-        this.departureTime = departureTime;
+        if (store != null) {
+            store.setDepartureTime(storeIndex, departureTime);
+        } else {
+            this.departureTime = departureTime;
+        }
     }
 
     // Get the patient's priority level (1 is critical)
     public int getPriority() {
+        if (store != null) {
+            return store.getPriority(storeIndex);
+        }
         return priority;
     }
 
     // Set the patient's priority level
     public void setPriority(int priority) {
-        this.priority = priority;
+        if (store != null) {
+            store.setPriority(storeIndex, priority);
+        } else {
+            this.priority = priority;
+        }
     }
 
     // Get the ID of the queue this patient is in
     public int getAssignedQueueId() {
+        if (store != null) {
+            return store.getAssignedQueueId(storeIndex);
+        }
         return assignedQueueId;
     }
 
     // Set the ID of the queue this patient is assigned to
     public void setAssignedQueueId(int assignedQueueId) {
-        this.assignedQueueId = assignedQueueId;
+        if (store != null) {
+            store.setAssignedQueueId(storeIndex, assignedQueueId);
+        } else {
+            this.assignedQueueId = assignedQueueId;
+        }
     }
 }
\ No newline at end of file
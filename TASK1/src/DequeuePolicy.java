@@ -0,0 +1,200 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Decides which priority level a queue serves next. Each level is a FIFO, so its head is its
+// longest-waiting patient and a policy only has to compare the heads: choosing is constant time
+// in the number of waiting patients, whatever the policy. Levels are priorities (0 = Normal,
+// 1 = Critical, 2 = Emergency); a caretaker queue only has levels 0 and 1.
+// Policies that keep state (weighted fair) hand out an independent copy to every queue.
+public interface DequeuePolicy {
+    // Pick the level to serve from the arrival times of each level's head patient
+    // (NaN for an empty level); -1 if every level is empty
+    int select(double[] headArrivalTimes);
+
+    // Tell the policy that a patient of the given level was taken, with their treatment time
+    default void served(int level, double serviceTime) {
+    }
+
+    // Check that the policy can choose between a queue's number of levels, when the queue takes it
+    default void checkLevels(int levels) {
+    }
+
+    // Get an instance with the same parameters and no history, for a new queue
+    default DequeuePolicy copy() {
+        return this;
+    }
+
+    // Save the history a copy() starts without, for a checkpoint (nothing for policies without state)
+    default void writeState(DataOutput out) throws IOException {
+    }
+
+    // Take back the history saved by writeState() of a policy with the same parameters
+    default void readState(DataInput in) throws IOException {
+    }
+
+    // Always the highest non-empty level (the original behavior; lower levels can starve)
+    static DequeuePolicy strict() {
+        return StrictPolicy.INSTANCE;
+    }
+
+    // Share treatment time between levels in proportion to their weights (index = priority)
+    // whenever more than one level has patients waiting
+    static DequeuePolicy weightedFair(double... weights) {
+        return new WeightedFairPolicy(weights);
+    }
+
+    // A patient's effective priority rises by one level for every minutesPerLevel they wait:
+    // a normal patient who has waited minutesPerLevel longer than the oldest critical patient
+    // goes first. Only heads need comparing, since within a level the head has waited longest.
+    static DequeuePolicy aging(double minutesPerLevel) {
+        if (!(minutesPerLevel > 0)) {
+            throw new IllegalArgumentException("Aging needs a positive number of minutes per level, got "
+                    + minutesPerLevel);
+        }
+        return headArrivalTimes -> {
+            int best = -1;
+            double bestScore = 0;
+            for (int level = headArrivalTimes.length - 1; level >= 0; level--) {
+                double arrivalTime = headArrivalTimes[level];
+                if (Double.isNaN(arrivalTime)) {
+                    continue;
+                }
+                // level + (now - arrival) / minutesPerLevel, scaled and without the common "now"
+                double score = level * minutesPerLevel - arrivalTime;
+                if (best < 0 || score > bestScore) {
+                    best = level;
+                    bestScore = score;
+                }
+            }
+            return best;
+        };
+    }
+
+    // Parse "strict", "wfq:W0,W1[,W2]" or "aging:MINUTES_PER_LEVEL" (a MultiPriorityQueue needs the
+    // three weights of wfq, caretaker queues the first two)
+    static DequeuePolicy parse(String spec) {
+        int colon = spec.indexOf(':');
+        String kind = colon < 0 ? spec : spec.substring(0, colon);
+        double[] values = colon < 0 ? new double[0]
+                : Arrays.stream(spec.substring(colon + 1).split(","))
+                .mapToDouble(part -> Double.parseDouble(part.trim())).toArray();
+        switch (kind) {
+            case "strict":
+                return strict();
+            case "wfq":
+                if (values.length < 2) {
+                    throw new IllegalArgumentException("wfq needs a weight per level, e.g. wfq:1,4,16: " + spec);
+                }
+                return weightedFair(values);
+            case "aging":
+                if (values.length != 1) {
+                    throw new IllegalArgumentException("aging needs the minutes per level, e.g. aging:30: " + spec);
+                }
+                return aging(values[0]);
+            default:
+                throw new IllegalArgumentException("Unknown dequeue policy: " + spec);
+        }
+    }
+
+    // Highest non-empty level first; keeps no state, so one instance is shared (and queues can
+    // recognise it to take a faster path)
+    final class StrictPolicy implements DequeuePolicy {
+        static final StrictPolicy INSTANCE = new StrictPolicy();
+
+        private StrictPolicy() {
+        }
+
+        @Override
+        public int select(double[] headArrivalTimes) {
+            for (int level = headArrivalTimes.length - 1; level >= 0; level--) {
+                if (!Double.isNaN(headArrivalTimes[level])) {
+                    return level;
+                }
+            }
+            return -1;
+        }
+    }
+
+    // Start-time fair queuing: each level has a virtual finish tag that advances by
+    // treatment time / weight per patient served; the non-empty level with the earliest start tag
+    // goes next. A level that was empty restarts at the current virtual time, so idling earns
+    // no credit to spend later.
+    final class WeightedFairPolicy implements DequeuePolicy {
+        private final double[] weights;
+        // Virtual time at which each level's last served patient finishes
+        private final double[] finishTags;
+        // Start tag of the patient served most recently
+        private double virtualTime = 0;
+
+        WeightedFairPolicy(double[] weights) {
+            for (double weight : weights) {
+                if (!(weight > 0)) {
+                    throw new IllegalArgumentException("Weights must be positive, got " + Arrays.toString(weights));
+                }
+            }
+            this.weights = weights.clone();
+            this.finishTags = new double[weights.length];
+        }
+
+        @Override
+        public void checkLevels(int levels) {
+            if (levels > weights.length) {
+                throw new IllegalArgumentException("Weighted fair queuing needs a weight for each of " + levels
+                        + " levels, got " + Arrays.toString(weights));
+            }
+        }
+
+        @Override
+        public int select(double[] headArrivalTimes) {
+            checkLevels(headArrivalTimes.length);
+            int best = -1;
+            double bestStart = 0;
+            for (int level = headArrivalTimes.length - 1; level >= 0; level--) {
+                if (Double.isNaN(headArrivalTimes[level])) {
+                    continue;
+                }
+                double start = Math.max(finishTags[level], virtualTime);
+                if (best < 0 || start < bestStart) {
+                    best = level;
+                    bestStart = start;
+                }
+            }
+            return best;
+        }
+
+        @Override
+        public void served(int level, double serviceTime) {
+            virtualTime = Math.max(finishTags[level], virtualTime);
+            finishTags[level] = virtualTime + serviceTime / weights[level];
+        }
+
+        @Override
+        public DequeuePolicy copy() {
+            return new WeightedFairPolicy(weights);
+        }
+
+        @Override
+        public void writeState(DataOutput out) throws IOException {
+            out.writeDouble(virtualTime);
+            out.writeInt(finishTags.length);
+            for (double finishTag : finishTags) {
+                out.writeDouble(finishTag);
+            }
+        }
+
+        @Override
+        public void readState(DataInput in) throws IOException {
+            virtualTime = in.readDouble();
+            int levels = in.readInt();
+            if (levels != finishTags.length) {
+                throw new IOException("Checkpoint has weighted fair state for " + levels + " levels, policy has "
+                        + finishTags.length);
+            }
+            for (int level = 0; level < levels; level++) {
+                finishTags[level] = in.readDouble();
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+// This class records one decision of the elastic emergency doctor pool
+public class DoctorScalingEvent {
+    // Whether a doctor joined or left the team
+    public enum Action {
+        ADDED,
+        RETIRED
+    }
+
+    // Milliseconds since the doctor team was created
+    private final long elapsedMillis;
+    // What happened
+    private final Action action;
+    // ID of the doctor that joined or left
+    private final int doctorId;
+    // Team size after the decision
+    private final int poolSize;
+    // Emergency patients waiting when the decision was made
+    private final int backlog;
+    // Why the decision was made
+    private final String reason;
+
+    // Constructor to record a scaling decision
+    public DoctorScalingEvent(long elapsedMillis, Action action, int doctorId, int poolSize, int backlog,
+                              String reason) {
+        this.elapsedMillis = elapsedMillis;
+        this.action = action;
+        this.doctorId = doctorId;
+        this.poolSize = poolSize;
+        this.backlog = backlog;
+        this.reason = reason;
+    }
+
+    // Get the milliseconds since the doctor team was created
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    // Get whether a doctor joined or left
+    public Action getAction() {
+        return action;
+    }
+
+    // Get the ID of the doctor that joined or left
+    public int getDoctorId() {
+        return doctorId;
+    }
+
+    // Get the team size after the decision
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    // Get the number of waiting emergency patients when the decision was made
+    public int getBacklog() {
+        return backlog;
+    }
+
+    // Get why the decision was made
+    public String getReason() {
+        return reason;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[Scaling +%d ms] %s Doctor %d (team: %d, waiting: %d) - %s",
+                elapsedMillis, action == Action.ADDED ? "Added" : "Retired", doctorId, poolSize, backlog, reason);
+    }
+}
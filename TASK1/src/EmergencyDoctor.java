@@ -1,30 +1,25 @@
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-
 // This class simulates an emergency doctor handling one patient at a time
 public class EmergencyDoctor implements Runnable {
     // Unique ID for this doctor, accessible to the hospital system
     final int doctorId;
-    // A queue holding one patient at a time for this doctor to treat
-    private final BlockingQueue<EmergencyPatient> patientQueue;
+    // The dispatcher this doctor takes waiting emergency patients from
+    private final EmergencyDoctorManager dispatcher;
     // Flag to control whether the doctor is still working
     private volatile boolean isActive = true;
+    // Flag set while the doctor is treating a patient
+    private volatile boolean isTreating = false;
+    // Wait and sojourn times of the patients this doctor treated (written by the doctor's thread only)
+    private final PatientStatistics statistics = new PatientStatistics();
 
-    // Constructor to set up a doctor with a given ID
-    public EmergencyDoctor(int doctorId) {
+    // Constructor to set up a doctor with a given ID and the dispatcher that hands out patients
+    public EmergencyDoctor(int doctorId, EmergencyDoctorManager dispatcher) {
         this.doctorId = doctorId;
-        // Queue holds only one patient to mimic focused emergency care
-        this.patientQueue = new LinkedBlockingQueue<>(1);
+        this.dispatcher = dispatcher;
     }
 
     // Check if the doctor is free to take a new patient
     public boolean isAvailable() {
-        return patientQueue.isEmpty();
-    }
-
-    // Try to assign a patient to this doctor (returns false if busy)
-    public boolean tryAssignPatient(EmergencyPatient patient) {
-        return patientQueue.offer(patient);
+        return !isTreating;
     }
 
     // Main loop where the doctor processes patients
@@ -33,34 +28,49 @@ public class EmergencyDoctor implements Runnable {
         // Keep working while the doctor is active
         while (isActive) {
             try {
-                // Wait for and get the next patient from the queue
-                EmergencyPatient patient = patientQueue.take();
-
-                // Convert arrival time (minutes since midnight) to HH:mm format
-                int totalMinutes = (int) Math.round(patient.getArrivalTime());
-                int hour = totalMinutes / 60;
-                int minute = totalMinutes % 60;
+                // Wait for the longest-waiting emergency patient (null means the shift is over)
+                EmergencyPatient patient = dispatcher.takeNextPatient(this);
+                if (patient == null) {
+                    isActive = false;
+                    break;
+                }
+                isTreating = true;
 
-                // Log when the doctor starts treating the patient
-                System.out.printf("[Doctor %d] Started treating emergency patient %d at %02d:%02d%n",
-                        doctorId, patient.getId(), hour, minute);
+                // Log when the doctor starts treating the patient (arrival time rounded to the minute)
+                AsyncLogSink log = dispatcher.getLogSink();
+                if (log != null) {
+                    log.doctorStarted(doctorId, patient.getId(), Math.round(patient.getArrivalTime()));
+                }
 
                 // Simulate treatment time (scaled for urgency, 1 minute = 100ms)
                 Thread.sleep((long) (patient.getServiceTime() * 100));
 
+                // Record when the patient left, counting the wait for a doctor and the treatment
+                patient.setDepartureTime(patient.getArrivalTime() + patient.getWaitingTime() + patient.getServiceTime());
+                statistics.record(patient);
+
                 // Log when the doctor finishes with the patient
-                System.out.printf("[Doctor %d] Finished treating emergency patient %d%n",
-                        doctorId, patient.getId());
+                if (log != null) {
+                    log.doctorFinished(doctorId, patient.getId(), Double.NaN);
+                }
 
             } catch (InterruptedException e) {
                 // If interrupted, stop working
                 isActive = false;
+            } finally {
+                isTreating = false;
             }
         }
     }
 
+    // Get the wait and sojourn statistics of the patients this doctor treated; read them only once
+    // the doctor's thread has finished
+    public PatientStatistics getStatistics() {
+        return statistics;
+    }
+
     // Signal the doctor to stop working
     public void shutdown() {
         isActive = false;
     }
-}
\ No newline at end of file
+}
@@ -1,60 +1,367 @@
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
-// This class coordinates a team of emergency doctors, assigning patients and managing their work
+// This class coordinates a team of emergency doctors, assigning patients and managing their work.
+// Waiting emergency patients go into one shared FIFO work queue and free doctors take() from it,
+// so nobody polls and patients are seen strictly in the order they were assigned.
+// The team is either a fixed size or elastic: doctors are added when the backlog or the
+// oldest wait passes a threshold and retired again after sitting idle, within min/max bounds.
+// Doctors start work when start() is called, not when the team is created.
 public class EmergencyDoctorManager {
-    // List of emergency doctors handling patients
+    // A waiting emergency patient and the moment they were handed to the dispatcher
+    private static final class PendingPatient {
+        final EmergencyPatient patient;
+        final long queuedAtNanos;
+
+        PendingPatient(EmergencyPatient patient, long queuedAtNanos) {
+            this.patient = patient;
+            this.queuedAtNanos = queuedAtNanos;
+        }
+    }
+
+    // Real-time scale: one simulated minute lasts 100 ms
+    private static final double NANOS_PER_MINUTE = 100_000_000.0;
+    // Marker put on the work queue once per doctor to end their shift
+    private static final PendingPatient END_OF_SHIFT = new PendingPatient(null, 0);
+
+    // List of emergency doctors handling patients (guarded by this)
     private final List<EmergencyDoctor> doctorTeam = new ArrayList<>();
-    // List of threads running each doctor's work
+    // List of threads running each doctor's work, including retired doctors (guarded by this)
     private final List<Thread> doctorThreads = new ArrayList<>();
+    // Every doctor who has been on the team, including retired doctors (guarded by this)
+    private final List<EmergencyDoctor> allDoctors = new ArrayList<>();
+    // Emergency patients waiting for the next free doctor, in assignment order
+    private final BlockingQueue<PendingPatient> waitingPatients = new LinkedBlockingQueue<>();
 
-    // Constructor to set up the team of doctors
+    // Dispatch latency: time from assignPatient() until a doctor takes the patient
+    private final LongAdder dispatchedPatients = new LongAdder();
+    private final LongAdder totalDispatchNanos = new LongAdder();
+    private final AtomicLong maxDispatchNanos = new AtomicLong();
+
+    // Team size bounds; the team is elastic when they differ
+    private final int minDoctors;
+    private final int maxDoctors;
+    // Add a doctor when more patients than this are waiting
+    private final int backlogThreshold;
+    // Add a doctor when the longest-waiting patient has waited longer than this
+    private final long waitThresholdMillis;
+    // Retire a doctor who has had no patient for this long
+    private final long idleTimeoutMillis;
+    // Every scaling decision in order (guarded by this)
+    private final List<DoctorScalingEvent> scalingEvents = new ArrayList<>();
+    // When the team was created, for scaling event timestamps
+    private final long createdAtNanos = System.nanoTime();
+    // ID for the next doctor to join, like the next free room number
+    private int nextDoctorId = 1;
+    // Set by start(); doctors are only added after that (guarded by this)
+    private boolean started = false;
+    // Set once shutdown starts; the team no longer changes size after that
+    private boolean shuttingDown = false;
+    // Platform or virtual threads for the doctors
+    private final ExecutionStrategy executionStrategy;
+    // Where dispatch, treatment and scaling messages go (null = not logged)
+    private final AsyncLogSink logSink;
+    // Live timer around assignPatient(), set by enableMetrics() before the first patient (null = off)
+    private Metrics.Timer assignTimer;
+
+    // Constructor to set up the usual team of 5 doctors
     public EmergencyDoctorManager() {
-        // Create 5 emergency doctors, like rooms 1 to 5 in an ER
-        for (int i = 1; i <= 5; i++) {
-            EmergencyDoctor doctor = new EmergencyDoctor(i);
-            doctorTeam.add(doctor);
-            // Start a thread for each doctor to handle their patients
-            Thread thread = new Thread(doctor, "Emergency-Doctor-" + i);
-            doctorThreads.add(thread);
-            thread.start();
+        this(5);
+    }
+
+    // Constructor to set up a fixed team with the given number of doctors
+    public EmergencyDoctorManager(int doctorCount) {
+        this(doctorCount, ExecutionStrategy.PLATFORM);
+    }
+
+    // Constructor to set up a fixed team running on platform or virtual threads
+    public EmergencyDoctorManager(int doctorCount, ExecutionStrategy executionStrategy) {
+        this(doctorCount, doctorCount, Integer.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, executionStrategy);
+    }
+
+    // Constructor to set up an elastic team that grows from minDoctors up to maxDoctors
+    public EmergencyDoctorManager(int minDoctors, int maxDoctors, int backlogThreshold,
+                                  long waitThresholdMillis, long idleTimeoutMillis) {
+        this(minDoctors, maxDoctors, backlogThreshold, waitThresholdMillis, idleTimeoutMillis,
+                ExecutionStrategy.PLATFORM);
+    }
+
+    // Constructor to set up an elastic team running on platform or virtual threads
+    public EmergencyDoctorManager(int minDoctors, int maxDoctors, int backlogThreshold,
+                                  long waitThresholdMillis, long idleTimeoutMillis,
+                                  ExecutionStrategy executionStrategy) {
+        this(minDoctors, maxDoctors, backlogThreshold, waitThresholdMillis, idleTimeoutMillis, executionStrategy,
+                null);
+    }
+
+    // Constructor for any team that also writes its messages to the given log (null = no messages)
+    public EmergencyDoctorManager(int minDoctors, int maxDoctors, int backlogThreshold,
+                                  long waitThresholdMillis, long idleTimeoutMillis,
+                                  ExecutionStrategy executionStrategy, AsyncLogSink logSink) {
+        if (minDoctors < 1 || maxDoctors < minDoctors) {
+            throw new IllegalArgumentException("Need 1 <= minDoctors <= maxDoctors, got "
+                    + minDoctors + " and " + maxDoctors);
+        }
+        this.minDoctors = minDoctors;
+        this.maxDoctors = maxDoctors;
+        this.backlogThreshold = backlogThreshold;
+        this.waitThresholdMillis = waitThresholdMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.executionStrategy = executionStrategy;
+        this.logSink = logSink;
+    }
+
+    // Put the smallest team to work, like rooms 1 to minDoctors in an ER; patients assigned before
+    // this wait for them
+    public synchronized void start() {
+        if (started || shuttingDown) {
+            throw new IllegalStateException("The doctor team has already started or shut down");
         }
+        started = true;
+        for (int i = 0; i < minDoctors; i++) {
+            startDoctor();
+        }
+    }
+
+    // Check if the team changes size with the load
+    public boolean isElastic() {
+        return maxDoctors > minDoctors;
+    }
+
+    // Create a doctor and start a thread to handle their patients (caller holds the lock)
+    private EmergencyDoctor startDoctor() {
+        EmergencyDoctor doctor = new EmergencyDoctor(nextDoctorId++, this);
+        doctorTeam.add(doctor);
+        allDoctors.add(doctor);
+        Thread thread = executionStrategy.newThread(doctor, "Emergency-Doctor-" + doctor.doctorId);
+        doctorThreads.add(thread);
+        thread.start();
+        return doctor;
     }
 
-    // Assign a patient to an available doctor, checking rooms 1 to 5
+    // Hand a patient to the next free doctor; returns immediately, the patient waits in FIFO order
     public void assignPatient(EmergencyPatient patient) {
-        boolean isAssigned = false;
-        // Keep trying until the patient is assigned to a doctor
-        while (!isAssigned) {
-            for (EmergencyDoctor doctor : doctorTeam) {
-                // If the doctor is free and accepts the patient, assign them
-                if (doctor.isAvailable() && doctor.tryAssignPatient(patient)) {
-                    isAssigned = true;
-                    System.out.printf("Emergency patient %d assigned to Doctor %d%n",
-                            patient.getId(), doctor.doctorId);
-                    break;
+        long startNanos = System.nanoTime();
+        waitingPatients.add(new PendingPatient(patient, startNanos));
+        scaleUpIfNeeded();
+        if (assignTimer != null) {
+            assignTimer.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    // Called by a doctor to wait for their next patient; returns null when the shift is over
+    // or when an elastic team no longer needs this doctor
+    EmergencyPatient takeNextPatient(EmergencyDoctor doctor) throws InterruptedException {
+        while (true) {
+            PendingPatient next = isElastic()
+                    ? waitingPatients.poll(idleTimeoutMillis, TimeUnit.MILLISECONDS)
+                    : waitingPatients.take();
+            if (next == null) {
+                // Idle for a whole timeout: leave unless the team is already at its minimum
+                if (retireIfIdle(doctor)) {
+                    return null;
                 }
+                continue;
             }
-            // If no doctor was free, wait briefly and try again
-            if (!isAssigned) {
-                try {
-                    Thread.sleep(10); // Wait 10 milliseconds
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
+            if (next == END_OF_SHIFT) {
+                return null;
+            }
+            long latencyNanos = System.nanoTime() - next.queuedAtNanos;
+            recordDispatchLatency(latencyNanos);
+            // On the real-time scale (1 minute = 100 ms) the patient waited as long as the dispatch took
+            next.patient.setWaitingTime(latencyNanos / NANOS_PER_MINUTE);
+            if (logSink != null) {
+                logSink.dispatched(next.patient.getId(), doctor.doctorId);
             }
+            // Patients may still be piling up behind this one
+            scaleUpIfNeeded();
+            return next.patient;
         }
     }
 
-    // Shut down all doctors' work gracefully
-    public void shutdown() {
-        // Tell each doctor to stop taking new patients
+    // Add one doctor if the backlog or the oldest wait is over its threshold
+    private void scaleUpIfNeeded() {
+        if (!isElastic()) {
+            return;
+        }
+        int backlog = waitingPatients.size();
+        PendingPatient oldest = waitingPatients.peek();
+        long oldestWaitMillis = oldest == null || oldest == END_OF_SHIFT
+                ? 0 : (System.nanoTime() - oldest.queuedAtNanos) / 1_000_000;
+        String reason;
+        if (backlog > backlogThreshold) {
+            reason = "backlog above " + backlogThreshold;
+        } else if (oldestWaitMillis > waitThresholdMillis) {
+            reason = "oldest patient waited " + oldestWaitMillis + " ms";
+        } else {
+            return;
+        }
+        synchronized (this) {
+            if (!started || shuttingDown || doctorTeam.size() >= maxDoctors) {
+                return;
+            }
+            EmergencyDoctor doctor = startDoctor();
+            recordScalingEvent(DoctorScalingEvent.Action.ADDED, doctor, backlog, reason);
+        }
+    }
+
+    // Take an idle doctor off an elastic team if it is above its minimum size
+    private synchronized boolean retireIfIdle(EmergencyDoctor doctor) {
+        if (shuttingDown || doctorTeam.size() <= minDoctors) {
+            return false;
+        }
+        doctorTeam.remove(doctor);
+        recordScalingEvent(DoctorScalingEvent.Action.RETIRED, doctor, waitingPatients.size(),
+                "idle for " + idleTimeoutMillis + " ms");
+        return true;
+    }
+
+    // Remember and log a scaling decision (caller holds the lock)
+    private void recordScalingEvent(DoctorScalingEvent.Action action, EmergencyDoctor doctor, int backlog,
+                                    String reason) {
+        long elapsedMillis = (System.nanoTime() - createdAtNanos) / 1_000_000;
+        DoctorScalingEvent event = new DoctorScalingEvent(elapsedMillis, action, doctor.doctorId,
+                doctorTeam.size(), backlog, reason);
+        scalingEvents.add(event);
+        if (logSink != null) {
+            logSink.message(event.toString());
+        }
+    }
+
+    // Get the log doctors write their messages to (null = not logged)
+    AsyncLogSink getLogSink() {
+        return logSink;
+    }
+
+    // Get the wait and sojourn statistics of every doctor's patients combined; call after shutdown()
+    public synchronized PatientStatistics getStatistics() {
+        PatientStatistics statistics = new PatientStatistics();
+        for (EmergencyDoctor doctor : allDoctors) {
+            statistics.merge(doctor.getStatistics());
+        }
+        return statistics;
+    }
+
+    // Get every scaling decision made so far, oldest first
+    public synchronized List<DoctorScalingEvent> getScalingEvents() {
+        return new ArrayList<>(scalingEvents);
+    }
+
+    // Get the number of doctors currently on the team
+    public synchronized int getDoctorCount() {
+        return doctorTeam.size();
+    }
+
+    // Get the number of doctors on the team who are treating a patient right now
+    public synchronized int getBusyDoctorCount() {
+        int busy = 0;
         for (EmergencyDoctor doctor : doctorTeam) {
-            doctor.shutdown();
+            if (!doctor.isAvailable()) {
+                busy++;
+            }
+        }
+        return busy;
+    }
+
+    // Get the number of patients waiting for a doctor
+    public int getBacklog() {
+        int backlog = 0;
+        for (PendingPatient pending : waitingPatients) {
+            if (pending != END_OF_SHIFT) {
+                backlog++;
+            }
+        }
+        return backlog;
+    }
+
+    // Time assignPatient() in doctors.assign and add gauges for the backlog, team size, busy doctors,
+    // utilisation and dispatch latency; call before the first patient is assigned
+    public void enableMetrics(Metrics metrics) {
+        assignTimer = metrics.timer("doctors.assign");
+        metrics.gauge("doctors.backlog", this::getBacklog);
+        metrics.gauge("doctors.team", this::getDoctorCount);
+        metrics.gauge("doctors.busy", this::getBusyDoctorCount);
+        metrics.gauge("doctors.utilisation", () -> {
+            // Both read under the lock, so busy never exceeds the team
+            synchronized (this) {
+                int team = getDoctorCount();
+                return team == 0 ? 0 : (double) getBusyDoctorCount() / team;
+            }
+        });
+        metrics.gauge("doctors.dispatched", this::getDispatchedPatients);
+        metrics.gauge("doctors.dispatchMeanMillis", this::getAverageDispatchLatencyMillis);
+        metrics.gauge("doctors.dispatchMaxMillis", this::getMaxDispatchLatencyMillis);
+    }
+
+    // Get the largest number of doctors that worked at the same time
+    public synchronized int getPeakDoctorCount() {
+        int peak = minDoctors;
+        for (DoctorScalingEvent event : scalingEvents) {
+            peak = Math.max(peak, event.getPoolSize());
+        }
+        return peak;
+    }
+
+    // Add one dispatch to the latency metrics
+    private void recordDispatchLatency(long nanos) {
+        dispatchedPatients.increment();
+        totalDispatchNanos.add(nanos);
+        long max = maxDispatchNanos.get();
+        while (nanos > max && !maxDispatchNanos.compareAndSet(max, nanos)) {
+            max = maxDispatchNanos.get();
+        }
+    }
+
+    // Get how many patients have been handed to a doctor
+    public long getDispatchedPatients() {
+        return dispatchedPatients.sum();
+    }
+
+    // Get the average dispatch latency in milliseconds
+    public double getAverageDispatchLatencyMillis() {
+        long count = dispatchedPatients.sum();
+        return count == 0 ? 0 : totalDispatchNanos.sum() / 1e6 / count;
+    }
+
+    // Get the longest dispatch latency in milliseconds
+    public double getMaxDispatchLatencyMillis() {
+        return maxDispatchNanos.get() / 1e6;
+    }
+
+    // Shut down all doctors' work gracefully, after every assigned patient has been treated
+    public void shutdown() {
+        List<EmergencyDoctor> team;
+        List<Thread> threads;
+        synchronized (this) {
+            // Freeze the team so every doctor gets exactly one end-of-shift marker
+            shuttingDown = true;
+            team = new ArrayList<>(doctorTeam);
+            threads = new ArrayList<>(doctorThreads);
+        }
+        // One end-of-shift marker per doctor, queued behind any patients still waiting
+        for (int i = 0; i < team.size(); i++) {
+            waitingPatients.add(END_OF_SHIFT);
         }
-        // Interrupt each doctor's thread to end their work
-        for (Thread thread : doctorThreads) {
-            thread.interrupt();
+        // Wait for each doctor to finish their last patient
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                // If we are interrupted, stop the doctors right away instead
+                for (EmergencyDoctor doctor : team) {
+                    doctor.shutdown();
+                }
+                for (Thread doctorThread : threads) {
+                    doctorThread.interrupt();
+                }
+                Thread.currentThread().interrupt();
+                return;
+            }
         }
     }
-}
\ No newline at end of file
+}
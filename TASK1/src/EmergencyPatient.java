@@ -1,3 +1,5 @@
+import java.util.random.RandomGenerator;
+
 // This class represents an emergency patient who needs faster treatment
 public class EmergencyPatient extends CriticalPatient {
 
@@ -6,6 +8,11 @@ public class EmergencyPatient extends CriticalPatient {
         super(patientId); // Uses the CriticalPatient setup
     }
 
+    // Constructor for a view of an emergency patient kept in a PatientStore
+    EmergencyPatient(PatientStore store, int storeIndex) {
+        super(store, storeIndex);
+    }
+
     // Shortcut to get the patient's ID, same as getPatientId()
     public int getId() {
         return getPatientId();
@@ -17,4 +24,9 @@ public class EmergencyPatient extends CriticalPatient {
         double serviceTime = HospitalQueueSimulation.getGaussianRandom(5, 1);
         setServiceTime(serviceTime);
     }
+
+    // Set a shorter treatment time drawn from the given generator
+    public void setFasterServiceTime(RandomGenerator rand) {
+        setServiceTime(HospitalQueueSimulation.getGaussianRandom(rand, 5, 1));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,754 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ObjDoubleConsumer;
+
+// This class runs a hospital day as a discrete-event simulation on a virtual clock.
+// Instead of sleeping threads, arrivals, service starts and departures are kept in a
+// time-ordered event heap and processed one by one, so a whole day runs in one thread,
+// as fast as the CPU allows, and gives the same result every time for the same patients.
+// Caretaker queues are either fixed up front (patients carry an assigned queue ID) or opened on
+// demand: each arrival joins the least loaded open queue, a new caretaker opens when every open
+// queue is at the threshold, and caretakers close when they run out of patients. A closed
+// caretaker is the first to open again, so a day keeps no more caretakers than were open at once.
+// Between two events the whole state can be saved (writeState) and a day resumed from it later
+// (restoreState, then resume) with the same results as a run that was never stopped.
+public class EventDrivenSimulation {
+    // The day starts at 8:00 AM (480 minutes past midnight)
+    private static final double START_OF_DAY = 480;
+    // The wall clock is read for checkpoints once every this many events (plus one)
+    private static final long CHECKPOINT_CHECK_MASK = (1 << 12) - 1;
+    // Patients per chunk of an off-heap caretaker queue (96 KB): small, as a day opens many caretakers
+    private static final int OFF_HEAP_CHUNK_RECORDS = 1 << 12;
+    // Events are processed by time; events at the same time keep the order they were scheduled in
+    private static final Comparator<SimulationEvent> EVENT_ORDER =
+            Comparator.comparingDouble(SimulationEvent::getTime).thenComparingLong(SimulationEvent::getSequence);
+
+    // Pending events, earliest first
+    private final java.util.PriorityQueue<SimulationEvent> eventHeap = new java.util.PriorityQueue<>(EVENT_ORDER);
+    // Every caretaker of the day, open or closed, index i handles the queue with ID i + 1
+    private final List<CaretakerProcessor> caretakers = new ArrayList<>();
+    // Caretakers that are open and take new patients (on-demand mode)
+    private final List<CaretakerProcessor> openCaretakers = new ArrayList<>();
+    // Whether each caretaker is treating a patient right now
+    private boolean[] caretakerBusy;
+    // Which caretakers are closed, by queue ID - 1, until they open again (on-demand mode)
+    private final BitSet caretakerClosed = new BitSet();
+    // Whether idle caretakers take over patients from the most loaded queue
+    private final boolean workStealing;
+    // Queue IDs of caretakers that went idle, most recent on top (may hold entries that are busy again)
+    private final ArrayDeque<Integer> idleCaretakers = new ArrayDeque<>();
+    // Whether each caretaker's ID is currently in idleCaretakers, so it is never pushed twice
+    private boolean[] inIdleStack;
+    // Open a new caretaker when every open queue has this many waiting (0 = queues fixed up front)
+    private final int openThreshold;
+    // Open caretakers' queues by patients waiting plus in treatment, to pick the least loaded one
+    private final ShortestQueueIndex openByLoad = new ShortestQueueIndex(Integer.MAX_VALUE);
+    // Open caretakers' queues by patients waiting, to check whether every open queue is full
+    private final ShortestQueueIndex openByWaiting;
+    // Open caretakers' queues by patients waiting, negated so the index's shortest queue is the
+    // longest one: where an idle caretaker takes over work from (work stealing only)
+    private final ShortestQueueIndex openByMostWaiting = new ShortestQueueIndex(Integer.MAX_VALUE);
+    // Queue IDs taken out of openByMostWaiting while looking for a queue to steal from (reused)
+    private int[] passedOverQueues = new int[16];
+    // Largest number of caretakers open at the same time, and how many times one was opened
+    private int peakOpenCaretakers;
+    private long openedCaretakers;
+    // Wait statistics, updated as patients leave
+    private final PatientStatistics statistics = new PatientStatistics();
+    // Whether every caretaker keeps statistics of their own patients
+    private boolean caretakerStatistics;
+    // Whether every caretaker queue keeps its patients outside the Java heap
+    private boolean offHeapQueues;
+    // How every caretaker picks between critical and other patients in their queue
+    private DequeuePolicy dequeuePolicy = DequeuePolicy.strict();
+    // Receives the statistics every snapshotInterval minutes of virtual time (null = no snapshots)
+    private ObjDoubleConsumer<PatientStatistics> snapshotListener;
+    private double snapshotInterval;
+    private double nextSnapshotTime;
+    // Receives the simulation every checkpointIntervalNanos of wall-clock time, between two events,
+    // to save its state (null = no checkpoints)
+    private Consumer<EventDrivenSimulation> checkpointListener;
+    private long checkpointIntervalNanos;
+    private long nextCheckpointNanos;
+    // Each caretaker's state as the last checkpoint saved it, with their change count at the time.
+    // Most caretakers are idle or closed between two checkpoints, so only the ones that changed
+    // are serialized again; the rest are copied as they were.
+    private byte[][] savedCaretakerStates = new byte[0][];
+    private long[] savedChangeCounts = new long[0];
+    private final ByteArrayOutputStream caretakerBytes = new ByteArrayOutputStream(1 << 10);
+    private final DataOutputStream caretakerOut = new DataOutputStream(caretakerBytes);
+    // Emergency patients waiting for a doctor, in arrival order
+    private final ArrayDeque<CriticalPatient> waitingEmergencies = new ArrayDeque<>();
+    // Stack of free doctor IDs, the lowest ID is on top
+    private final int[] freeDoctors;
+    private int freeDoctorCount;
+    // Where caretakers and doctors log what they do (null = no logging)
+    private final AsyncLogSink log;
+
+    // The virtual clock (in minutes past midnight)
+    private double currentTime = START_OF_DAY;
+    // Next sequence number handed to a scheduled event
+    private long nextSequence;
+    // How many events have been processed so far
+    private long processedEvents;
+    // Set once run() has started the day
+    private boolean running;
+    // Set by restoreState(): the day continues with resume() instead of run()
+    private boolean restored;
+    // Source of patients, read lazily one arrival at a time, and how many have been read from it
+    private Iterator<? extends CriticalPatient> arrivals;
+    private long arrivalsRead;
+    private double lastArrivalTime = Double.NEGATIVE_INFINITY;
+
+    // Constructor to set up the caretakers and emergency doctors of the day
+    public EventDrivenSimulation(int caretakerCount, int doctorCount, AsyncLogSink log) {
+        this(caretakerCount, doctorCount, log, false);
+    }
+
+    // Constructor that also chooses whether idle caretakers steal work from other queues
+    public EventDrivenSimulation(int caretakerCount, int doctorCount, AsyncLogSink log, boolean workStealing) {
+        this(caretakerCount, doctorCount, log, workStealing, 0);
+    }
+
+    // Constructor for any mode; with openThreshold > 0 the day starts with caretakerCount caretakers
+    // and opens or closes caretakers as the live queues grow and drain
+    public EventDrivenSimulation(int caretakerCount, int doctorCount, AsyncLogSink log, boolean workStealing,
+                                 int openThreshold) {
+        if (caretakerCount < 1 || doctorCount < 1) {
+            throw new IllegalArgumentException("Need at least one caretaker and one doctor");
+        }
+        this.log = log;
+        this.workStealing = workStealing;
+        this.openThreshold = openThreshold;
+        openByWaiting = new ShortestQueueIndex(Math.max(openThreshold, 1));
+        caretakerBusy = new boolean[caretakerCount];
+        inIdleStack = new boolean[caretakerCount];
+        for (int i = 0; i < caretakerCount; i++) {
+            openCaretaker();
+        }
+        freeDoctors = new int[doctorCount];
+        for (int i = 0; i < doctorCount; i++) {
+            freeDoctors[i] = doctorCount - i;
+        }
+        freeDoctorCount = doctorCount;
+    }
+
+    // Check if caretakers open and close with the live queues (final: the constructor relies on it)
+    public final boolean isOnDemand() {
+        return openThreshold > 0;
+    }
+
+    // Open a caretaker with an empty queue and return them: the closed one with the lowest ID, who
+    // starts another shift with a fresh copy of the dequeue policy, or a new one if none is closed
+    private CaretakerProcessor openCaretaker() {
+        int closedIndex = caretakerClosed.nextSetBit(0);
+        CaretakerProcessor caretaker;
+        if (closedIndex >= 0) {
+            caretakerClosed.clear(closedIndex);
+            caretaker = caretakers.get(closedIndex);
+            caretaker.getQueue().setDequeuePolicy(dequeuePolicy);
+        } else {
+            int queueId = caretakers.size() + 1;
+            if (queueId > caretakerBusy.length) {
+                int capacity = caretakerBusy.length * 2;
+                caretakerBusy = Arrays.copyOf(caretakerBusy, capacity);
+                inIdleStack = Arrays.copyOf(inIdleStack, capacity);
+            }
+            caretaker = new CaretakerProcessor(new AdaptiveQueue(queueId), log);
+            caretakers.add(caretaker);
+            caretaker.getQueue().setDequeuePolicy(dequeuePolicy);
+            if (offHeapQueues) {
+                caretaker.getQueue().enableOffHeap(OFF_HEAP_CHUNK_RECORDS);
+            }
+            if (caretakerStatistics) {
+                caretaker.enableStatistics();
+            }
+        }
+        int queueId = caretaker.getQueueId();
+        openCaretakers.add(caretaker);
+        openedCaretakers++;
+        peakOpenCaretakers = Math.max(peakOpenCaretakers, openCaretakers.size());
+        if (isOnDemand()) {
+            openByLoad.add(caretaker.getQueue(), 0);
+            openByWaiting.add(caretaker.getQueue(), 0);
+        }
+        if (workStealing) {
+            openByMostWaiting.add(queueId, 0);
+            pushIdle(queueId);
+        }
+        if (running) {
+            // Caretakers opened before the day starts log their start in run()
+            caretaker.logShiftStart();
+        }
+        return caretaker;
+    }
+
+    // Close an idle caretaker with an empty queue until more caretakers are needed
+    private void closeCaretaker(int queueId) {
+        CaretakerProcessor caretaker = caretakers.get(queueId - 1);
+        caretakerClosed.set(queueId - 1);
+        openCaretakers.remove(caretaker);
+        openByLoad.remove(caretaker.getQueue());
+        openByWaiting.remove(caretaker.getQueue());
+        if (workStealing) {
+            openByMostWaiting.remove(queueId);
+        }
+        caretaker.getQueue().releaseOffHeapMemory();
+        caretaker.logShiftEnd();
+    }
+
+    // Have every caretaker, including those opened later, keep statistics of their own patients
+    public void enableCaretakerStatistics() {
+        caretakerStatistics = true;
+        for (CaretakerProcessor caretaker : caretakers) {
+            caretaker.enableStatistics();
+        }
+    }
+
+    // Have every caretaker queue, including those opened later, keep its patients outside the Java
+    // heap; needs the strict dequeue policy and no work stealing
+    public void enableOffHeapQueues() {
+        if (workStealing) {
+            throw new IllegalStateException("Off-heap caretaker queues cannot be stolen from");
+        }
+        offHeapQueues = true;
+        for (CaretakerProcessor caretaker : caretakers) {
+            caretaker.getQueue().enableOffHeap(OFF_HEAP_CHUNK_RECORDS);
+        }
+    }
+
+    // Set how every caretaker, including those opened later, picks their next patient
+    // (strict critical-first unless set); each queue gets its own copy of the policy
+    public void setDequeuePolicy(DequeuePolicy policy) {
+        dequeuePolicy = policy;
+        for (CaretakerProcessor caretaker : caretakers) {
+            caretaker.getQueue().setDequeuePolicy(policy);
+        }
+    }
+
+    // Hand the running statistics to a listener every intervalMinutes of virtual time, together
+    // with the time of the snapshot (the listener must not keep or change them)
+    public void setSnapshotListener(double intervalMinutes, ObjDoubleConsumer<PatientStatistics> listener) {
+        if (!(intervalMinutes > 0)) {
+            throw new IllegalArgumentException("Snapshot interval must be positive, got " + intervalMinutes);
+        }
+        snapshotInterval = intervalMinutes;
+        snapshotListener = listener;
+        nextSnapshotTime = START_OF_DAY + intervalMinutes;
+    }
+
+    // Hand the simulation to a listener every intervalMillis of wall-clock time, between two events,
+    // so it can save a checkpoint with writeState()
+    public void setCheckpointListener(long intervalMillis, Consumer<EventDrivenSimulation> listener) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive, got " + intervalMillis);
+        }
+        checkpointIntervalNanos = intervalMillis * 1_000_000;
+        checkpointListener = listener;
+        nextCheckpointNanos = System.nanoTime() + checkpointIntervalNanos;
+    }
+
+    // Run the day for patients given in arrival order. Normal and critical patients go to the
+    // caretaker queue set by their assigned queue ID, emergency patients go to the doctors.
+    public void run(Iterator<? extends CriticalPatient> arrivals) {
+        if (restored) {
+            throw new IllegalStateException("A restored day continues with resume()");
+        }
+        this.arrivals = arrivals;
+        for (CaretakerProcessor caretaker : caretakers) {
+            caretaker.logShiftStart();
+        }
+        running = true;
+        scheduleNextArrival();
+        processEvents();
+    }
+
+    // Continue a day restored by restoreState(). The arrivals must be the same patients the
+    // interrupted run was given, from the first; the ones it had already read are skipped.
+    public void resume(Iterator<? extends CriticalPatient> arrivals) {
+        if (!restored || running) {
+            throw new IllegalStateException("Only a day restored from a checkpoint can be resumed");
+        }
+        skip(arrivals, arrivalsRead);
+        this.arrivals = arrivals;
+        running = true;
+        processEvents();
+    }
+
+    // Skip patients already read before a checkpoint, without creating them where the source allows
+    private static void skip(Iterator<? extends CriticalPatient> arrivals, long count) {
+        if (arrivals instanceof PatientGenerator) {
+            ((PatientGenerator) arrivals).skip(count);
+        } else if (arrivals instanceof PatientTraceReader) {
+            ((PatientTraceReader) arrivals).skip(count);
+        } else {
+            for (long i = 0; i < count; i++) {
+                if (!arrivals.hasNext()) {
+                    throw new IllegalArgumentException("The checkpoint had read " + count
+                            + " arrivals, but the patients run out after " + i);
+                }
+                arrivals.next();
+            }
+        }
+    }
+
+    // Process events until none are left, then end the open caretakers' shifts
+    private void processEvents() {
+        while (!eventHeap.isEmpty()) {
+            checkpointIfDue();
+            SimulationEvent event = eventHeap.poll();
+            takeSnapshotsUntil(event.getTime());
+            currentTime = event.getTime();
+            processedEvents++;
+            switch (event.getType()) {
+                case ARRIVAL:
+                    handleArrival(event.getPatient());
+                    break;
+                case SERVICE_START:
+                    if (event.isDoctor()) {
+                        startDoctorService(event.getServerId());
+                    } else {
+                        startCaretakerService(event.getServerId());
+                    }
+                    break;
+                case DEPARTURE:
+                    if (event.isDoctor()) {
+                        finishDoctorService(event.getServerId(), event.getPatient());
+                    } else {
+                        finishCaretakerService(event.getServerId(), event.getPatient());
+                    }
+                    break;
+            }
+        }
+
+        for (CaretakerProcessor caretaker : openCaretakers) {
+            caretaker.logShiftEnd();
+        }
+    }
+
+    // Hand the simulation to the checkpoint listener once its interval has passed; only every
+    // (CHECKPOINT_CHECK_MASK + 1)th event reads the clock
+    private void checkpointIfDue() {
+        if (checkpointListener != null && (processedEvents & CHECKPOINT_CHECK_MASK) == 0
+                && System.nanoTime() >= nextCheckpointNanos) {
+            checkpointListener.accept(this);
+            nextCheckpointNanos = System.nanoTime() + checkpointIntervalNanos;
+        }
+    }
+
+    // Report the statistics at every snapshot time up to the given time
+    private void takeSnapshotsUntil(double time) {
+        while (snapshotListener != null && nextSnapshotTime <= time) {
+            snapshotListener.accept(statistics, nextSnapshotTime);
+            nextSnapshotTime += snapshotInterval;
+        }
+    }
+
+    // Read the next patient from the source and put their arrival on the heap
+    private void scheduleNextArrival() {
+        if (!arrivals.hasNext()) {
+            return;
+        }
+        CriticalPatient patient = arrivals.next();
+        arrivalsRead++;
+        if (patient.getArrivalTime() < lastArrivalTime) {
+            throw new IllegalArgumentException("Patients must be given in arrival order");
+        }
+        lastArrivalTime = patient.getArrivalTime();
+        schedule(patient.getArrivalTime(), SimulationEvent.Type.ARRIVAL, patient, 0, false);
+    }
+
+    // A patient walks in: queue them and wake up their server if it is idle
+    private void handleArrival(CriticalPatient patient) {
+        // Only one future arrival is on the heap at a time, so memory does not grow with the day
+        scheduleNextArrival();
+
+        if (patient.getPriority() == 2) {
+            waitingEmergencies.addLast(patient);
+            if (freeDoctorCount > 0) {
+                int doctorId = freeDoctors[--freeDoctorCount];
+                schedule(currentTime, SimulationEvent.Type.SERVICE_START, null, doctorId, true);
+            }
+            return;
+        }
+
+        if (isOnDemand()) {
+            patient.setAssignedQueueId(pickOpenCaretaker().getQueueId());
+        }
+        int queueId = patient.getAssignedQueueId();
+        if (queueId < 1 || queueId > caretakers.size()) {
+            throw new IllegalArgumentException("Patient " + patient.getPatientId()
+                    + " has no valid caretaker queue: " + queueId);
+        }
+        caretakers.get(queueId - 1).getQueue().enqueue(patient);
+        boolean wasBusy = caretakerBusy[queueId - 1];
+        if (!wasBusy) {
+            wakeCaretaker(queueId);
+        }
+        refreshLoad(queueId);
+        if (wasBusy && workStealing) {
+            // The assigned caretaker is busy: let an idle one come and take over work
+            while (!idleCaretakers.isEmpty()) {
+                int idleId = idleCaretakers.pop();
+                inIdleStack[idleId - 1] = false;
+                if (!caretakerBusy[idleId - 1] && !caretakerClosed.get(idleId - 1)) {
+                    wakeCaretaker(idleId);
+                    break;
+                }
+            }
+        }
+    }
+
+    // Pick the open caretaker with the fewest patients (waiting plus in treatment), opening a new
+    // one if every open queue already has openThreshold patients waiting
+    private CaretakerProcessor pickOpenCaretaker() {
+        if (openByLoad.size() == 0 || openByWaiting.allAtThreshold()) {
+            return openCaretaker();
+        }
+        return caretakers.get(openByLoad.shortest().getQueueId() - 1);
+    }
+
+    // Tell the open-queue indexes about a caretaker's current load (on-demand mode and work stealing)
+    private void refreshLoad(int queueId) {
+        if (caretakerClosed.get(queueId - 1)) {
+            return;
+        }
+        AdaptiveQueue queue = caretakers.get(queueId - 1).getQueue();
+        int waiting = queue.size();
+        if (workStealing) {
+            openByMostWaiting.update(queueId, -waiting);
+        }
+        if (isOnDemand()) {
+            openByLoad.update(queue, waiting + (caretakerBusy[queueId - 1] ? 1 : 0));
+            openByWaiting.update(queue, waiting);
+        }
+    }
+
+    // Take over a patient for an idle caretaker from the open queue with the most patients waiting
+    // (lowest queue ID among equals) whose caretaker is in treatment past the current time, or
+    // return null if there is none. Costs O(log k) for k open queues; queues passed over (rare:
+    // their caretaker is about to pick a patient at this very time) are put back afterwards.
+    private CriticalPatient stealPatient(CaretakerProcessor thief) {
+        CriticalPatient patient = null;
+        int passedOver = 0;
+        while (openByMostWaiting.shortestLoad() < 0) {
+            int victimId = openByMostWaiting.shortestId();
+            CaretakerProcessor victim = caretakers.get(victimId - 1);
+            if (victim != thief && victim.getBusyUntil() > currentTime) {
+                patient = thief.stealFrom(victim, currentTime);
+                if (patient != null) {
+                    break;
+                }
+            }
+            if (passedOver == passedOverQueues.length) {
+                passedOverQueues = Arrays.copyOf(passedOverQueues, passedOver * 2);
+            }
+            passedOverQueues[passedOver++] = victimId;
+            openByMostWaiting.remove(victimId);
+        }
+        for (int i = 0; i < passedOver; i++) {
+            int queueId = passedOverQueues[i];
+            openByMostWaiting.add(queueId, -caretakers.get(queueId - 1).getQueue().size());
+        }
+        return patient;
+    }
+
+    // Remember an idle caretaker so a later arrival can wake them to steal work
+    private void pushIdle(int queueId) {
+        if (!inIdleStack[queueId - 1]) {
+            inIdleStack[queueId - 1] = true;
+            idleCaretakers.push(queueId);
+        }
+    }
+
+    // Mark a caretaker busy and have them pick a patient at the current time
+    private void wakeCaretaker(int queueId) {
+        caretakerBusy[queueId - 1] = true;
+        // Scheduled rather than started here so that patients arriving at the same
+        // moment are all queued before the caretaker picks (critical first)
+        schedule(currentTime, SimulationEvent.Type.SERVICE_START, null, queueId, false);
+    }
+
+    // A caretaker picks the next patient from their queue as its dequeue policy says (critical first by default)
+    private void startCaretakerService(int queueId) {
+        CaretakerProcessor caretaker = caretakers.get(queueId - 1);
+        CriticalPatient patient = caretaker.getQueue().dequeue();
+        if (patient == null && workStealing) {
+            patient = stealPatient(caretaker);
+            if (patient != null) {
+                // The patient keeps the ID of the queue they were taken from
+                refreshLoad(patient.getAssignedQueueId());
+            }
+        }
+        if (patient == null) {
+            caretakerBusy[queueId - 1] = false;
+            refreshLoad(queueId);
+            if (isOnDemand() && openCaretakers.size() > 1) {
+                // Not needed any more; the remaining caretakers take the next arrivals
+                closeCaretaker(queueId);
+            } else if (workStealing) {
+                // Nothing left to do here, wait for the next arrival
+                pushIdle(queueId);
+            }
+            return;
+        }
+        refreshLoad(queueId);
+        double departureTime = caretaker.treatPatient(patient, currentTime);
+        schedule(departureTime, SimulationEvent.Type.DEPARTURE, patient, queueId, false);
+    }
+
+    // A caretaker finishes a patient and either takes the next one or goes idle
+    private void finishCaretakerService(int queueId, CriticalPatient patient) {
+        statistics.record(patient);
+        // Look for the next patient; going idle (and closing, on demand) is handled there
+        schedule(currentTime, SimulationEvent.Type.SERVICE_START, null, queueId, false);
+    }
+
+    // A doctor takes the longest-waiting emergency patient
+    private void startDoctorService(int doctorId) {
+        CriticalPatient patient = waitingEmergencies.pollFirst();
+        patient.setWaitingTime(Math.max(0, currentTime - patient.getArrivalTime()));
+        double departureTime = currentTime + patient.getServiceTime();
+        patient.setDepartureTime(departureTime);
+        if (log != null) {
+            log.doctorStarted(doctorId, patient.getPatientId(), currentTime);
+        }
+        schedule(departureTime, SimulationEvent.Type.DEPARTURE, patient, doctorId, true);
+    }
+
+    // A doctor finishes a patient and either takes the next one or becomes free
+    private void finishDoctorService(int doctorId, CriticalPatient patient) {
+        statistics.record(patient);
+        if (log != null) {
+            log.doctorFinished(doctorId, patient.getPatientId(), currentTime);
+        }
+        if (waitingEmergencies.isEmpty()) {
+            freeDoctors[freeDoctorCount++] = doctorId;
+        } else {
+            schedule(currentTime, SimulationEvent.Type.SERVICE_START, null, doctorId, true);
+        }
+    }
+
+    // Put a new event on the heap
+    private void schedule(double time, SimulationEvent.Type type, CriticalPatient patient, int serverId,
+                          boolean doctor) {
+        eventHeap.add(new SimulationEvent(time, nextSequence++, type, patient, serverId, doctor));
+    }
+
+    // Save everything the day has in flight, between two events: the setup (checked on restore),
+    // clocks and counters, each caretaker with their queue, the open and idle caretakers, the free
+    // doctors and waiting emergencies, the pending events with their patients, and the statistics
+    public void writeState(DataOutput out) throws IOException {
+        out.writeInt(caretakers.size());
+        out.writeInt(freeDoctors.length);
+        out.writeBoolean(workStealing);
+        out.writeInt(openThreshold);
+
+        out.writeDouble(currentTime);
+        out.writeLong(nextSequence);
+        out.writeLong(processedEvents);
+        out.writeLong(arrivalsRead);
+        out.writeDouble(lastArrivalTime);
+        out.writeInt(peakOpenCaretakers);
+        out.writeLong(openedCaretakers);
+        out.writeDouble(nextSnapshotTime);
+
+        if (savedCaretakerStates.length < caretakers.size()) {
+            savedCaretakerStates = Arrays.copyOf(savedCaretakerStates, caretakerBusy.length);
+            savedChangeCounts = Arrays.copyOf(savedChangeCounts, caretakerBusy.length);
+        }
+        for (int i = 0; i < caretakers.size(); i++) {
+            CaretakerProcessor caretaker = caretakers.get(i);
+            long changes = caretaker.getChangeCount();
+            if (savedCaretakerStates[i] == null || savedChangeCounts[i] != changes) {
+                caretakerBytes.reset();
+                caretaker.writeState(caretakerOut);
+                savedCaretakerStates[i] = caretakerBytes.toByteArray();
+                savedChangeCounts[i] = changes;
+            }
+            out.writeBoolean(caretakerBusy[i]);
+            out.writeBoolean(caretakerClosed.get(i));
+            out.write(savedCaretakerStates[i]);
+        }
+        out.writeInt(openCaretakers.size());
+        for (CaretakerProcessor caretaker : openCaretakers) {
+            out.writeInt(caretaker.getQueueId());
+        }
+        // Bottom of the stack first, so pushing them back in this order rebuilds it
+        out.writeInt(idleCaretakers.size());
+        for (Iterator<Integer> ids = idleCaretakers.descendingIterator(); ids.hasNext(); ) {
+            out.writeInt(ids.next());
+        }
+        out.writeInt(freeDoctorCount);
+        for (int i = 0; i < freeDoctorCount; i++) {
+            out.writeInt(freeDoctors[i]);
+        }
+        out.writeInt(waitingEmergencies.size());
+        for (CriticalPatient patient : waitingEmergencies) {
+            SimulationCheckpoint.writePatient(out, patient);
+        }
+        // Heap order does not matter: (time, sequence) puts them back in the same order
+        out.writeInt(eventHeap.size());
+        for (SimulationEvent event : eventHeap) {
+            out.writeDouble(event.getTime());
+            out.writeLong(event.getSequence());
+            out.writeByte(event.getType().ordinal());
+            out.writeInt(event.getServerId());
+            out.writeBoolean(event.isDoctor());
+            out.writeBoolean(event.getPatient() != null);
+            if (event.getPatient() != null) {
+                SimulationCheckpoint.writePatient(out, event.getPatient());
+            }
+        }
+        statistics.writeState(out);
+    }
+
+    // Load a day saved by writeState() into this simulation, which must be new and set up the same
+    // way (caretakers up front, doctors, stealing, threshold, dequeue policy and caretaker
+    // statistics); caretakers opened later in the saved day are opened here too. Continue with resume().
+    public void restoreState(DataInput in) throws IOException {
+        if (running || restored) {
+            throw new IllegalStateException("Only a simulation that has not run yet can be restored");
+        }
+        int caretakerCount = SimulationCheckpoint.readCount(in);
+        int doctorCount = in.readInt();
+        boolean savedWorkStealing = in.readBoolean();
+        int savedOpenThreshold = in.readInt();
+        if (caretakerCount < caretakers.size() || doctorCount != freeDoctors.length
+                || savedWorkStealing != workStealing || savedOpenThreshold != openThreshold) {
+            throw new IllegalArgumentException("Checkpoint is of a different setup: " + caretakerCount
+                    + " caretakers, " + doctorCount + " doctors, work stealing " + savedWorkStealing
+                    + ", open threshold " + savedOpenThreshold);
+        }
+        while (caretakers.size() < caretakerCount) {
+            openCaretaker();
+        }
+
+        currentTime = in.readDouble();
+        nextSequence = in.readLong();
+        processedEvents = in.readLong();
+        arrivalsRead = in.readLong();
+        lastArrivalTime = in.readDouble();
+        peakOpenCaretakers = in.readInt();
+        openedCaretakers = in.readLong();
+        nextSnapshotTime = in.readDouble();
+
+        for (int i = 0; i < caretakerCount; i++) {
+            caretakerBusy[i] = in.readBoolean();
+            caretakerClosed.set(i, in.readBoolean());
+            caretakers.get(i).readState(in);
+        }
+        openCaretakers.clear();
+        for (CaretakerProcessor caretaker : caretakers) {
+            if (openByLoad.contains(caretaker.getQueue())) {
+                openByLoad.remove(caretaker.getQueue());
+                openByWaiting.remove(caretaker.getQueue());
+            }
+            if (openByMostWaiting.contains(caretaker.getQueue())) {
+                openByMostWaiting.remove(caretaker.getQueueId());
+            }
+        }
+        int openCount = SimulationCheckpoint.readCount(in);
+        for (int i = 0; i < openCount; i++) {
+            CaretakerProcessor caretaker = caretakerById(in.readInt());
+            openCaretakers.add(caretaker);
+            if (isOnDemand()) {
+                // The indexes only answer by (load, queue ID), so adding the loads again is enough
+                int waiting = caretaker.getQueue().size();
+                openByLoad.add(caretaker.getQueue(), waiting + (caretakerBusy[caretaker.getQueueId() - 1] ? 1 : 0));
+                openByWaiting.add(caretaker.getQueue(), waiting);
+            }
+            if (workStealing) {
+                openByMostWaiting.add(caretaker.getQueueId(), -caretaker.getQueue().size());
+            }
+        }
+        idleCaretakers.clear();
+        Arrays.fill(inIdleStack, false);
+        int idleCount = SimulationCheckpoint.readCount(in);
+        for (int i = 0; i < idleCount; i++) {
+            int queueId = caretakerById(in.readInt()).getQueueId();
+            idleCaretakers.push(queueId);
+            inIdleStack[queueId - 1] = true;
+        }
+        freeDoctorCount = in.readInt();
+        if (freeDoctorCount < 0 || freeDoctorCount > doctorCount) {
+            throw new IOException("Corrupt checkpoint: " + freeDoctorCount + " free doctors of " + doctorCount);
+        }
+        for (int i = 0; i < freeDoctorCount; i++) {
+            freeDoctors[i] = in.readInt();
+        }
+        int waitingCount = SimulationCheckpoint.readCount(in);
+        for (int i = 0; i < waitingCount; i++) {
+            waitingEmergencies.addLast(SimulationCheckpoint.readPatient(in));
+        }
+        SimulationEvent.Type[] types = SimulationEvent.Type.values();
+        int eventCount = SimulationCheckpoint.readCount(in);
+        for (int i = 0; i < eventCount; i++) {
+            double time = in.readDouble();
+            long sequence = in.readLong();
+            int type = in.readByte();
+            if (type < 0 || type >= types.length) {
+                throw new IOException("Corrupt checkpoint: event type " + type);
+            }
+            int serverId = in.readInt();
+            boolean doctor = in.readBoolean();
+            CriticalPatient patient = in.readBoolean() ? SimulationCheckpoint.readPatient(in) : null;
+            eventHeap.add(new SimulationEvent(time, sequence, types[type], patient, serverId, doctor));
+        }
+        statistics.readState(in);
+        restored = true;
+    }
+
+    private CaretakerProcessor caretakerById(int queueId) throws IOException {
+        if (queueId < 1 || queueId > caretakers.size()) {
+            throw new IOException("Corrupt checkpoint: no caretaker " + queueId);
+        }
+        return caretakers.get(queueId - 1);
+    }
+
+    // Get how many patients have been read from the arrivals so far
+    public long getArrivalsRead() {
+        return arrivalsRead;
+    }
+
+    // Get the virtual clock (the time of the last processed event once the run is over)
+    public double getCurrentTime() {
+        return currentTime;
+    }
+
+    // Get how many events were processed
+    public long getProcessedEvents() {
+        return processedEvents;
+    }
+
+    // Get every caretaker of the day; on demand, a caretaker who closed and opened again is here once
+    public List<CaretakerProcessor> getCaretakers() {
+        return caretakers;
+    }
+
+    // Get how many times a caretaker was opened, counting each shift of a caretaker who opened again
+    public long getOpenedCaretakers() {
+        return openedCaretakers;
+    }
+
+    // Get the largest number of caretakers open at the same time
+    public int getPeakOpenCaretakers() {
+        return peakOpenCaretakers;
+    }
+
+    // Get the wait statistics of the patients who have left so far
+    public PatientStatistics getStatistics() {
+        return statistics;
+    }
+}
@@ -0,0 +1,38 @@
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// Which kind of threads run caretakers, emergency doctors and emergency patient submission
+public enum ExecutionStrategy {
+    // Regular OS threads (the original behavior); each one reserves a native stack
+    PLATFORM,
+    // JVM-scheduled virtual threads; a blocked caretaker or doctor costs a few hundred bytes
+    VIRTUAL;
+
+    // Create a factory whose threads are named prefix1, prefix2, ...
+    public ThreadFactory threadFactory(String namePrefix) {
+        if (this == VIRTUAL) {
+            return Thread.ofVirtual().name(namePrefix, 1).factory();
+        }
+        return Thread.ofPlatform().name(namePrefix, 1).factory();
+    }
+
+    // Create an unstarted thread with the given name
+    public Thread newThread(Runnable task, String name) {
+        if (this == VIRTUAL) {
+            return Thread.ofVirtual().name(name).unstarted(task);
+        }
+        return Thread.ofPlatform().name(name).unstarted(task);
+    }
+
+    // Create an executor that runs at most the given number of tasks at a time
+    public ExecutorService newFixedPool(int threads, String namePrefix) {
+        return Executors.newFixedThreadPool(threads, threadFactory(namePrefix));
+    }
+
+    // Parse "platform" or "virtual" (any case)
+    public static ExecutionStrategy parse(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
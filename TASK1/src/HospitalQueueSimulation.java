@@ -1,82 +1,530 @@
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.ObjDoubleConsumer;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
 
 // This class simulates a hospital managing patients with caretakers and emergency doctors
 public class HospitalQueueSimulation {
-    // Thresholds to decide patient types (out of 100)
-    private static final int QUEUE_THRESHOLD = 25; // Max patients per caretaker queue
-    private static final int NORMAL_THRESHOLD = 80; // 80% chance for normal patients
-    private static final int CRITICAL_THRESHOLD = 95; // 15% chance for critical (80-95)
-
-    public static void main(String[] args) throws InterruptedException {
-        Random rand = new Random();
-        int numPatients = 100; // Simulate 100 patients
-        double currentArrivalTime = 480; // Start at 8:00 AM (480 minutes)
-        List<AdaptiveQueue> caretakerQueues = new ArrayList<>();
-        caretakerQueues.add(new AdaptiveQueue(1)); // Start with one caretaker queue
+    static final int QUEUE_THRESHOLD = 25; // Max patients per caretaker queue
+
+    static final int EMERGENCY_DOCTORS = 5; // Default size of the emergency team
+    // Elastic team tuning (real-time mode): add a doctor when more than 2 patients wait or the
+    // oldest has waited over 2 minutes (200 ms), retire one after 10 idle minutes (1 s)
+    private static final int SCALE_UP_BACKLOG = 2;
+    private static final long SCALE_UP_WAIT_MILLIS = 200;
+    private static final long DOCTOR_IDLE_MILLIS = 1000;
+    private static final int SUBMISSION_THREADS = 1; // One submitter keeps emergency patients in arrival order
+    private static final int LOG_BUFFER = 8192; // Log records that can wait for the writer thread
+    private static final int PIPELINE_NORMAL_PROCESSORS = 3; // Default pipeline processors for normal patients
+    private static final int PIPELINE_CRITICAL_PROCESSORS = 1; // ... and for critical patients
+    static final String DEFAULT_RNG = "SplittableRandom"; // Generator algorithm for patient generation
+    private static final long CHECKPOINT_EVERY_SECONDS = 60; // Default wall-clock time between checkpoints
+
+    // Options: --real-time (threads and wall-clock doctors instead of the event engine),
+    // --patients=N, --seed=S (reproducible patients), --rng=ALGORITHM (any java.util.random
+    // generator, e.g. L64X128MixRandom), --quiet (summary only),
+    // --doctors=N (emergency team size), --max-doctors=M (real-time: elastic team of N to M doctors),
+    // --threads=platform|virtual (real-time: thread kind for caretakers, doctors and submissions),
+    // --work-stealing (idle caretakers take over patients from the most loaded queue),
+    // --streaming (event engine: patients arrive one by one and caretakers open/close with the live queues),
+    // --off-heap (streaming: caretaker queues keep their patients outside the Java heap; strict
+    // --dequeue and no --work-stealing),
+    // --routing=shortest|two-choices (shortest queue, or the shorter of two random queues),
+    // --log-file=PATH (write the processing log to a file), --log-buffer=N (log ring buffer size),
+    // --log-policy=block|drop (when the log buffer is full: wait for room, or skip the record),
+    // --columnar (event engine over a column store of patients, for very large days),
+    // --snapshot-every=MIN (event engine: print wait percentiles every MIN minutes of virtual time),
+    // --arrivals=uniform:MIN,MAX|poisson:RATE|bursty:QUIET,BURST,QUIET_MIN,BURST_MIN|time-of-day[:R0,...,R23]
+    // (rates in patients per hour), --mix=NORMAL,CRITICAL (percent; the rest are emergencies),
+    // --caretaker-service=, --emergency-service= (gaussian:MEAN,SD|exponential:MEAN|lognormal:MEAN,SD|fixed:MIN),
+    // --record-trace=PATH (save the day's patients to a binary trace), --replay-trace=PATH (take the
+    // patients from a trace instead of generating them; --patients and the workload are ignored)
+    // --dequeue=strict|wfq:W0,W1[,W2]|aging:MIN (how caretakers pick between critical and normal patients:
+    // critical first, fair shares by weight, or one level up per MIN minutes waited; --pipeline
+    // needs the emergency weight W2 too),
+    // --pipeline (QueueProcessor threads drain a MultiPriorityQueue while patients are still arriving),
+    // --processors=N0,N1,N2[,ANY] (pipeline: processors per level, plus ones taking any level as
+    // --dequeue picks), --batch=N (real-time and pipeline: most patients a caretaker or processor
+    // takes from its queue at once),
+    // --metrics-every=MS (real-time and pipeline: print live queue, caretaker and doctor metrics every
+    // MS milliseconds), --jmx (real-time and pipeline: show the same metrics as hospital:type=* MBeans),
+    // --checkpoint=PATH (event engine: save the run's state to PATH every --checkpoint-every=SEC
+    // seconds, 60 by default), --resume=PATH (finish the run of a checkpoint, with its saved options;
+    // give no others)
+    public static void main(String[] args) throws InterruptedException, IOException {
+        SimulationCheckpoint.Saved resumeFrom = null;
+        if (Arrays.stream(args).anyMatch(arg -> arg.startsWith("--resume="))) {
+            if (args.length != 1) {
+                throw new IllegalArgumentException("--resume runs with the options saved in the checkpoint: give no others");
+            }
+            resumeFrom = SimulationCheckpoint.load(Path.of(args[0].substring("--resume=".length())));
+            args = resumeFrom.getOptions().toArray(new String[0]);
+        }
+        SimulationMode mode = SimulationMode.DISCRETE_EVENT;
+        int numPatients = 100; // Simulate 100 patients by default
+        Long seed = null;
+        String rng = DEFAULT_RNG;
+        Workload workload = Workload.standard();
+        boolean quiet = false;
+        int doctors = EMERGENCY_DOCTORS;
+        Integer maxDoctors = null;
+        ExecutionStrategy threads = ExecutionStrategy.PLATFORM;
+        boolean workStealing = false;
+        boolean streaming = false;
+        boolean offHeap = false;
+        boolean twoChoices = false;
+        boolean columnar = false;
+        double snapshotEvery = 0;
+        DequeuePolicy dequeuePolicy = DequeuePolicy.strict();
+        int[] processors = null;
+        int batchSize = 1;
+        long metricsEvery = 0;
+        boolean jmx = false;
+        String checkpointPath = null;
+        long checkpointEvery = CHECKPOINT_EVERY_SECONDS;
+        String recordTrace = null;
+        String replayTrace = null;
+        String logFile = null;
+        int logBuffer = LOG_BUFFER;
+        AsyncLogSink.OverflowPolicy logPolicy = AsyncLogSink.OverflowPolicy.BLOCK;
+        for (String arg : args) {
+            Workload changedWorkload = workload.withOption(arg);
+            if (changedWorkload != null) {
+                workload = changedWorkload;
+            } else if (arg.equals("--real-time")) {
+                mode = SimulationMode.REAL_TIME;
+            } else if (arg.equals("--pipeline")) {
+                mode = SimulationMode.PIPELINE;
+            } else if (arg.startsWith("--processors=")) {
+                processors = Arrays.stream(arg.substring("--processors=".length()).split(","))
+                        .mapToInt(part -> Integer.parseInt(part.trim())).toArray();
+                if (processors.length < 3 || processors.length > 4) {
+                    throw new IllegalArgumentException("--processors takes N0,N1,N2 or N0,N1,N2,ANY");
+                }
+            } else if (arg.startsWith("--batch=")) {
+                batchSize = Integer.parseInt(arg.substring("--batch=".length()));
+                if (batchSize < 1) {
+                    throw new IllegalArgumentException("--batch must be at least 1");
+                }
+            } else if (arg.startsWith("--metrics-every=")) {
+                metricsEvery = Long.parseLong(arg.substring("--metrics-every=".length()));
+                if (metricsEvery <= 0) {
+                    throw new IllegalArgumentException("--metrics-every must be a positive number of milliseconds");
+                }
+            } else if (arg.equals("--jmx")) {
+                jmx = true;
+            } else if (arg.startsWith("--checkpoint=")) {
+                checkpointPath = arg.substring("--checkpoint=".length());
+            } else if (arg.startsWith("--checkpoint-every=")) {
+                checkpointEvery = Long.parseLong(arg.substring("--checkpoint-every=".length()));
+                if (checkpointEvery <= 0) {
+                    throw new IllegalArgumentException("--checkpoint-every must be a positive number of seconds");
+                }
+            } else if (arg.startsWith("--doctors=")) {
+                doctors = Integer.parseInt(arg.substring("--doctors=".length()));
+            } else if (arg.startsWith("--max-doctors=")) {
+                maxDoctors = Integer.parseInt(arg.substring("--max-doctors=".length()));
+            } else if (arg.startsWith("--threads=")) {
+                threads = ExecutionStrategy.parse(arg.substring("--threads=".length()));
+            } else if (arg.startsWith("--patients=")) {
+                numPatients = Integer.parseInt(arg.substring("--patients=".length()));
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            } else if (arg.startsWith("--rng=")) {
+                rng = arg.substring("--rng=".length());
+            } else if (arg.equals("--streaming")) {
+                streaming = true;
+            } else if (arg.equals("--off-heap")) {
+                offHeap = true;
+            } else if (arg.equals("--work-stealing")) {
+                workStealing = true;
+            } else if (arg.startsWith("--routing=")) {
+                String routing = arg.substring("--routing=".length());
+                if (routing.equals("two-choices")) {
+                    twoChoices = true;
+                } else if (!routing.equals("shortest")) {
+                    throw new IllegalArgumentException("Unknown routing: " + routing);
+                }
+            } else if (arg.startsWith("--log-file=")) {
+                logFile = arg.substring("--log-file=".length());
+            } else if (arg.startsWith("--log-buffer=")) {
+                logBuffer = Integer.parseInt(arg.substring("--log-buffer=".length()));
+            } else if (arg.startsWith("--log-policy=")) {
+                logPolicy = AsyncLogSink.OverflowPolicy.valueOf(
+                        arg.substring("--log-policy=".length()).toUpperCase(Locale.ROOT));
+            } else if (arg.equals("--columnar")) {
+                columnar = true;
+            } else if (arg.startsWith("--snapshot-every=")) {
+                snapshotEvery = Double.parseDouble(arg.substring("--snapshot-every=".length()));
+                if (!(snapshotEvery > 0)) {
+                    throw new IllegalArgumentException("--snapshot-every must be a positive number of minutes");
+                }
+            } else if (arg.startsWith("--dequeue=")) {
+                dequeuePolicy = DequeuePolicy.parse(arg.substring("--dequeue=".length()));
+            } else if (arg.startsWith("--record-trace=")) {
+                recordTrace = arg.substring("--record-trace=".length());
+            } else if (arg.startsWith("--replay-trace=")) {
+                replayTrace = arg.substring("--replay-trace=".length());
+            } else if (arg.equals("--quiet")) {
+                quiet = true;
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        // Options saved with checkpoints: everything needed to produce the same day again
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (checkpointPath != null || resumeFrom != null) {
+            if (mode != SimulationMode.DISCRETE_EVENT || columnar) {
+                throw new IllegalArgumentException("--checkpoint and --resume run on the event engine: "
+                        + "not with --real-time, --pipeline or --columnar");
+            }
+            if (recordTrace != null) {
+                throw new IllegalArgumentException("--record-trace cannot be resumed: record the day in a run "
+                        + "without --checkpoint");
+            }
+            if (seed == null && replayTrace == null) {
+                // A resumed run generates the day again, so it must be the same day
+                seed = new SplittableRandom().nextLong();
+                options.add("--seed=" + seed);
+            }
+        }
+        SimulationCheckpoint checkpoint = checkpointPath == null ? null
+                : new SimulationCheckpoint(Path.of(checkpointPath), options, checkpointEvery * 1000);
+        RandomGenerator rand = newRandomGenerator(rng, seed);
+        if (mode == SimulationMode.PIPELINE && (streaming || columnar || workStealing || twoChoices
+                || snapshotEvery > 0)) {
+            throw new IllegalArgumentException("--pipeline takes patients straight from the producer: "
+                    + "no --streaming, --columnar, --work-stealing, --routing or --snapshot-every");
+        }
+        if (processors == null) {
+            // Enough for the standard day's normal and critical load, the emergency team for emergencies
+            processors = new int[]{PIPELINE_NORMAL_PROCESSORS, PIPELINE_CRITICAL_PROCESSORS, doctors};
+        }
+        for (int level = 0; level < 3; level++) {
+            if (processors[level] == 0 && (processors.length < 4 || processors[3] == 0)) {
+                throw new IllegalArgumentException("--processors leaves nobody to take "
+                        + PatientStatistics.getPriorityName(level) + " patients");
+            }
+        }
+        if (columnar && (mode == SimulationMode.REAL_TIME || streaming || workStealing || twoChoices)) {
+            throw new IllegalArgumentException(
+                    "--columnar runs the event engine with shortest-queue assignment only");
+        }
+        if (maxDoctors != null) {
+            if (mode != SimulationMode.REAL_TIME) {
+                throw new IllegalArgumentException("--max-doctors grows the doctor team of a --real-time run: "
+                        + "use it with --real-time");
+            }
+            if (maxDoctors <= doctors) {
+                throw new IllegalArgumentException("--max-doctors must be more than --doctors (" + doctors
+                        + "), got " + maxDoctors);
+            }
+        }
+        if (snapshotEvery > 0 && mode == SimulationMode.REAL_TIME) {
+            throw new IllegalArgumentException("--snapshot-every runs on the event engine, not with --real-time");
+        }
+        if (batchSize > 1 && mode == SimulationMode.DISCRETE_EVENT) {
+            throw new IllegalArgumentException("--batch applies to caretaker and processor threads: use it with "
+                    + "--real-time or --pipeline");
+        }
+        if ((metricsEvery > 0 || jmx) && mode == SimulationMode.DISCRETE_EVENT) {
+            throw new IllegalArgumentException("--metrics-every and --jmx watch live threads: use them with "
+                    + "--real-time or --pipeline");
+        }
+        if (offHeap && (mode != SimulationMode.DISCRETE_EVENT || !streaming || workStealing
+                || !(dequeuePolicy instanceof DequeuePolicy.StrictPolicy))) {
+            throw new IllegalArgumentException("--off-heap holds the caretaker queues of a --streaming run: "
+                    + "strict --dequeue and no --work-stealing");
+        }
+        // Caretakers and doctors log through one asynchronous writer; --quiet turns logging off
+        AsyncLogSink log = null;
+        if (!quiet) {
+            if (logFile != null) {
+                // A resumed run carries on the log of the run it finishes
+                log = AsyncLogSink.toFile(logFile, logBuffer, logPolicy, resumeFrom != null);
+            } else {
+                System.out.println("\n======= PROCESSING LOG =======");
+                log = AsyncLogSink.toStdout(logBuffer, logPolicy);
+            }
+        }
+        // Live metrics, filled in as the run wires up its queues, caretakers and doctors (null = off)
+        Metrics metrics = null;
+        if (metricsEvery > 0 || jmx) {
+            metrics = new Metrics();
+            if (jmx) {
+                metrics.registerMBeans();
+            }
+            if (metricsEvery > 0) {
+                metrics.startReporting(metricsEvery, metricsPrinter(log));
+            }
+        }
+        if (streaming || mode == SimulationMode.PIPELINE) {
+            if (mode == SimulationMode.REAL_TIME) {
+                throw new IllegalArgumentException("--streaming runs on the event engine, not with --real-time");
+            }
+            if (twoChoices) {
+                throw new IllegalArgumentException("--routing=two-choices applies to up-front queue assignment, not --streaming");
+            }
+            // Patients are read from the trace, and recorded, one at a time as they arrive
+            try (PatientTraceReader replay = replayTrace == null ? null : new PatientTraceReader(Path.of(replayTrace));
+                 PatientTraceWriter recorder = recordTrace == null ? null : new PatientTraceWriter(Path.of(recordTrace))) {
+                Iterator<CriticalPatient> arrivals = replay != null ? replay
+                        : new PatientGenerator(numPatients, rand, workload);
+                if (recorder != null) {
+                    arrivals = recorder.recording(arrivals);
+                }
+                if (mode == SimulationMode.PIPELINE) {
+                    runPipeline(arrivals, processors, batchSize, dequeuePolicy, threads, metrics, log);
+                } else {
+                    runStreaming(arrivals, doctors, workStealing, offHeap, dequeuePolicy, snapshotEvery,
+                            checkpoint, resumeFrom, log);
+                }
+            }
+            return;
+        }
+        if (columnar) {
+            PatientStore store;
+            if (replayTrace != null) {
+                try (PatientTraceReader replay = new PatientTraceReader(Path.of(replayTrace))) {
+                    store = replay.readStore();
+                }
+            } else {
+                store = PatientStore.generate(numPatients, rand, workload);
+            }
+            if (recordTrace != null) {
+                try (PatientTraceWriter recorder = new PatientTraceWriter(Path.of(recordTrace))) {
+                    recorder.writeAll(store);
+                }
+            }
+            runColumnar(store, doctors, dequeuePolicy, snapshotEvery, log);
+            return;
+        }
+        List<CriticalPatient> allPatients = replayTrace != null
+                ? readTrace(Path.of(replayTrace))
+                : generatePatients(numPatients, rand, workload);
+        if (recordTrace != null) {
+            try (PatientTraceWriter recorder = new PatientTraceWriter(Path.of(recordTrace))) {
+                for (CriticalPatient patient : allPatients) {
+                    recorder.write(patient);
+                }
+            }
+        }
         List<EmergencyPatient> emergencyPatients = new ArrayList<>();
+        for (CriticalPatient patient : allPatients) {
+            if (patient.getPriority() == 2) {
+                emergencyPatients.add((EmergencyPatient) patient);
+            }
+        }
+        List<AdaptiveQueue> caretakerQueues = twoChoices
+                ? assignCaretakerQueuesTwoChoices(allPatients, rand)
+                : assignCaretakerQueues(allPatients);
+
+        List<CaretakerProcessor> caretakerProcessors;
+        PatientStatistics statistics;
+        if (mode == SimulationMode.REAL_TIME) {
+            EmergencyDoctorManager emergencyManager = maxDoctors != null
+                    ? new EmergencyDoctorManager(doctors, maxDoctors, SCALE_UP_BACKLOG, SCALE_UP_WAIT_MILLIS,
+                    DOCTOR_IDLE_MILLIS, threads, log)
+                    : new EmergencyDoctorManager(doctors, doctors, Integer.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE,
+                    threads, log);
+            for (AdaptiveQueue queue : caretakerQueues) {
+                queue.setDequeuePolicy(dequeuePolicy);
+            }
+            caretakerProcessors = runRealTime(caretakerQueues, emergencyPatients, emergencyManager, threads,
+                    workStealing, batchSize, metrics, log);
+            // Every caretaker and doctor thread kept its own statistics; combine them now that all are done
+            statistics = emergencyManager.getStatistics();
+            for (CaretakerProcessor caretaker : caretakerProcessors) {
+                statistics.merge(caretaker.getStatistics());
+            }
+        } else {
+            EventDrivenSimulation simulation =
+                    runDiscreteEvent(caretakerQueues.size(), doctors, allPatients, workStealing, dequeuePolicy,
+                    snapshotEvery, checkpoint, resumeFrom, log);
+            caretakerProcessors = simulation.getCaretakers();
+            statistics = simulation.getStatistics();
+        }
+
+        // Print a summary of the simulation
+        System.out.println("\n======= SIMULATION SUMMARY =======");
+        System.out.println("Total caretakers opened: " + caretakerQueues.size());
+        if (workStealing) {
+            int stolen = 0;
+            for (CaretakerProcessor caretaker : caretakerProcessors) {
+                stolen += caretaker.getStolenPatients();
+            }
+            System.out.println("Patients taken over by idle caretakers: " + stolen);
+        }
+        System.out.printf("Caretaker makespan: %.2f min | p99 caretaker wait: %.2f min%n",
+                statistics.getCaretakerMakespan(), statistics.getCaretakerWaits().getValueAtPercentile(99));
+        statistics.printSummary();
+        if (log != null) {
+            printCaretakerStatistics(caretakerProcessors);
+        }
+        printFinalMetrics(metrics);
+    }
+
+    // Create patients with random arrival times and types, in arrival order
+    static List<CriticalPatient> generatePatients(int numPatients, RandomGenerator rand) {
+        return generatePatients(numPatients, rand, Workload.standard());
+    }
+
+    // Create patients following a workload, in arrival order
+    static List<CriticalPatient> generatePatients(int numPatients, RandomGenerator rand, Workload workload) {
         List<CriticalPatient> allPatients = new ArrayList<>();
+        PatientGenerator generator = new PatientGenerator(numPatients, rand, workload);
+        while (generator.hasNext()) {
+            allPatients.add(generator.next());
+        }
+        return allPatients;
+    }
+
+    // Read every patient of a trace file, in the order they were recorded
+    static List<CriticalPatient> readTrace(Path path) throws IOException {
+        try (PatientTraceReader reader = new PatientTraceReader(path)) {
+            List<CriticalPatient> allPatients = new ArrayList<>((int) Math.min(reader.size(), Integer.MAX_VALUE));
+            while (reader.hasNext()) {
+                allPatients.add(reader.next());
+            }
+            return allPatients;
+        }
+    }
 
-        // Create patients with random arrival times and types
-        for (int i = 0; i < numPatients; i++) {
-            int patientType = assignPatientType(rand);
-            if (patientType == 2) { // Emergency patient
-                EmergencyPatient patient = new EmergencyPatient(i + 1);
-                patient.setArrivalTime(currentArrivalTime);
-                patient.setFasterServiceTime(); // Short treatment time (~5 min)
-                patient.setPriority(2);
-                emergencyPatients.add(patient);
-                allPatients.add(patient);
-            } else { // Normal or critical patient
-                CriticalPatient patient = new CriticalPatient(i + 1);
-                patient.setArrivalTime(currentArrivalTime);
-                double serviceTime = getGaussianRandom(10, 2); // ~10 min treatment
-                patient.setServiceTime(serviceTime);
-                patient.setPriority(patientType);
-                allPatients.add(patient);
-            }
-            // Space out arrivals randomly (1-6 minutes apart)
-            double interval = 1 + rand.nextDouble() * 5;
-            currentArrivalTime += interval;
-        }
-
-        // Sort patients by arrival time to process in order
-        allPatients.sort(Comparator.comparingDouble(CriticalPatient::getArrivalTime));
-
-        // Assign non-emergency patients to caretaker queues
+    // Put non-emergency patients into caretaker queues, opening a queue whenever all are full
+    static List<AdaptiveQueue> assignCaretakerQueues(List<CriticalPatient> allPatients) {
+        List<AdaptiveQueue> caretakerQueues = new ArrayList<>();
+        caretakerQueues.add(new AdaptiveQueue(1)); // Start with one caretaker queue
+        // Queues ordered by size, so the shortest queue and the "all full" check don't need a scan
+        ShortestQueueIndex queuesBySize = new ShortestQueueIndex(QUEUE_THRESHOLD);
+        queuesBySize.add(caretakerQueues.get(0), 0);
         for (CriticalPatient patient : allPatients) {
             if (patient.getPriority() == 2) { // Skip emergency patients
                 continue;
             }
-            // Check if existing queues are too full
-            boolean needNewQueue = true;
-            for (AdaptiveQueue queue : caretakerQueues) {
-                if (queue.size() < QUEUE_THRESHOLD) {
-                    needNewQueue = false;
-                    break;
-                }
-            }
             // Open a new queue if all are at capacity
-            if (needNewQueue) {
-                caretakerQueues.add(new AdaptiveQueue(caretakerQueues.size() + 1));
+            if (queuesBySize.allAtThreshold()) {
+                AdaptiveQueue newQueue = new AdaptiveQueue(caretakerQueues.size() + 1);
+                caretakerQueues.add(newQueue);
+                queuesBySize.add(newQueue, 0);
             }
             // Put the patient in the shortest queue
-            AdaptiveQueue targetQueue = findBestQueue(caretakerQueues);
+            AdaptiveQueue targetQueue = queuesBySize.shortest();
             targetQueue.enqueue(patient);
+            patient.setAssignedQueueId(targetQueue.getQueueId());
+            queuesBySize.update(targetQueue, targetQueue.size());
         }
+        return caretakerQueues;
+    }
+
+    // Put non-emergency patients into caretaker queues by power of two choices, picking with rand,
+    // and open a queue whenever all are full
+    static List<AdaptiveQueue> assignCaretakerQueuesTwoChoices(List<CriticalPatient> allPatients,
+                                                               RandomGenerator rand) {
+        PowerOfTwoChoicesRouter router = new PowerOfTwoChoicesRouter(QUEUE_THRESHOLD, rand);
+        router.addQueue(new AdaptiveQueue(1)); // Start with one caretaker queue
+        for (CriticalPatient patient : allPatients) {
+            if (patient.getPriority() == 2) { // Skip emergency patients
+                continue;
+            }
+            while (router.route(patient) == null) {
+                router.addQueue(new AdaptiveQueue(router.getQueueCount() + 1));
+            }
+        }
+        return router.getQueues();
+    }
+
+    // Assign caretaker queue IDs to the non-emergency patients of a store the same way as
+    // assignCaretakerQueues, and return the number of queues opened
+    static int assignCaretakerQueues(PatientStore store) {
+        return assignCaretakerQueues(store, QUEUE_THRESHOLD);
+    }
+
+    // Same, opening a new queue whenever every queue has queueThreshold patients
+    static int assignCaretakerQueues(PatientStore store, int queueThreshold) {
+        int[] queueSizes = new int[16];
+        int queueCount = 1; // Start with one caretaker queue
+        ShortestQueueIndex queuesBySize = new ShortestQueueIndex(queueThreshold);
+        queuesBySize.add(1, 0);
+        for (int i = 0; i < store.size(); i++) {
+            if (store.getPriority(i) == 2) { // Skip emergency patients
+                continue;
+            }
+            // Open a new queue if all are at capacity
+            if (queuesBySize.allAtThreshold()) {
+                queueCount++;
+                if (queueCount == queueSizes.length) {
+                    queueSizes = Arrays.copyOf(queueSizes, queueSizes.length * 2);
+                }
+                queuesBySize.add(queueCount, 0);
+            }
+            // Put the patient in the shortest queue
+            int queueId = queuesBySize.shortestId();
+            store.setAssignedQueueId(i, queueId);
+            queuesBySize.update(queueId, ++queueSizes[queueId]);
+        }
+        return queueCount;
+    }
 
+    // Run the day with caretaker threads and emergency doctors that sleep through each treatment
+    private static List<CaretakerProcessor> runRealTime(List<AdaptiveQueue> caretakerQueues,
+                                                        List<EmergencyPatient> emergencyPatients,
+                                                        EmergencyDoctorManager emergencyManager,
+                                                        ExecutionStrategy threads, boolean workStealing,
+                                                        int batchSize, Metrics metrics, AsyncLogSink log)
+            throws InterruptedException, IOException {
         // Start caretakers to process their queues
         List<CaretakerProcessor> caretakerProcessors = new ArrayList<>();
-        ExecutorService caretakerExecutor = Executors.newFixedThreadPool(caretakerQueues.size());
+        ExecutorService caretakerExecutor = threads.newFixedPool(caretakerQueues.size(), "Caretaker-");
         for (AdaptiveQueue queue : caretakerQueues) {
-            CaretakerProcessor caretaker = new CaretakerProcessor(queue);
-            caretakerProcessors.add(caretaker);
+            caretakerProcessors.add(new CaretakerProcessor(queue, log));
+        }
+        if (metrics != null) {
+            // Read only when a snapshot is taken, so a day of many queues costs nothing in between
+            metrics.gauge("queues.waiting", () -> {
+                int waiting = 0;
+                for (AdaptiveQueue queue : caretakerQueues) {
+                    waiting += queue.size();
+                }
+                return waiting;
+            });
+            metrics.gauge("queues.critical", () -> {
+                int critical = 0;
+                for (AdaptiveQueue queue : caretakerQueues) {
+                    critical += queue.countCriticalPatients();
+                }
+                return critical;
+            });
+            metrics.gauge("queues.longest", () -> {
+                int longest = 0;
+                for (AdaptiveQueue queue : caretakerQueues) {
+                    longest = Math.max(longest, queue.size());
+                }
+                return longest;
+            });
+            emergencyManager.enableMetrics(metrics);
+        }
+        emergencyManager.start();
+        for (CaretakerProcessor caretaker : caretakerProcessors) {
+            // The day's totals are merged from every caretaker's own statistics
+            caretaker.enableStatistics();
+            if (metrics != null) {
+                caretaker.enableMetrics(metrics);
+            }
+            if (workStealing) {
+                caretaker.enableWorkStealing(caretakerProcessors);
+            }
+            caretaker.enableBatching(batchSize);
             caretakerExecutor.submit(caretaker);
         }
 
-        // Start emergency doctors to handle urgent cases
-        EmergencyDoctorManager emergencyManager = new EmergencyDoctorManager();
-        ExecutorService emergencyExecutor = Executors.newCachedThreadPool();
+        // Hand emergency patients to the doctor team
+        // A bounded pool is enough: assignPatient only queues the patient and never blocks
+        ExecutorService emergencyExecutor = threads.newFixedPool(SUBMISSION_THREADS, "Emergency-Submission-");
         for (EmergencyPatient patient : emergencyPatients) {
             emergencyExecutor.submit(() -> emergencyManager.assignPatient(patient));
         }
@@ -84,105 +532,297 @@ public class HospitalQueueSimulation {
         // Wait for all caretakers to finish
         caretakerExecutor.shutdown();
         caretakerExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-        // Wait for all emergency doctors to finish
+        // Wait for all emergency patients to be handed to the dispatcher
         emergencyExecutor.shutdown();
         emergencyExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
-        // Shut down the emergency doctor team
+        // Shut down the emergency doctor team once every waiting patient has been treated
         emergencyManager.shutdown();
+        // The reporter may write to the log, so stop it first
+        if (metrics != null) {
+            metrics.close();
+        }
+        closeLog(log);
+        System.out.printf("%nEmergency dispatch: %d patients | Average latency: %.3f ms | Max: %.3f ms%n",
+                emergencyManager.getDispatchedPatients(), emergencyManager.getAverageDispatchLatencyMillis(),
+                emergencyManager.getMaxDispatchLatencyMillis());
+        if (emergencyManager.isElastic()) {
+            System.out.printf("Elastic doctor team: %d scaling decisions | Peak team: %d doctors%n",
+                    emergencyManager.getScalingEvents().size(), emergencyManager.getPeakDoctorCount());
+        }
+        return caretakerProcessors;
+    }
 
-        // Print detailed logs from caretakers
-        caretakerProcessors.sort(Comparator.comparingInt(cp -> cp.getQueueId()));
-        System.out.println("\n======= CARETAKER PROCESSING DETAILS =======");
-        for (CaretakerProcessor caretaker : caretakerProcessors) {
-            for (String log : caretaker.getLogs()) {
-                System.out.println(log);
-            }
+    // Run the day on the discrete-event engine's virtual clock
+    private static EventDrivenSimulation runDiscreteEvent(int caretakerCount, int doctorCount,
+                                                          List<CriticalPatient> allPatients, boolean workStealing,
+                                                          DequeuePolicy dequeuePolicy, double snapshotEvery,
+                                                          SimulationCheckpoint checkpoint,
+                                                          SimulationCheckpoint.Saved resumeFrom, AsyncLogSink log)
+            throws IOException {
+        EventDrivenSimulation simulation =
+                new EventDrivenSimulation(caretakerCount, doctorCount, log, workStealing);
+        simulation.setDequeuePolicy(dequeuePolicy);
+        if (log != null) {
+            // For the per-caretaker percentiles printed after the log
+            simulation.enableCaretakerStatistics();
         }
+        if (snapshotEvery > 0) {
+            simulation.setSnapshotListener(snapshotEvery, snapshotPrinter(log));
+        }
+        long startNanos = System.nanoTime();
+        runDay(simulation, allPatients.iterator(), checkpoint, resumeFrom);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        closeLog(log);
+
+        System.out.printf("%nProcessed %d events in %.1f ms (virtual clock ended at %.2f min)%n",
+                simulation.getProcessedEvents(), elapsedNanos / 1e6, simulation.getCurrentTime());
+        printCheckpoints(checkpoint);
+        return simulation;
+    }
+
+    // Run the day on the event engine with patients arriving from a producer one at a time. Queues
+    // are opened when every live queue reaches QUEUE_THRESHOLD and closed when their caretaker runs
+    // out of patients; only patients still in the hospital are held in memory, off the heap if asked.
+    private static void runStreaming(Iterator<CriticalPatient> arrivals, int doctorCount, boolean workStealing,
+                                     boolean offHeap, DequeuePolicy dequeuePolicy, double snapshotEvery,
+                                     SimulationCheckpoint checkpoint, SimulationCheckpoint.Saved resumeFrom,
+                                     AsyncLogSink log) throws IOException {
+        EventDrivenSimulation simulation =
+                new EventDrivenSimulation(1, doctorCount, log, workStealing, QUEUE_THRESHOLD);
+        simulation.setDequeuePolicy(dequeuePolicy);
+        if (offHeap) {
+            simulation.enableOffHeapQueues();
+        }
+        if (log != null) {
+            // For the per-caretaker percentiles printed after the log
+            simulation.enableCaretakerStatistics();
+        }
+        if (snapshotEvery > 0) {
+            simulation.setSnapshotListener(snapshotEvery, snapshotPrinter(log));
+        }
+        long startNanos = System.nanoTime();
+        runDay(simulation, arrivals, checkpoint, resumeFrom);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        closeLog(log);
+
+        System.out.printf("%nProcessed %d events in %.1f ms (virtual clock ended at %.2f min)%n",
+                simulation.getProcessedEvents(), elapsedNanos / 1e6, simulation.getCurrentTime());
+        printCheckpoints(checkpoint);
 
-        // Print a summary of the simulation
         System.out.println("\n======= SIMULATION SUMMARY =======");
-        System.out.println("Total caretakers opened: " + caretakerQueues.size());
-        printFinalStatistics(allPatients);
+        System.out.println("Total caretakers opened: " + simulation.getOpenedCaretakers()
+                + " (at most " + simulation.getPeakOpenCaretakers() + " open at once)");
+        PatientStatistics statistics = simulation.getStatistics();
+        System.out.printf("Caretaker makespan: %.2f min | p99 caretaker wait: %.2f min%n",
+                statistics.getCaretakerMakespan(), statistics.getCaretakerWaits().getValueAtPercentile(99));
+        statistics.printSummary();
+        if (log != null) {
+            printCaretakerStatistics(simulation.getCaretakers());
+        }
     }
 
-    // Find the shortest queue to assign a patient
-    private static AdaptiveQueue findBestQueue(List<AdaptiveQueue> queues) {
-        if (queues.isEmpty()) {
-            throw new IllegalStateException("No queues available");
+    // Run a set-up simulation through the day, from the start or from where a checkpoint left off,
+    // saving checkpoints along the way if asked
+    private static void runDay(EventDrivenSimulation simulation, Iterator<CriticalPatient> arrivals,
+                               SimulationCheckpoint checkpoint, SimulationCheckpoint.Saved resumeFrom)
+            throws IOException {
+        if (checkpoint != null) {
+            checkpoint.attach(simulation);
         }
-        AdaptiveQueue shortestQueue = queues.get(0);
-        int minSize = shortestQueue.size();
-        for (AdaptiveQueue queue : queues) {
-            if (queue.size() < minSize) {
-                shortestQueue = queue;
-                minSize = queue.size();
-            }
+        if (resumeFrom != null) {
+            simulation.restoreState(resumeFrom.getState());
+            simulation.resume(arrivals);
+        } else {
+            simulation.run(arrivals);
+        }
+        if (checkpoint != null) {
+            checkpoint.close();
         }
-        return shortestQueue;
     }
 
-    // Print wait time stats for each patient type
-    private static void printFinalStatistics(List<CriticalPatient> allPatients) {
-        // Group patients by priority (normal, critical, emergency)
-        Map<Integer, List<CriticalPatient>> groupedByPriority = new HashMap<>();
-        for (CriticalPatient patient : allPatients) {
-            groupedByPriority.computeIfAbsent(patient.getPriority(), k -> new ArrayList<>()).add(patient);
+    private static void printCheckpoints(SimulationCheckpoint checkpoint) {
+        if (checkpoint != null) {
+            System.out.printf("Checkpoints: %d saved, %d skipped while one was being written, longest pause %.1f ms, "
+                            + "last %,d bytes%n", checkpoint.getSavedCheckpoints(), checkpoint.getSkippedCheckpoints(),
+                    checkpoint.getLongestPauseMillis(), checkpoint.getLastSize());
+        }
+    }
+
+    // Run the day on the columnar engine: patients live in a PatientStore and queues hold their indices
+    private static void runColumnar(PatientStore store, int doctorCount, DequeuePolicy dequeuePolicy,
+                                    double snapshotEvery, AsyncLogSink log) throws IOException {
+        int caretakerCount = assignCaretakerQueues(store);
+        ColumnarSimulation simulation = new ColumnarSimulation(store, caretakerCount, doctorCount, log);
+        simulation.setDequeuePolicy(dequeuePolicy);
+        if (snapshotEvery > 0) {
+            simulation.setSnapshotListener(snapshotEvery, snapshotPrinter(log));
         }
-        // Print stats for each priority level
-        for (int priority = 0; priority <= 2; priority++) {
-            List<CriticalPatient> patients = groupedByPriority.get(priority);
-            if (patients != null && !patients.isEmpty()) {
-                printQueueStatistics(getPriorityName(priority), patients);
+        long startNanos = System.nanoTime();
+        simulation.run();
+        long elapsedNanos = System.nanoTime() - startNanos;
+        closeLog(log);
+        System.out.printf("%nProcessed %d events in %.1f ms (virtual clock ended at %.2f min)%n",
+                simulation.getProcessedEvents(), elapsedNanos / 1e6, simulation.getCurrentTime());
+
+        System.out.println("\n======= SIMULATION SUMMARY =======");
+        System.out.println("Total caretakers opened: " + caretakerCount);
+        PatientStatistics statistics = simulation.getStatistics();
+        System.out.printf("Caretaker makespan: %.2f min | p99 caretaker wait: %.2f min%n",
+                statistics.getCaretakerMakespan(), statistics.getCaretakerWaits().getValueAtPercentile(99));
+        statistics.printSummary();
+    }
+
+    // Run the day as a live pipeline: this thread generates patients and enqueues them into a
+    // MultiPriorityQueue while QueueProcessor threads take them out, each on its own virtual clock
+    private static void runPipeline(Iterator<CriticalPatient> arrivals, int[] processorCounts, int batchSize,
+                                    DequeuePolicy dequeuePolicy, ExecutionStrategy threads, Metrics metrics,
+                                    AsyncLogSink log) throws InterruptedException, IOException {
+        MultiPriorityQueue patientQueueSystem = new MultiPriorityQueue(dequeuePolicy);
+        if (metrics != null) {
+            for (int level = 0; level < 3; level++) {
+                int priority = level;
+                metrics.gauge("pipeline.waiting" + PatientStatistics.getPriorityName(level),
+                        () -> patientQueueSystem.getQueueSize(priority));
+            }
+        }
+        List<QueueProcessor> queueProcessors = new ArrayList<>();
+        for (int level = 0; level < processorCounts.length; level++) {
+            if (processorCounts[level] == 0) {
+                continue;
+            }
+            int priorityLevel = level < 3 ? level : QueueProcessor.ANY_LEVEL;
+            // The processors of a level stand for that many servers with a shared virtual schedule
+            QueueProcessor.Servers servers = new QueueProcessor.Servers(processorCounts[level]);
+            for (int i = 0; i < processorCounts[level]; i++) {
+                QueueProcessor processor = new QueueProcessor(patientQueueSystem, priorityLevel,
+                        queueProcessors.size() + 1, servers, batchSize, log);
+                if (metrics != null) {
+                    processor.enableMetrics(metrics);
+                }
+                queueProcessors.add(processor);
             }
         }
+
+        long startNanos = System.nanoTime();
+        ExecutorService processorExecutor = threads.newFixedPool(queueProcessors.size(), "Processor-");
+        List<Future<?>> processorRuns = new ArrayList<>();
+        for (QueueProcessor processor : queueProcessors) {
+            processorRuns.add(processorExecutor.submit(processor));
+        }
+        // Produce: processors start on the first patients while the rest are still being generated
+        long produced = 0;
+        while (arrivals.hasNext()) {
+            patientQueueSystem.enqueue(arrivals.next());
+            produced++;
+        }
+        patientQueueSystem.close();
+        processorExecutor.shutdown();
+        processorExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        // The reporter may write to the log, so stop it first
+        if (metrics != null) {
+            metrics.close();
+        }
+        closeLog(log);
+        // A processor that failed left its patients untreated: report it rather than a short day
+        for (int i = 0; i < processorRuns.size(); i++) {
+            try {
+                processorRuns.get(i).get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Queue processor #" + queueProcessors.get(i).getProcessorId()
+                        + " failed", e.getCause());
+            }
+        }
+
+        long batches = 0;
+        long treated = 0;
+        PatientStatistics statistics = new PatientStatistics();
+        for (QueueProcessor processor : queueProcessors) {
+            batches += processor.getBatches();
+            treated += processor.getTreatedPatients();
+            statistics.merge(processor.getStatistics());
+        }
+        System.out.printf("%nProcessed %d of %d patients in %.1f ms (%.2f patients per trip to the queue)%n",
+                treated, produced, elapsedNanos / 1e6, batches == 0 ? 0.0 : (double) treated / batches);
+
+        System.out.println("\n======= SIMULATION SUMMARY =======");
+        System.out.printf("Queue processors: %d normal, %d critical, %d emergency, %d any level%n",
+                processorCounts[0], processorCounts[1], processorCounts[2],
+                processorCounts.length > 3 ? processorCounts[3] : 0);
+        System.out.printf("Caretaker makespan: %.2f min | p99 caretaker wait: %.2f min%n",
+                statistics.getCaretakerMakespan(), statistics.getCaretakerWaits().getValueAtPercentile(99));
+        statistics.printSummary();
+        printFinalMetrics(metrics);
     }
 
-    // Print average, min, and max wait times for a group of patients
-    private static void printQueueStatistics(String label, List<CriticalPatient> patients) {
-        double totalWait = 0;
-        int count = patients.size();
-        double maxWait = 0;
-        double minWait = Double.MAX_VALUE;
-        for (CriticalPatient patient : patients) {
-            double waitTime = patient.getWaitingTime();
-            totalWait += waitTime;
-            maxWait = Math.max(maxWait, waitTime);
-            minWait = Math.min(minWait, waitTime);
+    // Write out everything still in the log buffer before the summary is printed
+    private static void closeLog(AsyncLogSink log) throws IOException {
+        if (log == null) {
+            return;
         }
-        if (count > 0) {
-            System.out.printf("%n%s Patients (%d):%n", label, count);
-            System.out.printf("Average Wait: %.2f min | Min: %.2f min | Max: %.2f min%n",
-                    totalWait / count, minWait, maxWait);
+        log.close();
+        if (log.getDroppedRecords() > 0) {
+            System.out.printf("%n%d log records dropped (log buffer of %d was full)%n",
+                    log.getDroppedRecords(), log.getCapacity());
         }
     }
 
-    // Convert priority numbers to readable names
-    private static String getPriorityName(int level) {
-        switch (level) {
-            case 1:
-                return "Critical";
-            case 2:
-                return "Emergency";
-            default:
-                return "Normal";
+    // Print each caretaker's wait and sojourn percentiles
+    private static void printCaretakerStatistics(List<CaretakerProcessor> caretakers) {
+        System.out.println("\n======= CARETAKER PERCENTILES =======");
+        // One line per caretaker, and there can be tens of thousands: every line reuses one builder
+        StringBuilder line = new StringBuilder(128);
+        for (CaretakerProcessor caretaker : caretakers) {
+            PatientStatistics statistics = caretaker.getStatistics();
+            TimeHistogram waits = statistics.getCaretakerWaits();
+            line.setLength(0);
+            line.append("Caretaker #").append(caretaker.getQueueId()).append(": ").append(waits.getCount())
+                    .append(" patients | Wait ");
+            PatientStatistics.appendPercentiles(line, waits);
+            line.append(" | Sojourn ");
+            PatientStatistics.appendPercentiles(line, statistics.getCaretakerSojourns());
+            System.out.println(line);
         }
     }
 
-    // Decide if a patient is normal, critical, or emergency
-    private static int assignPatientType(Random rand) {
-        int randValue = rand.nextInt(100);
-        if (randValue < NORMAL_THRESHOLD) { // 0-79: Normal
-            return 0;
-        } else if (randValue < CRITICAL_THRESHOLD) { // 80-94: Critical
-            return 1;
-        } else { // 95-99: Emergency
-            return 2;
+    // Print snapshots in line with the processing log, or to standard output when there is no log
+    private static ObjDoubleConsumer<PatientStatistics> snapshotPrinter(AsyncLogSink log) {
+        if (log == null) {
+            return (statistics, time) -> System.out.println(statistics.formatSnapshot(time));
         }
+        return (statistics, time) -> log.message(statistics.formatSnapshot(time));
     }
 
-    // Generate random numbers for treatment times
+    // Print metric snapshots in line with the processing log, or to standard output when there is no log
+    private static Consumer<String> metricsPrinter(AsyncLogSink log) {
+        if (log == null) {
+            return System.out::println;
+        }
+        return log::message;
+    }
+
+    // Print the metrics as they stood at the end of the run (nothing if they were off)
+    private static void printFinalMetrics(Metrics metrics) {
+        if (metrics != null) {
+            System.out.println("\n======= LIVE METRICS AT END =======");
+            System.out.println(metrics.snapshot());
+        }
+    }
+
+    // Create a generator of the named java.util.random algorithm, seeded when a seed is given
+    static RandomGenerator newRandomGenerator(String algorithm, Long seed) {
+        RandomGeneratorFactory<RandomGenerator> factory = RandomGeneratorFactory.of(algorithm);
+        return seed == null ? factory.create() : factory.create(seed);
+    }
+
+    // Generate random numbers for treatment times from the calling thread's own generator
+    // (no allocation, no contention between threads, but not reproducible)
     public static double getGaussianRandom(double mean, double stdDev) {
-        Random rand = new Random();
+        return getGaussianRandom(ThreadLocalRandom.current(), mean, stdDev);
+    }
+
+    // Generate random numbers for treatment times from the given generator
+    public static double getGaussianRandom(RandomGenerator rand, double mean, double stdDev) {
         return mean + stdDev * rand.nextGaussian();
     }
 }
\ No newline at end of file
@@ -0,0 +1,59 @@
+// Growable FIFO queue of ints in a ring buffer, so queues of patient indices need no boxing and
+// no node per entry
+public class IntDeque {
+    private int[] elements;
+    // Position of the first element
+    private int head = 0;
+    private int size = 0;
+
+    // Constructor to create an empty deque
+    public IntDeque() {
+        elements = new int[16];
+    }
+
+    // Add a value at the back
+    public void addLast(int value) {
+        if (size == elements.length) {
+            grow();
+        }
+        elements[(head + size) & (elements.length - 1)] = value;
+        size++;
+    }
+
+    // Remove and return the value at the front (the deque must not be empty)
+    public int pollFirst() {
+        if (size == 0) {
+            throw new IllegalStateException("Deque is empty");
+        }
+        int value = elements[head];
+        head = (head + 1) & (elements.length - 1);
+        size--;
+        return value;
+    }
+
+    // Get the value at the front without removing it (the deque must not be empty)
+    public int peekFirst() {
+        if (size == 0) {
+            throw new IllegalStateException("Deque is empty");
+        }
+        return elements[head];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Double the capacity (always a power of two), unwrapping the ring to start at 0
+    private void grow() {
+        int[] larger = new int[elements.length * 2];
+        int firstPart = Math.min(size, elements.length - head);
+        System.arraycopy(elements, head, larger, 0, firstPart);
+        System.arraycopy(elements, 0, larger, firstPart, size - firstPart);
+        elements = larger;
+        head = 0;
+    }
+}
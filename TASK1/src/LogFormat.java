@@ -0,0 +1,78 @@
+// Text formatting for log and snapshot lines without String.format, which parses its pattern and
+// allocates on every call. Clock times are copied from a table of the 1440 "HH:MM" strings of a
+// day, and decimals are written digit by digit. Everything appends to the caller's StringBuilder,
+// so a builder reused line after line renders a record without allocating.
+public final class LogFormat {
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    // "HH:MM" for every minute of the day, minute m at m * 5
+    private static final char[] CLOCK = new char[MINUTES_PER_DAY * 5];
+    // Powers of ten for the supported numbers of decimals
+    private static final long[] SCALE = {1, 10, 100, 1000};
+
+    static {
+        for (int minute = 0; minute < MINUTES_PER_DAY; minute++) {
+            int offset = minute * 5;
+            CLOCK[offset] = (char) ('0' + minute / 600);
+            CLOCK[offset + 1] = (char) ('0' + minute / 60 % 10);
+            CLOCK[offset + 2] = ':';
+            CLOCK[offset + 3] = (char) ('0' + minute % 60 / 10);
+            CLOCK[offset + 4] = (char) ('0' + minute % 10);
+        }
+    }
+
+    private LogFormat() {
+    }
+
+    // Append a time in minutes past midnight as HH:MM, like String.format("%02d:%02d") of whole hours
+    // and minutes. Past the end of the day the hours keep counting (25:10).
+    public static void appendTime(StringBuilder line, double minutes) {
+        int hours = (int) (minutes / 60);
+        // Same as (int) (minutes % 60) unless the division rounded up to the next hour
+        int mins = (int) minutes - hours * 60;
+        if (hours >= 0 && hours < 24 && mins >= 0 && mins < 60) {
+            line.append(CLOCK, (hours * 60 + mins) * 5, 5);
+            return;
+        }
+        appendTwoDigits(line, hours);
+        line.append(':');
+        appendTwoDigits(line, (int) (minutes % 60));
+    }
+
+    // Append a whole number with at least two digits, like %02d
+    public static void appendTwoDigits(StringBuilder line, int value) {
+        if (value >= 0 && value < 10) {
+            line.append('0');
+        }
+        line.append(value);
+    }
+
+    // Append a value rounded to 0 to 3 decimals, exactly as %.Nf does: half-up on the decimal the
+    // double prints as, so 1.005 gives 1.01 even though the double is a little below 1.005, and
+    // negative values keep their sign when they round to zero (-0.00)
+    public static void appendFixed(StringBuilder line, double value, int decimals) {
+        if (decimals < 0 || decimals >= SCALE.length) {
+            throw new IllegalArgumentException("Decimals must be 0 to " + (SCALE.length - 1) + ", got " + decimals);
+        }
+        double scaled = Math.abs(value) * SCALE[decimals];
+        // Rounding the scaled double only agrees with the printed decimal away from a tie, where the
+        // double and the decimal (a few ulps apart after scaling) fall on the same side of it
+        if (!(scaled < Long.MAX_VALUE)
+                || Math.abs(scaled - Math.floor(scaled) - 0.5) <= 4 * Math.ulp(scaled)) {
+            // NaN, infinite, too large for a long or close to a tie: rare enough to leave to the slow path
+            line.append(String.format("%." + decimals + "f", value));
+            return;
+        }
+        long units = Math.round(scaled);
+        if (Double.doubleToRawLongBits(value) < 0) {
+            line.append('-');
+        }
+        line.append(units / SCALE[decimals]);
+        if (decimals > 0) {
+            line.append('.');
+            long fraction = units % SCALE[decimals];
+            for (long digit = SCALE[decimals] / 10; digit > 0; digit /= 10) {
+                line.append((char) ('0' + fraction / digit % 10));
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+// One structured log entry: what happened plus the numbers needed to describe it. Records are
+// slots in AsyncLogSink's ring buffer and are reused, so writing one allocates nothing; the text
+// is only rendered later, on the sink's writer thread.
+public class LogRecord {
+    // What kind of thing happened
+    public enum Kind {
+        SHIFT_START,      // caretaker started work
+        SHIFT_END,        // caretaker finished all patients
+        TREATED,          // caretaker treated a patient
+        TOOK_OVER,        // caretaker took over a patient from another queue
+        DOCTOR_STARTED,   // doctor started an emergency patient
+        DOCTOR_FINISHED,  // doctor finished an emergency patient
+        DISPATCHED,       // emergency patient handed to a doctor
+        MESSAGE           // free text (rare events only, the text is allocated by the caller)
+    }
+
+    Kind kind;
+    // Caretaker queue ID or doctor ID
+    int serverId;
+    int patientId;
+    int priority;
+    // Other server involved (queue a patient was taken from, doctor a patient was handed to)
+    int otherId;
+    // Times in minutes past midnight, durations in minutes (NaN = not known)
+    double arrivalTime;
+    double waitingTime;
+    double serviceTime;
+    double departureTime;
+    String text;
+
+    // Write the record as one line of text, the same wording the simulation has always logged
+    void renderTo(StringBuilder line) {
+        switch (kind) {
+            case SHIFT_START:
+                line.append("Starting Caretaker #").append(serverId);
+                break;
+            case SHIFT_END:
+                line.append("Caretaker #").append(serverId).append(" finished processing all patients.");
+                break;
+            case TREATED:
+                line.append("Caretaker #").append(serverId)
+                        .append(" | Patient ").append(patientId)
+                        .append(" | Priority: ")
+                        .append(priority == 2 ? "Emergency" : priority == 1 ? "Critical" : "Normal")
+                        .append(" | Arrival: ");
+                LogFormat.appendTime(line, arrivalTime);
+                line.append(" | Waiting: ");
+                LogFormat.appendFixed(line, waitingTime, 2);
+                line.append(" min | Service: ");
+                LogFormat.appendFixed(line, serviceTime, 2);
+                line.append(" min | Departure: ");
+                LogFormat.appendTime(line, departureTime);
+                break;
+            case TOOK_OVER:
+                line.append("Caretaker #").append(serverId).append(" took over Patient ").append(patientId)
+                        .append(" from Caretaker #").append(otherId);
+                break;
+            case DOCTOR_STARTED:
+                line.append("[Doctor ").append(serverId).append("] Started treating emergency patient ")
+                        .append(patientId).append(" at ");
+                LogFormat.appendTime(line, arrivalTime);
+                break;
+            case DOCTOR_FINISHED:
+                line.append("[Doctor ").append(serverId).append("] Finished treating emergency patient ")
+                        .append(patientId);
+                if (!Double.isNaN(departureTime)) {
+                    line.append(" at ");
+                    LogFormat.appendTime(line, departureTime);
+                }
+                break;
+            case DISPATCHED:
+                line.append("Emergency patient ").append(patientId).append(" assigned to Doctor ").append(otherId);
+                break;
+            case MESSAGE:
+                line.append(text);
+                break;
+        }
+    }
+}
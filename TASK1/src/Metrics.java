@@ -0,0 +1,337 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+// Live counters, timers and gauges that a running simulation can be watched through, as a periodic
+// text snapshot and as JMX MBeans (one per name group: "doctors.busy" is attribute "busy" of
+// hospital:type=doctors). Counters and timers are LongAdders, so the threads updating them never
+// contend on one cache line; gauges are only evaluated when someone reads them.
+public class Metrics implements AutoCloseable {
+    // JMX domain the MBeans are registered under
+    static final String JMX_DOMAIN = "hospital";
+
+    // Every metric by name, sorted so snapshots list groups together
+    private final ConcurrentNavigableMap<String, Object> metrics = new ConcurrentSkipListMap<>();
+    // When the registry was created, for the snapshot timestamps
+    private final long createdAtNanos = System.nanoTime();
+    // Names of the MBeans registered by registerMBeans() (empty = none)
+    private final List<ObjectName> registeredMBeans = new ArrayList<>();
+    // Whether groups are shown over JMX, including ones created from now on
+    private boolean jmxEnabled = false;
+    // Thread printing periodic snapshots (null = not reporting)
+    private ScheduledExecutorService reporter;
+
+    // Get the counter with the given name, creating it on first use
+    public Counter counter(String name) {
+        return get(name, Counter.class, Counter::new);
+    }
+
+    // Get the timer with the given name, creating it on first use
+    public Timer timer(String name) {
+        return get(name, Timer.class, Timer::new);
+    }
+
+    // Add a gauge that reads its value from the supplier each time it is reported
+    public void gauge(String name, DoubleSupplier value) {
+        checkName(name);
+        if (metrics.putIfAbsent(name, value) != null) {
+            throw new IllegalArgumentException("Metric already registered: " + name);
+        }
+        registerGroup(group(name));
+    }
+
+    private <T> T get(String name, Class<T> type, Supplier<T> factory) {
+        checkName(name);
+        Object metric = metrics.get(name);
+        if (metric == null) {
+            metric = metrics.computeIfAbsent(name, key -> factory.get());
+            registerGroup(group(name));
+        }
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException("Metric " + name + " is not a " + type.getSimpleName());
+        }
+        return type.cast(metric);
+    }
+
+    private static void checkName(String name) {
+        int dot = name.indexOf('.');
+        if (dot <= 0 || dot == name.length() - 1) {
+            throw new IllegalArgumentException("Metric names are group.name, got " + name);
+        }
+    }
+
+    // Get the current value of every metric on one line, e.g.
+    // "Metrics at 1.2 s: doctors.assign 40 timed, mean 1.3 us, max 9.0 us | doctors.busy 3 | ..."
+    public String snapshot() {
+        StringBuilder text = new StringBuilder(256);
+        text.append("Metrics at ");
+        LogFormat.appendFixed(text, (System.nanoTime() - createdAtNanos) / 1e9, 1);
+        text.append(" s:");
+        String separator = " ";
+        for (Map.Entry<String, Object> entry : metrics.entrySet()) {
+            text.append(separator).append(entry.getKey()).append(' ');
+            Object metric = entry.getValue();
+            if (metric instanceof Counter) {
+                text.append(((Counter) metric).get());
+            } else if (metric instanceof Timer) {
+                Timer timer = (Timer) metric;
+                text.append(timer.getCount()).append(" timed");
+                if (timer.getCount() > 0) {
+                    text.append(", mean ");
+                    LogFormat.appendFixed(text, timer.getMeanNanos() / 1e3, 1);
+                    text.append(" us, max ");
+                    LogFormat.appendFixed(text, timer.getMaxNanos() / 1e3, 1);
+                    text.append(" us");
+                }
+            } else {
+                appendGauge(text, ((DoubleSupplier) metric).getAsDouble());
+            }
+            separator = " | ";
+        }
+        return text.toString();
+    }
+
+    // Whole numbers without decimals (queue sizes, head counts), the rest with two
+    private static void appendGauge(StringBuilder text, double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            text.append((long) value);
+        } else {
+            LogFormat.appendFixed(text, value, 2);
+        }
+    }
+
+    // Hand a snapshot to the consumer every periodMillis from a daemon thread, until close()
+    public synchronized void startReporting(long periodMillis, Consumer<String> out) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("Reporting period must be positive, got " + periodMillis);
+        }
+        if (reporter != null) {
+            throw new IllegalStateException("Already reporting");
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Metrics-Reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Fixed delay, so a reporter held up by a busy machine does not catch up with a burst of snapshots
+        reporter.scheduleWithFixedDelay(() -> out.accept(snapshot()), periodMillis, periodMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    // Show every group as an MBean on the platform MBean server (hospital:type=GROUP), including
+    // groups added later, until close()
+    public synchronized void registerMBeans() {
+        jmxEnabled = true;
+        for (String name : metrics.keySet()) {
+            registerGroup(group(name));
+        }
+    }
+
+    // Register the group's MBean unless it already is (no-op while JMX is off)
+    private synchronized void registerGroup(String group) {
+        if (!jmxEnabled) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName(JMX_DOMAIN, "type", group);
+            if (!registeredMBeans.contains(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new GroupMBean(group), name);
+                registeredMBeans.add(name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register metrics group " + group + " with JMX", e);
+        }
+    }
+
+    private static String group(String name) {
+        return name.substring(0, name.indexOf('.'));
+    }
+
+    // Get a group's metrics as JMX attributes: counters and gauges by their name within the group,
+    // timers as NAMECount, NAMEMeanMicros and NAMEMaxMicros
+    private Map<String, Supplier<Object>> attributes(String group) {
+        Map<String, Supplier<Object>> attributes = new TreeMap<>();
+        // '/' sorts right after '.', so this is every name starting with "group."
+        for (Map.Entry<String, Object> entry : metrics.subMap(group + ".", group + "/").entrySet()) {
+            String attribute = entry.getKey().substring(group.length() + 1);
+            Object metric = entry.getValue();
+            if (metric instanceof Counter) {
+                Counter counter = (Counter) metric;
+                attributes.put(attribute, counter::get);
+            } else if (metric instanceof Timer) {
+                Timer timer = (Timer) metric;
+                attributes.put(attribute + "Count", timer::getCount);
+                attributes.put(attribute + "MeanMicros", () -> timer.getMeanNanos() / 1e3);
+                attributes.put(attribute + "MaxMicros", () -> timer.getMaxNanos() / 1e3);
+            } else {
+                DoubleSupplier gauge = (DoubleSupplier) metric;
+                attributes.put(attribute, gauge::getAsDouble);
+            }
+        }
+        return attributes;
+    }
+
+    // Stop reporting and unregister the MBeans
+    @Override
+    public synchronized void close() {
+        jmxEnabled = false;
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registeredMBeans) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                // Already gone (unregistered from a JMX console); nothing left to clean up
+            }
+        }
+        registeredMBeans.clear();
+    }
+
+    // A count that many threads can add to without contending
+    public static final class Counter {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long amount) {
+            count.add(amount);
+        }
+
+        public long get() {
+            return count.sum();
+        }
+    }
+
+    // Number, total and longest of a set of durations. Callers take System.nanoTime() themselves
+    // around the timed code, so a disabled timer (null) costs nothing. Code that runs millions of
+    // times times only one call in SAMPLE_EVERY: the clock reads then cost next to nothing, and
+    // counters still count every call. Each caller starts at a random firstSample() among its
+    // first SAMPLE_EVERY calls, so every call, a short-lived caller's or a cold first one, is as
+    // likely to be timed as any other and the mean is not skewed. A run too short to reach a
+    // sampled call has no timings, and snapshots say "0 timed" instead of showing a mean.
+    public static final class Timer {
+        // Time one call in this many, on average, when sampling
+        public static final int SAMPLE_EVERY = 64;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        // Get the number (from 0) of a caller's first timed call; every SAMPLE_EVERY-th after it is timed too
+        public static long firstSample() {
+            return ThreadLocalRandom.current().nextInt(SAMPLE_EVERY);
+        }
+
+        // Add one duration
+        public void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            // Read first: a new maximum is rare, so the CAS almost never runs
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getMeanNanos() {
+            long calls = count.sum();
+            return calls == 0 ? 0 : (double) totalNanos.sum() / calls;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+    }
+
+    // Read-only MBean showing one group's metrics as attributes, read live from the registry
+    private final class GroupMBean implements DynamicMBean {
+        private final String group;
+
+        GroupMBean(String group) {
+            this.group = group;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Supplier<Object> value = attributes(group).get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException("No metric " + group + "." + attribute);
+            }
+            return value.get();
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] names) {
+            Map<String, Supplier<Object>> attributes = attributes(group);
+            AttributeList list = new AttributeList();
+            for (String name : names) {
+                Supplier<Object> value = attributes.get(name);
+                if (value != null) {
+                    list.add(new Attribute(name, value.get()));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList list) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String action, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(action), "Metrics have no operations");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            Map<String, Supplier<Object>> attributes = attributes(group);
+            MBeanAttributeInfo[] infos = new MBeanAttributeInfo[attributes.size()];
+            int i = 0;
+            for (Map.Entry<String, Supplier<Object>> entry : attributes.entrySet()) {
+                // Counters and timer counts are longs, everything else a double
+                String type = entry.getValue().get() instanceof Long ? "java.lang.Long" : "java.lang.Double";
+                infos[i++] = new MBeanAttributeInfo(entry.getKey(), type, group + "." + entry.getKey(),
+                        true, false, false);
+            }
+            return new MBeanInfo(Metrics.class.getName(), "Hospital " + group + " metrics", infos, null, null, null);
+        }
+    }
+}
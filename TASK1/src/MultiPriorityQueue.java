@@ -1,50 +1,312 @@
-// This class manages multiple hospital queues for patients based on their urgency
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// This class manages multiple hospital queues for patients based on their urgency.
+// Each level is its own lock-free queue, so producers and consumers of different levels never
+// block each other, and a bitmap of non-empty levels lets consumers find the highest waiting level
+// without touching the others. Consumers can poll, or wait with take() and poll(timeout) until
+// the producers close() the queue.
 public class MultiPriorityQueue {
-    // Array of queues for different priority levels: 0 = Normal, 1 = Critical, 2 = Emergency
-    private final PriorityQueue[] patientQueues;
+    // Level argument for "any level, as the dequeue policy picks"
+    public static final int ANY_LEVEL = -1;
+    private static final int LEVELS = 3;
+
+    // Lock-free queues for the priority levels: 0 = Normal, 1 = Critical, 2 = Emergency
+    private final ConcurrentPriorityQueue[] patientQueues;
+    // Bit i is set while level i may have patients. An enqueue sets the bit after linking the
+    // patient; a consumer that finds a level empty clears it and then checks the level again,
+    // so a set bit can be stale but a waiting patient always has their bit set.
+    private final AtomicInteger nonEmptyLevels = new AtomicInteger();
+    // Chooses the level dequeue() serves next
+    private final DequeuePolicy policy;
+    // Whether the policy is strict priority, which needs no lock: the highest set bit wins
+    private final boolean strict;
+    // Serializes consumers for the other policies, which compare the heads of all levels
+    // and keep state between calls; producers never take it
+    private final ReentrantLock policyLock = new ReentrantLock();
+    // Arrival times of each level's first patient, handed to the policy (guarded by policyLock)
+    private final double[] headArrivalTimes = new double[LEVELS];
+    // Consumers blocked in take() or poll(timeout) wait here for a patient to be enqueued
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition patientAdded = waitLock.newCondition();
+    private final AtomicInteger waitingConsumers = new AtomicInteger();
+    // Set once no more patients will be enqueued; waiting consumers then drain the rest and stop
+    private volatile boolean closed = false;
+    // Producers inside enqueue(), counted before they check closed: one that got past the check
+    // may still be adding a patient after close(), so consumers only stop once this is back to 0
+    private final AtomicInteger activeProducers = new AtomicInteger();
 
-    // Constructor to set up the three priority queues
+    // Constructor to set up the three priority queues, always serving the highest level first
     public MultiPriorityQueue() {
-        patientQueues = new PriorityQueue[3]; // One queue for each priority level
-        for (int i = 0; i < 3; i++) {
-            patientQueues[i] = new PriorityQueue(); // Initialize each queue
+        this(DequeuePolicy.strict());
+    }
+
+    // Constructor to set up the three priority queues with a policy for choosing between them
+    public MultiPriorityQueue(DequeuePolicy policy) {
+        policy.checkLevels(LEVELS);
+        patientQueues = new ConcurrentPriorityQueue[LEVELS]; // One queue for each priority level
+        for (int i = 0; i < LEVELS; i++) {
+            patientQueues[i] = new ConcurrentPriorityQueue(); // Initialize each queue
         }
+        this.policy = policy.copy();
+        this.strict = policy instanceof DequeuePolicy.StrictPolicy;
     }
 
-    // Add a patient to the right queue based on their priority
-    public synchronized void enqueue(CriticalPatient patient) {
-        // Put the patient in the queue matching their priority (0, 1, or 2)
-        patientQueues[patient.getPriority()].enqueue(patient);
+    // Add a patient to the right queue based on their priority; safe from any number of threads
+    public void enqueue(CriticalPatient patient) {
+        activeProducers.incrementAndGet();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Queue is closed");
+            }
+            // Put the patient in the queue matching their priority (0, 1, or 2)
+            int level = patient.getPriority();
+            patientQueues[level].enqueue(patient);
+            markNonEmpty(level);
+        } finally {
+            activeProducers.decrementAndGet();
+            // Wake waiting consumers: all of them, since they may wait for different levels; the
+            // ones that find nothing go back to sleep. Also done for a producer turned away after
+            // close(), as consumers that saw it inside enqueue() wait for it to leave.
+            signalWaiters();
+        }
     }
 
-    // Get the next patient from a specific priority queue
-    public synchronized CriticalPatient dequeueFromQueue(int priority) {
-        // Check if the chosen queue has patients
-        if (!patientQueues[priority].isEmpty()) {
-            // Return the next patient from that queue
-            return patientQueues[priority].dequeue();
+    // Wake every consumer waiting in awaitPatient() or awaitAvailable(), taking the lock only if
+    // someone is waiting
+    private void signalWaiters() {
+        if (waitingConsumers.get() > 0) {
+            waitLock.lock();
+            try {
+                patientAdded.signalAll();
+            } finally {
+                waitLock.unlock();
+            }
         }
-        // If the queue is empty, return null
-        return null;
     }
 
-    // Get the next patient, starting with the highest priority queue
-    public synchronized CriticalPatient dequeue() {
-        // Check queues from highest to lowest priority: Emergency (2), Critical (1), Normal (0)
-        for (int i = 2; i >= 0; i--) {
-            if (!patientQueues[i].isEmpty()) {
-                // Return the next patient from the first non-empty queue
-                return patientQueues[i].dequeue();
+    // Get the next patient from a specific priority queue, or null if it is empty
+    public CriticalPatient dequeueFromQueue(int priority) {
+        CriticalPatient patient = patientQueues[priority].dequeue();
+        if (patient == null) {
+            markEmpty(priority);
+        }
+        return patient;
+    }
+
+    // Get the next patient from the level the policy picks (by default the highest non-empty one:
+    // Emergency (2), then Critical (1), then Normal (0)), or null if every level is empty
+    public CriticalPatient dequeue() {
+        if (strict) {
+            return dequeueHighest();
+        }
+        policyLock.lock();
+        try {
+            while (true) {
+                // Only each level's first patient is looked at, never the rest of the queue.
+                // Consumers hold the lock, so the chosen head is still there below unless someone
+                // took it through dequeueFromQueue or getQueue; then look again.
+                for (int i = 0; i < LEVELS; i++) {
+                    CriticalPatient head = patientQueues[i].peek();
+                    if (head == null) {
+                        // Keep the bitmap honest so waiting consumers can sleep
+                        markEmpty(i);
+                    }
+                    headArrivalTimes[i] = head == null ? Double.NaN : head.getArrivalTime();
+                }
+                int level = policy.select(headArrivalTimes);
+                // If all queues are empty, return null
+                if (level < 0) {
+                    return null;
+                }
+                CriticalPatient patient = dequeueFromQueue(level);
+                if (patient != null) {
+                    policy.served(level, patient.getServiceTime());
+                    return patient;
+                }
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    // Strict priority without locks: try the highest level whose bit is set, clearing bits of
+    // levels found empty, until a patient is found or no bit is left
+    private CriticalPatient dequeueHighest() {
+        int levels;
+        while ((levels = nonEmptyLevels.get()) != 0) {
+            int level = 31 - Integer.numberOfLeadingZeros(levels);
+            CriticalPatient patient = dequeueFromQueue(level);
+            if (patient != null) {
+                return patient;
             }
         }
-        // If all queues are empty, return null
         return null;
     }
 
+    // Move up to maxPatients patients of one priority level into the target, in FIFO order, with a
+    // single CAS on that level's queue; returns how many were moved
+    public int drainFromQueue(int priority, Collection<? super CriticalPatient> target, int maxPatients) {
+        int count = patientQueues[priority].drainTo(target, maxPatients);
+        if (count < maxPatients) {
+            markEmpty(priority);
+        }
+        return count;
+    }
+
+    // Move up to maxPatients patients into the target in the order dequeue() would return them, and
+    // return how many were moved. Strict priority takes a run from the highest non-empty level at a
+    // time; other policies still choose patient by patient, but under one lock for the whole batch.
+    public int drainTo(Collection<? super CriticalPatient> target, int maxPatients) {
+        if (maxPatients < 0) {
+            throw new IllegalArgumentException("Cannot drain a negative number of patients: " + maxPatients);
+        }
+        int count = 0;
+        if (!strict) {
+            policyLock.lock();
+            try {
+                CriticalPatient patient;
+                while (count < maxPatients && (patient = dequeue()) != null) {
+                    target.add(patient);
+                    count++;
+                }
+            } finally {
+                policyLock.unlock();
+            }
+            return count;
+        }
+        int levels;
+        while (count < maxPatients && (levels = nonEmptyLevels.get()) != 0) {
+            int level = 31 - Integer.numberOfLeadingZeros(levels);
+            count += drainFromQueue(level, target, maxPatients - count);
+        }
+        return count;
+    }
+
+    // Remove and return up to maxPatients patients in the order dequeue() would return them (empty
+    // if every level is)
+    public List<CriticalPatient> dequeueBatch(int maxPatients) {
+        List<CriticalPatient> batch = new ArrayList<>(Math.max(0, Math.min(maxPatients, size())));
+        drainTo(batch, maxPatients);
+        return batch;
+    }
+
+    // Get the next patient, waiting as long as it takes for one to arrive (null once the queue
+    // is closed and empty)
+    public CriticalPatient take() throws InterruptedException {
+        return awaitPatient(ANY_LEVEL, -1);
+    }
+
+    // Get the next patient of one priority level, waiting as long as it takes for one to arrive
+    // (null once the queue is closed and that level is empty)
+    public CriticalPatient takeFromQueue(int priority) throws InterruptedException {
+        return awaitPatient(priority, -1);
+    }
+
+    // Get the next patient, waiting up to the timeout for one to arrive (null if none did)
+    public CriticalPatient poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return awaitPatient(ANY_LEVEL, Math.max(0, unit.toNanos(timeout)));
+    }
+
+    // Get the next patient of one priority level, waiting up to the timeout for one to arrive
+    public CriticalPatient pollFromQueue(int priority, long timeout, TimeUnit unit) throws InterruptedException {
+        return awaitPatient(priority, Math.max(0, unit.toNanos(timeout)));
+    }
+
+    // Wait until a patient of the level (or ANY_LEVEL) may be waiting, without taking them: true
+    // when there may be one (another consumer can still get there first), false once the queue is
+    // closed and the level is empty
+    public boolean awaitAvailable(int priority) throws InterruptedException {
+        int mask = priority == ANY_LEVEL ? (1 << LEVELS) - 1 : 1 << priority;
+        while (true) {
+            boolean wasClosed = isDrained();
+            if ((nonEmptyLevels.get() & mask) != 0) {
+                return true;
+            }
+            if (wasClosed) {
+                return false;
+            }
+            waitLock.lock();
+            waitingConsumers.incrementAndGet();
+            try {
+                while ((nonEmptyLevels.get() & mask) == 0 && !isDrained()) {
+                    patientAdded.await();
+                }
+            } finally {
+                waitingConsumers.decrementAndGet();
+                waitLock.unlock();
+            }
+        }
+    }
+
+    // Stop accepting patients and wake every waiting consumer; patients already queued can still
+    // be taken, after which take() returns null
+    public void close() {
+        closed = true;
+        waitLock.lock();
+        try {
+            patientAdded.signalAll();
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    // Check if close() has been called
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // Check if the queue is closed and no producer can still add a patient (every one that passed
+    // the closed check has finished adding theirs)
+    private boolean isDrained() {
+        return closed && activeProducers.get() == 0;
+    }
+
+    // Dequeue from one level (or ANY_LEVEL), waiting up to timeoutNanos (negative = no limit)
+    private CriticalPatient awaitPatient(int priority, long timeoutNanos) throws InterruptedException {
+        int mask = priority == ANY_LEVEL ? (1 << LEVELS) - 1 : 1 << priority;
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (true) {
+            // Read before dequeuing: if the queue was already closed with no producer still inside
+            // enqueue(), every patient is visible
+            boolean wasClosed = isDrained();
+            CriticalPatient patient = priority == ANY_LEVEL ? dequeue() : dequeueFromQueue(priority);
+            if (patient != null || wasClosed) {
+                return patient;
+            }
+            long remainingNanos = deadline - System.nanoTime();
+            if (timeoutNanos >= 0 && remainingNanos <= 0) {
+                return null;
+            }
+            waitLock.lock();
+            waitingConsumers.incrementAndGet();
+            try {
+                // Checked after registering as a waiter, so an enqueue either is seen here or signals
+                while ((nonEmptyLevels.get() & mask) == 0 && !isDrained()) {
+                    if (timeoutNanos < 0) {
+                        patientAdded.await();
+                    } else if (remainingNanos > 0) {
+                        remainingNanos = patientAdded.awaitNanos(remainingNanos);
+                    } else {
+                        break;
+                    }
+                }
+            } finally {
+                waitingConsumers.decrementAndGet();
+                waitLock.unlock();
+            }
+        }
+    }
+
     // Check if all priority queues are empty
-    public synchronized boolean isEmpty() {
+    public boolean isEmpty() {
         // Look at each queue
-        for (PriorityQueue queue : patientQueues) {
+        for (ConcurrentPriorityQueue queue : patientQueues) {
             // If any queue has patients, return false
             if (!queue.isEmpty()) {
                 return false;
@@ -54,8 +316,9 @@ public class MultiPriorityQueue {
         return true;
     }
 
-    // Get the queue for a specific priority level
-    public PriorityQueue getQueue(int priority) {
+    // Get the queue for a specific priority level (thread-safe; patients taken from it directly
+    // leave its bit set until the next dequeue finds the level empty)
+    public ConcurrentPriorityQueue getQueue(int priority) {
         return patientQueues[priority];
     }
 
@@ -63,4 +326,34 @@ public class MultiPriorityQueue {
     public int getQueueSize(int priority) {
         return patientQueues[priority].size();
     }
-}
\ No newline at end of file
+
+    // Get the number of patients waiting at every level
+    public int size() {
+        int size = 0;
+        for (ConcurrentPriorityQueue queue : patientQueues) {
+            size += queue.size();
+        }
+        return size;
+    }
+
+    private void markNonEmpty(int level) {
+        int bit = 1 << level;
+        // Read before updating: under load the bit is nearly always set already
+        if ((nonEmptyLevels.get() & bit) == 0) {
+            nonEmptyLevels.getAndUpdate(levels -> levels | bit);
+        }
+    }
+
+    private void markEmpty(int level) {
+        int bit = 1 << level;
+        if ((nonEmptyLevels.get() & bit) == 0) {
+            return;
+        }
+        nonEmptyLevels.getAndUpdate(levels -> levels & ~bit);
+        // A patient enqueued before the bit was cleared must not be hidden: put it back. The size is
+        // a volatile count raised before the producer looks at the bit, so it cannot be missed here.
+        if (patientQueues[level].size() > 0) {
+            markNonEmpty(level);
+        }
+    }
+}
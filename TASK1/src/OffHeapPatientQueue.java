@@ -0,0 +1,185 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Collection;
+
+// A patient queue for very large backlogs (a whole replayed trace waiting at once) that keeps its
+// patients outside the Java heap. Each priority level is a FIFO of fixed-size records (ID, queue ID,
+// arrival time, treatment time; the priority is the level's) in chunks of direct memory, so the heap
+// holds a few objects per chunk however many patients wait, and the garbage collector never has
+// to walk them. Chunks a level has emptied are kept for reuse, so a queue that fills and drains
+// over and over cycles through the same memory like a ring.
+// Patients are copied in by enqueue() and rebuilt by poll(): waiting and departure times (not
+// known while a patient waits) are not kept, and a PatientStore view comes back as a plain
+// patient, no longer tied to its store row. Levels are served highest first, Emergency (2), then
+// Critical (1), then Normal (0). Not thread-safe, like PriorityQueue.
+public class OffHeapPatientQueue implements PatientQueue {
+    // Bytes per patient: int ID, int queue ID, double arrival time, double treatment time
+    static final int RECORD_SIZE = 24;
+    // Records per chunk by default (1.5 MB chunks)
+    static final int DEFAULT_CHUNK_RECORDS = 1 << 16;
+    // Emptied chunks each level keeps for reuse; the rest are left to be freed
+    private static final int SPARE_CHUNKS = 2;
+    private static final int LEVELS = 3;
+
+    // One FIFO of records per priority level: 0 = Normal, 1 = Critical, 2 = Emergency
+    private final Level[] levels = new Level[LEVELS];
+    private final int chunkRecords;
+    private int size = 0;
+
+    // Constructor for a queue with the default chunk size
+    public OffHeapPatientQueue() {
+        this(DEFAULT_CHUNK_RECORDS);
+    }
+
+    // Constructor for a queue allocating memory chunkRecords patients at a time
+    public OffHeapPatientQueue(int chunkRecords) {
+        if (chunkRecords < 1 || chunkRecords > Integer.MAX_VALUE / RECORD_SIZE) {
+            throw new IllegalArgumentException("Chunk must hold 1 to " + Integer.MAX_VALUE / RECORD_SIZE
+                    + " patients, got " + chunkRecords);
+        }
+        this.chunkRecords = chunkRecords;
+        for (int i = 0; i < LEVELS; i++) {
+            levels[i] = new Level();
+        }
+    }
+
+    // Copy the patient to the end of their priority level
+    @Override
+    public void enqueue(CriticalPatient patient) {
+        int priority = patient.getPriority();
+        if (priority < 0 || priority >= LEVELS) {
+            throw new IllegalArgumentException("Priority must be 0, 1 or 2, got " + priority);
+        }
+        levels[priority].add(patient);
+        size++;
+    }
+
+    // Remove the next patient of the highest non-empty level and return a copy of them, or null if
+    // every level is empty
+    @Override
+    public CriticalPatient poll() {
+        for (int priority = LEVELS - 1; priority >= 0; priority--) {
+            if (levels[priority].size > 0) {
+                size--;
+                return levels[priority].remove(priority);
+            }
+        }
+        return null;
+    }
+
+    // Move up to maxPatients patients into the target, highest level first; returns how many were moved
+    @Override
+    public int drainTo(Collection<? super CriticalPatient> target, int maxPatients) {
+        if (maxPatients < 0) {
+            throw new IllegalArgumentException("Cannot drain a negative number of patients: " + maxPatients);
+        }
+        int count = 0;
+        for (int priority = LEVELS - 1; priority >= 0 && count < maxPatients; priority--) {
+            Level level = levels[priority];
+            while (count < maxPatients && level.size > 0) {
+                target.add(level.remove(priority));
+                count++;
+            }
+        }
+        size -= count;
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // Get the number of patients waiting at one priority level
+    public int getQueueSize(int priority) {
+        return levels[priority].size;
+    }
+
+    // Get the direct memory the queue holds, spare chunks included
+    public long getOffHeapBytes() {
+        long chunks = 0;
+        for (Level level : levels) {
+            chunks += level.chunks.size() + level.spare.size();
+        }
+        return chunks * chunkRecords * RECORD_SIZE;
+    }
+
+    // Let go of the spare chunks and those of empty levels, for a queue that stays empty for a while
+    // (the memory is freed once the garbage collector finds the chunks unreachable)
+    public void releaseEmptyChunks() {
+        for (Level level : levels) {
+            level.release();
+        }
+    }
+
+    // One priority level: chunks in FIFO order, read from the first and written to the last
+    private final class Level {
+        private final ArrayDeque<ByteBuffer> chunks = new ArrayDeque<>();
+        // Emptied chunks waiting to be written again
+        private final ArrayDeque<ByteBuffer> spare = new ArrayDeque<>();
+        // Next record to read in the first chunk, and next free record in the last
+        private int readIndex = 0;
+        private int writeIndex = 0;
+        private int size = 0;
+
+        void add(CriticalPatient patient) {
+            ByteBuffer chunk = chunks.peekLast();
+            if (chunk == null || writeIndex == chunkRecords) {
+                chunk = spare.isEmpty()
+                        ? ByteBuffer.allocateDirect(chunkRecords * RECORD_SIZE).order(ByteOrder.nativeOrder())
+                        : spare.pop();
+                chunks.addLast(chunk);
+                writeIndex = 0;
+            }
+            int offset = writeIndex * RECORD_SIZE;
+            chunk.putInt(offset, patient.getPatientId());
+            chunk.putInt(offset + 4, patient.getAssignedQueueId());
+            chunk.putDouble(offset + 8, patient.getArrivalTime());
+            chunk.putDouble(offset + 16, patient.getServiceTime());
+            writeIndex++;
+            size++;
+        }
+
+        // Remove the first record and rebuild the patient; the level must not be empty
+        CriticalPatient remove(int priority) {
+            ByteBuffer chunk = chunks.peekFirst();
+            int offset = readIndex * RECORD_SIZE;
+            int patientId = chunk.getInt(offset);
+            CriticalPatient patient = priority == 2 ? new EmergencyPatient(patientId) : new CriticalPatient(patientId);
+            patient.setPriority(priority);
+            patient.setAssignedQueueId(chunk.getInt(offset + 4));
+            patient.setArrivalTime(chunk.getDouble(offset + 8));
+            patient.setServiceTime(chunk.getDouble(offset + 16));
+            readIndex++;
+            size--;
+            if (size == 0) {
+                // Empty: the first chunk is also the last, so start it over instead of letting it go
+                readIndex = 0;
+                writeIndex = 0;
+            } else if (readIndex == chunkRecords) {
+                recycle(chunks.pollFirst());
+                readIndex = 0;
+            }
+            return patient;
+        }
+
+        void release() {
+            spare.clear();
+            if (size == 0) {
+                chunks.clear();
+            }
+        }
+
+        private void recycle(ByteBuffer chunk) {
+            if (spare.size() < SPARE_CHUNKS) {
+                spare.push(chunk);
+            }
+        }
+    }
+}
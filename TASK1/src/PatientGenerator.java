@@ -0,0 +1,94 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.random.RandomGenerator;
+
+// This class produces the day's patients one at a time, already in arrival order, so a
+// simulation can take them as they "walk in" without the whole day being held in memory.
+// What arrives, and when, is set by a Workload (the original day by default).
+public class PatientGenerator implements Iterator<CriticalPatient> {
+    // Random source for patient types, arrival gaps and service times, so a seed fixes the whole day.
+    // Not shared: each generator (one per thread or replication) gets its own.
+    private final RandomGenerator rand;
+    // Arrival process, priority mix and treatment times
+    private final Workload workload;
+    // This generator's own copy of the workload's arrival process
+    private final ArrivalProcess arrivals;
+    // How many patients the day has
+    private final int numPatients;
+    // How many patients have been produced so far
+    private int produced = 0;
+    // Arrival time of the next patient (in minutes past midnight)
+    private double currentArrivalTime = 480; // Start at 8:00 AM (480 minutes)
+
+    // Constructor to set up a day with the given number of patients
+    public PatientGenerator(int numPatients, RandomGenerator rand) {
+        this(numPatients, rand, Workload.standard());
+    }
+
+    // Constructor to set up a day with the given number of patients following a workload
+    public PatientGenerator(int numPatients, RandomGenerator rand, Workload workload) {
+        this.numPatients = numPatients;
+        this.rand = rand;
+        this.workload = workload;
+        this.arrivals = workload.getArrivals().copy();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return produced < numPatients;
+    }
+
+    // Create the next patient with a random type and service time
+    @Override
+    public CriticalPatient next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("All " + numPatients + " patients have arrived");
+        }
+        int patientId = ++produced;
+        CriticalPatient patient;
+        int patientType = workload.priorityFor(rand.nextInt(100));
+        if (patientType == 2) { // Emergency patient
+            patient = new EmergencyPatient(patientId);
+        } else { // Normal or critical patient
+            patient = new CriticalPatient(patientId);
+        }
+        patient.setArrivalTime(currentArrivalTime);
+        patient.setServiceTime(serviceTime(patientType));
+        patient.setPriority(patientType);
+
+        // Space out arrivals as the workload says
+        currentArrivalTime = arrivals.nextArrivalTime(currentArrivalTime, rand);
+        return patient;
+    }
+
+    // Add the remaining patients straight into a column store, without creating patient objects
+    public void generateInto(PatientStore store) {
+        while (hasNext()) {
+            int patientId = ++produced;
+            int patientType = workload.priorityFor(rand.nextInt(100));
+            store.add(patientId, patientType, currentArrivalTime, serviceTime(patientType));
+            currentArrivalTime = arrivals.nextArrivalTime(currentArrivalTime, rand);
+        }
+    }
+
+    // Move past the next count patients without creating them, drawing the same random numbers as
+    // next() would, so the generator ends up where it would after as many calls
+    public void skip(long count) {
+        if (count > numPatients - produced) {
+            throw new NoSuchElementException("Cannot skip " + count + " patients, only "
+                    + (numPatients - produced) + " are left");
+        }
+        for (long i = 0; i < count; i++) {
+            produced++;
+            serviceTime(workload.priorityFor(rand.nextInt(100)));
+            currentArrivalTime = arrivals.nextArrivalTime(currentArrivalTime, rand);
+        }
+    }
+
+    // Draw a treatment time from the workload's emergency or caretaker distribution
+    private double serviceTime(int patientType) {
+        return patientType == 2
+                ? workload.getEmergencyService().sample(rand)
+                : workload.getCaretakerService().sample(rand);
+    }
+}
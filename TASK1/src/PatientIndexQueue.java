@@ -0,0 +1,74 @@
+// Caretaker queue of patient indices in a PatientStore, with the same rules as AdaptiveQueue:
+// critical patients (priority 1) first unless a DequeuePolicy says otherwise, each group in
+// arrival order. Holding ints instead of patient objects means no per-patient node or pointer,
+// and nothing for the GC to follow.
+// Not synchronized: it is meant for single-threaded engines such as ColumnarSimulation.
+public class PatientIndexQueue {
+    // Store the indices refer to
+    private final PatientStore store;
+    // Critical patients waiting for treatment, in arrival order
+    private final IntDeque criticalPatients = new IntDeque();
+    // All other patients waiting for treatment, in arrival order
+    private final IntDeque otherPatients = new IntDeque();
+    // A unique ID to identify this queue
+    private final int queueId;
+    // Chooses between the two groups on dequeue (level 0 = others, 1 = critical)
+    private DequeuePolicy policy = DequeuePolicy.strict();
+    // Arrival times of both groups' first patients, handed to the policy (reused on every dequeue)
+    private final double[] headArrivalTimes = new double[2];
+
+    // Constructor to set up a new queue with a given ID over a patient store
+    public PatientIndexQueue(int queueId, PatientStore store) {
+        this.queueId = queueId;
+        this.store = store;
+    }
+
+    // Add a patient, by store index, to the end of the sub-queue for their priority
+    public void enqueue(int patientIndex) {
+        if (store.getPriority(patientIndex) == 1) { // 1 means critical
+            criticalPatients.addLast(patientIndex);
+        } else {
+            otherPatients.addLast(patientIndex);
+        }
+    }
+
+    // Choose how the next patient is picked (strict critical-first unless set); the queue keeps its own copy
+    public void setDequeuePolicy(DequeuePolicy policy) {
+        policy.checkLevels(headArrivalTimes.length);
+        this.policy = policy.copy();
+    }
+
+    // Remove and return the next patient's index from the group the policy picks (-1 if the queue is empty)
+    public int dequeue() {
+        headArrivalTimes[0] = otherPatients.isEmpty() ? Double.NaN : store.getArrivalTime(otherPatients.peekFirst());
+        headArrivalTimes[1] = criticalPatients.isEmpty() ? Double.NaN
+                : store.getArrivalTime(criticalPatients.peekFirst());
+        int level = policy.select(headArrivalTimes);
+        if (level < 0) {
+            return -1;
+        }
+        int patient = level == 1 ? criticalPatients.pollFirst() : otherPatients.pollFirst();
+        policy.served(level, store.getServiceTime(patient));
+        return patient;
+    }
+
+    // Check if the queue has no patients
+    public boolean isEmpty() {
+        return criticalPatients.isEmpty() && otherPatients.isEmpty();
+    }
+
+    // Return the number of patients in the queue
+    public int size() {
+        return criticalPatients.size() + otherPatients.size();
+    }
+
+    // Count how many critical patients are in the queue
+    public int countCriticalPatients() {
+        return criticalPatients.size();
+    }
+
+    // Get the ID of this queue
+    public int getQueueId() {
+        return queueId;
+    }
+}
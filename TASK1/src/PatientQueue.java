@@ -0,0 +1,20 @@
+import java.util.Collection;
+
+// A queue of waiting patients, whatever it keeps them in: linked nodes (PriorityQueue), one deque
+// per group (AdaptiveQueue) or fixed-size records outside the heap (OffHeapPatientQueue). Each
+// implementation says in what order patients come out and whether it is thread-safe.
+public interface PatientQueue {
+    // Add a patient
+    void enqueue(CriticalPatient patient);
+
+    // Remove and return the next patient, or null if the queue is empty
+    CriticalPatient poll();
+
+    // Move up to maxPatients patients into the target in the order poll() would return them, and
+    // return how many were moved
+    int drainTo(Collection<? super CriticalPatient> target, int maxPatients);
+
+    boolean isEmpty();
+
+    int size();
+}
@@ -0,0 +1,167 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// Running wait-time statistics, updated as each patient leaves, so no list of patients is needed.
+// Waits and sojourn times (arrival to departure) go into a TimeHistogram per priority, so
+// percentiles cost fixed memory however long the day is. Not thread-safe: each thread keeps its
+// own statistics and they are combined with merge().
+public class PatientStatistics {
+    // Per priority level (0 = Normal, 1 = Critical, 2 = Emergency)
+    private final TimeHistogram[] waits = new TimeHistogram[3];
+    private final TimeHistogram[] sojourns = new TimeHistogram[3];
+    // Latest departure of a caretaker patient (in minutes past midnight)
+    private double lastCaretakerDeparture = 480;
+
+    // Constructor to create empty statistics
+    public PatientStatistics() {
+        for (int priority = 0; priority <= 2; priority++) {
+            waits[priority] = new TimeHistogram();
+            sojourns[priority] = new TimeHistogram();
+        }
+    }
+
+    // Add a patient who has finished treatment
+    public void record(CriticalPatient patient) {
+        record(patient.getPriority(), patient.getArrivalTime(), patient.getWaitingTime(), patient.getDepartureTime());
+    }
+
+    // Add a patient who has finished treatment, given by their priority, arrival, wait and departure time
+    public void record(int priority, double arrivalTime, double waitTime, double departureTime) {
+        waits[priority].record(waitTime);
+        sojourns[priority].record(departureTime - arrivalTime);
+        if (priority != 2) {
+            lastCaretakerDeparture = Math.max(lastCaretakerDeparture, departureTime);
+        }
+    }
+
+    // Add every patient recorded in other statistics (for example another thread's)
+    public void merge(PatientStatistics other) {
+        for (int priority = 0; priority <= 2; priority++) {
+            waits[priority].merge(other.waits[priority]);
+            sojourns[priority].merge(other.sojourns[priority]);
+        }
+        lastCaretakerDeparture = Math.max(lastCaretakerDeparture, other.lastCaretakerDeparture);
+    }
+
+    // Save the statistics for a checkpoint
+    void writeState(DataOutput out) throws IOException {
+        for (int priority = 0; priority <= 2; priority++) {
+            waits[priority].writeState(out);
+            sojourns[priority].writeState(out);
+        }
+        out.writeDouble(lastCaretakerDeparture);
+    }
+
+    // Replace the statistics with ones saved by writeState()
+    void readState(DataInput in) throws IOException {
+        for (int priority = 0; priority <= 2; priority++) {
+            waits[priority].readState(in);
+            sojourns[priority].readState(in);
+        }
+        lastCaretakerDeparture = in.readDouble();
+    }
+
+    // Get how many patients of a priority level have left
+    public long getCount(int priority) {
+        return waits[priority].getCount();
+    }
+
+    // Get the average wait of a priority level
+    public double getAverageWait(int priority) {
+        return waits[priority].getMean();
+    }
+
+    // Get the wait histogram of a priority level
+    public TimeHistogram getWaits(int priority) {
+        return waits[priority];
+    }
+
+    // Get the sojourn time (arrival to departure) histogram of a priority level
+    public TimeHistogram getSojourns(int priority) {
+        return sojourns[priority];
+    }
+
+    // Get the waits of all caretaker (normal and critical) patients together
+    public TimeHistogram getCaretakerWaits() {
+        TimeHistogram caretakerWaits = new TimeHistogram();
+        caretakerWaits.merge(waits[0]);
+        caretakerWaits.merge(waits[1]);
+        return caretakerWaits;
+    }
+
+    // Get the sojourn times of all caretaker (normal and critical) patients together
+    public TimeHistogram getCaretakerSojourns() {
+        TimeHistogram caretakerSojourns = new TimeHistogram();
+        caretakerSojourns.merge(sojourns[0]);
+        caretakerSojourns.merge(sojourns[1]);
+        return caretakerSojourns;
+    }
+
+    // Minutes from the start of the day until the last caretaker patient left
+    public double getCaretakerMakespan() {
+        return lastCaretakerDeparture - 480;
+    }
+
+    // Print average, min, max and percentile wait and sojourn times for each priority level
+    public void printSummary() {
+        for (int priority = 0; priority <= 2; priority++) {
+            TimeHistogram wait = waits[priority];
+            if (wait.getCount() > 0) {
+                System.out.printf("%n%s Patients (%d):%n", getPriorityName(priority), wait.getCount());
+                System.out.printf("Average Wait: %.2f min | Min: %.2f min | Max: %.2f min%n",
+                        wait.getMean(), wait.getMin(), wait.getMax());
+                System.out.println("Wait    " + formatPercentiles(wait));
+                System.out.println("Sojourn " + formatPercentiles(sojourns[priority]));
+            }
+        }
+    }
+
+    // One line with the patients who have left by the given time and their wait percentiles
+    public String formatSnapshot(double time) {
+        StringBuilder line = new StringBuilder(256);
+        line.append("[Snapshot ");
+        // The clock wraps at midnight here, unlike in patient records
+        LogFormat.appendTime(line, (int) time % (24 * 60));
+        line.append(']');
+        for (int priority = 0; priority <= 2; priority++) {
+            TimeHistogram wait = waits[priority];
+            line.append(priority == 0 ? " " : " | ").append(getPriorityName(priority)).append(' ')
+                    .append(wait.getCount()).append(" left, wait ");
+            appendPercentiles(line, wait);
+        }
+        return line.toString();
+    }
+
+    // Format the p50, p90, p99 and p99.9 of a histogram
+    static String formatPercentiles(TimeHistogram histogram) {
+        StringBuilder text = new StringBuilder(64);
+        appendPercentiles(text, histogram);
+        return text.toString();
+    }
+
+    // Append the p50, p90, p99 and p99.9 of a histogram, e.g. "p50 1.25, p90 4.00, p99 9.50, p99.9 12.75 min"
+    static void appendPercentiles(StringBuilder text, TimeHistogram histogram) {
+        text.append("p50 ");
+        LogFormat.appendFixed(text, histogram.getValueAtPercentile(50), 2);
+        text.append(", p90 ");
+        LogFormat.appendFixed(text, histogram.getValueAtPercentile(90), 2);
+        text.append(", p99 ");
+        LogFormat.appendFixed(text, histogram.getValueAtPercentile(99), 2);
+        text.append(", p99.9 ");
+        LogFormat.appendFixed(text, histogram.getValueAtPercentile(99.9), 2);
+        text.append(" min");
+    }
+
+    // Convert priority numbers to readable names
+    static String getPriorityName(int level) {
+        switch (level) {
+            case 1:
+                return "Critical";
+            case 2:
+                return "Emergency";
+            default:
+                return "Normal";
+        }
+    }
+}
@@ -0,0 +1,145 @@
+import java.util.Arrays;
+
+// Column-oriented storage for a day's patients: one primitive array per field instead of one
+// object per patient, so millions of patients cost about 41 bytes each, sit next to each other
+// in memory and give the garbage collector nothing to trace. Patients are addressed by their
+// index (0, 1, 2, ... in the order they were added); view() wraps an index as a CriticalPatient
+// for code that still works with patient objects.
+public class PatientStore {
+    private int[] patientIds;
+    private byte[] priorities;
+    private double[] arrivalTimes;
+    private double[] serviceTimes;
+    private double[] waitingTimes;
+    private double[] departureTimes;
+    private int[] assignedQueueIds;
+    // Number of patients stored
+    private int size = 0;
+
+    // Constructor to create an empty store with room for the given number of patients
+    public PatientStore(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        patientIds = new int[capacity];
+        priorities = new byte[capacity];
+        arrivalTimes = new double[capacity];
+        serviceTimes = new double[capacity];
+        waitingTimes = new double[capacity];
+        departureTimes = new double[capacity];
+        assignedQueueIds = new int[capacity];
+    }
+
+    // Create a store holding the patients of a generated day, in arrival order
+    public static PatientStore generate(int numPatients, java.util.random.RandomGenerator rand) {
+        return generate(numPatients, rand, Workload.standard());
+    }
+
+    // Create a store holding the patients of a generated day following a workload, in arrival order
+    public static PatientStore generate(int numPatients, java.util.random.RandomGenerator rand, Workload workload) {
+        PatientStore store = new PatientStore(numPatients);
+        new PatientGenerator(numPatients, rand, workload).generateInto(store);
+        return store;
+    }
+
+    // Add a patient and return their index
+    public int add(int patientId, int priority, double arrivalTime, double serviceTime) {
+        if (size == patientIds.length) {
+            grow();
+        }
+        int index = size++;
+        patientIds[index] = patientId;
+        priorities[index] = (byte) priority;
+        arrivalTimes[index] = arrivalTime;
+        serviceTimes[index] = serviceTime;
+        return index;
+    }
+
+    // Make every column twice as long
+    private void grow() {
+        int capacity = patientIds.length * 2;
+        patientIds = Arrays.copyOf(patientIds, capacity);
+        priorities = Arrays.copyOf(priorities, capacity);
+        arrivalTimes = Arrays.copyOf(arrivalTimes, capacity);
+        serviceTimes = Arrays.copyOf(serviceTimes, capacity);
+        waitingTimes = Arrays.copyOf(waitingTimes, capacity);
+        departureTimes = Arrays.copyOf(departureTimes, capacity);
+        assignedQueueIds = Arrays.copyOf(assignedQueueIds, capacity);
+    }
+
+    // Get a CriticalPatient (EmergencyPatient for priority 2) that reads and writes this store's columns
+    public CriticalPatient view(int index) {
+        checkIndex(index);
+        return priorities[index] == 2 ? new EmergencyPatient(this, index) : new CriticalPatient(this, index);
+    }
+
+    // Get the number of patients stored
+    public int size() {
+        return size;
+    }
+
+    public int getPatientId(int index) {
+        return patientIds[index];
+    }
+
+    public int getPriority(int index) {
+        return priorities[index];
+    }
+
+    public void setPriority(int index, int priority) {
+        priorities[index] = (byte) priority;
+    }
+
+    public double getArrivalTime(int index) {
+        return arrivalTimes[index];
+    }
+
+    public void setArrivalTime(int index, double arrivalTime) {
+        arrivalTimes[index] = arrivalTime;
+    }
+
+    public double getServiceTime(int index) {
+        return serviceTimes[index];
+    }
+
+    public void setServiceTime(int index, double serviceTime) {
+        serviceTimes[index] = serviceTime;
+    }
+
+    public double getWaitingTime(int index) {
+        return waitingTimes[index];
+    }
+
+    public void setWaitingTime(int index, double waitingTime) {
+        waitingTimes[index] = waitingTime;
+    }
+
+    public double getDepartureTime(int index) {
+        return departureTimes[index];
+    }
+
+    public void setDepartureTime(int index, double departureTime) {
+        departureTimes[index] = departureTime;
+    }
+
+    public int getAssignedQueueId(int index) {
+        return assignedQueueIds[index];
+    }
+
+    public void setAssignedQueueId(int index, int assignedQueueId) {
+        assignedQueueIds[index] = assignedQueueId;
+    }
+
+    // Wait and sojourn statistics of every patient in the store
+    public PatientStatistics statistics() {
+        PatientStatistics statistics = new PatientStatistics();
+        for (int i = 0; i < size; i++) {
+            statistics.record(priorities[i], arrivalTimes[i], waitingTimes[i], departureTimes[i]);
+        }
+        return statistics;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Patient index " + index + " outside store of " + size);
+        }
+    }
+}
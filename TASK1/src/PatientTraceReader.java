@@ -0,0 +1,153 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Replays a trace written by PatientTraceWriter. The file is memory-mapped, so records are read
+// straight from the page cache with fixed-offset gets: no parsing, no copying, no per-record
+// objects when loading into a PatientStore. Files over 2 GB are mapped one window at a time.
+// As an Iterator it hands out one patient at a time for the streaming engine.
+public class PatientTraceReader implements Iterator<CriticalPatient>, AutoCloseable {
+    // Most records in one mapped window (a mapping cannot exceed 2 GB)
+    private static final int WINDOW_RECORDS = Integer.MAX_VALUE / PatientTraceWriter.RECORD_SIZE;
+
+    private final FileChannel channel;
+    // Number of records in the trace
+    private final long count;
+    // Index of the next record the iterator hands out
+    private long next = 0;
+    // Currently mapped window and the index of its first record
+    private MappedByteBuffer window;
+    private long windowStart = 0;
+    private int windowRecords = 0;
+
+    // Constructor to open a trace file and check its header
+    public PatientTraceReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(PatientTraceWriter.HEADER_SIZE)
+                    .order(PatientTraceWriter.BYTE_ORDER);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Not a patient trace (file too short): " + path);
+                }
+            }
+            header.flip();
+            if (header.getInt() != PatientTraceWriter.MAGIC) {
+                throw new IOException("Not a patient trace: " + path);
+            }
+            short version = header.getShort();
+            short recordSize = header.getShort();
+            if (version != PatientTraceWriter.VERSION || recordSize != PatientTraceWriter.RECORD_SIZE) {
+                throw new IOException("Unsupported trace version " + version + " (record size " + recordSize + ")");
+            }
+            count = header.getLong();
+            // Compared as record counts, so a corrupt count cannot overflow past the check
+            long recordsInFile = (channel.size() - PatientTraceWriter.HEADER_SIZE) / PatientTraceWriter.RECORD_SIZE;
+            if (count < 0 || count > recordsInFile) {
+                throw new IOException("Trace " + path + " is truncated: header says " + count + " records");
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Get the number of patients in the trace
+    public long size() {
+        return count;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next < count;
+    }
+
+    // Read the next patient as a patient object
+    @Override
+    public CriticalPatient next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("All " + count + " traced patients have been read");
+        }
+        int offset = offsetOf(next);
+        int priority = priorityAt(offset);
+        next++;
+        int patientId = window.getInt(offset);
+        CriticalPatient patient = priority == 2 ? new EmergencyPatient(patientId) : new CriticalPatient(patientId);
+        patient.setPriority(priority);
+        patient.setArrivalTime(window.getDouble(offset + 5));
+        patient.setServiceTime(window.getDouble(offset + 13));
+        return patient;
+    }
+
+    // Move past the next count records without reading them
+    public void skip(long count) {
+        if (count < 0 || count > this.count - next) {
+            throw new NoSuchElementException("Cannot skip " + count + " records, only " + (this.count - next)
+                    + " are left");
+        }
+        next += count;
+    }
+
+    // Add the remaining patients straight into a column store, without creating patient objects
+    public void readInto(PatientStore store) {
+        if (count - next > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Trace of " + count + " records does not fit in one PatientStore");
+        }
+        while (hasNext()) {
+            int offset = offsetOf(next);
+            store.add(window.getInt(offset), priorityAt(offset), window.getDouble(offset + 5),
+                    window.getDouble(offset + 13));
+            next++;
+        }
+    }
+
+    // Priority of the record at a window offset, checked since it is used as a level index
+    private int priorityAt(int offset) {
+        byte priority = window.get(offset + 4);
+        if (priority < 0 || priority > 2) {
+            throw new java.io.UncheckedIOException(new IOException("Corrupt trace: record " + next
+                    + " has priority " + priority));
+        }
+        return priority;
+    }
+
+    // Read the remaining patients into a new column store
+    public PatientStore readStore() {
+        PatientStore store = new PatientStore((int) Math.min(count - next, Integer.MAX_VALUE));
+        readInto(store);
+        return store;
+    }
+
+    // Byte offset of a record in the mapped window, mapping the window that holds it if needed
+    private int offsetOf(long index) {
+        if (window == null || index >= windowStart + windowRecords) {
+            mapWindow(index);
+        }
+        return (int) (index - windowStart) * PatientTraceWriter.RECORD_SIZE;
+    }
+
+    private void mapWindow(long firstIndex) {
+        int records = (int) Math.min(WINDOW_RECORDS, count - firstIndex);
+        try {
+            window = channel.map(FileChannel.MapMode.READ_ONLY,
+                    PatientTraceWriter.HEADER_SIZE + firstIndex * PatientTraceWriter.RECORD_SIZE,
+                    (long) records * PatientTraceWriter.RECORD_SIZE);
+        } catch (IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+        window.order(PatientTraceWriter.BYTE_ORDER);
+        windowStart = firstIndex;
+        windowRecords = records;
+    }
+
+    // Close the file; mapped windows stay readable until they are garbage collected
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,125 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+
+// Writes patients to a binary trace file that PatientTraceReader can replay exactly.
+// Format (little-endian): a 16-byte header, then one fixed-size 21-byte record per patient.
+//   header: int magic "HQTR", short version, short record size, long record count
+//   record: int patient ID, byte priority, double arrival time, double service time
+// Fixed-size records let the reader find any patient by offset in a memory-mapped file.
+public class PatientTraceWriter implements AutoCloseable {
+    static final int MAGIC = 0x52545148; // "HQTR" read as little-endian bytes
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 21;
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    // Records collected before each write to the file
+    private static final int BUFFER_RECORDS = 1 << 14;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * RECORD_SIZE).order(BYTE_ORDER);
+    // Number of records written so far
+    private long count = 0;
+    private boolean closed = false;
+
+    // Constructor to create (or replace) a trace file
+    public PatientTraceWriter(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        // The record count is filled in by close(); records follow the header
+        writeHeader(0);
+        channel.position(HEADER_SIZE);
+    }
+
+    // Add one patient
+    public void write(CriticalPatient patient) throws IOException {
+        write(patient.getPatientId(), patient.getPriority(), patient.getArrivalTime(), patient.getServiceTime());
+    }
+
+    // Add one patient kept in a column store
+    public void write(PatientStore store, int index) throws IOException {
+        write(store.getPatientId(index), store.getPriority(index), store.getArrivalTime(index),
+                store.getServiceTime(index));
+    }
+
+    // Add one patient given by their fields
+    public void write(int patientId, int priority, double arrivalTime, double serviceTime) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Trace is closed");
+        }
+        if (buffer.remaining() < RECORD_SIZE) {
+            flushBuffer();
+        }
+        buffer.putInt(patientId).put((byte) priority).putDouble(arrivalTime).putDouble(serviceTime);
+        count++;
+    }
+
+    // Add every patient of a column store
+    public void writeAll(PatientStore store) throws IOException {
+        for (int i = 0; i < store.size(); i++) {
+            write(store, i);
+        }
+    }
+
+    // Wrap a patient source so that every patient it hands out is also written to this trace
+    public Iterator<CriticalPatient> recording(Iterator<CriticalPatient> patients) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return patients.hasNext();
+            }
+
+            @Override
+            public CriticalPatient next() {
+                CriticalPatient patient = patients.next();
+                try {
+                    write(patient);
+                } catch (IOException e) {
+                    throw new java.io.UncheckedIOException(e);
+                }
+                return patient;
+            }
+        };
+    }
+
+    // Get the number of patients written so far
+    public long getCount() {
+        return count;
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void writeHeader(long recordCount) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(BYTE_ORDER);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_SIZE).putLong(recordCount).flip();
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+    }
+
+    // Write out the remaining records and the final record count
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flushBuffer();
+            writeHeader(count);
+        } finally {
+            channel.close();
+        }
+    }
+}
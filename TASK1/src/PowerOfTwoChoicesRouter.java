@@ -0,0 +1,74 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+// Routes patients to caretaker queues by "power of two choices": look at two random queues and
+// join the shorter one. Only queues below the threshold are sampled, so a new queue is needed
+// only once every queue is full, as with shortest-queue assignment, and the queues never have
+// to be kept in order. The picks come from the run's generator, so a seeded day routes the same
+// way every time. Thread-safe; queues reach the threshold through route() only (up-front
+// assignment), so a full queue is never sampled again.
+public class PowerOfTwoChoicesRouter {
+    // Queues that can receive patients, in the order they were added
+    private final List<AdaptiveQueue> queues = new ArrayList<>();
+    // The queues still below the threshold, the only ones sampled
+    private final List<AdaptiveQueue> openQueues = new ArrayList<>();
+    // A queue with this many patients counts as full
+    private final int threshold;
+    // Source of the random picks
+    private final RandomGenerator random;
+
+    // Constructor to create a router with the given "full" threshold, picking queues with random
+    public PowerOfTwoChoicesRouter(int threshold, RandomGenerator random) {
+        this.threshold = threshold;
+        this.random = random;
+    }
+
+    // Make a queue available for routing
+    public synchronized void addQueue(AdaptiveQueue queue) {
+        queues.add(queue);
+        if (queue.size() < threshold) {
+            openQueues.add(queue);
+        }
+    }
+
+    // Get a copy of the queues available for routing
+    public synchronized List<AdaptiveQueue> getQueues() {
+        return new ArrayList<>(queues);
+    }
+
+    // Get the number of queues available for routing
+    public synchronized int getQueueCount() {
+        return queues.size();
+    }
+
+    // Put the patient in the shorter of two random queues below the threshold and return it, or
+    // return null without queueing the patient if every queue is full (time to open a new queue)
+    public synchronized AdaptiveQueue route(CriticalPatient patient) {
+        int count = openQueues.size();
+        if (count == 0) {
+            return null;
+        }
+        int firstIndex = random.nextInt(count);
+        int targetIndex = firstIndex;
+        if (count > 1) {
+            // Pick a second, different queue
+            int secondIndex = random.nextInt(count - 1);
+            if (secondIndex >= firstIndex) {
+                secondIndex++;
+            }
+            if (openQueues.get(secondIndex).size() < openQueues.get(firstIndex).size()) {
+                targetIndex = secondIndex;
+            }
+        }
+        AdaptiveQueue target = openQueues.get(targetIndex);
+        target.enqueue(patient);
+        patient.setAssignedQueueId(target.getQueueId());
+        if (target.size() >= threshold) {
+            // Now full: move the last open queue into its place
+            openQueues.set(targetIndex, openQueues.get(count - 1));
+            openQueues.remove(count - 1);
+        }
+        return target;
+    }
+}
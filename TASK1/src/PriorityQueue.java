@@ -1,26 +1,29 @@
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
-public class PriorityQueue {
+public class PriorityQueue implements PatientQueue {
     private PNode head;
+    // Last node in the chain, kept so enqueue never has to walk the list
+    private PNode tail;
     private int size;
 
     public PriorityQueue() {
         head = null;
+        tail = null;
         size = 0;
     }
 
-    // Enqueue patient at the tail (FIFO)
+    // Enqueue patient at the tail (FIFO) in constant time
+    @Override
     public void enqueue(CriticalPatient patient) {
         PNode newNode = new PNode(patient);
         if (head == null) {
             head = newNode;
         } else {
-            PNode current = head;
-            while (current.next != null) {
-                current = current.next;
-            }
-            current.next = newNode;
+            tail.next = newNode;
         }
+        tail = newNode;
         size++;
     }
 
@@ -31,10 +34,48 @@ public class PriorityQueue {
         }
         CriticalPatient patient = head.patient;
         head = head.next;
+        if (head == null) {
+            tail = null;
+        }
         size--;
         return patient;
     }
 
+    // Dequeue the patient at the head, or return null if the queue is empty
+    @Override
+    public CriticalPatient poll() {
+        return isEmpty() ? null : dequeue();
+    }
+
+    // Move up to maxPatients patients from the head into the target, in FIFO order, unlinking them
+    // all at once; returns how many were moved (0 if the queue is empty)
+    @Override
+    public int drainTo(Collection<? super CriticalPatient> target, int maxPatients) {
+        if (maxPatients < 0) {
+            throw new IllegalArgumentException("Cannot drain a negative number of patients: " + maxPatients);
+        }
+        PNode node = head;
+        int count = 0;
+        while (count < maxPatients && node != null) {
+            target.add(node.patient);
+            node = node.next;
+            count++;
+        }
+        head = node;
+        if (head == null) {
+            tail = null;
+        }
+        size -= count;
+        return count;
+    }
+
+    // Remove and return up to maxPatients patients from the head, in FIFO order (empty if the queue is)
+    public List<CriticalPatient> dequeueBatch(int maxPatients) {
+        List<CriticalPatient> batch = new ArrayList<>(Math.max(0, Math.min(maxPatients, size)));
+        drainTo(batch, maxPatients);
+        return batch;
+    }
+
     // Peek at the patient at the head without removing
     public CriticalPatient peek() {
         if (isEmpty()) {
@@ -43,10 +84,12 @@ public class PriorityQueue {
         return head.patient;
     }
 
+    @Override
     public boolean isEmpty() {
         return head == null;
     }
 
+    @Override
     public int size() {
         return size;
     }
@@ -1,79 +1,230 @@
 import java.util.ArrayList;
 import java.util.List;
 
-// This class simulates a hospital worker processing patients from one priority queue
+// This class simulates a hospital worker taking patients from a MultiPriorityQueue while they are
+// still being enqueued. A processor serves one priority level, or ANY_LEVEL to take whatever the
+// queue's dequeue policy picks, and stops once the queue is closed and drained.
+// Several processors can share a level. Which thread gets which patient depends on the thread
+// scheduler, so simulated time is kept by the group's Servers: every patient is treated by the
+// group's earliest free virtual server, whichever thread took them from the queue. Processors
+// book servers as they take patients, in one step, so the booking order is the queue order.
 class QueueProcessor implements Runnable {
+    // Serve whichever level the queue's dequeue policy picks
+    static final int ANY_LEVEL = MultiPriorityQueue.ANY_LEVEL;
+
     // The multi-queue system holding patients by priority
-    private MultiPriorityQueue patientQueueSystem;
-    // The priority level this processor handles (0=Normal, 1=Critical, 2=Emergency)
-    private int priorityLevel;
-    // List of all patients to filter by priority
-    private List<CriticalPatient> allPatients;
-
-    // Constructor to set up the processor with a queue, priority, and patient list
-    public QueueProcessor(MultiPriorityQueue patientQueueSystem, int priorityLevel, List<CriticalPatient> allPatients) {
+    private final MultiPriorityQueue patientQueueSystem;
+    // The priority level this processor handles (0=Normal, 1=Critical, 2=Emergency, or ANY_LEVEL)
+    private final int priorityLevel;
+    // ID shown in the log
+    private final int processorId;
+    // Virtual clocks of the servers this processor's group stands for
+    private final Servers servers;
+    // Most patients taken from the queue at once; only patients already waiting are taken, so a
+    // batch never holds back a patient
+    private final int batchSize;
+    // Where log records about patient processing go (null = no logging)
+    private final AsyncLogSink log;
+    // Wait and sojourn times of the patients this processor treated, written by its thread only
+    private final PatientStatistics statistics = new PatientStatistics();
+    // How many times this processor went to the queue, and how many patients it treated
+    private long batches = 0;
+    private long treatedPatients = 0;
+    // Shared live metrics: patients treated and how long a batch takes, timing a sample of batches
+    // and adding to the counter at the same time (null = off)
+    private Metrics.Counter treatedCounter;
+    private Metrics.Timer batchTimer;
+    // Treated patients already added to treatedCounter, and the number of the next batch to time
+    private long reportedPatients = 0;
+    private long nextTimedBatch;
+
+    // Constructor to set up a lone processor (one virtual server) taking one patient at a time, without logging
+    public QueueProcessor(MultiPriorityQueue patientQueueSystem, int priorityLevel, int processorId) {
+        this(patientQueueSystem, priorityLevel, processorId, new Servers(1), 1, null);
+    }
+
+    // Constructor to set up the processor with a queue, priority, its group's servers, batch size
+    // and log (null = no logging)
+    public QueueProcessor(MultiPriorityQueue patientQueueSystem, int priorityLevel, int processorId, Servers servers,
+                          int batchSize, AsyncLogSink log) {
+        if (priorityLevel != ANY_LEVEL && (priorityLevel < 0 || priorityLevel > 2)) {
+            throw new IllegalArgumentException("Priority level must be 0, 1, 2 or ANY_LEVEL, got " + priorityLevel);
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1, got " + batchSize);
+        }
         this.patientQueueSystem = patientQueueSystem;
         this.priorityLevel = priorityLevel;
-        this.allPatients = allPatients;
+        this.processorId = processorId;
+        this.servers = servers;
+        this.batchSize = batchSize;
+        this.log = log;
     }
 
-    // Main logic for processing patients in this priority level
+    // Main logic for processing patients in this priority level, runs in a separate thread
     @Override
     public void run() {
-        // Start the shift at 8:00 AM (480 minutes past midnight)
-        double currentTime = 480;
-        // Announce which priority queue is being handled
-        System.out.println("Processing " + getPriorityName(priorityLevel) + " Queue");
-
-        // Create a list of patients matching this priority level
-        List<CriticalPatient> patientsToProcess = new ArrayList<>();
-        for (CriticalPatient patient : allPatients) {
-            if (patient.getPriority() == priorityLevel) {
-                patientsToProcess.add(patient);
-            }
+        if (log != null) {
+            log.shiftStart(processorId);
         }
+        List<CriticalPatient> batch = new ArrayList<>(batchSize);
+        double[] startTimes = new double[batchSize];
+        try {
+            // Wait for patients; false means the queue is closed and nobody is left
+            while (patientQueueSystem.awaitAvailable(priorityLevel)) {
+                boolean timed = batchTimer != null && batches == nextTimedBatch;
+                long startNanos = timed ? System.nanoTime() : 0;
+                int count;
+                // Take the batch and book its servers in one step, so the group's virtual schedule
+                // follows the queue order even when another processor is taking patients too
+                synchronized (servers) {
+                    count = takeWaiting(batch);
+                    for (int i = 0; i < count; i++) {
+                        CriticalPatient patient = batch.get(i);
+                        startTimes[i] = servers.start(patient.getArrivalTime(), patient.getServiceTime());
+                    }
+                }
+                if (count == 0) {
+                    // Another processor got there first
+                    continue;
+                }
+                batches++;
 
-        // Treat each patient in order
-        for (CriticalPatient patient : patientsToProcess) {
-            // Wait for the patient to arrive if they’re not here yet
-            if (currentTime < patient.getArrivalTime()) {
-                currentTime = patient.getArrivalTime();
+                // Treat each patient in the order they were taken
+                for (int i = 0; i < count; i++) {
+                    treatPatient(batch.get(i), startTimes[i]);
+                }
+                batch.clear();
+                if (timed) {
+                    batchTimer.record(System.nanoTime() - startNanos);
+                    nextTimedBatch += Metrics.Timer.SAMPLE_EVERY;
+                    reportTreated();
+                }
             }
+        } catch (InterruptedException e) {
+            // Stopped early: leave the remaining patients in the queue
+            Thread.currentThread().interrupt();
+        }
+        if (treatedCounter != null) {
+            reportTreated();
+        }
+        if (log != null) {
+            log.shiftEnd(processorId);
+        }
+    }
 
-            // Calculate how long the patient waited before treatment
-            double waitTime = Math.max(0, currentTime - patient.getArrivalTime());
-            patient.setWaitingTime(waitTime);
-
-            // Add the treatment time and update when the patient leaves
-            currentTime += patient.getServiceTime();
-            patient.setDepartureTime(currentTime);
-
-            // Log the patient’s treatment details
-            System.out.println("Patient " + patient.getPatientId() +
-                    " | Priority: " + getPriorityName(patient.getPriority()) +
-                    " | Arrival: " + formatTime(patient.getArrivalTime()) +
-                    " | Waiting: " + String.format("%.2f", patient.getWaitingTime()) + " min" +
-                    " | Service: " + String.format("%.2f", patient.getServiceTime()) + " min" +
-                    " | Departure: " + formatTime(patient.getDepartureTime()));
+    // Add the patients treated since the last report to the shared counter
+    private void reportTreated() {
+        treatedCounter.add(treatedPatients - reportedPatients);
+        reportedPatients = treatedPatients;
+    }
+
+    // Take up to batchSize of the patients already waiting, in priority order, in one drain of the
+    // queue; returns how many were taken
+    private int takeWaiting(List<CriticalPatient> batch) {
+        return priorityLevel == ANY_LEVEL
+                ? patientQueueSystem.drainTo(batch, batchSize)
+                : patientQueueSystem.drainFromQueue(priorityLevel, batch, batchSize);
+    }
+
+    // Treat one patient at the start time their server was booked for
+    private void treatPatient(CriticalPatient patient, double startTime) {
+        // Calculate how long the patient waited before treatment
+        patient.setWaitingTime(startTime - patient.getArrivalTime());
+        // Add the treatment time and update when the patient leaves
+        patient.setDepartureTime(startTime + patient.getServiceTime());
+        statistics.record(patient);
+        treatedPatients++;
+        if (log != null) {
+            log.treated(processorId, patient);
         }
     }
 
-    // Convert time in minutes to a readable HH:MM format
-    private static String formatTime(double minutes) {
-        int hours = (int) (minutes / 60);
-        int mins = (int) (minutes % 60);
-        return String.format("%02d:%02d", hours, mins);
+    // Count this processor's patients in the shared pipeline.treated counter (added whenever a batch
+    // is timed and when the processor stops) and time batches, from taking one to treating its last
+    // patient, in pipeline.batch; call before the processor starts
+    public void enableMetrics(Metrics metrics) {
+        treatedCounter = metrics.counter("pipeline.treated");
+        batchTimer = metrics.timer("pipeline.batch");
+        nextTimedBatch = batches + Metrics.Timer.firstSample();
+    }
+
+    // Get the priority level this processor handles (ANY_LEVEL if it takes every level)
+    public int getPriorityLevel() {
+        return priorityLevel;
     }
 
-    // Translate priority numbers to human-readable names
-    private static String getPriorityName(int level) {
-        switch (level) {
-            case 2:
-                return "Emergency";
-            case 1:
-                return "Critical";
-            default:
-                return "Normal";
+    public int getProcessorId() {
+        return processorId;
+    }
+
+    // Get how many times this processor took patients from the queue
+    public long getBatches() {
+        return batches;
+    }
+
+    // Get how many patients this processor treated
+    public long getTreatedPatients() {
+        return treatedPatients;
+    }
+
+    // Get the wait and sojourn statistics of the patients this processor treated; read them only
+    // once the processor has stopped
+    public PatientStatistics getStatistics() {
+        return statistics;
+    }
+
+    // Virtual clocks of a group of identical servers (a min-heap of the times each one is next free),
+    // shared by the processors of one level. Each patient goes to the earliest free server, so the
+    // simulated times are those of a multi-server FIFO queue however many threads do the work.
+    static final class Servers {
+        private final double[] freeAt;
+
+        // Constructor for the given number of servers, all free from 8:00 AM (480 minutes past midnight)
+        Servers(int count) {
+            if (count < 1) {
+                throw new IllegalArgumentException("Need at least one server, got " + count);
+            }
+            freeAt = new double[count];
+            java.util.Arrays.fill(freeAt, 480);
+        }
+
+        // Book the earliest free server for a patient and return when their treatment starts
+        synchronized double start(double arrivalTime, double serviceTime) {
+            // Wait for the patient to arrive if they're not here yet
+            double startTime = Math.max(freeAt[0], arrivalTime);
+            freeAt[0] = startTime + serviceTime;
+            siftDown();
+            return startTime;
+        }
+
+        // Get the time every server has finished
+        synchronized double getMakespan() {
+            double makespan = 0;
+            for (double time : freeAt) {
+                makespan = Math.max(makespan, time);
+            }
+            return makespan;
+        }
+
+        private void siftDown() {
+            int index = 0;
+            double value = freeAt[0];
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= freeAt.length) {
+                    break;
+                }
+                if (child + 1 < freeAt.length && freeAt[child + 1] < freeAt[child]) {
+                    child++;
+                }
+                if (freeAt[child] >= value) {
+                    break;
+                }
+                freeAt[index] = freeAt[child];
+                index = child;
+            }
+            freeAt[index] = value;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,253 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
+import java.util.stream.IntStream;
+
+// Monte-Carlo capacity planning: runs many seeded, independent hospital days for each staffing
+// configuration in parallel (one ForkJoin task per day, on the columnar engine) and reports each
+// metric's mean with a 95% confidence interval. Replication i gets the same patients under every
+// configuration, so differences between configurations are not just noise between patient sets.
+// Run with: java ReplicationRunner [--replications=N] [--patients=N] [--doctors=A,B,...]
+//           [--thresholds=A,B,...] [--seed=S] [--rng=ALGORITHM] [--parallelism=N] [--scaling]
+//           [--arrivals=... --mix=... --caretaker-service=... --emergency-service=...] (as HospitalQueueSimulation)
+public class ReplicationRunner {
+    // What each replication reports
+    public enum Metric {
+        CARETAKERS("Caretakers opened"),
+        MAKESPAN("Caretaker makespan (min)"),
+        NORMAL_WAIT("Normal avg wait (min)"),
+        CRITICAL_WAIT("Critical avg wait (min)"),
+        EMERGENCY_WAIT("Emergency avg wait (min)"),
+        CARETAKER_P99_WAIT("Caretaker p99 wait (min)"),
+        EMERGENCY_P99_WAIT("Emergency p99 wait (min)");
+
+        private final String label;
+
+        Metric(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    // Two-sided 95% Student t critical values for 1 to 30 degrees of freedom
+    private static final double[] T_95 = {
+            12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+            2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+            2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042};
+    // Normal critical value used above 30 degrees of freedom
+    private static final double Z_95 = 1.960;
+
+    // Patients per simulated day
+    private final int numPatients;
+    // Seed of every replication, derived up front so results do not depend on thread scheduling
+    private final long[] seeds;
+    // Worker threads for the replications
+    private final int parallelism;
+    // Creates each replication's own generator from its seed
+    private final RandomGeneratorFactory<RandomGenerator> rngFactory;
+    // The kind of day every replication simulates
+    private final Workload workload;
+
+    // Constructor to set up `replications` days of `numPatients` patients, seeded from baseSeed
+    public ReplicationRunner(int replications, int numPatients, long baseSeed, int parallelism) {
+        this(replications, numPatients, baseSeed, parallelism, HospitalQueueSimulation.DEFAULT_RNG, Workload.standard());
+    }
+
+    // Constructor that also names the java.util.random algorithm each replication generates patients
+    // with, and the workload they follow
+    public ReplicationRunner(int replications, int numPatients, long baseSeed, int parallelism, String rng,
+                             Workload workload) {
+        if (replications < 2) {
+            throw new IllegalArgumentException("Need at least two replications for a confidence interval");
+        }
+        if (numPatients < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("Patients and parallelism must be positive");
+        }
+        this.numPatients = numPatients;
+        this.parallelism = parallelism;
+        rngFactory = RandomGeneratorFactory.of(rng);
+        this.workload = workload;
+        seeds = new long[replications];
+        SplittableRandom seedSource = new SplittableRandom(baseSeed);
+        for (int i = 0; i < replications; i++) {
+            seeds[i] = seedSource.nextLong();
+        }
+    }
+
+    // Run every replication for one staffing configuration and return the metrics of each,
+    // indexed [replication][metric ordinal]
+    public double[][] run(int doctorCount, int queueThreshold) throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.submit(() -> IntStream.range(0, seeds.length).parallel()
+                    .mapToObj(i -> runReplication(seeds[i], doctorCount, queueThreshold))
+                    .toArray(double[][]::new)).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Replication failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Simulate one day and collect its metrics
+    private double[] runReplication(long seed, int doctorCount, int queueThreshold) {
+        PatientStore store = PatientStore.generate(numPatients, rngFactory.create(seed), workload);
+        int caretakerCount = HospitalQueueSimulation.assignCaretakerQueues(store, queueThreshold);
+        ColumnarSimulation simulation = new ColumnarSimulation(store, caretakerCount, doctorCount, null);
+        simulation.run();
+        PatientStatistics statistics = simulation.getStatistics();
+
+        double[] values = new double[Metric.values().length];
+        values[Metric.CARETAKERS.ordinal()] = caretakerCount;
+        values[Metric.MAKESPAN.ordinal()] = statistics.getCaretakerMakespan();
+        values[Metric.NORMAL_WAIT.ordinal()] = statistics.getAverageWait(0);
+        values[Metric.CRITICAL_WAIT.ordinal()] = statistics.getAverageWait(1);
+        values[Metric.EMERGENCY_WAIT.ordinal()] = statistics.getAverageWait(2);
+        values[Metric.CARETAKER_P99_WAIT.ordinal()] = statistics.getCaretakerWaits().getValueAtPercentile(99);
+        values[Metric.EMERGENCY_P99_WAIT.ordinal()] = statistics.getWaits(2).getValueAtPercentile(99);
+        return values;
+    }
+
+    // Get the mean of one metric over all replications
+    public static double mean(double[][] results, Metric metric) {
+        double sum = 0;
+        for (double[] values : results) {
+            sum += values[metric.ordinal()];
+        }
+        return sum / results.length;
+    }
+
+    // Get the sample standard deviation of one metric over all replications
+    public static double standardDeviation(double[][] results, Metric metric) {
+        double mean = mean(results, metric);
+        double sumOfSquares = 0;
+        for (double[] values : results) {
+            double difference = values[metric.ordinal()] - mean;
+            sumOfSquares += difference * difference;
+        }
+        return Math.sqrt(sumOfSquares / (results.length - 1));
+    }
+
+    // Get the half-width of the 95% confidence interval for the mean of one metric
+    public static double confidenceHalfWidth(double[][] results, Metric metric) {
+        int degreesOfFreedom = results.length - 1;
+        double critical = degreesOfFreedom <= T_95.length ? T_95[degreesOfFreedom - 1] : Z_95;
+        return critical * standardDeviation(results, metric) / Math.sqrt(results.length);
+    }
+
+    // Get the number of replications per configuration
+    public int getReplications() {
+        return seeds.length;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int replications = 1000;
+        int numPatients = 100;
+        long seed = 42;
+        String rng = HospitalQueueSimulation.DEFAULT_RNG;
+        Workload workload = Workload.standard();
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int[] doctorCounts = {HospitalQueueSimulation.EMERGENCY_DOCTORS};
+        int[] thresholds = {HospitalQueueSimulation.QUEUE_THRESHOLD};
+        boolean scaling = false;
+        for (String arg : args) {
+            Workload changedWorkload = workload.withOption(arg);
+            if (changedWorkload != null) {
+                workload = changedWorkload;
+            } else if (arg.startsWith("--replications=")) {
+                replications = Integer.parseInt(arg.substring("--replications=".length()));
+            } else if (arg.startsWith("--patients=")) {
+                numPatients = Integer.parseInt(arg.substring("--patients=".length()));
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            } else if (arg.startsWith("--rng=")) {
+                rng = arg.substring("--rng=".length());
+            } else if (arg.startsWith("--parallelism=")) {
+                parallelism = Integer.parseInt(arg.substring("--parallelism=".length()));
+            } else if (arg.startsWith("--doctors=")) {
+                doctorCounts = parseList(arg.substring("--doctors=".length()));
+            } else if (arg.startsWith("--thresholds=")) {
+                thresholds = parseList(arg.substring("--thresholds=".length()));
+            } else if (arg.equals("--scaling")) {
+                scaling = true;
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        if (scaling) {
+            printScaling(replications, numPatients, seed, rng, workload, parallelism, doctorCounts[0], thresholds[0]);
+            return;
+        }
+        ReplicationRunner runner = new ReplicationRunner(replications, numPatients, seed, parallelism, rng, workload);
+        for (int threshold : thresholds) {
+            for (int doctorCount : doctorCounts) {
+                long startNanos = System.nanoTime();
+                double[][] results = runner.run(doctorCount, threshold);
+                long elapsedNanos = System.nanoTime() - startNanos;
+                System.out.printf("%n%d doctors, queue threshold %d: %,d replications of %,d patients in %.1f ms"
+                                + " (%d threads)%n", doctorCount, threshold, replications, numPatients,
+                        elapsedNanos / 1e6, parallelism);
+                printResults(results);
+            }
+        }
+    }
+
+    // Print each metric's mean, 95% confidence interval and standard deviation
+    private static void printResults(double[][] results) {
+        System.out.printf("%-26s %10s %23s %10s%n", "Metric", "Mean", "95% CI", "Std dev");
+        for (Metric metric : Metric.values()) {
+            double mean = mean(results, metric);
+            double halfWidth = confidenceHalfWidth(results, metric);
+            System.out.printf("%-26s %10.2f   [%9.2f, %9.2f] %10.2f%n", metric.getLabel(), mean,
+                    mean - halfWidth, mean + halfWidth, standardDeviation(results, metric));
+        }
+    }
+
+    // Time the same replications with 1, 2, 4, ... threads up to maxThreads and print the speedup
+    private static void printScaling(int replications, int numPatients, long seed, String rng, Workload workload,
+                                     int maxThreads, int doctorCount, int threshold) throws InterruptedException {
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int threads = 1; threads < maxThreads; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(maxThreads);
+        // Warm up the JIT so the single-thread baseline is not penalised
+        new ReplicationRunner(replications, numPatients, seed, maxThreads, rng, workload).run(doctorCount, threshold);
+
+        System.out.printf("%,d replications of %,d patients%n", replications, numPatients);
+        System.out.printf("%-10s %12s %16s %10s%n", "Threads", "Time (ms)", "Replications/s", "Speedup");
+        double baselineNanos = 0;
+        for (int threads : threadCounts) {
+            ReplicationRunner runner = new ReplicationRunner(replications, numPatients, seed, threads, rng, workload);
+            long startNanos = System.nanoTime();
+            runner.run(doctorCount, threshold);
+            long elapsedNanos = System.nanoTime() - startNanos;
+            if (threads == 1) {
+                baselineNanos = elapsedNanos;
+            }
+            System.out.printf("%-10d %12.1f %16.0f %9.2fx%n", threads, elapsedNanos / 1e6,
+                    replications / (elapsedNanos / 1e9), baselineNanos / elapsedNanos);
+        }
+    }
+
+    // Parse a comma-separated list of positive numbers
+    private static int[] parseList(String text) {
+        String[] parts = text.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+            if (values[i] < 1) {
+                throw new IllegalArgumentException("Expected positive numbers, got " + text);
+            }
+        }
+        return values;
+    }
+}
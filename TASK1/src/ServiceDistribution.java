@@ -0,0 +1,82 @@
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+// How long a treatment takes, in minutes
+public interface ServiceDistribution {
+    // Draw one treatment time
+    double sample(RandomGenerator rand);
+
+    // Normal distribution (the original ~10 minute caretaker and ~5 minute emergency treatments);
+    // the rare draw below zero is treated as an instant treatment rather than a negative one
+    static ServiceDistribution gaussian(double mean, double stdDev) {
+        checkMean(mean);
+        checkStdDev(stdDev);
+        return rand -> Math.max(0, HospitalQueueSimulation.getGaussianRandom(rand, mean, stdDev));
+    }
+
+    // Exponential distribution with the given mean
+    static ServiceDistribution exponential(double mean) {
+        checkMean(mean);
+        return rand -> rand.nextExponential() * mean;
+    }
+
+    // Log-normal distribution with the given mean and standard deviation (always positive, long tail)
+    static ServiceDistribution logNormal(double mean, double stdDev) {
+        checkMean(mean);
+        checkStdDev(stdDev);
+        double sigmaSquared = Math.log(1 + (stdDev * stdDev) / (mean * mean));
+        double mu = Math.log(mean) - sigmaSquared / 2;
+        double sigma = Math.sqrt(sigmaSquared);
+        return rand -> Math.exp(mu + sigma * rand.nextGaussian());
+    }
+
+    // Every treatment takes the same time
+    static ServiceDistribution fixed(double minutes) {
+        checkMean(minutes);
+        return rand -> minutes;
+    }
+
+    // Parse "gaussian:MEAN,SD", "exponential:MEAN", "lognormal:MEAN,SD" or "fixed:MINUTES"
+    static ServiceDistribution parse(String spec) {
+        int colon = spec.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Service distribution needs parameters, e.g. gaussian:10,2: " + spec);
+        }
+        double[] values = Arrays.stream(spec.substring(colon + 1).split(","))
+                .mapToDouble(part -> Double.parseDouble(part.trim())).toArray();
+        switch (spec.substring(0, colon)) {
+            case "gaussian":
+                checkCount(spec, values, 2);
+                return gaussian(values[0], values[1]);
+            case "lognormal":
+                checkCount(spec, values, 2);
+                return logNormal(values[0], values[1]);
+            case "exponential":
+                checkCount(spec, values, 1);
+                return exponential(values[0]);
+            case "fixed":
+                checkCount(spec, values, 1);
+                return fixed(values[0]);
+            default:
+                throw new IllegalArgumentException("Unknown service distribution: " + spec);
+        }
+    }
+
+    private static void checkCount(String spec, double[] values, int expected) {
+        if (values.length != expected) {
+            throw new IllegalArgumentException("Expected " + expected + " parameter(s) in " + spec);
+        }
+    }
+
+    private static void checkMean(double mean) {
+        if (!(mean > 0)) {
+            throw new IllegalArgumentException("Service time must be positive, got " + mean);
+        }
+    }
+
+    private static void checkStdDev(double stdDev) {
+        if (!(stdDev >= 0)) {
+            throw new IllegalArgumentException("Standard deviation must not be negative, got " + stdDev);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+import java.util.Arrays;
+
+// Indexed min-heap over caretaker queues ordered by load (ties go to the lowest queue ID),
+// so the shortest queue is found in O(1), a load change costs O(log k), and checking whether
+// every queue has reached the threshold is O(1) instead of a scan over all queues.
+// Callers report every load change with update(); the index does not watch the queues itself.
+// Queues are tracked by ID, so it works for AdaptiveQueue objects and for plain queue numbers.
+public class ShortestQueueIndex {
+    // Heap of queue IDs, heap[0] is the least loaded
+    private int[] heap = new int[16];
+    // Load last reported for heap[i]
+    private int[] loads = new int[16];
+    // Heap position of each queue by queue ID (-1 if the queue is not in the index)
+    private int[] positions = new int[17];
+    // Queue object for each queue ID, if it was added as an AdaptiveQueue
+    private AdaptiveQueue[] queuesById = new AdaptiveQueue[17];
+    // Number of queues in the heap
+    private int size = 0;
+    // Load at which a queue counts as full
+    private final int threshold;
+    // Number of queues whose load is below the threshold
+    private int belowThreshold = 0;
+
+    // Constructor to create an empty index with the given "full" threshold
+    public ShortestQueueIndex(int threshold) {
+        this.threshold = threshold;
+        Arrays.fill(positions, -1);
+    }
+
+    // Add a queue with its current load
+    public void add(AdaptiveQueue queue, int load) {
+        add(queue.getQueueId(), load);
+        queuesById[queue.getQueueId()] = queue;
+    }
+
+    // Add a queue by ID with its current load
+    public void add(int queueId, int load) {
+        if (queueId >= positions.length) {
+            int oldLength = positions.length;
+            int newLength = Math.max(queueId + 1, oldLength * 2);
+            positions = Arrays.copyOf(positions, newLength);
+            Arrays.fill(positions, oldLength, newLength, -1);
+            queuesById = Arrays.copyOf(queuesById, newLength);
+        }
+        if (positions[queueId] >= 0) {
+            throw new IllegalArgumentException("Queue " + queueId + " is already in the index");
+        }
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+            loads = Arrays.copyOf(loads, size * 2);
+        }
+        heap[size] = queueId;
+        loads[size] = load;
+        positions[queueId] = size;
+        size++;
+        if (load < threshold) {
+            belowThreshold++;
+        }
+        siftUp(size - 1);
+    }
+
+    // Remove a queue from the index
+    public void remove(AdaptiveQueue queue) {
+        remove(queue.getQueueId());
+    }
+
+    // Remove a queue from the index by ID
+    public void remove(int queueId) {
+        int index = positionOf(queueId);
+        if (loads[index] < threshold) {
+            belowThreshold--;
+        }
+        positions[queueId] = -1;
+        queuesById[queueId] = null;
+        size--;
+        if (index != size) {
+            // Move the last entry into the gap and restore heap order around it
+            place(index, heap[size], loads[size]);
+            siftDown(index);
+            siftUp(index);
+        }
+    }
+
+    // Record a new load for a queue that is in the index
+    public void update(AdaptiveQueue queue, int load) {
+        update(queue.getQueueId(), load);
+    }
+
+    // Record a new load for a queue, by ID, that is in the index
+    public void update(int queueId, int load) {
+        int index = positionOf(queueId);
+        int oldLoad = loads[index];
+        if (oldLoad == load) {
+            return;
+        }
+        if (oldLoad < threshold && load >= threshold) {
+            belowThreshold--;
+        } else if (oldLoad >= threshold && load < threshold) {
+            belowThreshold++;
+        }
+        loads[index] = load;
+        if (load < oldLoad) {
+            siftUp(index);
+        } else {
+            siftDown(index);
+        }
+    }
+
+    // Get the least loaded queue (lowest ID among equals), or null if the index is empty
+    // or the queue was added by ID only
+    public AdaptiveQueue shortest() {
+        return size == 0 ? null : queuesById[heap[0]];
+    }
+
+    // Get the ID of the least loaded queue (lowest ID among equals), or -1 if the index is empty
+    public int shortestId() {
+        return size == 0 ? -1 : heap[0];
+    }
+
+    // Get the load of the least loaded queue, or 0 if the index is empty
+    public int shortestLoad() {
+        return size == 0 ? 0 : loads[0];
+    }
+
+    // Check if every queue has reached the threshold (true when the index is empty)
+    public boolean allAtThreshold() {
+        return belowThreshold == 0;
+    }
+
+    // Check if the queue is in the index
+    public boolean contains(AdaptiveQueue queue) {
+        int queueId = queue.getQueueId();
+        return queueId < positions.length && positions[queueId] >= 0;
+    }
+
+    // Get the number of queues in the index
+    public int size() {
+        return size;
+    }
+
+    // Find where a queue sits in the heap
+    private int positionOf(int queueId) {
+        if (queueId < 0 || queueId >= positions.length || positions[queueId] < 0) {
+            throw new IllegalArgumentException("Queue " + queueId + " is not in the index");
+        }
+        return positions[queueId];
+    }
+
+    // True if the entry at a should come before the entry at b
+    private boolean before(int a, int b) {
+        if (loads[a] != loads[b]) {
+            return loads[a] < loads[b];
+        }
+        return heap[a] < heap[b];
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!before(index, parent)) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && before(left, smallest)) {
+                smallest = left;
+            }
+            if (right < size && before(right, smallest)) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int queueA = heap[a];
+        int loadA = loads[a];
+        place(a, heap[b], loads[b]);
+        place(b, queueA, loadA);
+    }
+
+    // Put a queue at a heap position and remember where it is
+    private void place(int index, int queueId, int load) {
+        heap[index] = queueId;
+        loads[index] = load;
+        positions[queueId] = index;
+    }
+}
@@ -0,0 +1,237 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Checkpoints of a run on the event engine, so a long day interrupted half way can be resumed
+// with the same results. A checkpoint holds the run's options and everything the engine has in
+// flight: the virtual clock, pending events, every waiting and in-treatment patient, caretaker and
+// doctor state, dequeue policy state and the statistics so far. Patients who have not arrived
+// yet are not saved: the options name their source (a --seed or a trace), and a resumed run
+// produces them again and skips the ones already read. Patients who have left are only in the
+// statistics, so a checkpoint is the size of the live state however long the day has run.
+// save() copies that state into memory between two events, the only time the day stands still.
+// A background thread then writes the copy to a temporary file and renames it over the last
+// checkpoint, so the file on disk is always complete, even if the run dies while writing.
+public class SimulationCheckpoint implements AutoCloseable {
+    // File header: magic "HQCP" and format version
+    static final int MAGIC = 0x48514350;
+    static final short VERSION = 2;
+
+    private final Path path;
+    // Options of the run, saved so --resume can run the same day again
+    private final List<String> options;
+    // Wall-clock time between checkpoints
+    private final long intervalMillis;
+    // Writes checkpoints to disk while the simulation carries on
+    private final ExecutorService writer;
+    // The checkpoint being written (null = none yet)
+    private Future<?> pendingWrite;
+    // Where save() serializes the state. A save only starts once the last write is done, so one
+    // buffer is enough and, once grown, a checkpoint allocates nothing.
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 16);
+    private final DataOutputStream bufferOut = new DataOutputStream(new BufferedOutputStream(buffer, 1 << 16));
+    private int savedCheckpoints = 0;
+    private int skippedCheckpoints = 0;
+    // Longest time the simulation stood still for a save(), and the size of the last checkpoint
+    private long longestPauseNanos = 0;
+    private int lastSize = 0;
+
+    // Constructor for checkpoints of a run with the given options, written to path every intervalMillis
+    public SimulationCheckpoint(Path path, List<String> options, long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive, got " + intervalMillis);
+        }
+        this.path = path;
+        this.options = List.copyOf(options);
+        this.intervalMillis = intervalMillis;
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Checkpoint-Writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Have the simulation save a checkpoint here every intervalMillis until the day ends
+    public void attach(EventDrivenSimulation simulation) {
+        simulation.setCheckpointListener(intervalMillis, this::save);
+    }
+
+    // Copy the simulation's state into memory and hand it to the writer thread. If the last
+    // checkpoint is still being written (a slow disk), this one is skipped rather than waited for.
+    public void save(EventDrivenSimulation simulation) {
+        if (pendingWrite != null && !pendingWrite.isDone()) {
+            skippedCheckpoints++;
+            return;
+        }
+        checkLastWrite();
+        long startNanos = System.nanoTime();
+        buffer.reset();
+        try {
+            bufferOut.writeInt(MAGIC);
+            bufferOut.writeShort(VERSION);
+            bufferOut.writeInt(options.size());
+            for (String option : options) {
+                bufferOut.writeUTF(option);
+            }
+            simulation.writeState(bufferOut);
+            bufferOut.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot capture a checkpoint", e);
+        }
+        longestPauseNanos = Math.max(longestPauseNanos, System.nanoTime() - startNanos);
+        lastSize = buffer.size();
+        savedCheckpoints++;
+        pendingWrite = writer.submit(() -> {
+            write(buffer);
+            return null;
+        });
+    }
+
+    // Write the checkpoint next to the file and rename it into place once it is on disk
+    private void write(ByteArrayOutputStream bytes) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = Channels.newOutputStream(channel);
+            bytes.writeTo(out);
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Rethrow the error of the last write, if it failed
+    private void checkLastWrite() {
+        if (pendingWrite == null) {
+            return;
+        }
+        try {
+            pendingWrite.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Cannot write checkpoint " + path, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Wait for the last checkpoint to reach the disk and stop the writer thread
+    @Override
+    public void close() {
+        writer.shutdown();
+        checkLastWrite();
+    }
+
+    public int getSavedCheckpoints() {
+        return savedCheckpoints;
+    }
+
+    // Get how many checkpoints were skipped because the one before was still being written
+    public int getSkippedCheckpoints() {
+        return skippedCheckpoints;
+    }
+
+    // Get the longest time the simulation stood still while a checkpoint was taken
+    public double getLongestPauseMillis() {
+        return longestPauseNanos / 1e6;
+    }
+
+    // Get the size in bytes of the last checkpoint
+    public int getLastSize() {
+        return lastSize;
+    }
+
+    // Read a checkpoint file: the options of the run that wrote it, and its simulation state
+    public static Saved load(Path path) throws IOException {
+        // Read whole, so the resumed run can write its own checkpoints over the file
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(path)));
+        if (in.available() < 10 || in.readInt() != MAGIC) {
+            throw new IOException("Not a simulation checkpoint: " + path);
+        }
+        short version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported checkpoint version " + version + ": " + path);
+        }
+        int count = readCount(in);
+        List<String> options = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            options.add(in.readUTF());
+        }
+        return new Saved(Collections.unmodifiableList(options), in);
+    }
+
+    // A checkpoint read back by load()
+    public static final class Saved {
+        private final List<String> options;
+        private final DataInput state;
+
+        private Saved(List<String> options, DataInput state) {
+            this.options = options;
+            this.state = state;
+        }
+
+        // Get the options of the run that wrote the checkpoint
+        public List<String> getOptions() {
+            return options;
+        }
+
+        // Get the simulation state, for EventDrivenSimulation.restoreState()
+        public DataInput getState() {
+            return state;
+        }
+    }
+
+    // Save one patient with everything the engine may have set on them
+    static void writePatient(DataOutput out, CriticalPatient patient) throws IOException {
+        out.writeInt(patient.getPatientId());
+        out.writeByte(patient.getPriority());
+        out.writeInt(patient.getAssignedQueueId());
+        out.writeDouble(patient.getArrivalTime());
+        out.writeDouble(patient.getServiceTime());
+        out.writeDouble(patient.getWaitingTime());
+        out.writeDouble(patient.getDepartureTime());
+    }
+
+    // Read a patient saved by writePatient()
+    static CriticalPatient readPatient(DataInput in) throws IOException {
+        int patientId = in.readInt();
+        int priority = in.readByte();
+        if (priority < 0 || priority > 2) {
+            throw new IOException("Corrupt checkpoint: patient " + patientId + " has priority " + priority);
+        }
+        CriticalPatient patient = priority == 2 ? new EmergencyPatient(patientId) : new CriticalPatient(patientId);
+        patient.setPriority(priority);
+        patient.setAssignedQueueId(in.readInt());
+        patient.setArrivalTime(in.readDouble());
+        patient.setServiceTime(in.readDouble());
+        patient.setWaitingTime(in.readDouble());
+        patient.setDepartureTime(in.readDouble());
+        return patient;
+    }
+
+    // Read the length of a saved list, which a damaged file could make negative
+    static int readCount(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Corrupt checkpoint: list of " + count + " entries");
+        }
+        return count;
+    }
+}
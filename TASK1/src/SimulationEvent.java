@@ -0,0 +1,63 @@
+// This class represents one scheduled event in the discrete-event simulation
+public class SimulationEvent {
+    // The kinds of events the simulation engine handles
+    public enum Type {
+        ARRIVAL,
+        SERVICE_START,
+        DEPARTURE
+    }
+
+    // Virtual time the event happens (in minutes past midnight)
+    private final double time;
+    // Order in which the event was scheduled, used to break ties between equal times
+    private final long sequence;
+    // What kind of event this is
+    private final Type type;
+    // The patient the event is about (null for a service start that picks from a queue)
+    private final CriticalPatient patient;
+    // Caretaker queue ID or doctor ID the event belongs to (0 for arrivals)
+    private final int serverId;
+    // True if the server is an emergency doctor, false for a caretaker
+    private final boolean doctor;
+
+    // Constructor to create an event
+    public SimulationEvent(double time, long sequence, Type type, CriticalPatient patient,
+                           int serverId, boolean doctor) {
+        this.time = time;
+        this.sequence = sequence;
+        this.type = type;
+        this.patient = patient;
+        this.serverId = serverId;
+        this.doctor = doctor;
+    }
+
+    // Get the virtual time of the event
+    public double getTime() {
+        return time;
+    }
+
+    // Get the scheduling order of the event
+    public long getSequence() {
+        return sequence;
+    }
+
+    // Get the kind of event
+    public Type getType() {
+        return type;
+    }
+
+    // Get the patient the event is about
+    public CriticalPatient getPatient() {
+        return patient;
+    }
+
+    // Get the caretaker queue ID or doctor ID of the event
+    public int getServerId() {
+        return serverId;
+    }
+
+    // Check if the event belongs to an emergency doctor rather than a caretaker
+    public boolean isDoctor() {
+        return doctor;
+    }
+}
@@ -0,0 +1,9 @@
+// The ways HospitalQueueSimulation can run a day
+public enum SimulationMode {
+    // Caretaker and doctor threads; doctors sleep 100 ms per minute of treatment
+    REAL_TIME,
+    // Single-threaded discrete-event engine on a virtual clock
+    DISCRETE_EVENT,
+    // A producer thread feeding a MultiPriorityQueue that QueueProcessor threads drain as it fills
+    PIPELINE
+}
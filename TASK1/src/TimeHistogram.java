@@ -0,0 +1,157 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+// HDR-style histogram of durations in minutes. Values are counted in log-linear buckets: exact to
+// the hundredth up to 0.64 minutes, then 32 buckets per doubling, so any percentile is within about
+// 3% of the true value while memory stays fixed (about 3 KB for waits of a few hours, grown only
+// as far as the largest value seen).
+// Not thread-safe: each thread records into its own histogram and they are merged afterwards.
+public class TimeHistogram {
+    // Values are recorded in hundredths of a minute
+    private static final double UNITS_PER_MINUTE = 100;
+    // Sub-bucket resolution: 2^6 = 64 exact values, then 32 buckets per power of two
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+    // Count per bucket, grown on demand
+    private long[] counts = new long[0];
+    private long totalCount = 0;
+    // Exact sum, min and max of the recorded values (in minutes)
+    private double sum = 0;
+    private double min = Double.MAX_VALUE;
+    private double max = 0;
+
+    // Add one value (negative values count as zero)
+    public void record(double minutes) {
+        double value = Math.max(0, minutes);
+        int index = bucketIndex(Math.round(value * UNITS_PER_MINUTE));
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index + 1, counts.length + counts.length / 2));
+        }
+        counts[index]++;
+        totalCount++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    // Add every value recorded in another histogram
+    public void merge(TimeHistogram other) {
+        if (other.totalCount == 0) {
+            return;
+        }
+        if (other.counts.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.counts.length);
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    // Save the histogram for a checkpoint: only the buckets in use, as (index, count) pairs, since a
+    // caretaker's histograms hold a few dozen values spread over hundreds of buckets
+    void writeState(DataOutput out) throws IOException {
+        int used = 0;
+        for (long count : counts) {
+            if (count != 0) {
+                used++;
+            }
+        }
+        out.writeInt(used);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                out.writeInt(i);
+                out.writeLong(counts[i]);
+            }
+        }
+        out.writeLong(totalCount);
+        out.writeDouble(sum);
+        out.writeDouble(min);
+        out.writeDouble(max);
+    }
+
+    // Replace the histogram's contents with ones saved by writeState()
+    void readState(DataInput in) throws IOException {
+        int used = in.readInt();
+        if (used < 0) {
+            throw new IOException("Corrupt histogram in checkpoint: " + used + " buckets");
+        }
+        counts = new long[0];
+        for (int i = 0; i < used; i++) {
+            int index = in.readInt();
+            if (index < 0 || index > bucketIndex(Long.MAX_VALUE)) {
+                throw new IOException("Corrupt histogram in checkpoint: bucket " + index);
+            }
+            if (index >= counts.length) {
+                counts = Arrays.copyOf(counts, index + 1);
+            }
+            counts[index] = in.readLong();
+        }
+        totalCount = in.readLong();
+        sum = in.readDouble();
+        min = in.readDouble();
+        max = in.readDouble();
+    }
+
+    // Get the value that the given percentage of recorded values stay at or below (0 if empty)
+    public double getValueAtPercentile(double percent) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percent / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // Report the top of the bucket, but never more than the largest value recorded
+                return Math.min(highestValueInBucket(i) / UNITS_PER_MINUTE, max);
+            }
+        }
+        return max;
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    public double getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    // Bucket for a value in hundredths of a minute
+    private static int bucketIndex(long units) {
+        if (units < SUB_BUCKET_COUNT) {
+            return (int) units;
+        }
+        // Drop the low bits so the value fits in [SUB_BUCKET_HALF_COUNT, SUB_BUCKET_COUNT)
+        int shift = 63 - Long.numberOfLeadingZeros(units) - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (units >>> shift);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + (subBucket - SUB_BUCKET_HALF_COUNT);
+    }
+
+    // Largest value, in hundredths of a minute, that falls in the given bucket
+    private static long highestValueInBucket(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int offset = index - SUB_BUCKET_COUNT;
+        int shift = offset / SUB_BUCKET_HALF_COUNT + 1;
+        long subBucket = offset % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,95 @@
+// The kind of day to simulate: how patients arrive, the share of each priority level and how
+// long treatments take. A PatientGenerator turns a workload into patients one at a time.
+public class Workload {
+    // The original day: arrivals 1-6 minutes apart, 80% normal, 15% critical, 5% emergency,
+    // ~10 minute caretaker treatments and ~5 minute emergency treatments
+    private static final Workload STANDARD = new Workload(ArrivalProcess.uniform(1, 6), 80, 15,
+            ServiceDistribution.gaussian(10, 2), ServiceDistribution.gaussian(5, 1));
+
+    private final ArrivalProcess arrivals;
+    // Percent of patients that are normal, and normal plus critical (the rest are emergencies)
+    private final int normalThreshold;
+    private final int criticalThreshold;
+    private final ServiceDistribution caretakerService;
+    private final ServiceDistribution emergencyService;
+
+    // Constructor for a workload with the given percentages of normal and critical patients
+    public Workload(ArrivalProcess arrivals, int normalPercent, int criticalPercent,
+                    ServiceDistribution caretakerService, ServiceDistribution emergencyService) {
+        if (normalPercent < 0 || criticalPercent < 0 || normalPercent + criticalPercent > 100) {
+            throw new IllegalArgumentException("Normal and critical percentages must be between 0 and 100 in total, got "
+                    + normalPercent + " and " + criticalPercent);
+        }
+        this.arrivals = arrivals;
+        this.normalThreshold = normalPercent;
+        this.criticalThreshold = normalPercent + criticalPercent;
+        this.caretakerService = caretakerService;
+        this.emergencyService = emergencyService;
+    }
+
+    // Get the original day's workload
+    public static Workload standard() {
+        return STANDARD;
+    }
+
+    // Get a copy of this workload with a different arrival process
+    public Workload withArrivals(ArrivalProcess arrivals) {
+        return new Workload(arrivals, normalThreshold, criticalThreshold - normalThreshold, caretakerService,
+                emergencyService);
+    }
+
+    // Get a copy of this workload with different priority percentages
+    public Workload withMix(int normalPercent, int criticalPercent) {
+        return new Workload(arrivals, normalPercent, criticalPercent, caretakerService, emergencyService);
+    }
+
+    // Get a copy of this workload with different treatment times
+    public Workload withService(ServiceDistribution caretakerService, ServiceDistribution emergencyService) {
+        return new Workload(arrivals, normalThreshold, criticalThreshold - normalThreshold, caretakerService,
+                emergencyService);
+    }
+
+    // Apply a command-line option (--arrivals=, --mix=NORMAL,CRITICAL, --caretaker-service=,
+    // --emergency-service=) and return the changed workload, or null if it is not a workload option
+    public Workload withOption(String arg) {
+        if (arg.startsWith("--arrivals=")) {
+            return withArrivals(ArrivalProcess.parse(arg.substring("--arrivals=".length())));
+        } else if (arg.startsWith("--mix=")) {
+            String[] parts = arg.substring("--mix=".length()).split(",");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("--mix takes the normal and critical percentages, e.g. --mix=80,15");
+            }
+            return withMix(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        } else if (arg.startsWith("--caretaker-service=")) {
+            return withService(ServiceDistribution.parse(arg.substring("--caretaker-service=".length())),
+                    emergencyService);
+        } else if (arg.startsWith("--emergency-service=")) {
+            return withService(caretakerService,
+                    ServiceDistribution.parse(arg.substring("--emergency-service=".length())));
+        }
+        return null;
+    }
+
+    // Get the arrival process (call copy() before drawing from it)
+    public ArrivalProcess getArrivals() {
+        return arrivals;
+    }
+
+    // Turn a number from 0 to 99 into a priority level (0 = Normal, 1 = Critical, 2 = Emergency)
+    public int priorityFor(int percentile) {
+        if (percentile < normalThreshold) {
+            return 0;
+        } else if (percentile < criticalThreshold) {
+            return 1;
+        }
+        return 2;
+    }
+
+    public ServiceDistribution getCaretakerService() {
+        return caretakerService;
+    }
+
+    public ServiceDistribution getEmergencyService() {
+        return emergencyService;
+    }
+}
@@ -0,0 +1,133 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncLogSinkTest {
+
+    @Test
+    void rendersTheSameLinesAsBefore() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AsyncLogSink log = new AsyncLogSink(out, true, 8, AsyncLogSink.OverflowPolicy.BLOCK);
+        CriticalPatient patient = new CriticalPatient(42);
+        patient.setPriority(1);
+        patient.setArrivalTime(500.5);
+        patient.setWaitingTime(12.345);
+        patient.setServiceTime(9.999);
+        patient.setDepartureTime(522.844);
+        log.shiftStart(3);
+        log.treated(3, patient);
+        log.tookOver(3, 43, 7);
+        log.doctorStarted(2, 44, 601);
+        log.doctorFinished(2, 44, Double.NaN);
+        log.dispatched(45, 1);
+        log.message("Scaled up to 6 doctors");
+        log.shiftEnd(3);
+        log.close();
+
+        assertEquals(List.of(
+                "Starting Caretaker #3",
+                String.format("Caretaker #3 | Patient 42 | Priority: Critical | Arrival: %02d:%02d | Waiting: %.2f min"
+                        + " | Service: %.2f min | Departure: %02d:%02d", 8, 20, 12.345, 9.999, 8, 42),
+                "Caretaker #3 took over Patient 43 from Caretaker #7",
+                "[Doctor 2] Started treating emergency patient 44 at 10:01",
+                "[Doctor 2] Finished treating emergency patient 44",
+                "Emergency patient 45 assigned to Doctor 1",
+                "Scaled up to 6 doctors",
+                "Caretaker #3 finished processing all patients."), lines(out));
+    }
+
+    @Test
+    @Timeout(60)
+    void blockingKeepsEveryRecordInEachThreadsOrder() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AsyncLogSink log = new AsyncLogSink(out, true, 4, AsyncLogSink.OverflowPolicy.BLOCK);
+        int threads = 4;
+        int perThread = 20_000;
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int caretakerId = t + 1;
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    log.tookOver(caretakerId, i, 0);
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        log.close();
+
+        assertEquals(0, log.getDroppedRecords());
+        int[] next = new int[threads + 1];
+        List<String> lines = lines(out);
+        assertEquals(threads * perThread, lines.size());
+        for (String line : lines) {
+            // "Caretaker #C took over Patient P from Caretaker #0"
+            String[] words = line.split(" ");
+            int caretakerId = Integer.parseInt(words[1].substring(1));
+            assertEquals(next[caretakerId]++, Integer.parseInt(words[5]), line);
+        }
+    }
+
+    @Test
+    @Timeout(60)
+    void droppingCountsWhatDidNotFit() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // Holds up the writer thread on its first flush, so nothing more leaves the buffer
+        OutputStream stalled = new OutputStream() {
+            @Override
+            public void write(int b) {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                out.write(bytes, offset, length);
+            }
+        };
+        AsyncLogSink log = new AsyncLogSink(stalled, true, 2, AsyncLogSink.OverflowPolicy.DROP);
+        log.message("first");
+        writing.await();
+        for (int i = 0; i < 10; i++) {
+            log.message("record " + i);
+        }
+        assertEquals(8, log.getDroppedRecords());
+        release.countDown();
+        log.close();
+        assertEquals(List.of("first", "record 0", "record 1"), lines(out));
+    }
+
+    @Test
+    void rejectsRecordsAfterClose() throws IOException {
+        AsyncLogSink log = new AsyncLogSink(new ByteArrayOutputStream(), true, 8,
+                AsyncLogSink.OverflowPolicy.BLOCK);
+        log.close();
+        assertThrows(IllegalStateException.class, () -> log.message("late"));
+        assertTrue(log.getCapacity() >= 8);
+    }
+
+    private static List<String> lines(ByteArrayOutputStream out) {
+        String text = out.toString(StandardCharsets.UTF_8);
+        return text.isEmpty() ? List.of() : List.of(text.split(System.lineSeparator()));
+    }
+}
@@ -0,0 +1,54 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ColumnarSimulationTest {
+    private static final int PATIENTS = 50_000;
+    private static final long SEED = 2024;
+
+    @Test
+    void sameDayAsTheEventEngine() {
+        sameDayAsTheEventEngine(DequeuePolicy.strict());
+    }
+
+    @Test
+    void sameDayAsTheEventEngineWithWeightedFairQueues() {
+        sameDayAsTheEventEngine(DequeuePolicy.weightedFair(1, 4));
+    }
+
+    @Test
+    void sameDayAsTheEventEngineWithAging() {
+        sameDayAsTheEventEngine(DequeuePolicy.aging(30));
+    }
+
+    private static void sameDayAsTheEventEngine(DequeuePolicy policy) {
+        List<CriticalPatient> patients =
+                HospitalQueueSimulation.generatePatients(PATIENTS, new SplittableRandom(SEED));
+        int caretakerCount = HospitalQueueSimulation.assignCaretakerQueues(patients).size();
+        EventDrivenSimulation events = new EventDrivenSimulation(caretakerCount,
+                HospitalQueueSimulation.EMERGENCY_DOCTORS, null);
+        events.setDequeuePolicy(policy);
+        events.run(patients.iterator());
+
+        PatientStore store = PatientStore.generate(PATIENTS, new SplittableRandom(SEED));
+        assertEquals(caretakerCount, HospitalQueueSimulation.assignCaretakerQueues(store));
+        ColumnarSimulation columnar = new ColumnarSimulation(store, caretakerCount,
+                HospitalQueueSimulation.EMERGENCY_DOCTORS, null);
+        columnar.setDequeuePolicy(policy);
+        columnar.run();
+
+        assertEquals(patients.size(), store.size());
+        for (int i = 0; i < store.size(); i++) {
+            CriticalPatient patient = patients.get(i);
+            assertEquals(patient.getPatientId(), store.getPatientId(i));
+            assertEquals(patient.getAssignedQueueId(), store.getAssignedQueueId(i), "queue of patient " + i);
+            assertEquals(patient.getWaitingTime(), store.getWaitingTime(i), "wait of patient " + i);
+            assertEquals(patient.getDepartureTime(), store.getDepartureTime(i), "departure of patient " + i);
+        }
+        assertEquals(events.getCurrentTime(), columnar.getCurrentTime());
+        StatisticsAssertions.assertSameStatistics(events.getStatistics(), columnar.getStatistics());
+    }
+}
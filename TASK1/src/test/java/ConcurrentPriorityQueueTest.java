@@ -0,0 +1,119 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrentPriorityQueueTest {
+    private static final int PRODUCERS = 4;
+    private static final int CONSUMERS = 3;
+    private static final int PATIENTS_PER_PRODUCER = 20_000;
+
+    @Test
+    void dequeuesInArrivalOrder() {
+        ConcurrentPriorityQueue queue = new ConcurrentPriorityQueue();
+        for (int id = 1; id <= 100; id++) {
+            queue.enqueue(new CriticalPatient(id));
+        }
+        assertEquals(100, queue.size());
+        for (int id = 1; id <= 100; id++) {
+            assertEquals(id, queue.dequeue().getPatientId());
+        }
+        assertNull(queue.dequeue());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void drainToMovesAtMostMaxPatientsInOrder() {
+        ConcurrentPriorityQueue queue = new ConcurrentPriorityQueue();
+        for (int id = 1; id <= 10; id++) {
+            queue.enqueue(new CriticalPatient(id));
+        }
+        List<CriticalPatient> batch = new ArrayList<>();
+        assertEquals(4, queue.drainTo(batch, 4));
+        assertEquals(List.of(1, 2, 3, 4), batch.stream().map(CriticalPatient::getPatientId).toList());
+        assertEquals(6, queue.size());
+        assertEquals(5, queue.dequeue().getPatientId());
+        assertEquals(5, queue.drainTo(batch, 100));
+        assertEquals(0, queue.drainTo(batch, 100));
+        assertEquals(9, batch.size());
+    }
+
+    // Producers and consumers, some taking one patient at a time and some in batches, all at once:
+    // every patient comes out exactly once, and each consumer sees every producer's patients in the
+    // order that producer added them
+    @Test
+    @Timeout(60)
+    void everyPatientComesOutOnceUnderContention() throws InterruptedException {
+        ConcurrentPriorityQueue queue = new ConcurrentPriorityQueue();
+        int total = PRODUCERS * PATIENTS_PER_PRODUCER;
+        AtomicIntegerArray seen = new AtomicIntegerArray(total);
+        AtomicInteger taken = new AtomicInteger();
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            int firstId = p * PATIENTS_PER_PRODUCER;
+            producers.add(new Thread(() -> {
+                for (int i = 0; i < PATIENTS_PER_PRODUCER; i++) {
+                    queue.enqueue(new CriticalPatient(firstId + i));
+                }
+            }));
+        }
+        List<Thread> consumers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int c = 0; c < CONSUMERS; c++) {
+            boolean batched = c % 2 == 1;
+            consumers.add(new Thread(() -> {
+                int[] lastFromProducer = new int[PRODUCERS];
+                Arrays.fill(lastFromProducer, -1);
+                List<CriticalPatient> batch = new ArrayList<>();
+                while (taken.get() < total) {
+                    batch.clear();
+                    if (batched) {
+                        queue.drainTo(batch, 16);
+                    } else {
+                        CriticalPatient patient = queue.dequeue();
+                        if (patient != null) {
+                            batch.add(patient);
+                        }
+                    }
+                    for (CriticalPatient patient : batch) {
+                        int id = patient.getPatientId();
+                        seen.incrementAndGet(id);
+                        int producer = id / PATIENTS_PER_PRODUCER;
+                        if (id <= lastFromProducer[producer]) {
+                            synchronized (failures) {
+                                failures.add(new AssertionError("Patient " + id + " after " + lastFromProducer[producer]));
+                            }
+                        }
+                        lastFromProducer[producer] = id;
+                    }
+                    if (batch.isEmpty()) {
+                        Thread.yield();
+                    } else {
+                        taken.addAndGet(batch.size());
+                    }
+                }
+            }));
+        }
+        consumers.forEach(Thread::start);
+        producers.forEach(Thread::start);
+        for (Thread thread : producers) {
+            thread.join();
+        }
+        for (Thread thread : consumers) {
+            thread.join();
+        }
+        assertTrue(failures.isEmpty(), () -> failures.get(0).getMessage());
+        for (int id = 0; id < total; id++) {
+            assertEquals(1, seen.get(id), "times patient " + id + " came out");
+        }
+        assertEquals(0, queue.size());
+    }
+}
@@ -0,0 +1,118 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DequeuePolicyTest {
+
+    @Test
+    void strictServesEveryCriticalPatientFirst() {
+        AdaptiveQueue queue = new AdaptiveQueue(1);
+        queue.enqueue(patient(1, 0, 0));
+        queue.enqueue(patient(2, 1, 50));
+        queue.enqueue(patient(3, 0, 10));
+        queue.enqueue(patient(4, 1, 60));
+        assertEquals(2, queue.dequeue().getPatientId());
+        assertEquals(4, queue.dequeue().getPatientId());
+        assertEquals(1, queue.dequeue().getPatientId());
+        assertEquals(3, queue.dequeue().getPatientId());
+        assertNull(queue.dequeue());
+    }
+
+    @Test
+    void agingLetsALongWaitingPatientGoFirst() {
+        AdaptiveQueue queue = new AdaptiveQueue(1);
+        queue.setDequeuePolicy(DequeuePolicy.aging(30));
+        // Critical patient 2 arrived less than 30 minutes after normal patient 1, so still goes first;
+        // critical patient 3 arrived more than 30 minutes after, so patient 1 has aged past them
+        queue.enqueue(patient(1, 0, 0));
+        queue.enqueue(patient(2, 1, 20));
+        queue.enqueue(patient(3, 1, 40));
+        assertEquals(2, queue.dequeue().getPatientId());
+        assertEquals(1, queue.dequeue().getPatientId());
+        assertEquals(3, queue.dequeue().getPatientId());
+        assertNull(queue.dequeue());
+    }
+
+    @Test
+    void weightedFairSharesTreatmentTimeByWeight() {
+        AdaptiveQueue queue = new AdaptiveQueue(1);
+        queue.setDequeuePolicy(DequeuePolicy.weightedFair(1, 3));
+        for (int i = 0; i < 400; i++) {
+            queue.enqueue(patient(2 * i, 0, i));
+            queue.enqueue(patient(2 * i + 1, 1, i));
+        }
+        // While both levels have patients, critical patients get three times the treatment time
+        int critical = 0;
+        for (int i = 0; i < 400; i++) {
+            if (queue.dequeue().getPriority() == 1) {
+                critical++;
+            }
+        }
+        assertTrue(Math.abs(critical - 300) <= 1, "critical patients served: " + critical);
+    }
+
+    @Test
+    void weightedFairGivesNoCreditForIdleTime() {
+        DequeuePolicy policy = DequeuePolicy.weightedFair(1, 1);
+        double[] onlyCritical = {Double.NaN, 0};
+        for (int i = 0; i < 100; i++) {
+            assertEquals(1, policy.select(onlyCritical));
+            policy.served(1, 1);
+        }
+        // The normal level was empty all along, so it does not get 100 patients in a row now
+        double[] both = {0, 0};
+        int normalInARow = 0;
+        while (policy.select(both) == 0) {
+            policy.served(0, 1);
+            normalInARow++;
+        }
+        assertTrue(normalInARow <= 1, "normal patients served in a row: " + normalInARow);
+    }
+
+    @Test
+    void copiesStartWithoutHistory() {
+        DequeuePolicy policy = DequeuePolicy.weightedFair(1, 1);
+        double[] both = {0, 0};
+        policy.served(policy.select(both), 1);
+        DequeuePolicy copy = policy.copy();
+        assertEquals(1, copy.select(both));
+        assertEquals(0, policy.select(both));
+    }
+
+    @Test
+    void weightedFairNeedsAWeightForEveryLevelOfTheQueue() {
+        assertThrows(IllegalArgumentException.class, () -> new MultiPriorityQueue(DequeuePolicy.parse("wfq:1,4")));
+        new MultiPriorityQueue(DequeuePolicy.parse("wfq:1,4,16"));
+        new AdaptiveQueue(1).setDequeuePolicy(DequeuePolicy.parse("wfq:1,4"));
+    }
+
+    @Test
+    void everyPolicyReturnsMinusOneWhenEmpty() {
+        double[] empty = {Double.NaN, Double.NaN};
+        assertEquals(-1, DequeuePolicy.strict().select(empty));
+        assertEquals(-1, DequeuePolicy.weightedFair(1, 2).select(empty));
+        assertEquals(-1, DequeuePolicy.aging(30).select(empty));
+    }
+
+    @Test
+    void parseAcceptsEachPolicyAndRejectsBadSpecs() {
+        assertEquals(DequeuePolicy.strict(), DequeuePolicy.parse("strict"));
+        assertEquals(1, DequeuePolicy.parse("wfq:1, 4").select(new double[]{0, 0}));
+        assertEquals(0, DequeuePolicy.parse("aging:30").select(new double[]{0, 40}));
+        assertThrows(IllegalArgumentException.class, () -> DequeuePolicy.parse("wfq:1"));
+        assertThrows(IllegalArgumentException.class, () -> DequeuePolicy.parse("wfq:1,0"));
+        assertThrows(IllegalArgumentException.class, () -> DequeuePolicy.parse("aging:0"));
+        assertThrows(IllegalArgumentException.class, () -> DequeuePolicy.parse("lifo"));
+    }
+
+    private static CriticalPatient patient(int id, int priority, double arrivalTime) {
+        CriticalPatient patient = new CriticalPatient(id);
+        patient.setPriority(priority);
+        patient.setArrivalTime(arrivalTime);
+        patient.setServiceTime(1);
+        return patient;
+    }
+}
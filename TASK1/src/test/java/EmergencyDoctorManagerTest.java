@@ -0,0 +1,93 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmergencyDoctorManagerTest {
+    private static final int PATIENTS = 12;
+
+    @Test
+    @Timeout(60)
+    void elasticTeamGrowsUnderLoadAndShrinksWhenIdle() throws InterruptedException {
+        // Grow from 1 to 3 once more than 2 wait; leave after 300 ms without a patient
+        EmergencyDoctorManager manager = new EmergencyDoctorManager(1, 3, 2, 10_000, 300);
+        assertTrue(manager.isElastic());
+        manager.start();
+        for (int i = 1; i <= PATIENTS; i++) {
+            // Half a simulated minute: 50 ms of treatment
+            manager.assignPatient(patient(i, 0.5));
+        }
+        waitFor(() -> manager.getDispatchedPatients() == PATIENTS);
+        assertEquals(3, manager.getPeakDoctorCount());
+        waitFor(() -> manager.getDoctorCount() == 1);
+        manager.shutdown();
+
+        List<DoctorScalingEvent> events = manager.getScalingEvents();
+        int added = 0;
+        int retired = 0;
+        for (DoctorScalingEvent event : events) {
+            assertTrue(event.getPoolSize() >= 1 && event.getPoolSize() <= 3, event.toString());
+            if (event.getAction() == DoctorScalingEvent.Action.ADDED) {
+                added++;
+                assertTrue(event.getBacklog() > 2, event.toString());
+            } else {
+                retired++;
+            }
+        }
+        assertTrue(added >= 2, events.toString());
+        // Every doctor who joined has left again
+        assertEquals(added, retired, events.toString());
+        assertEquals(PATIENTS, manager.getStatistics().getCount(2));
+    }
+
+    @Test
+    @Timeout(60)
+    void fixedTeamNeverChangesSize() throws InterruptedException {
+        EmergencyDoctorManager manager = new EmergencyDoctorManager(2);
+        assertFalse(manager.isElastic());
+        manager.start();
+        for (int i = 1; i <= PATIENTS; i++) {
+            manager.assignPatient(patient(i, 0.1));
+        }
+        manager.shutdown();
+        assertEquals(2, manager.getDoctorCount());
+        assertEquals(2, manager.getPeakDoctorCount());
+        assertTrue(manager.getScalingEvents().isEmpty());
+        assertEquals(PATIENTS, manager.getDispatchedPatients());
+        assertEquals(PATIENTS, manager.getStatistics().getCount(2));
+    }
+
+    @Test
+    void rejectsTeamBoundsOutOfOrder() {
+        assertThrows(IllegalArgumentException.class, () -> new EmergencyDoctorManager(0));
+        assertThrows(IllegalArgumentException.class, () -> new EmergencyDoctorManager(3, 2, 2, 200, 1000));
+    }
+
+    @Test
+    void maxDoctorsNeedsARealTimeRunAndALargerTeam() {
+        assertThrows(IllegalArgumentException.class, () ->
+                HospitalQueueSimulation.main(new String[]{"--max-doctors=6", "--quiet"}));
+        assertThrows(IllegalArgumentException.class, () ->
+                HospitalQueueSimulation.main(new String[]{"--real-time", "--doctors=4", "--max-doctors=4", "--quiet"}));
+    }
+
+    private static EmergencyPatient patient(int patientId, double serviceTime) {
+        EmergencyPatient patient = new EmergencyPatient(patientId);
+        patient.setPriority(2);
+        patient.setArrivalTime(480);
+        patient.setServiceTime(serviceTime);
+        return patient;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        while (!condition.getAsBoolean()) {
+            Thread.sleep(10);
+        }
+    }
+}
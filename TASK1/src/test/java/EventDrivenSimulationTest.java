@@ -0,0 +1,32 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventDrivenSimulationTest {
+    private static final int PATIENTS = 200_000;
+
+    @Test
+    void streamingDayKeepsNoMoreCaretakersThanWereOpenAtOnce() {
+        EventDrivenSimulation simulation = new EventDrivenSimulation(1, HospitalQueueSimulation.EMERGENCY_DOCTORS,
+                null, true, HospitalQueueSimulation.QUEUE_THRESHOLD);
+        simulation.enableCaretakerStatistics();
+        simulation.run(new PatientGenerator(PATIENTS, new SplittableRandom(6)));
+
+        // Caretakers closed and opened again many times, but only the peak were ever created
+        assertEquals(simulation.getPeakOpenCaretakers(), simulation.getCaretakers().size());
+        assertTrue(simulation.getOpenedCaretakers() > 10L * simulation.getCaretakers().size(),
+                simulation.getOpenedCaretakers() + " opened");
+
+        // Every patient was treated once, by a doctor or by one of the kept caretakers
+        PatientStatistics statistics = simulation.getStatistics();
+        long caretakerPatients = 0;
+        for (CaretakerProcessor caretaker : simulation.getCaretakers()) {
+            caretakerPatients += caretaker.getStatistics().getCount(0) + caretaker.getStatistics().getCount(1);
+        }
+        assertEquals(statistics.getCount(0) + statistics.getCount(1), caretakerPatients);
+        assertEquals(PATIENTS, statistics.getCount(0) + statistics.getCount(1) + statistics.getCount(2));
+    }
+}
@@ -0,0 +1,78 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LogFormatTest {
+
+    @Test
+    void fixedMatchesStringFormatOnEdgeCases() {
+        double[] values = {0, -0.0, 1.005, 19.685, 2.5, 0.5, -0.5, -0.001, -0.0004, 0.0005, 9.9995, 999.9999,
+                1e-9, 123456789.125, 1e18, 1e300, -1e300, Double.MIN_VALUE, Double.MAX_VALUE,
+                Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (double value : values) {
+            for (int decimals = 0; decimals <= 3; decimals++) {
+                assertFixed(value, decimals);
+            }
+        }
+    }
+
+    @Test
+    void fixedMatchesStringFormatOnRandomValues() {
+        Random random = new Random(7);
+        for (int i = 0; i < 200_000; i++) {
+            int decimals = random.nextInt(4);
+            double value;
+            switch (i % 3) {
+                case 0:
+                    // Minutes, as the simulation logs them
+                    value = random.nextDouble() * 2000;
+                    break;
+                case 1:
+                    // Exact ties on the last decimal, plus or minus a little
+                    value = (random.nextInt(2_000_000) + 0.5) / 1000 + (random.nextInt(3) - 1) * 1e-12;
+                    break;
+                default:
+                    value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12));
+                    break;
+            }
+            assertFixed(value, decimals);
+        }
+    }
+
+    @Test
+    void fixedRejectsUnsupportedDecimals() {
+        assertThrows(IllegalArgumentException.class, () -> LogFormat.appendFixed(new StringBuilder(), 1, -1));
+        assertThrows(IllegalArgumentException.class, () -> LogFormat.appendFixed(new StringBuilder(), 1, 4));
+    }
+
+    @Test
+    void timeMatchesStringFormat() {
+        Random random = new Random(11);
+        for (int i = 0; i < 100_000; i++) {
+            double minutes = i < 3000 ? i * 0.5 : random.nextDouble() * 3 * 24 * 60;
+            StringBuilder line = new StringBuilder();
+            LogFormat.appendTime(line, minutes);
+            assertEquals(String.format("%02d:%02d", (int) (minutes / 60), (int) (minutes % 60)), line.toString(),
+                    "minutes " + minutes);
+        }
+    }
+
+    @Test
+    void twoDigitsMatchesStringFormat() {
+        for (int value = -20; value <= 200; value++) {
+            StringBuilder line = new StringBuilder();
+            LogFormat.appendTwoDigits(line, value);
+            assertEquals(String.format("%02d", value), line.toString());
+        }
+    }
+
+    private static void assertFixed(double value, int decimals) {
+        StringBuilder line = new StringBuilder();
+        LogFormat.appendFixed(line, value, decimals);
+        assertEquals(String.format("%." + decimals + "f", value), line.toString(),
+                "value " + value + " with " + decimals + " decimals");
+    }
+}
@@ -0,0 +1,88 @@
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsTest {
+
+    @Test
+    void snapshotListsEveryMetricByName() {
+        Metrics metrics = new Metrics();
+        metrics.counter("caretakers.treated").add(41);
+        metrics.counter("caretakers.treated").increment();
+        metrics.gauge("doctors.busy", () -> 3);
+        metrics.gauge("pipeline.load", () -> 0.125);
+        Metrics.Timer timer = metrics.timer("doctors.assign");
+        timer.record(1_000);
+        timer.record(3_000);
+
+        assertEquals(2, timer.getCount());
+        assertEquals(2_000, timer.getMeanNanos());
+        assertEquals(3_000, timer.getMaxNanos());
+        String snapshot = metrics.snapshot();
+        assertTrue(snapshot.endsWith(" s: caretakers.treated 42 | doctors.assign 2 timed, mean 2.0 us, max 3.0 us"
+                + " | doctors.busy 3 | pipeline.load 0.13"), snapshot);
+    }
+
+    @Test
+    void timerWithNothingTimedShowsNoMean() {
+        Metrics metrics = new Metrics();
+        metrics.timer("pipeline.batch");
+        assertTrue(metrics.snapshot().endsWith(" s: pipeline.batch 0 timed"), metrics.snapshot());
+    }
+
+    @Test
+    void rejectsBadNamesAndMixedTypes() {
+        Metrics metrics = new Metrics();
+        assertThrows(IllegalArgumentException.class, () -> metrics.counter("treated"));
+        assertThrows(IllegalArgumentException.class, () -> metrics.counter("caretakers."));
+        metrics.counter("caretakers.treated");
+        assertThrows(IllegalArgumentException.class, () -> metrics.timer("caretakers.treated"));
+        assertThrows(IllegalArgumentException.class, () -> metrics.gauge("caretakers.treated", () -> 1));
+    }
+
+    @Test
+    void firstSamplesSpreadOverTheFirstCalls() {
+        // Callers with a single call each: about one in SAMPLE_EVERY of them is timed
+        int callers = 64_000;
+        int timed = 0;
+        boolean[] seen = new boolean[Metrics.Timer.SAMPLE_EVERY];
+        for (int i = 0; i < callers; i++) {
+            long first = Metrics.Timer.firstSample();
+            assertTrue(first >= 0 && first < Metrics.Timer.SAMPLE_EVERY, "first sample " + first);
+            seen[(int) first] = true;
+            if (first == 0) {
+                timed++;
+            }
+        }
+        assertEquals(callers / Metrics.Timer.SAMPLE_EVERY, timed, 150);
+        for (boolean start : seen) {
+            assertTrue(start);
+        }
+    }
+
+    @Test
+    void groupsShowAsMBeansUntilClosed() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName caretakers = new ObjectName(Metrics.JMX_DOMAIN, "type", "caretakers");
+        ObjectName doctors = new ObjectName(Metrics.JMX_DOMAIN, "type", "doctors");
+        try (Metrics metrics = new Metrics()) {
+            metrics.counter("caretakers.treated").add(7);
+            metrics.registerMBeans();
+            // Groups added after registering show up too
+            metrics.timer("doctors.assign").record(5_000);
+
+            assertEquals(7L, server.getAttribute(caretakers, "treated"));
+            assertEquals(1L, server.getAttribute(doctors, "assignCount"));
+            assertEquals(5.0, server.getAttribute(doctors, "assignMeanMicros"));
+        }
+        assertFalse(server.isRegistered(caretakers));
+        assertFalse(server.isRegistered(doctors));
+    }
+}
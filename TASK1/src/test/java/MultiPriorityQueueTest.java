@@ -0,0 +1,149 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MultiPriorityQueueTest {
+
+    @Test
+    void servesTheHighestLevelFirst() throws InterruptedException {
+        MultiPriorityQueue queue = new MultiPriorityQueue();
+        queue.enqueue(patient(1, 0));
+        queue.enqueue(patient(2, 1));
+        queue.enqueue(patient(3, 2));
+        queue.enqueue(patient(4, 1));
+        assertEquals(3, queue.take().getPatientId());
+        assertEquals(2, queue.take().getPatientId());
+        assertEquals(4, queue.take().getPatientId());
+        assertEquals(1, queue.take().getPatientId());
+        assertNull(queue.dequeue());
+    }
+
+    @Test
+    void patientsQueuedBeforeCloseAreStillTaken() throws InterruptedException {
+        MultiPriorityQueue queue = new MultiPriorityQueue();
+        queue.enqueue(patient(1, 0));
+        queue.enqueue(patient(2, 2));
+        queue.close();
+        assertTrue(queue.isClosed());
+        assertTrue(queue.awaitAvailable(MultiPriorityQueue.ANY_LEVEL));
+        assertEquals(2, queue.take().getPatientId());
+        assertEquals(1, queue.poll(1, TimeUnit.SECONDS).getPatientId());
+        assertNull(queue.take());
+        assertNull(queue.poll(1, TimeUnit.HOURS));
+        assertFalse(queue.awaitAvailable(MultiPriorityQueue.ANY_LEVEL));
+    }
+
+    @Test
+    void aClosedLevelEndsEvenWhileOthersHavePatients() throws InterruptedException {
+        MultiPriorityQueue queue = new MultiPriorityQueue();
+        queue.enqueue(patient(1, 0));
+        queue.close();
+        assertNull(queue.takeFromQueue(2));
+        assertFalse(queue.awaitAvailable(2));
+        assertEquals(1, queue.takeFromQueue(0).getPatientId());
+    }
+
+    @Test
+    void enqueueAfterCloseIsRejected() {
+        MultiPriorityQueue queue = new MultiPriorityQueue();
+        queue.close();
+        assertThrows(IllegalStateException.class, () -> queue.enqueue(patient(1, 0)));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    @Timeout(10)
+    void closeWakesWaitingConsumers() throws InterruptedException {
+        MultiPriorityQueue queue = new MultiPriorityQueue();
+        List<CriticalPatient> results = new ArrayList<>();
+        List<Thread> consumers = new ArrayList<>();
+        for (int level : new int[]{MultiPriorityQueue.ANY_LEVEL, 1}) {
+            Thread consumer = new Thread(() -> {
+                try {
+                    CriticalPatient patient = level == MultiPriorityQueue.ANY_LEVEL
+                            ? queue.take() : queue.takeFromQueue(level);
+                    synchronized (results) {
+                        results.add(patient);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            consumers.add(consumer);
+            consumer.start();
+        }
+        // Let both block before closing
+        while (consumers.stream().anyMatch(thread -> thread.getState() != Thread.State.WAITING)) {
+            Thread.sleep(1);
+        }
+        queue.close();
+        for (Thread consumer : consumers) {
+            consumer.join();
+        }
+        assertEquals(2, results.size());
+        assertNull(results.get(0));
+        assertNull(results.get(1));
+    }
+
+    // Producers keep adding while the queue is closed under them: every patient that enqueue()
+    // accepted must still reach a consumer before take() reports the end
+    @Test
+    @Timeout(60)
+    void noPatientIsStrandedByClose() throws InterruptedException {
+        for (int round = 0; round < 100; round++) {
+            MultiPriorityQueue queue = new MultiPriorityQueue();
+            AtomicInteger accepted = new AtomicInteger();
+            AtomicInteger taken = new AtomicInteger();
+            List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < 3; p++) {
+                int offset = p;
+                threads.add(new Thread(() -> {
+                    for (int id = 0; ; id++) {
+                        try {
+                            queue.enqueue(patient(id, (id + offset) % 3));
+                        } catch (IllegalStateException closed) {
+                            return;
+                        }
+                        accepted.incrementAndGet();
+                    }
+                }));
+            }
+            for (int c = 0; c < 2; c++) {
+                boolean anyLevel = c == 0;
+                threads.add(new Thread(() -> {
+                    try {
+                        while ((anyLevel ? queue.take() : queue.takeFromQueue(1)) != null) {
+                            taken.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            Thread.sleep(0, 200_000);
+            queue.close();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(accepted.get(), taken.get(), "patients taken in round " + round);
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    private static CriticalPatient patient(int id, int priority) {
+        CriticalPatient patient = priority == 2 ? new EmergencyPatient(id) : new CriticalPatient(id);
+        patient.setPriority(priority);
+        return patient;
+    }
+}
@@ -0,0 +1,156 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapPatientQueueTest {
+    private static final int PATIENTS = 100_000;
+
+    @Test
+    void servesTheHighestLevelFirstInArrivalOrder() {
+        // Chunks of 3 records, so every level spans several of them
+        OffHeapPatientQueue queue = new OffHeapPatientQueue(3);
+        List<CriticalPatient> patients = HospitalQueueSimulation.generatePatients(1000, new SplittableRandom(3));
+        for (CriticalPatient patient : patients) {
+            patient.setAssignedQueueId(patient.getPatientId() % 7);
+            queue.enqueue(patient);
+        }
+        assertEquals(patients.size(), queue.size());
+
+        List<CriticalPatient> expected = new ArrayList<>();
+        for (int priority = 2; priority >= 0; priority--) {
+            int before = expected.size();
+            for (CriticalPatient patient : patients) {
+                if (patient.getPriority() == priority) {
+                    expected.add(patient);
+                }
+            }
+            assertEquals(expected.size() - before, queue.getQueueSize(priority));
+        }
+        List<CriticalPatient> served = new ArrayList<>();
+        assertEquals(10, queue.drainTo(served, 10));
+        CriticalPatient patient;
+        while ((patient = queue.poll()) != null) {
+            served.add(patient);
+        }
+        assertTrue(queue.isEmpty());
+
+        assertEquals(expected.size(), served.size());
+        for (int i = 0; i < expected.size(); i++) {
+            CriticalPatient in = expected.get(i);
+            CriticalPatient out = served.get(i);
+            assertEquals(in.getPatientId(), out.getPatientId());
+            assertEquals(in.getPriority(), out.getPriority());
+            assertEquals(in.getAssignedQueueId(), out.getAssignedQueueId());
+            assertEquals(in.getArrivalTime(), out.getArrivalTime());
+            assertEquals(in.getServiceTime(), out.getServiceTime());
+            if (out.getPriority() == 2) {
+                assertInstanceOf(EmergencyPatient.class, out);
+            }
+        }
+    }
+
+    @Test
+    void refillingReusesTheSameChunks() {
+        OffHeapPatientQueue queue = new OffHeapPatientQueue(4);
+        long bytes = 0;
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 10; i++) {
+                queue.enqueue(patient(round * 10 + i, 1));
+            }
+            while (queue.poll() != null) {
+                // Drain
+            }
+            if (round == 0) {
+                bytes = queue.getOffHeapBytes();
+            }
+            assertEquals(bytes, queue.getOffHeapBytes(), "round " + round);
+        }
+        assertNull(queue.poll());
+        queue.releaseEmptyChunks();
+        assertEquals(0, queue.getOffHeapBytes());
+        queue.enqueue(patient(1, 0));
+        assertEquals(1, queue.poll().getPatientId());
+    }
+
+    @Test
+    void rejectsBadArguments() {
+        OffHeapPatientQueue queue = new OffHeapPatientQueue();
+        assertThrows(IllegalArgumentException.class, () -> queue.enqueue(patient(1, 3)));
+        assertThrows(IllegalArgumentException.class, () -> queue.drainTo(new ArrayList<>(), -1));
+        assertThrows(IllegalArgumentException.class, () -> new OffHeapPatientQueue(0));
+    }
+
+    @Test
+    void offHeapCaretakerQueueServesLikeTheStrictPolicy() throws IOException {
+        AdaptiveQueue onHeap = new AdaptiveQueue(1);
+        AdaptiveQueue offHeap = new AdaptiveQueue(1);
+        offHeap.enableOffHeap(16);
+        for (CriticalPatient patient : HospitalQueueSimulation.generatePatients(1000, new SplittableRandom(4))) {
+            if (patient.getPriority() != 2) {
+                onHeap.enqueue(patient);
+                offHeap.enqueue(patient);
+            }
+        }
+        assertEquals(onHeap.countCriticalPatients(), offHeap.countCriticalPatients());
+        assertThrows(IllegalArgumentException.class, () -> offHeap.setDequeuePolicy(DequeuePolicy.aging(10)));
+        assertThrows(IllegalArgumentException.class, () -> offHeap.enqueue(patient(5000, 2)));
+        assertThrows(IllegalStateException.class, () -> offHeap.stealNewest(600, 700));
+        assertThrows(IllegalStateException.class, () -> offHeap.enableOffHeap(16));
+
+        // A checkpoint of the off-heap queue restores into an on-heap one, and leaves it as it was
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        offHeap.writeState(new DataOutputStream(saved));
+        AdaptiveQueue restored = new AdaptiveQueue(1);
+        restored.readState(new DataInputStream(new ByteArrayInputStream(saved.toByteArray())));
+
+        assertEquals(onHeap.size(), offHeap.size());
+        CriticalPatient expected;
+        while ((expected = onHeap.dequeue()) != null) {
+            assertEquals(expected.getPatientId(), offHeap.dequeue().getPatientId());
+            assertEquals(expected.getPatientId(), restored.dequeue().getPatientId());
+        }
+        assertTrue(offHeap.isEmpty());
+        assertTrue(restored.isEmpty());
+    }
+
+    @Test
+    void streamingDayOffTheHeapEndsLikeOnTheHeap() {
+        EventDrivenSimulation onHeap = streamingDay(false);
+        EventDrivenSimulation offHeap = streamingDay(true);
+        assertEquals(onHeap.getProcessedEvents(), offHeap.getProcessedEvents());
+        assertEquals(onHeap.getCurrentTime(), offHeap.getCurrentTime());
+        assertEquals(onHeap.getCaretakers().size(), offHeap.getCaretakers().size());
+        StatisticsAssertions.assertSameStatistics(onHeap.getStatistics(), offHeap.getStatistics());
+    }
+
+    private static EventDrivenSimulation streamingDay(boolean offHeap) {
+        EventDrivenSimulation simulation = new EventDrivenSimulation(1, HospitalQueueSimulation.EMERGENCY_DOCTORS,
+                null, false, HospitalQueueSimulation.QUEUE_THRESHOLD);
+        if (offHeap) {
+            simulation.enableOffHeapQueues();
+        }
+        simulation.run(new PatientGenerator(PATIENTS, new SplittableRandom(5)));
+        return simulation;
+    }
+
+    private static CriticalPatient patient(int patientId, int priority) {
+        CriticalPatient patient = priority == 2 ? new EmergencyPatient(patientId) : new CriticalPatient(patientId);
+        patient.setPriority(priority);
+        patient.setArrivalTime(480 + patientId);
+        patient.setServiceTime(10);
+        return patient;
+    }
+}
@@ -0,0 +1,49 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PatientStoreTest {
+
+    @Test
+    void generatesTheSamePatientsAsTheGenerator() {
+        PatientStore store = PatientStore.generate(10_000, new SplittableRandom(8));
+        PatientGenerator generator = new PatientGenerator(10_000, new SplittableRandom(8));
+        for (int i = 0; i < store.size(); i++) {
+            CriticalPatient patient = generator.next();
+            assertEquals(patient.getPatientId(), store.getPatientId(i));
+            assertEquals(patient.getPriority(), store.getPriority(i));
+            assertEquals(patient.getArrivalTime(), store.getArrivalTime(i));
+            assertEquals(patient.getServiceTime(), store.getServiceTime(i));
+        }
+    }
+
+    @Test
+    void viewReadsAndWritesTheStoreRow() {
+        PatientStore store = new PatientStore(1);
+        store.add(7, 1, 480, 10);
+        int emergency = store.add(8, 2, 485, 5);
+
+        CriticalPatient view = store.view(0);
+        assertSame(store, view.getStore());
+        assertEquals(0, view.getStoreIndex());
+        assertEquals(7, view.getPatientId());
+        assertEquals(1, view.getPriority());
+        assertEquals(480, view.getArrivalTime());
+        view.setWaitingTime(3);
+        view.setDepartureTime(493);
+        view.setAssignedQueueId(4);
+        assertEquals(3, store.getWaitingTime(0));
+        assertEquals(493, store.getDepartureTime(0));
+        assertEquals(4, store.getAssignedQueueId(0));
+        store.setServiceTime(0, 12);
+        assertEquals(12, view.getServiceTime());
+
+        assertInstanceOf(EmergencyPatient.class, store.view(emergency));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.view(2));
+    }
+}
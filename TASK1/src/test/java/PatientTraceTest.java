@@ -0,0 +1,121 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PatientTraceTest {
+    private static final int PATIENTS = 10_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysTheRecordedPatients() throws IOException {
+        Path path = directory.resolve("day.hqt");
+        List<CriticalPatient> patients = HospitalQueueSimulation.generatePatients(PATIENTS, new SplittableRandom(1));
+        try (PatientTraceWriter writer = new PatientTraceWriter(path)) {
+            // Recorded while the day's patients go past, as --record-trace does
+            Iterator<CriticalPatient> recording = writer.recording(patients.iterator());
+            while (recording.hasNext()) {
+                recording.next();
+            }
+            assertEquals(PATIENTS, writer.getCount());
+        }
+        assertEquals(16 + 21L * PATIENTS, Files.size(path));
+
+        try (PatientTraceReader reader = new PatientTraceReader(path)) {
+            assertEquals(PATIENTS, reader.size());
+            for (CriticalPatient expected : patients) {
+                CriticalPatient patient = reader.next();
+                assertEquals(expected.getPatientId(), patient.getPatientId());
+                assertEquals(expected.getPriority(), patient.getPriority());
+                assertEquals(expected.getArrivalTime(), patient.getArrivalTime());
+                assertEquals(expected.getServiceTime(), patient.getServiceTime());
+                if (patient.getPriority() == 2) {
+                    assertInstanceOf(EmergencyPatient.class, patient);
+                }
+            }
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    void replaysIntoAStoreFromWhereItWasSkippedTo() throws IOException {
+        Path path = directory.resolve("day.hqt");
+        PatientStore recorded = PatientStore.generate(PATIENTS, new SplittableRandom(2));
+        try (PatientTraceWriter writer = new PatientTraceWriter(path)) {
+            writer.writeAll(recorded);
+        }
+        try (PatientTraceReader reader = new PatientTraceReader(path)) {
+            reader.skip(100);
+            PatientStore store = reader.readStore();
+            assertEquals(PATIENTS - 100, store.size());
+            for (int i = 0; i < store.size(); i++) {
+                assertEquals(recorded.getPatientId(i + 100), store.getPatientId(i));
+                assertEquals(recorded.getPriority(i + 100), store.getPriority(i));
+                assertEquals(recorded.getArrivalTime(i + 100), store.getArrivalTime(i));
+                assertEquals(recorded.getServiceTime(i + 100), store.getServiceTime(i));
+            }
+        }
+    }
+
+    @Test
+    void rejectsTruncatedAndCorruptTraces() throws IOException {
+        Path path = directory.resolve("day.hqt");
+        try (PatientTraceWriter writer = new PatientTraceWriter(path)) {
+            writer.write(1, 0, 480, 10);
+            writer.write(2, 1, 481, 10);
+        }
+        byte[] trace = Files.readAllBytes(path);
+
+        // One record short
+        Files.write(path, Arrays.copyOf(trace, trace.length - 1));
+        assertThrows(IOException.class, () -> new PatientTraceReader(path));
+
+        // A record count so large that counting its bytes overflows a long
+        Files.write(path, trace);
+        patchLong(path, 8, Long.MAX_VALUE / 21 * 8);
+        assertThrows(IOException.class, () -> new PatientTraceReader(path));
+
+        // A priority that is not a level
+        Files.write(path, trace);
+        patchByte(path, 16 + 21 + 4, (byte) 7);
+        try (PatientTraceReader reader = new PatientTraceReader(path)) {
+            reader.next();
+            assertThrows(UncheckedIOException.class, reader::next);
+        }
+        try (PatientTraceReader reader = new PatientTraceReader(path)) {
+            assertThrows(UncheckedIOException.class, reader::readStore);
+        }
+
+        Files.write(path, new byte[]{'n', 'o', 'p', 'e'});
+        assertThrows(IOException.class, () -> new PatientTraceReader(path));
+    }
+
+    private static void patchLong(Path path, long position, long value) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(8).order(PatientTraceWriter.BYTE_ORDER).putLong(0, value), position);
+        }
+    }
+
+    private static void patchByte(Path path, long position, byte value) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{value}), position);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PowerOfTwoChoicesRouterTest {
+    private static final int PATIENTS = 20_000;
+
+    @Test
+    void sameSeedRoutesTheSameWay() {
+        List<CriticalPatient> first = HospitalQueueSimulation.generatePatients(PATIENTS, new SplittableRandom(5));
+        List<CriticalPatient> second = HospitalQueueSimulation.generatePatients(PATIENTS, new SplittableRandom(5));
+        HospitalQueueSimulation.assignCaretakerQueuesTwoChoices(first, new SplittableRandom(6));
+        HospitalQueueSimulation.assignCaretakerQueuesTwoChoices(second, new SplittableRandom(6));
+        for (int i = 0; i < PATIENTS; i++) {
+            assertEquals(first.get(i).getAssignedQueueId(), second.get(i).getAssignedQueueId(), "patient " + i);
+        }
+    }
+
+    @Test
+    void opensAQueueOnlyWhenEveryQueueIsFull() {
+        List<CriticalPatient> patients = HospitalQueueSimulation.generatePatients(PATIENTS, new SplittableRandom(5));
+        List<AdaptiveQueue> twoChoices =
+                HospitalQueueSimulation.assignCaretakerQueuesTwoChoices(patients, new SplittableRandom(6));
+        List<CriticalPatient> again = HospitalQueueSimulation.generatePatients(PATIENTS, new SplittableRandom(5));
+        assertEquals(HospitalQueueSimulation.assignCaretakerQueues(again).size(), twoChoices.size());
+        for (int i = 0; i < twoChoices.size() - 1; i++) {
+            assertEquals(HospitalQueueSimulation.QUEUE_THRESHOLD, twoChoices.get(i).size(), "queue " + (i + 1));
+        }
+    }
+
+    @Test
+    void routeReturnsNullOnceAllQueuesAreFull() {
+        PowerOfTwoChoicesRouter router = new PowerOfTwoChoicesRouter(2, new SplittableRandom(1));
+        assertNull(router.route(new CriticalPatient(0)));
+        router.addQueue(new AdaptiveQueue(1));
+        router.addQueue(new AdaptiveQueue(2));
+        for (int id = 1; id <= 4; id++) {
+            assertTrue(router.route(new CriticalPatient(id)) != null, "patient " + id);
+        }
+        assertNull(router.route(new CriticalPatient(5)));
+        assertEquals(2, router.getQueues().get(0).size());
+        assertEquals(2, router.getQueues().get(1).size());
+    }
+}
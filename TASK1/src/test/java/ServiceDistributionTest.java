@@ -0,0 +1,40 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServiceDistributionTest {
+
+    @Test
+    void rejectsNonPositiveMeansAndNegativeDeviations() {
+        for (String spec : new String[]{"gaussian:-3,0", "gaussian:0,1", "gaussian:10,-1", "lognormal:10,-1",
+                "exponential:0", "fixed:-1", "gaussian:10", "uniform:1,2", "gaussian"}) {
+            assertThrows(IllegalArgumentException.class, () -> ServiceDistribution.parse(spec), spec);
+        }
+    }
+
+    @Test
+    void gaussianNeverDrawsANegativeTime() {
+        ServiceDistribution wide = ServiceDistribution.parse("gaussian:1,5");
+        SplittableRandom rand = new SplittableRandom(3);
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(wide.sample(rand) >= 0);
+        }
+    }
+
+    @Test
+    void everyDistributionHasItsMean() {
+        SplittableRandom rand = new SplittableRandom(4);
+        for (String spec : new String[]{"gaussian:10,2", "exponential:10", "lognormal:10,4", "fixed:10"}) {
+            ServiceDistribution distribution = ServiceDistribution.parse(spec);
+            double sum = 0;
+            for (int i = 0; i < 200_000; i++) {
+                sum += distribution.sample(rand);
+            }
+            assertEquals(10, sum / 200_000, 0.1, spec);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShortestQueueIndexTest {
+    private static final int THRESHOLD = 5;
+
+    @Test
+    void emptyIndex() {
+        ShortestQueueIndex index = new ShortestQueueIndex(THRESHOLD);
+        assertEquals(-1, index.shortestId());
+        assertNull(index.shortest());
+        assertEquals(0, index.shortestLoad());
+        assertTrue(index.allAtThreshold());
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void tiesGoToTheLowestId() {
+        ShortestQueueIndex index = new ShortestQueueIndex(THRESHOLD);
+        index.add(7, 2);
+        index.add(3, 2);
+        index.add(5, 2);
+        assertEquals(3, index.shortestId());
+        index.update(3, 3);
+        assertEquals(5, index.shortestId());
+        index.update(3, 2);
+        assertEquals(3, index.shortestId());
+    }
+
+    @Test
+    void tracksAdaptiveQueues() {
+        ShortestQueueIndex index = new ShortestQueueIndex(THRESHOLD);
+        AdaptiveQueue first = new AdaptiveQueue(1);
+        AdaptiveQueue second = new AdaptiveQueue(2);
+        index.add(first, 4);
+        index.add(second, 1);
+        assertSame(second, index.shortest());
+        assertTrue(index.contains(first));
+        index.remove(second);
+        assertFalse(index.contains(second));
+        assertSame(first, index.shortest());
+        assertThrows(IllegalArgumentException.class, () -> index.add(first, 0));
+    }
+
+    @Test
+    void matchesAScanAfterRandomChanges() {
+        Random random = new Random(42);
+        ShortestQueueIndex index = new ShortestQueueIndex(THRESHOLD);
+        // Load of each queue ID, or -1 if it is not in the index
+        int[] loads = new int[100];
+        Arrays.fill(loads, -1);
+        for (int step = 0; step < 100_000; step++) {
+            int queueId = random.nextInt(loads.length);
+            int load = random.nextInt(2 * THRESHOLD);
+            if (loads[queueId] < 0) {
+                index.add(queueId, load);
+                loads[queueId] = load;
+            } else if (random.nextInt(4) == 0) {
+                index.remove(queueId);
+                loads[queueId] = -1;
+            } else {
+                index.update(queueId, load);
+                loads[queueId] = load;
+            }
+
+            int shortestId = -1;
+            int size = 0;
+            boolean allAtThreshold = true;
+            for (int id = 0; id < loads.length; id++) {
+                if (loads[id] < 0) {
+                    continue;
+                }
+                size++;
+                allAtThreshold &= loads[id] >= THRESHOLD;
+                if (shortestId < 0 || loads[id] < loads[shortestId]) {
+                    shortestId = id;
+                }
+            }
+            assertEquals(shortestId, index.shortestId(), "step " + step);
+            assertEquals(shortestId < 0 ? 0 : loads[shortestId], index.shortestLoad(), "step " + step);
+            assertEquals(allAtThreshold, index.allAtThreshold(), "step " + step);
+            assertEquals(size, index.size(), "step " + step);
+        }
+    }
+}
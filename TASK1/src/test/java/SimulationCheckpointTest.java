@@ -0,0 +1,82 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SimulationCheckpointTest {
+    private static final int PATIENTS = 300_000;
+    private static final long SEED = 99;
+
+    @Test
+    void resumedStreamingDayEndsLikeTheUninterruptedOne() throws IOException {
+        resumedDayEndsLikeTheUninterruptedOne(
+                () -> new EventDrivenSimulation(1, HospitalQueueSimulation.EMERGENCY_DOCTORS, null, true,
+                        HospitalQueueSimulation.QUEUE_THRESHOLD),
+                () -> new PatientGenerator(PATIENTS, new SplittableRandom(SEED)));
+    }
+
+    @Test
+    void resumedUpFrontDayEndsLikeTheUninterruptedOne() throws IOException {
+        List<CriticalPatient> patients =
+                HospitalQueueSimulation.generatePatients(PATIENTS, new SplittableRandom(SEED));
+        int caretakerCount = HospitalQueueSimulation.assignCaretakerQueues(patients).size();
+        // The interrupted and resumed runs each get fresh copies of the same patients
+        resumedDayEndsLikeTheUninterruptedOne(
+                () -> new EventDrivenSimulation(caretakerCount, HospitalQueueSimulation.EMERGENCY_DOCTORS, null),
+                () -> {
+                    List<CriticalPatient> copies =
+                            HospitalQueueSimulation.generatePatients(PATIENTS, new SplittableRandom(SEED));
+                    HospitalQueueSimulation.assignCaretakerQueues(copies);
+                    return copies.iterator();
+                });
+    }
+
+    // Run a day while saving a checkpoint part-way through, then restore the checkpoint into a new
+    // simulation and finish the day from there: both must end with the same results
+    private static void resumedDayEndsLikeTheUninterruptedOne(Supplier<EventDrivenSimulation> newSimulation,
+                                                              Supplier<Iterator<CriticalPatient>> newArrivals)
+            throws IOException {
+        EventDrivenSimulation full = newSimulation.get();
+        full.setDequeuePolicy(DequeuePolicy.weightedFair(1, 4));
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        full.setCheckpointListener(1, simulation -> {
+            // Keep the first checkpoint taken after a quarter of the day's arrivals
+            if (saved.size() == 0 && simulation.getArrivalsRead() >= PATIENTS / 4) {
+                try {
+                    simulation.writeState(new DataOutputStream(saved));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        full.run(newArrivals.get());
+        assertTrue(saved.size() > 0, "no checkpoint was taken during the day");
+
+        EventDrivenSimulation resumed = newSimulation.get();
+        resumed.setDequeuePolicy(DequeuePolicy.weightedFair(1, 4));
+        resumed.restoreState(new DataInputStream(new ByteArrayInputStream(saved.toByteArray())));
+        resumed.resume(newArrivals.get());
+
+        assertEquals(full.getProcessedEvents(), resumed.getProcessedEvents());
+        assertEquals(full.getCurrentTime(), resumed.getCurrentTime());
+        assertEquals(full.getArrivalsRead(), resumed.getArrivalsRead());
+        assertEquals(full.getCaretakers().size(), resumed.getCaretakers().size());
+        assertEquals(full.getOpenedCaretakers(), resumed.getOpenedCaretakers());
+        for (int i = 0; i < full.getCaretakers().size(); i++) {
+            assertEquals(full.getCaretakers().get(i).getStolenPatients(),
+                    resumed.getCaretakers().get(i).getStolenPatients(), "stolen by caretaker " + i);
+        }
+        StatisticsAssertions.assertSameStatistics(full.getStatistics(), resumed.getStatistics());
+    }
+}
@@ -0,0 +1,25 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Checks shared by the tests that run the same day two ways
+final class StatisticsAssertions {
+    private StatisticsAssertions() {
+    }
+
+    // Same patient counts, average waits, wait and sojourn percentiles and caretaker makespan
+    static void assertSameStatistics(PatientStatistics expected, PatientStatistics actual) {
+        for (int priority = 0; priority <= 2; priority++) {
+            assertEquals(expected.getCount(priority), actual.getCount(priority), "count of priority " + priority);
+            assertEquals(expected.getAverageWait(priority), actual.getAverageWait(priority), 1e-9,
+                    "average wait of priority " + priority);
+            for (double percentile : new double[]{50, 90, 99, 100}) {
+                assertEquals(expected.getWaits(priority).getValueAtPercentile(percentile),
+                        actual.getWaits(priority).getValueAtPercentile(percentile),
+                        "p" + percentile + " wait of priority " + priority);
+                assertEquals(expected.getSojourns(priority).getValueAtPercentile(percentile),
+                        actual.getSojourns(priority).getValueAtPercentile(percentile),
+                        "p" + percentile + " sojourn of priority " + priority);
+            }
+        }
+        assertEquals(expected.getCaretakerMakespan(), actual.getCaretakerMakespan());
+    }
+}
@@ -0,0 +1,99 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TimeHistogramTest {
+    private static final double[] PERCENTILES = {1, 10, 50, 90, 99, 99.9, 100};
+
+    @Test
+    void emptyHistogramReportsZero() {
+        TimeHistogram histogram = new TimeHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    void percentilesAreWithinThreePercent() {
+        SplittableRandom random = new SplittableRandom(12);
+        double[] values = new double[100_000];
+        TimeHistogram histogram = new TimeHistogram();
+        double sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            // Waits from a fraction of a minute to several hours
+            values[i] = Math.exp(random.nextDouble(-3, 6));
+            histogram.record(values[i]);
+            sum += values[i];
+        }
+        Arrays.sort(values);
+        for (double percentile : PERCENTILES) {
+            double exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            assertEquals(exact, histogram.getValueAtPercentile(percentile), exact * 0.03 + 0.01,
+                    "p" + percentile);
+        }
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(sum / values.length, histogram.getMean(), 1e-9);
+        assertEquals(values[0], histogram.getMin());
+        assertEquals(values[values.length - 1], histogram.getMax());
+    }
+
+    @Test
+    void negativeValuesCountAsZero() {
+        TimeHistogram histogram = new TimeHistogram();
+        histogram.record(-5);
+        histogram.record(1);
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    void mergingIsLikeRecordingEverythingInOne() {
+        SplittableRandom random = new SplittableRandom(13);
+        TimeHistogram all = new TimeHistogram();
+        TimeHistogram first = new TimeHistogram();
+        TimeHistogram second = new TimeHistogram();
+        for (int i = 0; i < 10_000; i++) {
+            double value = random.nextDouble(0, i % 2 == 0 ? 30 : 3000);
+            all.record(value);
+            (i % 2 == 0 ? first : second).record(value);
+        }
+        first.merge(second);
+        assertSameHistogram(all, first);
+    }
+
+    @Test
+    void savedStateReadsBackTheSame() throws IOException {
+        SplittableRandom random = new SplittableRandom(14);
+        TimeHistogram histogram = new TimeHistogram();
+        for (int i = 0; i < 1000; i++) {
+            histogram.record(random.nextDouble(0, 500));
+        }
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        histogram.writeState(new DataOutputStream(saved));
+        TimeHistogram restored = new TimeHistogram();
+        restored.record(10_000);
+        restored.readState(new DataInputStream(new ByteArrayInputStream(saved.toByteArray())));
+        assertSameHistogram(histogram, restored);
+    }
+
+    private static void assertSameHistogram(TimeHistogram expected, TimeHistogram actual) {
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.getMean(), actual.getMean(), 1e-9);
+        assertEquals(expected.getMin(), actual.getMin());
+        assertEquals(expected.getMax(), actual.getMax());
+        for (double percentile : PERCENTILES) {
+            assertEquals(expected.getValueAtPercentile(percentile), actual.getValueAtPercentile(percentile),
+                    "p" + percentile);
+        }
+    }
+}
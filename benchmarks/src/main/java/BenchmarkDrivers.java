@@ -0,0 +1,1138 @@
+import hospital.benchmarks.Drivers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Default-package side of the JMH benchmarks: each driver wraps one simulation class behind an
+// interface from hospital.benchmarks.Drivers (see there for why this split is needed)
+public class BenchmarkDrivers {
+    // Create count patients arriving a minute apart, criticalRatio of them critical
+    static CriticalPatient[] createPatients(int count, double criticalRatio, long seed) {
+        Random rand = new Random(seed);
+        CriticalPatient[] patients = new CriticalPatient[count];
+        for (int i = 0; i < count; i++) {
+            patients[i] = new CriticalPatient(i + 1);
+            patients[i].setPriority(rand.nextDouble() < criticalRatio ? 1 : 0);
+            patients[i].setArrivalTime(480 + i);
+            patients[i].setServiceTime(10);
+        }
+        return patients;
+    }
+
+    // The linked-list PriorityQueue
+    public static class PriorityQueueDriver implements Drivers.QueueDriver {
+        private PriorityQueue queue;
+        private CriticalPatient spare;
+        private CriticalPatient[] drainPatients = new CriticalPatient[0];
+
+        @Override
+        public void fill(int backlog, double criticalRatio, long seed) {
+            queue = new PriorityQueue();
+            CriticalPatient[] patients = createPatients(backlog + 1, criticalRatio, seed);
+            for (int i = 0; i < backlog; i++) {
+                queue.enqueue(patients[i]);
+            }
+            spare = patients[backlog];
+        }
+
+        @Override
+        public Object enqueueDequeue() {
+            queue.enqueue(spare);
+            spare = queue.dequeue();
+            return spare;
+        }
+
+        @Override
+        public Object fillAndDrain(int count) {
+            if (drainPatients.length < count) {
+                drainPatients = createPatients(count, 0.15, count);
+            }
+            PriorityQueue drainQueue = new PriorityQueue();
+            for (int i = 0; i < count; i++) {
+                drainQueue.enqueue(drainPatients[i]);
+            }
+            CriticalPatient last = null;
+            while (!drainQueue.isEmpty()) {
+                last = drainQueue.dequeue();
+            }
+            return last;
+        }
+    }
+
+    // The lock-free ConcurrentPriorityQueue, used from one thread
+    public static class ConcurrentPriorityQueueDriver implements Drivers.QueueDriver {
+        private ConcurrentPriorityQueue queue;
+        private CriticalPatient spare;
+        private CriticalPatient[] drainPatients = new CriticalPatient[0];
+
+        @Override
+        public void fill(int backlog, double criticalRatio, long seed) {
+            queue = new ConcurrentPriorityQueue();
+            CriticalPatient[] patients = createPatients(backlog + 1, criticalRatio, seed);
+            for (int i = 0; i < backlog; i++) {
+                queue.enqueue(patients[i]);
+            }
+            spare = patients[backlog];
+        }
+
+        @Override
+        public Object enqueueDequeue() {
+            queue.enqueue(spare);
+            spare = queue.dequeue();
+            return spare;
+        }
+
+        @Override
+        public Object fillAndDrain(int count) {
+            if (drainPatients.length < count) {
+                drainPatients = createPatients(count, 0.15, count);
+            }
+            ConcurrentPriorityQueue drainQueue = new ConcurrentPriorityQueue();
+            for (int i = 0; i < count; i++) {
+                drainQueue.enqueue(drainPatients[i]);
+            }
+            CriticalPatient last = null;
+            CriticalPatient patient;
+            while ((patient = drainQueue.dequeue()) != null) {
+                last = patient;
+            }
+            return last;
+        }
+    }
+
+    // The OffHeapPatientQueue, which copies patients into direct memory and rebuilds them on the way out
+    public static class OffHeapPatientQueueDriver implements Drivers.QueueDriver {
+        private OffHeapPatientQueue queue;
+        private CriticalPatient spare;
+        private CriticalPatient[] drainPatients = new CriticalPatient[0];
+        // Reused for every fill-then-drain, as its chunks are meant to be, so no call pays for
+        // allocating direct memory
+        private final OffHeapPatientQueue drainQueue = new OffHeapPatientQueue();
+
+        @Override
+        public void fill(int backlog, double criticalRatio, long seed) {
+            queue = new OffHeapPatientQueue();
+            CriticalPatient[] patients = createPatients(backlog + 1, criticalRatio, seed);
+            for (int i = 0; i < backlog; i++) {
+                queue.enqueue(patients[i]);
+            }
+            spare = patients[backlog];
+        }
+
+        @Override
+        public Object enqueueDequeue() {
+            queue.enqueue(spare);
+            spare = queue.poll();
+            return spare;
+        }
+
+        @Override
+        public Object fillAndDrain(int count) {
+            if (drainPatients.length < count) {
+                drainPatients = createPatients(count, 0.15, count);
+            }
+            for (int i = 0; i < count; i++) {
+                drainQueue.enqueue(drainPatients[i]);
+            }
+            CriticalPatient last = null;
+            CriticalPatient patient;
+            while ((patient = drainQueue.poll()) != null) {
+                last = patient;
+            }
+            return last;
+        }
+    }
+
+    // A queue filled with a whole day's backlog straight from a PatientGenerator, then drained
+    abstract static class BacklogDriver implements Drivers.BacklogDriver {
+        private PatientQueue queue;
+        private PatientGenerator arrivals;
+
+        abstract PatientQueue newQueue();
+
+        @Override
+        public void reset(int backlog, long seed) {
+            // Drop the last run's queue first, so it can be collected while the next one fills
+            queue = null;
+            queue = newQueue();
+            arrivals = new PatientGenerator(backlog, new SplittableRandom(seed));
+        }
+
+        @Override
+        public void fill() {
+            while (arrivals.hasNext()) {
+                queue.enqueue(arrivals.next());
+            }
+        }
+
+        @Override
+        public long drain() {
+            long checksum = 0;
+            CriticalPatient patient;
+            while ((patient = queue.poll()) != null) {
+                checksum += patient.getPatientId();
+            }
+            return checksum;
+        }
+    }
+
+    public static class PriorityQueueBacklogDriver extends BacklogDriver {
+        @Override
+        PatientQueue newQueue() {
+            return new PriorityQueue();
+        }
+    }
+
+    public static class AdaptiveQueueBacklogDriver extends BacklogDriver {
+        @Override
+        PatientQueue newQueue() {
+            return new AdaptiveQueue(1);
+        }
+    }
+
+    public static class OffHeapPatientQueueBacklogDriver extends BacklogDriver {
+        @Override
+        PatientQueue newQueue() {
+            return new OffHeapPatientQueue();
+        }
+    }
+
+    // A caretaker's AdaptiveQueue (critical patients first)
+    public static class AdaptiveQueueDriver implements Drivers.QueueDriver {
+        private AdaptiveQueue queue;
+        private CriticalPatient spare;
+        private CriticalPatient[] drainPatients = new CriticalPatient[0];
+
+        @Override
+        public void fill(int backlog, double criticalRatio, long seed) {
+            queue = new AdaptiveQueue(1);
+            CriticalPatient[] patients = createPatients(backlog + 1, criticalRatio, seed);
+            for (int i = 0; i < backlog; i++) {
+                queue.enqueue(patients[i]);
+            }
+            spare = patients[backlog];
+        }
+
+        @Override
+        public Object enqueueDequeue() {
+            queue.enqueue(spare);
+            spare = queue.dequeue();
+            return spare;
+        }
+
+        @Override
+        public Object fillAndDrain(int count) {
+            if (drainPatients.length < count) {
+                drainPatients = createPatients(count, 0.15, count);
+            }
+            AdaptiveQueue drainQueue = new AdaptiveQueue(1);
+            for (int i = 0; i < count; i++) {
+                drainQueue.enqueue(drainPatients[i]);
+            }
+            CriticalPatient last = null;
+            CriticalPatient patient;
+            while ((patient = drainQueue.dequeue()) != null) {
+                last = patient;
+            }
+            return last;
+        }
+    }
+
+    // An AdaptiveQueue under a dequeue policy, fed patients whose arrival times keep moving on
+    // (the aging policy compares waits)
+    public static class PolicyAdaptiveQueueDriver implements Drivers.PolicyQueueDriver {
+        private AdaptiveQueue queue;
+        private CriticalPatient spare;
+        private double arrivalTime;
+
+        @Override
+        public void fill(String policy, int backlog, double criticalRatio, long seed) {
+            queue = new AdaptiveQueue(1);
+            queue.setDequeuePolicy(DequeuePolicy.parse(policy));
+            CriticalPatient[] patients = createPatients(backlog + 1, criticalRatio, seed);
+            for (int i = 0; i < backlog; i++) {
+                queue.enqueue(patients[i]);
+            }
+            spare = patients[backlog];
+            arrivalTime = spare.getArrivalTime();
+        }
+
+        @Override
+        public Object enqueueDequeue() {
+            // Re-queue the patient that was just served as a new arrival
+            spare.setArrivalTime(arrivalTime++);
+            queue.enqueue(spare);
+            spare = queue.dequeue();
+            return spare;
+        }
+    }
+
+    // Fresh copies of a day's patients, not yet treated, keeping their caretaker queues if asked
+    static List<CriticalPatient> copyPatients(List<CriticalPatient> allPatients, boolean keepQueues) {
+        List<CriticalPatient> copies = new ArrayList<>(allPatients.size());
+        for (CriticalPatient patient : allPatients) {
+            CriticalPatient copy = patient.getPriority() == 2
+                    ? new EmergencyPatient(patient.getPatientId()) : new CriticalPatient(patient.getPatientId());
+            copy.setPriority(patient.getPriority());
+            copy.setArrivalTime(patient.getArrivalTime());
+            copy.setServiceTime(patient.getServiceTime());
+            if (keepQueues) {
+                copy.setAssignedQueueId(patient.getAssignedQueueId());
+            }
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    // A day with the given patient mix under a dequeue policy
+    public static class PolicyDayDriver implements Drivers.PolicyDayDriver {
+        private DequeuePolicy policy;
+        private boolean onDemand;
+        private List<CriticalPatient> allPatients;
+        private List<CriticalPatient> runPatients;
+        private int caretakerCount;
+        private PatientStatistics statistics;
+
+        @Override
+        public void prepare(String policy, boolean onDemand, int patients, String mix, long seed) {
+            this.policy = DequeuePolicy.parse(policy);
+            this.onDemand = onDemand;
+            Workload workload = Workload.standard().withOption("--mix=" + mix);
+            allPatients = HospitalQueueSimulation.generatePatients(patients, new SplittableRandom(seed), workload);
+            caretakerCount = HospitalQueueSimulation.assignCaretakerQueues(allPatients).size();
+        }
+
+        @Override
+        public void reset() {
+            // A run changes its patients, and on-demand queues are assigned as patients arrive
+            runPatients = copyPatients(allPatients, !onDemand);
+        }
+
+        @Override
+        public double runDay() {
+            EventDrivenSimulation simulation = onDemand
+                    ? new EventDrivenSimulation(1, HospitalQueueSimulation.EMERGENCY_DOCTORS, null, false,
+                    HospitalQueueSimulation.QUEUE_THRESHOLD)
+                    : new EventDrivenSimulation(caretakerCount, HospitalQueueSimulation.EMERGENCY_DOCTORS, null);
+            simulation.setDequeuePolicy(policy);
+            simulation.run(runPatients.iterator());
+            statistics = simulation.getStatistics();
+            return statistics.getCaretakerMakespan();
+        }
+
+        @Override
+        public double waitPercentile(int priority, double percentile) {
+            return statistics.getWaits(priority).getValueAtPercentile(percentile);
+        }
+    }
+
+    // A day's caretakers with and without taking over each other's patients: on the event engine
+    // (emergency patients included), or as one thread per caretaker (caretaker patients only)
+    abstract static class StealingDayDriver implements Drivers.StealingDayDriver {
+        private List<CriticalPatient> allPatients;
+        private int caretakerCount;
+        List<CriticalPatient> runPatients;
+        PatientStatistics statistics;
+        long stolenPatients;
+
+        // Run the day's patients with caretakerCount caretakers and keep their statistics
+        abstract void run(int caretakerCount, boolean workStealing) throws InterruptedException;
+
+        @Override
+        public void prepare(int patients, long seed) {
+            allPatients = HospitalQueueSimulation.generatePatients(patients, new Random(seed));
+            caretakerCount = HospitalQueueSimulation.assignCaretakerQueues(allPatients).size();
+        }
+
+        @Override
+        public void reset() {
+            runPatients = copyPatients(allPatients, true);
+        }
+
+        @Override
+        public double runDay(boolean workStealing) throws InterruptedException {
+            run(caretakerCount, workStealing);
+            return statistics.getCaretakerMakespan();
+        }
+
+        @Override
+        public double caretakerWaitPercentile(double percentile) {
+            return statistics.getCaretakerWaits().getValueAtPercentile(percentile);
+        }
+
+        @Override
+        public double waitPercentile(int priority, double percentile) {
+            return statistics.getWaits(priority).getValueAtPercentile(percentile);
+        }
+
+        @Override
+        public long stolenPatients() {
+            return stolenPatients;
+        }
+
+        // Patients the caretakers took over from each other
+        static long countStolen(List<CaretakerProcessor> caretakers) {
+            long stolen = 0;
+            for (CaretakerProcessor caretaker : caretakers) {
+                stolen += caretaker.getStolenPatients();
+            }
+            return stolen;
+        }
+    }
+
+    public static class EventStealingDayDriver extends StealingDayDriver {
+        @Override
+        void run(int caretakerCount, boolean workStealing) {
+            EventDrivenSimulation simulation = new EventDrivenSimulation(caretakerCount,
+                    HospitalQueueSimulation.EMERGENCY_DOCTORS, null, workStealing);
+            simulation.run(runPatients.iterator());
+            statistics = simulation.getStatistics();
+            stolenPatients = countStolen(simulation.getCaretakers());
+        }
+    }
+
+    public static class ThreadedStealingDayDriver extends StealingDayDriver {
+        @Override
+        void run(int caretakerCount, boolean workStealing) throws InterruptedException {
+            List<CaretakerProcessor> caretakers = new ArrayList<>(caretakerCount);
+            for (int i = 1; i <= caretakerCount; i++) {
+                CaretakerProcessor caretaker = new CaretakerProcessor(new AdaptiveQueue(i));
+                caretaker.enableStatistics();
+                caretakers.add(caretaker);
+            }
+            for (CriticalPatient patient : runPatients) {
+                if (patient.getPriority() != 2) {
+                    caretakers.get(patient.getAssignedQueueId() - 1).getQueue().enqueue(patient);
+                }
+            }
+            List<Thread> threads = new ArrayList<>(caretakerCount);
+            for (CaretakerProcessor caretaker : caretakers) {
+                if (workStealing) {
+                    caretaker.enableWorkStealing(caretakers);
+                }
+                threads.add(new Thread(caretaker, "Caretaker-" + caretaker.getQueueId()));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            statistics = new PatientStatistics();
+            for (CaretakerProcessor caretaker : caretakers) {
+                statistics.merge(caretaker.getStatistics());
+            }
+            stolenPatients = countStolen(caretakers);
+        }
+    }
+
+    // The three-level MultiPriorityQueue shared by producers and consumers
+    public static class MultiPriorityQueueDriver implements Drivers.ContendedQueueDriver {
+        private static final int PATIENT_POOL = 1024;
+        private MultiPriorityQueue queue;
+        private CriticalPatient[] patients;
+        private int maxBacklog;
+
+        @Override
+        public void reset(int maxBacklog) {
+            this.maxBacklog = maxBacklog;
+            queue = new MultiPriorityQueue();
+            // Same mix as a hospital day: 80% normal, 15% critical, 5% emergency
+            Random rand = new Random(PATIENT_POOL);
+            patients = new CriticalPatient[PATIENT_POOL];
+            for (int i = 0; i < PATIENT_POOL; i++) {
+                int roll = rand.nextInt(100);
+                patients[i] = new CriticalPatient(i + 1);
+                patients[i].setPriority(roll < 80 ? 0 : roll < 95 ? 1 : 2);
+            }
+        }
+
+        @Override
+        public void produce() {
+            // Approximate backlog check, keeps a fast producer from filling the heap
+            if (queue.size() >= maxBacklog) {
+                return;
+            }
+            queue.enqueue(patients[ThreadLocalRandom.current().nextInt(PATIENT_POOL)]);
+        }
+
+        @Override
+        public Object consume() {
+            return queue.dequeue();
+        }
+
+        @Override
+        public Object consumeBatch(int maxPatients) {
+            return queue.dequeueBatch(maxPatients);
+        }
+    }
+
+    // Producer threads each enqueue their own run of patients while consumer threads take them, one
+    // per dequeue or a batch per drainTo; every patient must come out exactly once, and the patients
+    // of one producer in the order they went in
+    abstract static class StressDriver implements Drivers.StressDriver {
+        private int producers;
+        private int consumers;
+        private int patientsPerProducer;
+        private int batch;
+        private CriticalPatient[] patients;
+        private AtomicIntegerArray seen;
+        private AtomicInteger consumed;
+        private AtomicReference<String> failure;
+        private CountDownLatch start;
+        private List<Thread> threads;
+
+        // Start over with an empty queue
+        abstract void newQueue();
+
+        abstract void enqueue(CriticalPatient patient);
+
+        abstract CriticalPatient dequeue();
+
+        // Move up to maxPatients patients into the list and return how many were moved
+        abstract int drainTo(List<CriticalPatient> target, int maxPatients);
+
+        @Override
+        public void prepare(int producers, int consumers, int patientsPerProducer, int batch) {
+            this.producers = producers;
+            this.consumers = consumers;
+            this.patientsPerProducer = patientsPerProducer;
+            this.batch = batch;
+            // Built once, so allocating patients is not part of the measurement
+            patients = new CriticalPatient[producers * patientsPerProducer];
+            for (int i = 0; i < patients.length; i++) {
+                patients[i] = new CriticalPatient(i);
+            }
+        }
+
+        @Override
+        public void reset() {
+            newQueue();
+            seen = new AtomicIntegerArray(patients.length);
+            consumed = new AtomicInteger();
+            failure = new AtomicReference<>();
+            start = new CountDownLatch(1);
+            threads = new ArrayList<>(producers + consumers);
+            for (int p = 0; p < producers; p++) {
+                int first = p * patientsPerProducer;
+                threads.add(new Thread(() -> {
+                    awaitStart();
+                    for (int i = 0; i < patientsPerProducer; i++) {
+                        enqueue(patients[first + i]);
+                    }
+                }, "Producer-" + p));
+            }
+            for (int c = 0; c < consumers; c++) {
+                threads.add(new Thread(this::consume, "Consumer-" + c));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+        }
+
+        private void consume() {
+            awaitStart();
+            // Last patient ID this consumer received from each producer
+            int[] lastFromProducer = new int[producers];
+            Arrays.fill(lastFromProducer, -1);
+            List<CriticalPatient> taken = new ArrayList<>(batch);
+            while (consumed.get() < patients.length) {
+                if (batch == 1) {
+                    CriticalPatient patient = dequeue();
+                    if (patient != null) {
+                        taken.add(patient);
+                    }
+                } else {
+                    drainTo(taken, batch);
+                }
+                if (taken.isEmpty()) {
+                    // Yield rather than spin so the producers get the CPU even on one core
+                    Thread.yield();
+                    continue;
+                }
+                for (CriticalPatient patient : taken) {
+                    int id = patient.getPatientId();
+                    int producer = id / patientsPerProducer;
+                    if (id <= lastFromProducer[producer]) {
+                        failure.compareAndSet(null, "Patient " + id + " dequeued out of FIFO order");
+                    }
+                    lastFromProducer[producer] = id;
+                    if (seen.incrementAndGet(id) != 1) {
+                        failure.compareAndSet(null, "Patient " + id + " dequeued more than once");
+                    }
+                }
+                consumed.addAndGet(taken.size());
+                taken.clear();
+            }
+        }
+
+        private void awaitStart() {
+            try {
+                start.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public long runRound() throws InterruptedException {
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            for (int i = 0; i < patients.length; i++) {
+                if (seen.get(i) != 1) {
+                    failure.compareAndSet(null, "Patient " + i + " dequeued " + seen.get(i) + " times");
+                }
+            }
+            if (failure.get() != null) {
+                throw new IllegalStateException(getClass().getSimpleName() + " failed the stress check: "
+                        + failure.get());
+            }
+            return consumed.get();
+        }
+    }
+
+    // The plain PriorityQueue with every call guarded by one monitor, as the baseline
+    public static class SynchronizedPriorityQueueStressDriver extends StressDriver {
+        private PriorityQueue queue;
+
+        @Override
+        void newQueue() {
+            queue = new PriorityQueue();
+        }
+
+        @Override
+        synchronized void enqueue(CriticalPatient patient) {
+            queue.enqueue(patient);
+        }
+
+        @Override
+        synchronized CriticalPatient dequeue() {
+            return queue.poll();
+        }
+
+        @Override
+        synchronized int drainTo(List<CriticalPatient> target, int maxPatients) {
+            return queue.drainTo(target, maxPatients);
+        }
+    }
+
+    // MultiPriorityQueue: a lock-free queue per level plus the bitmap of non-empty levels
+    public static class MultiPriorityQueueStressDriver extends StressDriver {
+        private MultiPriorityQueue queue;
+
+        @Override
+        void newQueue() {
+            queue = new MultiPriorityQueue();
+        }
+
+        @Override
+        void enqueue(CriticalPatient patient) {
+            queue.enqueue(patient);
+        }
+
+        @Override
+        CriticalPatient dequeue() {
+            return queue.dequeue();
+        }
+
+        @Override
+        int drainTo(List<CriticalPatient> target, int maxPatients) {
+            return queue.drainTo(target, maxPatients);
+        }
+    }
+
+    // The lock-free ConcurrentPriorityQueue
+    public static class ConcurrentPriorityQueueStressDriver extends StressDriver {
+        private ConcurrentPriorityQueue queue;
+
+        @Override
+        void newQueue() {
+            queue = new ConcurrentPriorityQueue();
+        }
+
+        @Override
+        void enqueue(CriticalPatient patient) {
+            queue.enqueue(patient);
+        }
+
+        @Override
+        CriticalPatient dequeue() {
+            return queue.dequeue();
+        }
+
+        @Override
+        int drainTo(List<CriticalPatient> target, int maxPatients) {
+            return queue.drainTo(target, maxPatients);
+        }
+    }
+
+    // Blocked threads of one execution strategy, each waiting to be released like an idle doctor
+    // waits for a patient
+    public static class ThreadScalingDriver implements Drivers.ThreadScalingDriver {
+        private long heapBefore;
+        private CountDownLatch release;
+        private List<Thread> threads;
+
+        @Override
+        public void prepare() {
+            System.gc();
+            Runtime runtime = Runtime.getRuntime();
+            heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        }
+
+        @Override
+        public void startAll(String strategy, int threads) throws InterruptedException {
+            ExecutionStrategy executionStrategy = ExecutionStrategy.parse(strategy);
+            CountDownLatch started = new CountDownLatch(threads);
+            release = new CountDownLatch(1);
+            this.threads = new ArrayList<>(threads);
+            try {
+                for (int i = 0; i < threads; i++) {
+                    Thread thread = executionStrategy.newThread(() -> {
+                        started.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }, "Scaling-" + i);
+                    thread.start();
+                    this.threads.add(thread);
+                }
+            } catch (OutOfMemoryError | InternalError e) {
+                // Usually "unable to create native thread" once the OS limit is hit
+                int reached = this.threads.size();
+                releaseAll();
+                throw new IllegalStateException("Only " + reached + " " + strategy + " threads could start", e);
+            }
+            started.await();
+        }
+
+        @Override
+        public double heapUsedMegabytes() {
+            Runtime runtime = Runtime.getRuntime();
+            return (runtime.totalMemory() - runtime.freeMemory() - heapBefore) / (1024.0 * 1024.0);
+        }
+
+        @Override
+        public void releaseAll() throws InterruptedException {
+            release.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            threads = null;
+        }
+    }
+
+    // EmergencyDoctorManager with a fixed team and instant treatments
+    public static class EmergencyDispatchDriver implements Drivers.DispatchDriver {
+        private EmergencyDoctorManager manager;
+        private int nextPatientId;
+
+        @Override
+        public void start(int doctors) {
+            manager = new EmergencyDoctorManager(doctors);
+            manager.start();
+        }
+
+        @Override
+        public void dispatchOne() {
+            long dispatchedBefore = manager.getDispatchedPatients();
+            EmergencyPatient patient = new EmergencyPatient(++nextPatientId);
+            patient.setServiceTime(0);
+            manager.assignPatient(patient);
+            while (manager.getDispatchedPatients() == dispatchedBefore) {
+                // Yield rather than spin so the doctor thread gets the CPU even on one core
+                Thread.yield();
+            }
+        }
+
+        @Override
+        public void stop() {
+            manager.shutdown();
+        }
+    }
+
+    // Live metrics for one metered run, with a reporter taking snapshots every 100 ms that are thrown away
+    static Metrics newMetrics(boolean metered) {
+        if (!metered) {
+            return null;
+        }
+        Metrics metrics = new Metrics();
+        metrics.startReporting(100, snapshot -> { });
+        return metrics;
+    }
+
+    // Every caretaker of a day works through their queue on the benchmark thread, one after the other
+    public static class MeteredCaretakersDriver implements Drivers.MeteredDriver {
+        private List<CriticalPatient> allPatients;
+        private int caretakerCount;
+        private final List<CaretakerProcessor> caretakers = new ArrayList<>();
+        private Metrics metrics;
+
+        @Override
+        public void prepare(int patients, long seed) {
+            allPatients = HospitalQueueSimulation.generatePatients(patients, new SplittableRandom(seed));
+            caretakerCount = HospitalQueueSimulation.assignCaretakerQueues(allPatients).size();
+        }
+
+        @Override
+        public void setUpRun(boolean metered) {
+            List<AdaptiveQueue> queues = new ArrayList<>(caretakerCount);
+            for (int i = 0; i < caretakerCount; i++) {
+                queues.add(new AdaptiveQueue(i + 1));
+            }
+            for (CriticalPatient patient : allPatients) {
+                if (patient.getPriority() < 2) {
+                    queues.get(patient.getAssignedQueueId() - 1).enqueue(patient);
+                }
+            }
+            metrics = newMetrics(metered);
+            caretakers.clear();
+            for (AdaptiveQueue queue : queues) {
+                CaretakerProcessor caretaker = new CaretakerProcessor(queue);
+                if (metrics != null) {
+                    caretaker.enableMetrics(metrics);
+                }
+                caretakers.add(caretaker);
+            }
+        }
+
+        @Override
+        public void run() {
+            for (CaretakerProcessor caretaker : caretakers) {
+                caretaker.run();
+            }
+        }
+
+        @Override
+        public void tearDownRun() {
+            if (metrics != null) {
+                metrics.close();
+            }
+        }
+    }
+
+    // The benchmark thread enqueues every patient of a day while 3, 1 and 5 QueueProcessor threads
+    // (normal, critical, emergency) take them out
+    public static class MeteredPipelineDriver implements Drivers.MeteredDriver {
+        private static final int[] PROCESSOR_COUNTS = {3, 1, 5};
+        private List<CriticalPatient> allPatients;
+        private MultiPriorityQueue queue;
+        private Metrics metrics;
+
+        @Override
+        public void prepare(int patients, long seed) {
+            allPatients = HospitalQueueSimulation.generatePatients(patients, new SplittableRandom(seed));
+        }
+
+        @Override
+        public void setUpRun(boolean metered) {
+            MultiPriorityQueue runQueue = new MultiPriorityQueue();
+            queue = runQueue;
+            metrics = newMetrics(metered);
+            if (metrics != null) {
+                for (int level = 0; level < PROCESSOR_COUNTS.length; level++) {
+                    int priority = level;
+                    metrics.gauge("pipeline.waiting" + PatientStatistics.getPriorityName(level),
+                            () -> runQueue.getQueueSize(priority));
+                }
+            }
+        }
+
+        @Override
+        public void run() throws InterruptedException {
+            ExecutorService executor = Executors.newFixedThreadPool(9);
+            for (int level = 0; level < PROCESSOR_COUNTS.length; level++) {
+                QueueProcessor.Servers servers = new QueueProcessor.Servers(PROCESSOR_COUNTS[level]);
+                for (int i = 0; i < PROCESSOR_COUNTS[level]; i++) {
+                    QueueProcessor processor = new QueueProcessor(queue, level, i + 1, servers, 1, null);
+                    if (metrics != null) {
+                        processor.enableMetrics(metrics);
+                    }
+                    executor.submit(processor);
+                }
+            }
+            for (CriticalPatient patient : allPatients) {
+                queue.enqueue(patient);
+            }
+            queue.close();
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void tearDownRun() {
+            if (metrics != null) {
+                metrics.close();
+            }
+        }
+    }
+
+    // The benchmark thread hands every emergency patient of a day to a team of five and waits
+    // until all are treated. Doctors really sleep through treatments, so the treatments take no time.
+    public static class MeteredDoctorsDriver implements Drivers.MeteredDriver {
+        private final List<EmergencyPatient> emergencyPatients = new ArrayList<>();
+        private EmergencyDoctorManager manager;
+        private Metrics metrics;
+
+        @Override
+        public void prepare(int patients, long seed) {
+            emergencyPatients.clear();
+            for (CriticalPatient patient : HospitalQueueSimulation.generatePatients(patients, new SplittableRandom(seed))) {
+                if (patient.getPriority() == 2) {
+                    patient.setServiceTime(0);
+                    emergencyPatients.add((EmergencyPatient) patient);
+                }
+            }
+        }
+
+        @Override
+        public void setUpRun(boolean metered) {
+            metrics = newMetrics(metered);
+            manager = new EmergencyDoctorManager(HospitalQueueSimulation.EMERGENCY_DOCTORS);
+            if (metrics != null) {
+                manager.enableMetrics(metrics);
+            }
+            manager.start();
+        }
+
+        @Override
+        public void run() {
+            for (EmergencyPatient patient : emergencyPatients) {
+                manager.assignPatient(patient);
+            }
+            manager.shutdown();
+        }
+
+        @Override
+        public void tearDownRun() {
+            if (metrics != null) {
+                metrics.close();
+            }
+        }
+    }
+
+    // A day with queues assigned up front, as HospitalQueueSimulation runs by default
+    public static class FixedDayDriver implements Drivers.DayDriver {
+        private List<CriticalPatient> allPatients;
+        private int caretakerCount;
+
+        @Override
+        public void prepare(int patients, long seed) {
+            allPatients = HospitalQueueSimulation.generatePatients(patients, new Random(seed));
+            caretakerCount = HospitalQueueSimulation.assignCaretakerQueues(allPatients).size();
+        }
+
+        @Override
+        public double runDay() {
+            EventDrivenSimulation simulation = new EventDrivenSimulation(caretakerCount,
+                    HospitalQueueSimulation.EMERGENCY_DOCTORS, null, false);
+            simulation.run(allPatients.iterator());
+            return simulation.getStatistics().getCaretakerMakespan();
+        }
+    }
+
+    // A streaming day (--streaming): patients generated as they arrive, caretakers opened on demand
+    public static class StreamingDayDriver implements Drivers.DayDriver {
+        private int patients;
+        private long seed;
+
+        @Override
+        public void prepare(int patients, long seed) {
+            this.patients = patients;
+            this.seed = seed;
+        }
+
+        @Override
+        public double runDay() {
+            EventDrivenSimulation simulation = new EventDrivenSimulation(1,
+                    HospitalQueueSimulation.EMERGENCY_DOCTORS, null, false, HospitalQueueSimulation.QUEUE_THRESHOLD);
+            simulation.run(new PatientGenerator(patients, new Random(seed)));
+            return simulation.getStatistics().getCaretakerMakespan();
+        }
+    }
+
+    // A day on the columnar engine (--columnar): patients in a PatientStore, queues of indices
+    public static class ColumnarDayDriver implements Drivers.DayDriver {
+        private PatientStore store;
+        private int caretakerCount;
+
+        @Override
+        public void prepare(int patients, long seed) {
+            store = PatientStore.generate(patients, new Random(seed));
+            caretakerCount = HospitalQueueSimulation.assignCaretakerQueues(store);
+        }
+
+        @Override
+        public double runDay() {
+            ColumnarSimulation simulation = new ColumnarSimulation(store, caretakerCount,
+                    HospitalQueueSimulation.EMERGENCY_DOCTORS, null);
+            simulation.run();
+            return store.statistics().getCaretakerMakespan();
+        }
+    }
+
+    // A trace of a generated day in a temporary file, replayed the two ways the simulation reads it
+    public static class TraceDriver implements Drivers.TraceDriver {
+        private int patients;
+        private long seed;
+        private PatientStore recorded;
+        private Path path;
+        // Reused by every plain read of the file
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+
+        @Override
+        public void record(int patients, long seed) throws IOException {
+            this.patients = patients;
+            this.seed = seed;
+            recorded = PatientStore.generate(patients, new SplittableRandom(seed));
+            path = Files.createTempFile("patients", ".hqt");
+            writeTrace();
+        }
+
+        @Override
+        public long readFile() throws IOException {
+            long bytes = 0;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                int read;
+                while ((read = channel.read(buffer)) >= 0) {
+                    bytes += read;
+                    buffer.clear();
+                }
+            }
+            return bytes;
+        }
+
+        @Override
+        public void writeTrace() throws IOException {
+            try (PatientTraceWriter writer = new PatientTraceWriter(path)) {
+                writer.writeAll(recorded);
+            }
+        }
+
+        @Override
+        public Object generate() {
+            return PatientStore.generate(patients, new SplittableRandom(seed));
+        }
+
+        @Override
+        public Object replayIntoStore() throws IOException {
+            try (PatientTraceReader reader = new PatientTraceReader(path)) {
+                return reader.readStore();
+            }
+        }
+
+        @Override
+        public long replayAsObjects() throws IOException {
+            long checksum = 0;
+            try (PatientTraceReader reader = new PatientTraceReader(path)) {
+                while (reader.hasNext()) {
+                    checksum += reader.next().getPatientId();
+                }
+            }
+            return checksum;
+        }
+
+        @Override
+        public void delete() throws IOException {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    // Make count treated patients arriving through the day, with waits and departures set
+    static CriticalPatient[] createTreatedPatients(int count, long seed) {
+        Random rand = new Random(seed);
+        CriticalPatient[] patients = createPatients(count, 0.15, seed);
+        for (CriticalPatient patient : patients) {
+            patient.setArrivalTime(480 + rand.nextDouble() * 900);
+            patient.setServiceTime(5 + rand.nextDouble() * 25);
+            patient.setWaitingTime(rand.nextDouble() * 120);
+            patient.setDepartureTime(patient.getArrivalTime() + patient.getWaitingTime() + patient.getServiceTime());
+        }
+        return patients;
+    }
+
+    // The way caretakers logged before the asynchronous log: string concatenation with
+    // String.format for every time and duration, a new String per line
+    public static class StringFormatDriver implements Drivers.LogDriver {
+        private CriticalPatient[] patients;
+        private int next = 0;
+
+        @Override
+        public void prepare(int count, long seed) {
+            patients = createTreatedPatients(count, seed);
+        }
+
+        @Override
+        public Object renderNext() {
+            CriticalPatient patient = patients[next];
+            next = (next + 1) % patients.length;
+            return "Caretaker #" + patient.getAssignedQueueId()
+                    + " | Patient " + patient.getPatientId()
+                    + " | Priority: " + PatientStatistics.getPriorityName(patient.getPriority())
+                    + " | Arrival: " + formatTime(patient.getArrivalTime())
+                    + " | Waiting: " + String.format("%.2f", patient.getWaitingTime()) + " min"
+                    + " | Service: " + String.format("%.2f", patient.getServiceTime()) + " min"
+                    + " | Departure: " + formatTime(patient.getDepartureTime());
+        }
+
+        private static String formatTime(double minutes) {
+            int hours = (int) (minutes / 60);
+            int mins = (int) (minutes % 60);
+            return String.format("%02d:%02d", hours, mins);
+        }
+    }
+
+    // The log sink's writer thread: a reused LogRecord rendered into a reused StringBuilder and
+    // copied into a reused char[], times from LogFormat's minute-of-day table
+    public static class LogRecordDriver implements Drivers.LogDriver {
+        private final LogRecord record = new LogRecord();
+        private final StringBuilder line = new StringBuilder(256);
+        private final char[] chars = new char[256];
+        private CriticalPatient[] patients;
+        private int next = 0;
+
+        @Override
+        public void prepare(int count, long seed) {
+            patients = createTreatedPatients(count, seed);
+        }
+
+        @Override
+        public Object renderNext() {
+            CriticalPatient patient = patients[next];
+            next = (next + 1) % patients.length;
+            record.kind = LogRecord.Kind.TREATED;
+            record.serverId = patient.getAssignedQueueId();
+            record.patientId = patient.getPatientId();
+            record.priority = patient.getPriority();
+            record.arrivalTime = patient.getArrivalTime();
+            record.waitingTime = patient.getWaitingTime();
+            record.serviceTime = patient.getServiceTime();
+            record.departureTime = patient.getDepartureTime();
+            line.setLength(0);
+            record.renderTo(line);
+            line.getChars(0, line.length(), chars, 0);
+            return chars;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package hospital.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Critical-first dequeue of a caretaker's AdaptiveQueue for different backlogs and critical shares
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdaptiveQueueBenchmark {
+    // Patients already waiting in the queue
+    @Param({"10", "1000", "100000"})
+    public int backlog;
+
+    // Share of waiting patients who are critical
+    @Param({"0.0", "0.15", "0.5"})
+    public double criticalRatio;
+
+    private Drivers.QueueDriver driver;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        driver = Drivers.load("BenchmarkDrivers$AdaptiveQueueDriver", Drivers.QueueDriver.class);
+        driver.fill(backlog, criticalRatio, 42);
+    }
+
+    // One enqueue plus one critical-first dequeue
+    @Benchmark
+    public Object enqueueDequeue() {
+        return driver.enqueueDequeue();
+    }
+}
@@ -0,0 +1,46 @@
+package hospital.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Cost of one enqueue plus one dequeue on an AdaptiveQueue under each dequeue policy, with 45%
+// of the waiting patients critical. It should not grow with the backlog.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DequeuePolicyBenchmark {
+    @Param({"strict", "wfq:1,2", "wfq:1,4", "aging:30", "aging:60"})
+    public String policy;
+
+    // Patients already waiting in the queue
+    @Param({"10", "1000", "100000"})
+    public int backlog;
+
+    private Drivers.PolicyQueueDriver driver;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        driver = Drivers.load("BenchmarkDrivers$PolicyAdaptiveQueueDriver", Drivers.PolicyQueueDriver.class);
+        driver.fill(policy, backlog, 0.45, 42);
+    }
+
+    @Benchmark
+    public Object enqueueDequeue() {
+        return driver.enqueueDequeue();
+    }
+}
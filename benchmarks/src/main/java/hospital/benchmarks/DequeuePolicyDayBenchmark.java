@@ -0,0 +1,77 @@
+package hospital.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// A day with sustained critical load (50% normal, 45% critical by default) on the event engine
+// under each dequeue policy, with queues fixed up front or opened on demand. Besides the run time
+// it reports the waits each policy gives, as the secondary results p50Normal, p99Normal,
+// p99Critical and p999Normal (minutes, from the last run of the iteration; every run of a
+// configuration is the same day).
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class DequeuePolicyDayBenchmark {
+    @Param({"strict", "wfq:1,2", "wfq:1,4", "aging:30", "aging:60"})
+    public String policy;
+
+    @Param({"fixed", "onDemand"})
+    public String queues;
+
+    @Param({"100000"})
+    public int patients;
+
+    // Patient mix as for --mix: normal%,critical%
+    @Param({"50,45"})
+    public String mix;
+
+    private Drivers.PolicyDayDriver driver;
+
+    // Wait percentiles of the last run, reported next to the time
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Waits {
+        public double p50Normal;
+        public double p99Normal;
+        public double p99Critical;
+        public double p999Normal;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        driver = Drivers.load("BenchmarkDrivers$PolicyDayDriver", Drivers.PolicyDayDriver.class);
+        driver.prepare(policy, queues.equals("onDemand"), patients, mix, 42);
+    }
+
+    // A day takes milliseconds, so copying its patients before each run does not skew the timing
+    @Setup(Level.Invocation)
+    public void freshPatients() {
+        driver.reset();
+    }
+
+    @Benchmark
+    public double runDay(Waits waits) {
+        double makespan = driver.runDay();
+        waits.p50Normal = driver.waitPercentile(0, 50);
+        waits.p99Normal = driver.waitPercentile(0, 99);
+        waits.p99Critical = driver.waitPercentile(1, 99);
+        waits.p999Normal = driver.waitPercentile(0, 99.9);
+        return makespan;
+    }
+}
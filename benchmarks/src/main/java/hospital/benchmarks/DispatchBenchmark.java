@@ -0,0 +1,48 @@
+package hospital.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Time from EmergencyDoctorManager.assignPatient() until a free doctor has taken the patient.
+// Treatments take no time, so a doctor is always waiting; sampled to report percentiles.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+    @Param({"1", "5"})
+    public int doctors;
+
+    private Drivers.DispatchDriver driver;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        driver = Drivers.load("BenchmarkDrivers$EmergencyDispatchDriver", Drivers.DispatchDriver.class);
+        driver.start(doctors);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        driver.stop();
+    }
+
+    @Benchmark
+    public void dispatchOne() {
+        driver.dispatchOne();
+    }
+}
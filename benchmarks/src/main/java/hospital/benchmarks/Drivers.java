@@ -0,0 +1,199 @@
+package hospital.benchmarks;
+
+import java.io.IOException;
+
+// JMH will not run benchmarks that live in the default package, and a named package cannot import
+// the default package, so the benchmarks drive the simulation classes through these interfaces.
+// The default-package BenchmarkDrivers implements them and is loaded by name once per trial; every
+// call site only ever sees one implementation, so the JIT inlines straight through the interface.
+public final class Drivers {
+    private Drivers() {
+    }
+
+    // A single-consumer patient queue
+    public interface QueueDriver {
+        // Start over with an empty queue holding backlog patients, criticalRatio of them critical
+        void fill(int backlog, double criticalRatio, long seed);
+
+        // Enqueue one patient and dequeue the next one, so the backlog stays the same
+        Object enqueueDequeue();
+
+        // Enqueue count patients into an empty queue and dequeue them all again
+        Object fillAndDrain(int count);
+    }
+
+    // A patient queue holding a very large backlog at once
+    public interface BacklogDriver {
+        // Start over with an empty queue and backlog patients from a PatientGenerator still to arrive
+        void reset(int backlog, long seed);
+
+        // Enqueue every patient still to arrive
+        void fill();
+
+        // Dequeue every waiting patient and return the sum of their IDs
+        long drain();
+    }
+
+    // A queue shared by producer and consumer threads
+    public interface ContendedQueueDriver {
+        void reset(int maxBacklog);
+
+        // Enqueue one patient (skipped if the backlog is already at maxBacklog)
+        void produce();
+
+        // Dequeue the most urgent patient, or null if there is none
+        Object consume();
+
+        // Dequeue up to maxPatients patients, most urgent first, in one call
+        Object consumeBatch(int maxPatients);
+    }
+
+    // A patient FIFO queue run to empty by producer and consumer threads, then checked
+    public interface StressDriver {
+        // Make patientsPerProducer patients for each producer; consumers take up to batch per call
+        void prepare(int producers, int consumers, int patientsPerProducer, int batch);
+
+        // Start over with an empty queue, and start the threads waiting for the go
+        void reset();
+
+        // Let the threads go and wait until every patient has been consumed; fails unless each
+        // came out exactly once and in its producer's order. Returns the patients consumed.
+        long runRound() throws InterruptedException;
+    }
+
+    // A caretaker's AdaptiveQueue under a dequeue policy (a DequeuePolicy.parse() spec)
+    public interface PolicyQueueDriver {
+        // Start over with an empty queue holding backlog patients, criticalRatio of them critical
+        void fill(String policy, int backlog, double criticalRatio, long seed);
+
+        // Enqueue one new arrival and dequeue the next patient, so the backlog stays the same
+        Object enqueueDequeue();
+    }
+
+    // A day on the event engine under a dequeue policy, with queues fixed up front or opened on demand
+    public interface PolicyDayDriver {
+        // Make the day's patients, mix as for --mix (normal%,critical%)
+        void prepare(String policy, boolean onDemand, int patients, String mix, long seed);
+
+        // Make fresh copies of the patients for the next run
+        void reset();
+
+        // Run the day and return the caretaker makespan
+        double runDay();
+
+        // Wait percentile of a priority in the last run, in minutes
+        double waitPercentile(int priority, double percentile);
+    }
+
+    // A day's caretaker patients on the event engine or on caretaker threads, with queues assigned
+    // up front and caretakers taking over each other's patients or not
+    public interface StealingDayDriver {
+        void prepare(int patients, long seed);
+
+        // Make fresh copies of the patients for the next run
+        void reset();
+
+        // Run the day and return the caretaker makespan
+        double runDay(boolean workStealing) throws InterruptedException;
+
+        // Wait percentile of all caretaker patients in the last run, in minutes
+        double caretakerWaitPercentile(double percentile);
+
+        // Wait percentile of a priority in the last run, in minutes
+        double waitPercentile(int priority, double percentile);
+
+        // Patients taken over from another caretaker in the last run
+        long stolenPatients();
+    }
+
+    // Many threads of one ExecutionStrategy blocked at once, the way idle caretakers and doctors wait
+    public interface ThreadScalingDriver {
+        // Collect garbage and note the heap in use before the threads start
+        void prepare();
+
+        // Start threads threads of the strategy ("platform" or "virtual") and return once all of
+        // them are blocked; fails if the JVM or the OS cannot start that many
+        void startAll(String strategy, int threads) throws InterruptedException;
+
+        // Heap the blocked threads take, in megabytes
+        double heapUsedMegabytes();
+
+        // Release the threads and wait for them to finish
+        void releaseAll() throws InterruptedException;
+    }
+
+    // The emergency doctor team
+    public interface DispatchDriver {
+        void start(int doctors);
+
+        // Assign one emergency patient and wait until a doctor has taken them
+        void dispatchOne();
+
+        void stop();
+    }
+
+    // A whole simulated day on the event engine
+    public interface DayDriver {
+        void prepare(int patients, long seed);
+
+        // Run the day and return the caretaker makespan
+        double runDay();
+    }
+
+    // A day's patients recorded to a trace file and replayed from it
+    public interface TraceDriver {
+        // Generate the day's patients and record them to a new temporary trace file
+        void record(int patients, long seed) throws IOException;
+
+        // Read the whole trace file without looking at the records, and return the bytes read
+        long readFile() throws IOException;
+
+        // Record the day's patients to the trace file again
+        void writeTrace() throws IOException;
+
+        // Generate the same patients from scratch into a new PatientStore and return it
+        Object generate();
+
+        // Replay the trace into a new PatientStore and return it
+        Object replayIntoStore() throws IOException;
+
+        // Replay the trace as patient objects and return the sum of their IDs
+        long replayAsObjects() throws IOException;
+
+        // Delete the trace file
+        void delete() throws IOException;
+    }
+
+    // Rendering of the processing log's treated-patient lines
+    public interface LogDriver {
+        // Make count treated patients with realistic times, rendered in turn
+        void prepare(int count, long seed);
+
+        // Render the next patient's log line and return it (or the buffer holding it)
+        Object renderNext();
+    }
+
+    // A hot-path workload run with live metrics off or on
+    public interface MeteredDriver {
+        void prepare(int patients, long seed);
+
+        // Set up the next run, recording into live metrics (with a reporter taking snapshots the
+        // whole time) if metered
+        void setUpRun(boolean metered);
+
+        // Do the run
+        void run() throws InterruptedException;
+
+        // Stop the run's metrics reporter
+        void tearDownRun();
+    }
+
+    // Create the default-package driver class with the given name
+    public static <T> T load(String className, Class<T> type) {
+        try {
+            return type.cast(Class.forName(className).getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create benchmark driver " + className, e);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package hospital.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Cost of rendering one treated-patient log line: String.format per field, as caretakers used to
+// log, against LogRecord.renderTo() with LogFormat into reused buffers. Run with -prof gc to see
+// the bytes allocated per line as well.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogFormatBenchmark {
+    @Param({"StringFormat", "LogRecord"})
+    public String renderer;
+
+    private Drivers.LogDriver driver;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        driver = Drivers.load("BenchmarkDrivers$" + renderer + "Driver", Drivers.LogDriver.class);
+        driver.prepare(4096, 42);
+    }
+
+    // Render one line
+    @Benchmark
+    public Object renderTreated() {
+        return driver.renderNext();
+    }
+}
@@ -0,0 +1,62 @@
+package hospital.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// What live metrics cost on the hottest paths: caretakers working through their queues
+// ("Caretakers"), the QueueProcessor pipeline ("Pipeline"), and handing emergency patients to the
+// doctor team ("Doctors"), each with metrics off and on (a reporter taking a snapshot every 100 ms).
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsOverheadBenchmark {
+    @Param({"Caretakers", "Pipeline", "Doctors"})
+    public String workload;
+
+    @Param({"off", "on"})
+    public String metrics;
+
+    @Param({"200000"})
+    public int patients;
+
+    private Drivers.MeteredDriver driver;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        driver = Drivers.load("BenchmarkDrivers$Metered" + workload + "Driver", Drivers.MeteredDriver.class);
+        driver.prepare(patients, 42);
+    }
+
+    // Filling the queues and wiring up metrics is done before the day starts, so it is not timed;
+    // a run takes milliseconds, long enough for per-invocation setup not to skew the timing
+    @Setup(Level.Invocation)
+    public void setUpRun() {
+        driver.setUpRun(metrics.equals("on"));
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownRun() {
+        driver.tearDownRun();
+    }
+
+    @Benchmark
+    public void run() throws InterruptedException {
+        driver.run();
+    }
+}
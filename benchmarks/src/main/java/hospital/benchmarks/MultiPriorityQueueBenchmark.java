@@ -0,0 +1,74 @@
+package hospital.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Throughput of MultiPriorityQueue with producers and consumers working on it at once, with
+// consumers taking one patient per call ("contention") or a batch per call ("batched"; one
+// consumeBatch operation moves up to `batch` patients).
+// One producer and one consumer by default; choose N producers and M consumers with -tg N,M.
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiPriorityQueueBenchmark {
+    // Producers stop adding while this many patients are waiting
+    @Param({"10000"})
+    public int maxBacklog;
+
+    // Most patients a consumer takes per call in the batched group
+    @Param({"16"})
+    public int batch;
+
+    private Drivers.ContendedQueueDriver driver;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        driver = Drivers.load("BenchmarkDrivers$MultiPriorityQueueDriver", Drivers.ContendedQueueDriver.class);
+        driver.reset(maxBacklog);
+    }
+
+    @Benchmark
+    @Group("contention")
+    @GroupThreads(1)
+    public void produce() {
+        driver.produce();
+    }
+
+    @Benchmark
+    @Group("contention")
+    @GroupThreads(1)
+    public Object consume() {
+        return driver.consume();
+    }
+
+    @Benchmark
+    @Group("batched")
+    @GroupThreads(1)
+    public void produceForBatches() {
+        driver.produce();
+    }
+
+    @Benchmark
+    @Group("batched")
+    @GroupThreads(1)
+    public Object consumeBatch() {
+        return driver.consumeBatch(batch);
+    }
+}
@@ -0,0 +1,83 @@
+package hospital.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// The off-heap queue against the on-heap ones on one very large backlog: patients stream in from a
+// PatientGenerator until all of them wait at once ("fill"), then every one is taken out again
+// ("drain"). Each run is timed once, as a whole. Run with -prof gc to also see the collections
+// during each phase.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OffHeapQueueBenchmark {
+    @Param({"PriorityQueue", "AdaptiveQueue", "OffHeapPatientQueue"})
+    public String queue;
+
+    // Patients waiting at once when the queue is full
+    @Param({"4000000"})
+    public int backlog;
+
+    // A queue of the kind under test, with the whole backlog still to arrive
+    @State(Scope.Thread)
+    public static class EmptyQueue {
+        Drivers.BacklogDriver driver;
+
+        @Setup(Level.Trial)
+        public void load(OffHeapQueueBenchmark benchmark) {
+            driver = Drivers.load("BenchmarkDrivers$" + benchmark.queue + "BacklogDriver", Drivers.BacklogDriver.class);
+        }
+
+        @Setup(Level.Invocation)
+        public void reset(OffHeapQueueBenchmark benchmark) {
+            driver.reset(benchmark.backlog, 42);
+        }
+    }
+
+    // A queue of the kind under test, with the whole backlog waiting
+    @State(Scope.Thread)
+    public static class FullQueue {
+        Drivers.BacklogDriver driver;
+
+        @Setup(Level.Trial)
+        public void load(OffHeapQueueBenchmark benchmark) {
+            driver = Drivers.load("BenchmarkDrivers$" + benchmark.queue + "BacklogDriver", Drivers.BacklogDriver.class);
+        }
+
+        @Setup(Level.Invocation)
+        public void fill(OffHeapQueueBenchmark benchmark) {
+            driver.reset(benchmark.backlog, 42);
+            driver.fill();
+        }
+    }
+
+    @Benchmark
+    public void fill(EmptyQueue empty) {
+        empty.driver.fill();
+    }
+
+    // Every patient must come out exactly once: the IDs 1..backlog add up to the returned sum
+    @Benchmark
+    public long drain(FullQueue full) {
+        long checksum = full.driver.drain();
+        if (checksum != (long) backlog * (backlog + 1) / 2) {
+            throw new IllegalStateException(queue + " lost or duplicated patients");
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,55 @@
+package hospital.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Single-threaded enqueue/dequeue cost of the linked PriorityQueue, the lock-free
+// ConcurrentPriorityQueue and the OffHeapPatientQueue, at a steady backlog and as a bulk
+// fill-then-drain
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark {
+    @Param({"PriorityQueue", "ConcurrentPriorityQueue", "OffHeapPatientQueue"})
+    public String queue;
+
+    // Patients already waiting in the queue
+    @Param({"0", "1000", "100000"})
+    public int backlog;
+
+    private Drivers.QueueDriver driver;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        driver = Drivers.load("BenchmarkDrivers$" + queue + "Driver", Drivers.QueueDriver.class);
+        driver.fill(backlog, 0.15, 42);
+    }
+
+    // One enqueue plus one dequeue
+    @Benchmark
+    public Object enqueueDequeue() {
+        return driver.enqueueDequeue();
+    }
+
+    // Enqueue 1000 patients into an empty queue and dequeue them all
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object fillAndDrain1000() {
+        return driver.fillAndDrain(1000);
+    }
+}
@@ -0,0 +1,63 @@
+package hospital.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Producer and consumer threads moving a fixed set of patients through a synchronized
+// PriorityQueue, MultiPriorityQueue and ConcurrentPriorityQueue, with consumers taking one patient
+// per dequeue (batch=1) or up to a batch per drainTo. One run is one round until every patient has
+// been consumed; afterwards the round fails unless each patient came out exactly once and in its
+// producer's order. The threads are started before the timing begins.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueueStressBenchmark {
+    @Param({"SynchronizedPriorityQueue", "MultiPriorityQueue", "ConcurrentPriorityQueue"})
+    public String queue;
+
+    @Param({"4"})
+    public int producers;
+
+    @Param({"4"})
+    public int consumers;
+
+    @Param({"250000"})
+    public int patientsPerProducer;
+
+    // Most patients a consumer takes per call
+    @Param({"1", "32"})
+    public int batch;
+
+    private Drivers.StressDriver driver;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        driver = Drivers.load("BenchmarkDrivers$" + queue + "StressDriver", Drivers.StressDriver.class);
+        driver.prepare(producers, consumers, patientsPerProducer, batch);
+    }
+
+    @Setup(Level.Invocation)
+    public void startThreads() {
+        driver.reset();
+    }
+
+    @Benchmark
+    public long runRound() throws InterruptedException {
+        return driver.runRound();
+    }
+}
@@ -0,0 +1,47 @@
+package hospital.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// A whole hospital day on the event engine, with queues assigned up front ("Fixed"), opened on
+// demand as patients stream in ("Streaming"), or over a column store of patients ("Columnar"). The real-time mode sleeps through every treatment,
+// so it measures the sleeps rather than the code and is not benchmarked here.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimulationDayBenchmark {
+    @Param({"Fixed", "Streaming", "Columnar"})
+    public String day;
+
+    @Param({"1000", "100000"})
+    public int patients;
+
+    private Drivers.DayDriver driver;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        driver = Drivers.load("BenchmarkDrivers$" + day + "DayDriver", Drivers.DayDriver.class);
+        driver.prepare(patients, 42);
+    }
+
+    // Returns the caretaker makespan so the run cannot be optimized away
+    @Benchmark
+    public double runDay() {
+        return driver.runDay();
+    }
+}
@@ -0,0 +1,62 @@
+package hospital.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// How many blocked caretakers or doctors each ExecutionStrategy can hold at once: one run starts
+// the threads, waits until all of them block the way an idle doctor waits for a patient, then
+// releases and joins them. The heap the blocked threads take is reported as the secondary result
+// heapMegabytes. A size the OS cannot start that many platform threads for fails with the count
+// reached; try -p threads=200000 to find the limit.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class ThreadScalingBenchmark {
+    @Param({"platform", "virtual"})
+    public String strategy;
+
+    @Param({"1000", "10000", "50000"})
+    public int threads;
+
+    private Drivers.ThreadScalingDriver driver;
+
+    // Heap taken while all threads were blocked, in the last run
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public double heapMegabytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        driver = Drivers.load("BenchmarkDrivers$ThreadScalingDriver", Drivers.ThreadScalingDriver.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void collectGarbage() {
+        driver.prepare();
+    }
+
+    @Benchmark
+    public void startAndRelease(Footprint footprint) throws InterruptedException {
+        driver.startAll(strategy, threads);
+        footprint.heapMegabytes = driver.heapUsedMegabytes();
+        driver.releaseAll();
+    }
+}
@@ -0,0 +1,76 @@
+package hospital.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Replaying a recorded trace, into a PatientStore or as patient objects, against a plain read of
+// the same file (the I/O floor) and against generating the patients from scratch. Writing the
+// trace is timed too. Each run goes through the whole trace once.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TraceBenchmark {
+    // Patients in the trace
+    @Param({"5000000"})
+    public int patients;
+
+    private Drivers.TraceDriver driver;
+
+    @Setup(Level.Trial)
+    public void record() throws IOException {
+        driver = Drivers.load("BenchmarkDrivers$TraceDriver", Drivers.TraceDriver.class);
+        driver.record(patients, 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        driver.delete();
+    }
+
+    @Benchmark
+    public long readFile() throws IOException {
+        return driver.readFile();
+    }
+
+    @Benchmark
+    public void writeTrace() throws IOException {
+        driver.writeTrace();
+    }
+
+    @Benchmark
+    public Object generate() {
+        return driver.generate();
+    }
+
+    @Benchmark
+    public Object replayIntoStore() throws IOException {
+        return driver.replayIntoStore();
+    }
+
+    // Every patient must come out exactly once: the IDs 1..patients add up to the returned sum
+    @Benchmark
+    public long replayAsObjects() throws IOException {
+        long checksum = driver.replayAsObjects();
+        if (checksum != (long) patients * (patients + 1) / 2) {
+            throw new IllegalStateException("Replay lost or duplicated patients");
+        }
+        return checksum;
+    }
+}
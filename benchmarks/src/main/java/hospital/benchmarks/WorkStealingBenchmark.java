@@ -0,0 +1,73 @@
+package hospital.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// A day's caretakers with and without work stealing, on the event engine ("Event") or with one
+// thread per caretaker ("Threaded"), on the same patients and queue assignment. Besides the run
+// time it reports what stealing buys, as the secondary results makespan, p99Wait and p99Critical
+// (minutes, caretaker patients only) and stolen (patients taken over), from the last run of the
+// iteration.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WorkStealingBenchmark {
+    @Param({"Event", "Threaded"})
+    public String engine;
+
+    @Param({"false", "true"})
+    public boolean workStealing;
+
+    @Param({"10000"})
+    public int patients;
+
+    private Drivers.StealingDayDriver driver;
+
+    // Outcome of the last run, reported next to the time
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcome {
+        public double makespan;
+        public double p99Wait;
+        public double p99Critical;
+        public double stolen;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        driver = Drivers.load("BenchmarkDrivers$" + engine + "StealingDayDriver", Drivers.StealingDayDriver.class);
+        driver.prepare(patients, 42);
+    }
+
+    // A day takes milliseconds, so copying its patients before each run does not skew the timing
+    @Setup(Level.Invocation)
+    public void freshPatients() {
+        driver.reset();
+    }
+
+    @Benchmark
+    public double runDay(Outcome outcome) throws InterruptedException {
+        double makespan = driver.runDay(workStealing);
+        outcome.makespan = makespan;
+        outcome.p99Wait = driver.caretakerWaitPercentile(99);
+        outcome.p99Critical = driver.waitPercentile(1, 99);
+        outcome.stolen = driver.stolenPatients();
+        return makespan;
+    }
+}